@@ -31,6 +31,7 @@
 
 import java.awt.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -45,9 +46,12 @@ public class Counter3D {
     String title="img";
     int minSize, maxSize, nbObj=0, nbSurfPix=0;
     int[] imgArray, objID, IDcount, surfList;
-    boolean[] IDisAtEdge;
     int[][] surfCoord;
     float[][] centreOfMass, centroid;
+    //Measurements collected while finding the objects (ID-1 indexed), objBounds is [ID-1][0:x, 1:y, 2:z, 3:width, 4:height, 5:depth]
+    float[] objSurf;
+    float[][] objCentroid;
+    int[][] objBounds;
     boolean sizeFilter=true, exclude=false, redirect=false, closeImg=Prefs.get("3D-OC-Options_closeImg.boolean", false), showMaskedImg=Prefs.get("3D-OC-Options_showMaskedImg.boolean", true);
     Vector<Object3D> obj;
     
@@ -213,135 +217,148 @@ public Counter3D(int[] img, String title, int width, int height, int nbSlices) {
     /** Generates the connexity analysis.
      */
     private void findObjects() {
-        //First ID attribution
-        int currID=0;
-        int currPos=0;
-        int minID=0;
-        int surfPix=0;
-        int neigbNb=0;
-        int pos, currPixID;
-        int neigbX, neigbY, neigbZ;
-        
-        long start=System.currentTimeMillis();
         /*
-         Finding the structures:
-         *The minID tag is initialized with the current value of tag (currID).If thresholded,
-         *the neighborhood of the current pixel is collected. For each of those 13 pixels,
-         *the value is retrieved and tested against minID: only the minimum of the two is kept.
-         *As anterior pixels have already been tagged, only two possibilities may exists:
-         *1-The minimum is currID: we start a new structure and currID should be incremented
-         *2-The minimum is not currID: we continue an already existing structure
-         *Each time a new pixel is tagged, a counter of pixels in the current tag is incremented.
+         Finding the structures (two-pass union-find labelling):
+         *1-Each slice is processed independently (and in parallel): every thresholded pixel is joined
+         *to its thresholded anterior neighbours within the slice (4 pixels). The resulting forest is
+         *stored in the objID array as the index of the parent pixel, each tree being rooted on its first
+         *pixel in raster order. Surface pixels are tagged at the same time.
+         *2-The trees are then joined across the slices boundaries (9 pixels in the previous slice).
+         *3-A single pass numbers the structures in their order of appearance and collects their number
+         *of pixels, surface, centroid and bounding box.
+         *4-Structures are filtered based on their number of pixels and the final IDs are attributed.
          */
-                
         objID=new int[length];
+        isSurf=new boolean[length];
         
-        for (int z=1; z<=nbSlices; z++){
+        final int[] surfPixCount=new int[nbSlices+1];
+        new SliceTask(){
+            void process(int z){
+                surfPixCount[z]=labelSlice(z);
+            }
+        }.run("Step 1/3: Finding structures");
+        nbSurfPix=0;
+        for (int z=1; z<=nbSlices; z++) nbSurfPix+=surfPixCount[z];
+        
+        //Connecting structures across slices
+        int sliceSize=width*height;
+        for (int z=2; z<=nbSlices; z++){
+            int currPos=(z-1)*sliceSize;
             for (int y=0; y<height; y++){
                 for (int x=0; x<width; x++){
-                    if (minID==currID) currID++;
                     if (imgArray[currPos]!=0){
-                        minID=currID;
-                        minID=minAntTag(minID, x, y, z);
-                        objID[currPos]=minID;
+                        for (int neigbY=Math.max(y-1, 0); neigbY<=Math.min(y+1, height-1); neigbY++){
+                            for (int neigbX=Math.max(x-1, 0); neigbX<=Math.min(x+1, width-1); neigbX++){
+                                int pos=neigbX+neigbY*width+(z-2)*sliceSize;
+                                if (imgArray[pos]!=0) union(currPos, pos);
+                            }
+                        }
                     }
                     currPos++;
                 }
             }
-            //IJ.showStatus("Finding structures "+z*100/nbSlices+"%");
-            IJ.showStatus("Step 1/3: Finding structures");
+            IJ.showStatus("Step 2/3: Connecting structures");
             IJ.showProgress(z, nbSlices);
         }
         IJ.showStatus("");
         
-        IDcount=new int[currID];
-        for (int i=0; i<length; i++) IDcount[objID[i]]++;
+        //Numbering of the structures: roots are the first pixel of each structure in raster order
+        int nbStruct=0;
+        for (int i=0; i<length; i++) if (imgArray[i]!=0 && objID[i]==i) nbStruct++;
         
-        IDisAtEdge=new boolean[currID];
-        Arrays.fill(IDisAtEdge, false);
-        /*
-         *Connecting structures:
-         *The first tagging of structure may have led to shearing apart pieces of a same structure
-         *This part will connect them back by attributing the minimal retrieved tag among the 13 neighboring
-         *pixels located prior to the current pixel + the centre pixel and will replace all the values of those pixels
-         *by the minimum value.
-         */
-        isSurf=new boolean[length];
-        currPos=0;
-        minID=1;
-                
+        int[] structSize=new int[nbStruct+1];
+        boolean[] structIsAtEdge=new boolean[nbStruct+1];
+        double[] structSurf=new double[nbStruct+1];
+        double[][] structSum=new double[nbStruct+1][3];
+        int[][] structBounds=new int[nbStruct+1][6];
+        
+        double surfX=cal.pixelHeight*cal.pixelDepth;
+        double surfY=cal.pixelWidth*cal.pixelDepth;
+        double surfZ=cal.pixelWidth*cal.pixelHeight;
+        
+        int currID=0;
+        int currPos=0;
         for (int z=1; z<=nbSlices; z++){
             for (int y=0; y<height; y++){
                 for (int x=0; x<width; x++){
                     if (imgArray[currPos]!=0){
-                        minID=objID[currPos];
-                        surfPix=0;
-                        neigbNb=0;
-                        //Find the minimum tag in the neighbours pixels
-                        for (neigbZ=z-1; neigbZ<=z+1; neigbZ++){
-                            for (neigbY=y-1; neigbY<=y+1; neigbY++){
-                                for (neigbX=x-1; neigbX<=x+1; neigbX++){
-                                    //Following line is important otherwise objects might be linked from one side of the stack to the other !!!
-                                    if (neigbX>=0 && neigbX<width && neigbY>=0 && neigbY<height && neigbZ>=1 && neigbZ<=nbSlices){
-                                        pos=offset(neigbX, neigbY, neigbZ);
-                                        if (imgArray[pos]!=0){
-                                            if ((nbSlices>1 && ((neigbX==x && neigbY==y && neigbZ==z-1) ||(neigbX==x && neigbY==y && neigbZ==z+1))) ||(neigbX==x && neigbY==y-1 && neigbZ==z) ||(neigbX==x && neigbY==y+1 && neigbZ==z) ||(neigbX==x-1 && neigbY==y && neigbZ==z) ||(neigbX==x+1 && neigbY==y && neigbZ==z)) surfPix++;
-                                            minID=Math.min(minID, objID[pos]);
-                                        }
-                                        neigbNb++;
-                                    }
-                                }
-                            }
-                        }
-                        if ((surfPix!=6 && nbSlices>1) || (surfPix!=4 && nbSlices==1)){
-                            isSurf[currPos]=true;
-                            nbSurfPix++;
+                        /*
+                         *Parents always come first in raster order, so they already carry their
+                         *(negated) structure number: the tree does not have to be walked again.
+                         */
+                        int id;
+                        if (objID[currPos]==currPos){
+                            id=++currID;
+                            structBounds[id][0]=structBounds[id][3]=x;
+                            structBounds[id][1]=structBounds[id][4]=y;
+                            structBounds[id][2]=structBounds[id][5]=z;
                         }else{
-                            isSurf[currPos]=false;
-                        }
-                        //Replacing tag by the minimum tag found
-                        for (neigbZ=z-1; neigbZ<=z+1; neigbZ++){
-                            for (neigbY=y-1; neigbY<=y+1; neigbY++){
-                                for (neigbX=x-1; neigbX<=x+1; neigbX++){
-                                    //Following line is important otherwise objects might be linked from one side of the stack to the other !!!
-                                    if (neigbX>=0 && neigbX<width && neigbY>=0 && neigbY<height && neigbZ>=1 && neigbZ<=nbSlices){
-                                        pos=offset(neigbX, neigbY, neigbZ);
-                                        if (imgArray[pos]!=0){
-                                            currPixID=objID[pos];
-                                            if (currPixID>minID) replaceID(currPixID, minID);
-                                        }
-                                    }
-                                }
-                            }
+                            id=-objID[objID[currPos]];
                         }
+                        objID[currPos]=-id;
+                        
+                        structSize[id]++;
+                        structSum[id][0]+=x;
+                        structSum[id][1]+=y;
+                        structSum[id][2]+=z;
+                        structBounds[id][0]=Math.min(structBounds[id][0], x);
+                        structBounds[id][1]=Math.min(structBounds[id][1], y);
+                        structBounds[id][3]=Math.max(structBounds[id][3], x);
+                        structBounds[id][4]=Math.max(structBounds[id][4], y);
+                        structBounds[id][5]=z;
                         
                         //Check if the current particle is touching an edge
-                        if(x==0 || y==0 || x==width-1 || y==height-1 || (nbSlices!=1 && (z==1 || z==nbSlices))) IDisAtEdge[minID]=true;
+                        if(x==0 || y==0 || x==width-1 || y==height-1 || (nbSlices!=1 && (z==1 || z==nbSlices))) structIsAtEdge[id]=true;
+                        
+                        if (nbSlices==1){
+                            structSurf[id]+=surfZ;
+                        }else if (isSurf[currPos]){
+                            //Look at the 6 exposed surfaces
+                            double surf=2*(surfX+surfY+surfZ);
+                            if (x>0 && imgArray[currPos-1]!=0) surf-=surfX;
+                            if (x<width-1 && imgArray[currPos+1]!=0) surf-=surfX;
+                            if (y>0 && imgArray[currPos-width]!=0) surf-=surfY;
+                            if (y<height-1 && imgArray[currPos+width]!=0) surf-=surfY;
+                            if (z>1 && imgArray[currPos-sliceSize]!=0) surf-=surfZ;
+                            if (z<nbSlices && imgArray[currPos+sliceSize]!=0) surf-=surfZ;
+                            structSurf[id]+=surf;
+                        }
                     }
                     currPos++;
                 }
             }
-            IJ.showStatus("Step 2/3: Connecting structures");
-            IJ.showProgress(z, nbSlices);
         }
-        IJ.showStatus("");
         
+        //Renumbering of all the found objects while filtering based on the number of pixels
+        final int[] newID=new int[nbStruct+1];
         int newCurrID=0;
+        for (int i=1; i<=nbStruct; i++){
+            if (structSize[i]>=minSize && structSize[i]<=maxSize && (!exclude || !structIsAtEdge[i])) newID[i]=++newCurrID;
+        }
         
-        //Renumbering of all the found objects and update of their respective number of pixels while filtering based on the number of pixels
-        for (int i=1; i<IDcount.length; i++){
-            if ((IDcount[i]!=0 && IDcount[i]>=minSize && IDcount[i]<=maxSize)&& (!exclude || !(exclude && IDisAtEdge[i]))){
-                newCurrID++;
-                int nbPix=IDcount[i];
-                replaceID(i, newCurrID);
-                IDcount[newCurrID]=nbPix;
-            }else{
-                replaceID(i,0);
+        IDcount=new int[newCurrID+1];
+        objSurf=new float[newCurrID];
+        objCentroid=new float[newCurrID][3];
+        objBounds=new int[newCurrID][6];
+        for (int i=1; i<=nbStruct; i++){
+            int id=newID[i];
+            if (id!=0){
+                IDcount[id]=structSize[i];
+                objSurf[id-1]=(float) structSurf[i];
+                for (int j=0; j<3; j++){
+                    objCentroid[id-1][j]=(float) (structSum[i][j]/structSize[i]);
+                    objBounds[id-1][j]=structBounds[i][j];
+                    objBounds[id-1][j+3]=structBounds[i][j+3]-structBounds[i][j]+1;
+                }
             }
-            IJ.showStatus("Step 3/3: Renumbering structures");
-            IJ.showProgress(i, currID);
         }
-        IJ.showStatus("");
+        
+        new SliceTask(){
+            void process(int z){
+                int end=z*width*height;
+                for (int i=(z-1)*width*height; i<end; i++) objID[i]=imgArray[i]!=0?newID[-objID[i]]:0;
+            }
+        }.run("Step 3/3: Renumbering structures");
         
         if (redirect) prepareImgArrayForRedirect();
         if (showMaskedImg) buildImg(imgArray, null, "Masked image for "+title, false, false, false, 0, 0).show();
@@ -350,6 +367,118 @@ private void findObjects() {
         foundObjects=true;
     }
     
+    /** Joins the thresholded pixels of a slice to their thresholded anterior neighbours of the same slice
+     * and tags the surface pixels. Only pixels of the slice are modified, so slices may be processed concurrently.
+     * @param z slice to process (1 to nbSlices).
+     * @return the number of surface pixels in the slice.
+     */
+    private int labelSlice(int z){
+        int surfPix=0;
+        int currPos=(z-1)*width*height;
+        for (int y=0; y<height; y++){
+            for (int x=0; x<width; x++){
+                if (imgArray[currPos]!=0){
+                    objID[currPos]=currPos;
+                    if (x>0 && imgArray[currPos-1]!=0) union(currPos, currPos-1);
+                    if (y>0){
+                        int pos=currPos-width;
+                        if (x>0 && imgArray[pos-1]!=0) union(currPos, pos-1);
+                        if (imgArray[pos]!=0) union(currPos, pos);
+                        if (x<width-1 && imgArray[pos+1]!=0) union(currPos, pos+1);
+                    }
+                    
+                    //A pixel is on the surface if one of its 6 (4 in 2D) direct neighbours is not thresholded
+                    int neigbNb=0;
+                    if (x>0 && imgArray[currPos-1]!=0) neigbNb++;
+                    if (x<width-1 && imgArray[currPos+1]!=0) neigbNb++;
+                    if (y>0 && imgArray[currPos-width]!=0) neigbNb++;
+                    if (y<height-1 && imgArray[currPos+width]!=0) neigbNb++;
+                    if (nbSlices>1){
+                        if (z>1 && imgArray[currPos-width*height]!=0) neigbNb++;
+                        if (z<nbSlices && imgArray[currPos+width*height]!=0) neigbNb++;
+                    }
+                    if ((neigbNb!=6 && nbSlices>1) || (neigbNb!=4 && nbSlices==1)){
+                        isSurf[currPos]=true;
+                        surfPix++;
+                    }
+                }
+                currPos++;
+            }
+        }
+        return surfPix;
+    }
+    
+    /** Returns the root of the tree containing a pixel, compressing the path on the way.
+     * @param pos index of the pixel.
+     * @return the index of the root pixel (the first pixel of the tree in raster order).
+     */
+    private int findRoot(int pos){
+        int root=pos;
+        while (objID[root]!=root) root=objID[root];
+        while (objID[pos]!=root){
+            int next=objID[pos];
+            objID[pos]=root;
+            pos=next;
+        }
+        return root;
+    }
+    
+    /** Joins the trees containing two pixels, keeping the root coming first in raster order.
+     * @param pos1 index of the first pixel.
+     * @param pos2 index of the second pixel.
+     */
+    private void union(int pos1, int pos2){
+        int root1=findRoot(pos1);
+        int root2=findRoot(pos2);
+        if (root1<root2){
+            objID[root2]=root1;
+        }else if (root2<root1){
+            objID[root1]=root2;
+        }
+    }
+    
+    /** Processes all the slices of the stack, spreading them over several threads.
+     */
+    private abstract class SliceTask {
+        /** Processes one slice.
+         * @param z slice to process (1 to nbSlices).
+         */
+        abstract void process(int z);
+        
+        /** Processes all the slices and waits for completion.
+         * @param status message to show in the status bar.
+         */
+        void run(final String status){
+            final AtomicInteger nextSlice=new AtomicInteger(1);
+            final AtomicInteger doneSlices=new AtomicInteger(0);
+            Thread[] threads=new Thread[Math.max(1, Math.min(Prefs.getThreads(), nbSlices))];
+            for (int t=0; t<threads.length; t++){
+                threads[t]=new Thread(){
+                    public void run(){
+                        for (int z=nextSlice.getAndIncrement(); z<=nbSlices; z=nextSlice.getAndIncrement()){
+                            process(z);
+                            IJ.showStatus(status);
+                            IJ.showProgress(doneSlices.incrementAndGet(), nbSlices);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            boolean interrupted=false;
+            for (int t=0; t<threads.length; t++){
+                try{
+                    threads[t].join();
+                }catch (InterruptedException e){
+                    //The slices have to be complete before going on
+                    interrupted=true;
+                    t--;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            IJ.showStatus("");
+        }
+    }
+    
     /** Generates the objects list.
      */
     public void getObjects(){
@@ -366,25 +495,13 @@ public void getObjects(){
                 for (int y=0; y<height; y++){
                     for (int x=0; x<width; x++){
                         int currID=objID[currPos];
-                        if (currID!=0){
-                            float surf=0;
-                            if (nbSlices==1) surf=(float) (cal.pixelWidth*cal.pixelHeight);
-                            if (isSurf[currPos] && nbSlices>1){
-                                surf=(float) (2*(cal.pixelHeight*cal.pixelDepth+cal.pixelWidth*cal.pixelDepth+cal.pixelWidth*cal.pixelHeight));
-                                //Look at the 6 exposed surfaces
-                                if (x>0 && objID[offset (x-1, y, z)]==currID) surf-=cal.pixelHeight*cal.pixelDepth;
-                                if (x<width-1 && objID[offset (x+1, y, z)]==currID) surf-=cal.pixelHeight*cal.pixelDepth;
-                                if (y>0 && objID[offset (x, y-1, z)]==currID) surf-=cal.pixelWidth*cal.pixelDepth;
-                                if (y<height-1 && objID[offset (x, y+1, z)]==currID) surf-=cal.pixelWidth*cal.pixelDepth;
-                                if (z>1 && objID[offset (x, y, z-1)]==currID) surf-=cal.pixelWidth*cal.pixelHeight;
-                                if (z<=nbSlices-1 && objID[offset (x, y, z+1)]==currID) surf-=cal.pixelWidth*cal.pixelHeight;
-                            }
-                            ((Object3D) (obj.get(currID-1))).addVoxel(x, y, z, imgArray[currPos], isSurf[currPos], surf);
-                        }
+                        //The surface has already been measured while finding the objects
+                        if (currID!=0) ((Object3D) (obj.get(currID-1))).addVoxel(x, y, z, imgArray[currPos], isSurf[currPos], 0);
                         currPos++;
                     }
                 }
             }
+            for (int i=0; i<nbObj; i++) ((Object3D) (obj.get(i))).surf_cal=objSurf[i];
             imgArray=null;
             System.gc();
         }
@@ -517,7 +634,16 @@ public ImagePlus getCentreOfMassMap(){
     /** Generates and fills the "centroid" array.
      */
     private void populateCentroid(){
-        if (!getObjects) getObjects();
+        if (!getObjects){
+            //Centroids have already been computed while finding the objects
+            if (!foundObjects) findObjects();
+            centroid=new float[nbObj][3];
+            for (int i=0; i<nbObj; i++){
+                for (int j=0; j<3; j++) centroid[i][j]=objCentroid[i][j];
+            }
+            getCentroid=true;
+            return;
+        }
         centroid=new float[obj.size()][3];
         
         for (int i=0; i<obj.size(); i++){
@@ -538,6 +664,16 @@ public float[][] getCentroidList(){
         return centroid;
     }
     
+    /**
+     * Returns the bounding boxes' list, as measured while finding the objects.
+     *
+     * @return the top-left corner and the dimensions of all found objects' bounding boxes as a dual integer array ([ID][0:x, 1:y, 2:z, 3:width, 4:height, 5:depth]).
+     */
+    public int[][] getBoundingBoxList(){
+        if (!foundObjects) findObjects();
+        return objBounds;
+    }
+    
     /**
      * Returns the centroïds' map.
      * @param drawNb should be true if numbers have to be drawn at each coordinate stored in cenArray (boolean).
@@ -565,7 +701,7 @@ public ImagePlus getCentroidMap(){
     /** Generates and fills the "surface" array.
      */
     private void populateSurfList(){
-        if (!getObjects) getObjects();
+        if (!foundObjects) findObjects();
         
         surfList=new int[length];
         for (int i=0; i<length; i++) surfList[i]=isSurf[i]?objID[i]:0;
@@ -827,64 +963,6 @@ private int offset(int m,int n,int o){
         }
     }
     
-    /** Returns the minimum anterior tag among the 13 previous pixels (4 pixels in 2D).
-     * @param initialValue: value to which the 13 (or 4) retrieved values should be compared to
-     * @param x coordinate of the current pixel.
-     * @param y coordinate of the current pixel.
-     * @param z coordinate of the current pixel.
-     * @return the minimum found anterior tag as an integer.
-     */
-    private int minAntTag(int initialValue, int x, int y, int z){
-        int min=initialValue;
-        int currPos;
-
-        for (int neigbY=y-1; neigbY<=y+1; neigbY++){
-            for (int neigbX=x-1; neigbX<=x+1; neigbX++){
-                //Following line is important otherwise objects might be linked from one side of the stack to the other !!!
-                if (neigbX>=0 && neigbX<width && neigbY>=0 && neigbY<height && z-1>=1 && z-1<=nbSlices){
-                    currPos=offset(neigbX, neigbY, z-1);
-                    if (imgArray[currPos]!=0) min=Math.min(min, objID[currPos]);
-                }
-            }
-        }
-
-        for (int neigbX=x-1; neigbX<=x+1; neigbX++){
-            //Following line is important otherwise objects might be linked from one side of the stack to the other !!!
-            if (neigbX>=0 && neigbX<width && y-1>=0 && y-1<height && z>=1 && z<=nbSlices){
-                currPos=offset(neigbX, y-1, z);
-                if (imgArray[currPos]!=0) min=Math.min(min, objID[currPos]);
-            }
-        }
-
-        //Following line is important otherwise objects might be linked from one side of the stack to the other !!!
-        if (x-1>=0 && x-1<width && y>=0 && y<height && z>=1 && z<=nbSlices ){
-            currPos=offset(x-1, y, z);
-            if (imgArray[currPos]!=0 && x>=1 && y>=0 && z>=1) min=Math.min(min, objID[currPos]);
-        }
-
-        return min;
-    }
-    
-    /** Replaces one object ID by another within the objID array.
-     * @param old value to be replaced.
-     * @param new value to be replaced by. </P>
-     * NB: the arrays carrying the number of pixels/surface pixels carrying those IDs will also be updated.
-     */
-    private void replaceID(int oldVal, int newVal){
-        if (oldVal!=newVal){
-            int nbFoundPix=0;
-            for (int i=0; i<objID.length; i++){
-                if (objID[i]==oldVal){
-                    objID[i]=newVal;
-                    nbFoundPix++;
-                }
-                if (nbFoundPix==IDcount[oldVal]) i=objID.length;
-            }
-            IDcount[oldVal]=0;
-            IDcount[newVal]+=nbFoundPix;
-         }
-    }
-    
     /** Generates the ImagePlus based on Counter3D object width, height and number of slices, the input array and title.
      * @param imgArray containing the pixels intensities (integer array).
      * @param cenArray containing the coordinates of pixels where the labels should be put (integer array).
@@ -185,6 +185,9 @@ final int intensity(final Point3f p) {
 	 * @return
 	 */
 	public static final List<Point3f> getTriangles(Volume volume, int thresh){
+		if (!(volume instanceof ImgLibVolume && ((ImgLibVolume)volume).getImage().getContainer() instanceof ShapeList))
+			return MCIndexedMesh.create(volume, thresh).getTriangles();
+
 		List<Point3f> tri = new ArrayList<Point3f>();
 		final Carrier car = new Carrier();
 		car.w = volume.xDim;
@@ -193,21 +196,7 @@ public static final List<Point3f> getTriangles(Volume volume, int thresh){
 		car.threshold = thresh + 0.5f;
 		car.volume = volume;
 
-		if (volume instanceof ImgLibVolume && ((ImgLibVolume)volume).getImage().getContainer() instanceof ShapeList) {
-			getShapeListImageTriangles((ImgLibVolume)volume, car, tri);
-		} else {
-			MCCube cube = new MCCube();
-			for(int z = -1; z < car.d+1; z+=1){
-				for(int x = -1; x < car.w+1; x+=1){
-					for(int y = -1; y < car.h+1; y+=1){
-						cube.init(x, y, z);
-						cube.computeEdges(car);
-						cube.getTriangles(tri, car);
-					}
-				}
-				IJ.showProgress(z, car.d-2);
-			}
-		}
+		getShapeListImageTriangles((ImgLibVolume)volume, car, tri);
 
 		// convert pixel coordinates
 		for(int i = 0; i < tri.size(); i++) {
@@ -362,7 +351,7 @@ private static final void getShapeListImageTriangles(final ImgLibVolume volume,
 	};        
 
 	// triangles to be drawn in each case
-	private static final int faces[] =
+	static final int faces[] =
 	{
 		-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
 		0, 8, 3, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
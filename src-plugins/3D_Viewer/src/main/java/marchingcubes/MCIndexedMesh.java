@@ -0,0 +1,338 @@
+package marchingcubes;
+
+import ij.IJ;
+import ij.Prefs;
+import ij3d.Volume;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.vecmath.Point3f;
+
+/**
+ * A marching cubes surface stored as an indexed mesh: each vertex is
+ * stored once, as three floats, and shared by all the triangles
+ * around it.
+ *
+ * The volume is cut into slabs of a few slices, which are triangulated
+ * in parallel. Each slab reuses the vertex of an edge for all the
+ * cubes sharing that edge; the vertices on the plane between two slabs
+ * are merged when the slabs are joined. The triangles come in the same
+ * order, with the same vertex coordinates, as those returned by
+ * MCCube.getTriangles().
+ */
+public final class MCIndexedMesh {
+
+	/** The x, y and z coordinates of each vertex, calibrated. */
+	public final float[] vertices;
+
+	/** Three vertex indices per triangle. */
+	public final int[] faces;
+
+	MCIndexedMesh(float[] vertices, int[] faces) {
+		this.vertices = vertices;
+		this.faces = faces;
+	}
+
+	public int getVertexCount() {
+		return vertices.length / 3;
+	}
+
+	public int getTriangleCount() {
+		return faces.length / 3;
+	}
+
+	/**
+	 * Returns the mesh as a list of triangles, three points per
+	 * triangle, as expected by CustomTriangleMesh. Each point is
+	 * a separate object, even if it is shared by several triangles.
+	 */
+	public List<Point3f> getTriangles() {
+		List<Point3f> tri = new ArrayList<Point3f>(faces.length);
+		for(int i = 0; i < faces.length; i++) {
+			int v = 3 * faces[i];
+			tri.add(new Point3f(vertices[v],
+				vertices[v + 1], vertices[v + 2]));
+		}
+		return tri;
+	}
+
+	/** The number of slices of cubes in each slab. */
+	static final int SLAB_DEPTH = 8;
+
+	/**
+	 * Triangulates the given volume at the given isovalue, using as
+	 * many threads as set in Edit>Options>Memory & Threads.
+	 */
+	public static MCIndexedMesh create(final Volume volume,
+					final int threshold) {
+		final int w = volume.xDim, h = volume.yDim, d = volume.zDim;
+		// cubes start at -1 and end at d (inclusive)
+		final int nSlabs = (d + 2 + SLAB_DEPTH - 1) / SLAB_DEPTH;
+		final Slab[] slabs = new Slab[nSlabs];
+		for(int i = 0; i < nSlabs; i++)
+			slabs[i] = new Slab(volume, threshold + 0.5f,
+				-1 + i * SLAB_DEPTH,
+				Math.min(d + 1, -1 + (i + 1) * SLAB_DEPTH));
+
+		final AtomicInteger ai = new AtomicInteger(0);
+		final AtomicInteger done = new AtomicInteger(0);
+		final Throwable[] error = new Throwable[1];
+		final Thread[] thread = new Thread[Math.min(nSlabs,
+			Prefs.getThreads())];
+		for(int i = 0; i < thread.length; i++) {
+			thread[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for(int k = ai.getAndIncrement();
+						k < nSlabs;
+						k = ai.getAndIncrement()) {
+							slabs[k].triangulate();
+							IJ.showProgress(done.incrementAndGet(),
+								nSlabs);
+						}
+					} catch(Throwable t) {
+						synchronized(error) {
+							error[0] = t;
+						}
+						ai.set(nSlabs);
+					}
+				}
+			};
+			thread[i].start();
+		}
+		try {
+			for(int i = 0; i < thread.length; i++)
+				thread[i].join();
+		} catch(InterruptedException e) {
+			throw new RuntimeException("Interrupted while "
+				+ "triangulating", e);
+		}
+		if(error[0] != null)
+			throw new RuntimeException("Could not triangulate",
+				error[0]);
+
+		return join(slabs, (w + 3) * (h + 3));
+	}
+
+	/*
+	 * Joins the slabs into one mesh, mapping the vertices on the top
+	 * plane of each slab to those of the bottom plane of the next one.
+	 */
+	private static MCIndexedMesh join(Slab[] slabs, int planeSize) {
+		int nVertices = 0, nFaces = 0;
+		for(Slab slab : slabs) {
+			nVertices += slab.nVertices;
+			nFaces += slab.nFaces;
+		}
+		float[] vertices = new float[3 * nVertices];
+		int[] faces = new int[nFaces];
+
+		int next = 0, f = 0;
+		int[] previousTop = null;
+		for(Slab slab : slabs) {
+			int[] map = new int[slab.nVertices];
+			Arrays.fill(map, -1);
+			if(previousTop != null) {
+				for(int i = 0; i < 2 * planeSize; i++)
+					if(slab.bottom[i] >= 0 && previousTop[i] >= 0)
+						map[slab.bottom[i]] = previousTop[i];
+			}
+			for(int i = 0; i < slab.nVertices; i++) {
+				if(map[i] >= 0)
+					continue;
+				System.arraycopy(slab.vertices, 3 * i,
+					vertices, 3 * next, 3);
+				map[i] = next++;
+			}
+			for(int i = 0; i < slab.nFaces; i++)
+				faces[f++] = map[slab.faces[i]];
+
+			previousTop = new int[2 * planeSize];
+			for(int i = 0; i < 2 * planeSize; i++)
+				previousTop[i] = slab.top[i] < 0 ? -1 :
+					map[slab.top[i]];
+		}
+		if(next < nVertices)
+			vertices = Arrays.copyOf(vertices, 3 * next);
+		return new MCIndexedMesh(vertices, faces);
+	}
+
+	// the corners of a cube, numbered as in MCCube.init()
+	private static final int[] CX = {0, 1, 1, 0, 0, 1, 1, 0};
+	private static final int[] CY = {0, 0, 1, 1, 0, 0, 1, 1};
+	private static final int[] CZ = {0, 0, 0, 0, 1, 1, 1, 1};
+
+	// the corners of each edge, in the order of MCCube.computeEdges()
+	private static final int[] E1 = {0, 1, 2, 3, 4, 5, 6, 7, 0, 1, 3, 2};
+	private static final int[] E2 = {1, 2, 3, 0, 5, 6, 7, 4, 4, 5, 7, 6};
+
+	/**
+	 * A range of slices of cubes, [z0, z1), and the part of the mesh
+	 * in it.
+	 */
+	private static final class Slab {
+		final Volume volume;
+		final float threshold;
+		final int z0, z1;
+		final int w, h, d, nx, planeSize;
+
+		float[] vertices = new float[3 * 256];
+		int nVertices = 0;
+		int[] faces = new int[256];
+		int nFaces = 0;
+
+		/*
+		 * The vertex on each x edge (first half) and y edge
+		 * (second half) of the planes z0 and z1, or -1.
+		 */
+		int[] bottom, top;
+
+		Slab(Volume volume, float threshold, int z0, int z1) {
+			this.volume = volume;
+			this.threshold = threshold;
+			this.z0 = z0;
+			this.z1 = z1;
+			w = volume.xDim;
+			h = volume.yDim;
+			d = volume.zDim;
+			// grid points from -1 to w + 1, and -1 to h + 1
+			nx = w + 3;
+			planeSize = nx * (h + 3);
+		}
+
+		/*
+		 * Reads one plane of the volume, with a border of zeros.
+		 * The volume's loaders are not thread-safe, hence the lock.
+		 */
+		int[] loadPlane(int z) {
+			int[] plane = new int[planeSize];
+			if(z < 0 || z >= d)
+				return plane;
+			synchronized(volume) {
+				for(int y = 0; y < h; y++)
+					for(int x = 0; x < w; x++)
+						plane[(y + 1) * nx + x + 1] =
+							volume.load(x, y, z);
+			}
+			return plane;
+		}
+
+		void triangulate() {
+			int[] lower = new int[2 * planeSize];
+			int[] upper = new int[2 * planeSize];
+			int[] zEdges = new int[planeSize];
+			Arrays.fill(lower, -1);
+			bottom = lower;
+
+			int[][] planes = new int[2][];
+			planes[0] = loadPlane(z0);
+			int[] intensity = new int[8];
+			int[] edges = new int[12];
+
+			for(int z = z0; z < z1; z++) {
+				planes[1] = loadPlane(z + 1);
+				Arrays.fill(upper, -1);
+				Arrays.fill(zEdges, -1);
+				for(int x = -1; x < w + 1; x++) {
+					for(int y = -1; y < h + 1; y++) {
+						int caseNumber = 0;
+						for(int c = 0; c < 8; c++) {
+							intensity[c] = planes[CZ[c]][
+								(y + CY[c] + 1) * nx
+								+ x + CX[c] + 1];
+							if(intensity[c] - threshold > 0)
+								caseNumber |= 1 << c;
+						}
+						int offset = caseNumber * 15;
+						Arrays.fill(edges, -1);
+						for(int t = 0; t < 5; t++, offset += 3) {
+							if(MCCube.faces[offset] == -1)
+								continue;
+							for(int k = 0; k < 3; k++) {
+								int e = MCCube.faces[offset + k];
+								if(edges[e] < 0)
+									edges[e] = edgeVertex(e,
+										x, y, z, intensity,
+										lower, upper, zEdges);
+								addFace(edges[e]);
+							}
+						}
+					}
+				}
+				planes[0] = planes[1];
+				if(z + 1 < z1) {
+					int[] tmp = lower;
+					lower = upper;
+					upper = tmp == bottom ?
+						new int[2 * planeSize] : tmp;
+				}
+			}
+			top = upper;
+		}
+
+		/*
+		 * Returns the vertex on the given edge of the cube at
+		 * (x, y, z), creating it the first time the edge is used.
+		 */
+		int edgeVertex(int e, int x, int y, int z, int[] intensity,
+				int[] lower, int[] upper, int[] zEdges) {
+			int c1 = E1[e], c2 = E2[e];
+			int gx = x + Math.min(CX[c1], CX[c2]) + 1;
+			int gy = y + Math.min(CY[c1], CY[c2]) + 1;
+			int[] map;
+			int index = gy * nx + gx;
+			if(CZ[c1] != CZ[c2])
+				map = zEdges;
+			else {
+				map = CZ[c1] == 0 ? lower : upper;
+				if(CY[c1] != CY[c2])
+					index += planeSize;
+			}
+			if(map[index] < 0)
+				map[index] = addVertex(
+					x + CX[c1], y + CY[c1], z + CZ[c1],
+					intensity[c1],
+					x + CX[c2], y + CY[c2], z + CZ[c2],
+					intensity[c2]);
+			return map[index];
+		}
+
+		/*
+		 * The same arithmetic as MCCube.computeEdge(), followed by
+		 * the conversion to calibrated coordinates.
+		 */
+		int addVertex(int x1, int y1, int z1, int i1,
+				int x2, int y2, int z2, int i2) {
+			if(i2 < i1)
+				return addVertex(x2, y2, z2, i2, x1, y1, z1, i1);
+			float px = -1, py = -1, pz = -1;
+			float t = (threshold - i1) / (float)(i2 - i1);
+			if(t >= 0 && t <= 1) {
+				px = (x2 - (float)x1) * t + x1;
+				py = (y2 - (float)y1) * t + y1;
+				pz = (z2 - (float)z1) * t + z1;
+			}
+			if(3 * nVertices + 3 > vertices.length)
+				vertices = Arrays.copyOf(vertices,
+					2 * vertices.length);
+			int v = 3 * nVertices;
+			vertices[v] = (float)(px * volume.pw
+				+ volume.minCoord.x);
+			vertices[v + 1] = (float)(py * volume.ph
+				+ volume.minCoord.y);
+			vertices[v + 2] = (float)(pz * volume.pd
+				+ volume.minCoord.z);
+			return nVertices++;
+		}
+
+		void addFace(int v) {
+			if(nFaces == faces.length)
+				faces = Arrays.copyOf(faces, 2 * faces.length);
+			faces[nFaces++] = v;
+		}
+	}
+}
@@ -14,6 +14,8 @@
 // 1.3  1/Nov/2011 added constant offset to Niblack's method (request)
 // 1.4  2/Nov/2011 Niblack's new constant should be subtracted to match mean,mode and midgrey methods. Midgrey method had the wrong constant sign.
 // 1.5  18/Nov/2013 added 3 new local thresholding methdos: Constrast, Otsu and Phansalkar
+// 1.6  18/Oct/2026 all methods use a sliding window histogram (LocalStatistics) on several threads instead of RankFilters and per-pixel ROI histograms, added support for 16 bit images
+// 1.7  18/Oct/2026 Contrast: fixed operator precedence in the distances to the local max and min. Phansalkar: use the standard deviation, the variance was squared instead
                 
 public class Auto_Local_Threshold implements PlugIn {
         /** Ask for parameters and then execute.*/
@@ -26,15 +28,15 @@ public void run(String arg) {
 			return;
 		}
 
-		if (imp.getBitDepth()!=8) {
-			IJ.showMessage("Error", "Only 8-bit images are supported");
+		if (imp.getBitDepth()!=8 && imp.getBitDepth()!=16) {
+			IJ.showMessage("Error", "Only 8-bit and 16-bit images are supported");
 			return;
 		}
 
 		 // 2 - Ask for parameters:
 		GenericDialog gd = new GenericDialog("Auto Local Threshold");
 		String [] methods={"Try all", "Bernsen", "Contrast", "Mean", "Median", "MidGrey", "Niblack","Otsu", "Phansalkar", "Sauvola"};
-		gd.addMessage("Auto Local Threshold v1.5");
+		gd.addMessage("Auto Local Threshold v1.7");
 		gd.addChoice("Method", methods, methods[0]);
 		gd.addNumericField ("Radius",  15, 0);
 		gd.addMessage ("Special paramters (if different from default)");
@@ -44,7 +46,7 @@ public void run(String arg) {
 		if (imp.getStackSize()>1) {
 			gd.addCheckbox("Stack",false);
 		}
-		gd.addMessage("Thresholded result is always shown in white [255].");
+		gd.addMessage("Thresholded result is always shown in white [255] in 8 bits.");
 		gd.showDialog();
 		if (gd.wasCanceled()) return;
  
@@ -141,9 +143,17 @@ public void run(String arg) {
 					}
 //				}
 				imp.setSlice(1);
+				if (imp.getBitDepth()==16) {
+					imp.setDisplayRange(0, 65535);
+					new StackConverter(imp).convertToGray8();
+				}
 			}
 			else { //just one slice
 				Object[] result = exec(imp, myMethod, radius, par1, par2, doIwhite );
+				if (stackSize==1 && imp.getBitDepth()==16) {
+					imp.setDisplayRange(0, 65535);
+					imp.setProcessor(null, imp.getProcessor().convertToByte(true));
+				}
 			}
 			// 5 - If all went well, show the image:
 			// not needed here as the source image is binarised 
@@ -202,7 +212,8 @@ else if(myMethod.equals("Sauvola")){
 		}
 		//IJ.showProgress((double)(255-i)/255);
 		imp.updateAndDraw();
-		imp.getProcessor().setThreshold(255, 255, ImageProcessor.NO_LUT_UPDATE);
+		int white = imp.getBitDepth()==16 ? 65535 : 255;
+		imp.getProcessor().setThreshold(white, white, ImageProcessor.NO_LUT_UPDATE);
 		// 2 - Return the threshold and the image
 		IJ.showStatus("\nDone " + (System.currentTimeMillis() - startTime) / 1000.0);
 		return new Object[] {imp};
@@ -218,53 +229,29 @@ void Bernsen(ImagePlus imp, int radius,  double par1, double par2, boolean doIwh
 		//  http://citeseer.ist.psu.edu/sezgin04survey.html
 		// Ported to ImageJ plugin from E Celebi's fourier_0.8 routines
 		// This version uses a circular local window, instead of a rectagular one
-		ImagePlus Maximp, Minimp;
-		ImageProcessor ip=imp.getProcessor(), ipMax, ipMin;
-		int contrast_threshold=15;
-		int local_contrast;
-		int mid_gray;
-		byte object;
-		byte backg;
-		int temp;
+		ImageProcessor ip=imp.getProcessor();
+		int maxValue=maxValue(ip);
+		int contrast_threshold=15 * maxValue / 255; // the default is for 8-bit images
 
 		if (par1!=0) {
 			IJ.log("Bernsen: changed contrast_threshold from :"+ contrast_threshold + "  to:" + par1);
 			contrast_threshold= (int) par1;
 		}
 
-		if (doIwhite){
-			object =  (byte) 0xff;
-			backg =   (byte) 0;
-		}
-		else {
-			object =  (byte) 0;
-			backg =  (byte) 0xff;
-		}
-
-		Maximp=duplicateImage(ip);
-		ipMax=Maximp.getProcessor();
-		RankFilters rf=new RankFilters();
-		rf.rank(ipMax, radius, rf.MAX);// Maximum
-		//Maximp.show();
-		Minimp=duplicateImage(ip);
-		ipMin=Minimp.getProcessor();
-		rf.rank(ipMin, radius, rf.MIN); //Minimum
-		//Minimp.show();
-		byte[] pixels = (byte [])ip.getPixels();
-		byte[] max = (byte [])ipMax.getPixels();
-		byte[] min = (byte [])ipMin.getPixels();
-
-		for (int i=0; i<pixels.length; i++) {
-			local_contrast = (int)((max[i]&0xff) -(min[i]&0xff));
-			mid_gray =(int) ((min[i]&0xff) + (max[i]&0xff) )/ 2;
-			temp=(int) (pixels[i] & 0x0000ff);
-			if ( local_contrast < contrast_threshold )
-				pixels[i] = ( mid_gray >= 128 ) ? object :  backg;  //Low contrast region
-			else
-				pixels[i] = (temp >= mid_gray ) ? object : backg;
-		}    
-		//imp.updateAndDraw();
-		return;
+		final int contrastThreshold = contrast_threshold;
+		final int half = (maxValue + 1) / 2;
+		boolean[] objects = rankStatistics(ip, radius).apply(new LocalStatistics.Criterion() {
+			public boolean isObject(int value, LocalStatistics.Window window) {
+				int min = window.getMin(), max = window.getMax();
+				int local_contrast = max - min;
+				int mid_gray = (min + max) / 2;
+				if ( local_contrast < contrastThreshold )
+					return mid_gray >= half;  //Low contrast region
+				else
+					return value >= mid_gray;
+			}
+		});
+		setObjects(ip, objects, doIwhite);
 	}
 
 	void Contrast(ImagePlus imp, int radius,  double par1, double par2, boolean doIwhite) {
@@ -272,162 +259,73 @@ void Contrast(ImagePlus imp, int radius,  double par1, double par2, boolean doIw
 		// Based on a simple contrast toggle. This procedure does not have user-provided paramters other than the kernel radius
 		// Sets the pixel value to either white or black depending on whether its current value is closest to the local Max or Min respectively
 		// The procedure is similar to Toggle Contrast Enhancement (see Soille, Morphological Image Analysis (2004), p. 259
-
-		ImagePlus Maximp, Minimp;
-		ImageProcessor ip=imp.getProcessor(), ipMax, ipMin;
-		int c_value =0;
-		int mid_gray;
-		byte object;
-		byte backg;
-
-
-		if (doIwhite){
-			object =  (byte) 0xff;
-			backg =   (byte) 0;
-		}
-		else {
-			object =  (byte) 0;
-			backg =  (byte) 0xff;
-		}
-
-		Maximp=duplicateImage(ip);
-		ipMax=Maximp.getProcessor();
-		RankFilters rf=new RankFilters();
-		rf.rank(ipMax, radius, rf.MAX);// Maximum
-		//Maximp.show();
-		Minimp=duplicateImage(ip);
-		ipMin=Minimp.getProcessor();
-		rf.rank(ipMin, radius, rf.MIN); //Minimum
-		//Minimp.show();
-		byte[] pixels = (byte [])ip.getPixels();
-		byte[] max = (byte [])ipMax.getPixels();
-		byte[] min = (byte [])ipMin.getPixels();
-		for (int i=0; i<pixels.length; i++) {
-			pixels[i] = ((Math.abs((int)(max[i]&0xff- pixels[i]&0xff)) <= Math.abs((int)(pixels[i]&0xff- min[i]&0xff)))) ? object : backg;
-		}    
-		//imp.updateAndDraw();
-		return;
+		ImageProcessor ip=imp.getProcessor();
+		boolean[] objects = rankStatistics(ip, radius).apply(new LocalStatistics.Criterion() {
+			public boolean isObject(int value, LocalStatistics.Window window) {
+				return Math.abs(window.getMax() - value) <= Math.abs(value - window.getMin());
+			}
+		});
+		setObjects(ip, objects, doIwhite);
 	}
 
 	void Mean(ImagePlus imp, int radius,  double par1, double par2, boolean doIwhite ) {
 		// See: Image Processing Learning Resourches HIPR2
 		// http://homepages.inf.ed.ac.uk/rbf/HIPR2/adpthrsh.htm
-		ImagePlus Meanimp;
-		ImageProcessor ip=imp.getProcessor(), ipMean;
+		ImageProcessor ip=imp.getProcessor();
 		int c_value = 0;
-		byte object;
-		byte backg;
 
 		if (par1!=0) {
 			IJ.log("Mean: changed c_value from :"+ c_value + "  to:" + par1);
 			c_value= (int)par1;
 		}
 
-		if (doIwhite){
-			object =  (byte) 0xff;
-			backg =   (byte) 0;
-		}
-		else {
-			object =  (byte) 0;
-			backg =  (byte) 0xff;
-		}
-
-		Meanimp=duplicateImage(ip);
-		ImageConverter ic = new ImageConverter(Meanimp);
-		ic.convertToGray32();
-
-		ipMean=Meanimp.getProcessor();
-		RankFilters rf=new RankFilters();
-		rf.rank(ipMean, radius, rf.MEAN);// Mean
-		//Meanimp.show();
-		byte[] pixels = (byte []) ip.getPixels();
-		float[] mean = (float []) ipMean.getPixels();
-
-		for (int i=0; i<pixels.length; i++) 
-			pixels[i] = ( (int)(pixels[i] &0xff) > (int)( mean[i]  - c_value)) ? object : backg;
-		//imp.updateAndDraw();
-		return;
+		final int c = c_value;
+		boolean[] objects = rankStatistics(ip, radius).apply(new LocalStatistics.Criterion() {
+			public boolean isObject(int value, LocalStatistics.Window window) {
+				return value > (int)( window.getMean() - c);
+			}
+		});
+		setObjects(ip, objects, doIwhite);
 	}
 
 	void Median(ImagePlus imp, int radius,  double par1, double par2, boolean doIwhite ) {
 		// See: Image Processing Learning Resourches HIPR2
 		// http://homepages.inf.ed.ac.uk/rbf/HIPR2/adpthrsh.htm
-		ImagePlus Medianimp;
-		ImageProcessor ip=imp.getProcessor(), ipMedian;
+		ImageProcessor ip=imp.getProcessor();
 		int c_value = 0;
-		byte object;
-		byte backg;
 
 		if (par1!=0) {
 			IJ.log("Median: changed c_value from :"+ c_value + "  to:" + par1);
 			c_value= (int) par1;
 		}
 
-		if (doIwhite){
-			object =  (byte) 0xff;
-			backg =   (byte) 0;
-		}
-		else {
-			object =  (byte) 0;
-			backg =  (byte) 0xff;
-		}
-
-		Medianimp=duplicateImage(ip);
-		ipMedian=Medianimp.getProcessor();
-		RankFilters rf=new RankFilters();
-		rf.rank(ipMedian, radius, rf.MEDIAN);
-		//Medianimp.show();
-		byte[] pixels = (byte []) ip.getPixels();
-		byte[] median = (byte []) ipMedian.getPixels();
-
-		for (int i=0; i<pixels.length; i++) 
-			pixels[i] = ( (int)(pixels[i] &0xff) > (int)( (median[i]  &0xff) - c_value)) ? object : backg;
-		//imp.updateAndDraw();
-		return;
+		final int c = c_value;
+		boolean[] objects = rankStatistics(ip, radius).apply(new LocalStatistics.Criterion() {
+			public boolean isObject(int value, LocalStatistics.Window window) {
+				return value > window.getMedian() - c;
+			}
+		});
+		setObjects(ip, objects, doIwhite);
 	}
 
 	void MidGrey(ImagePlus imp, int radius,  double par1, double par2, boolean doIwhite ) {
 		// See: Image Processing Learning Resourches HIPR2
 		// http://homepages.inf.ed.ac.uk/rbf/HIPR2/adpthrsh.htm
-		ImagePlus Maximp, Minimp;
-		ImageProcessor ip=imp.getProcessor(), ipMax, ipMin;
+		ImageProcessor ip=imp.getProcessor();
 		int c_value =0;
-		int mid_gray;
-		byte object;
-		byte backg;
 
 		if (par1!=0) {
 			IJ.log("MidGrey: changed c_value from :"+ c_value + "  to:" + par1);
 			c_value= (int) par1;
 		}
 
-		if (doIwhite){
-			object =  (byte) 0xff;
-			backg =   (byte) 0;
-		}
-		else {
-			object =  (byte) 0;
-			backg =  (byte) 0xff;
-		}
-
-		Maximp=duplicateImage(ip);
-		ipMax=Maximp.getProcessor();
-		RankFilters rf=new RankFilters();
-		rf.rank(ipMax, radius, rf.MAX);// Maximum
-		//Maximp.show();
-		Minimp=duplicateImage(ip);
-		ipMin=Minimp.getProcessor();
-		rf.rank(ipMin, radius, rf.MIN); //Minimum
-		//Minimp.show();
-		byte[] pixels = (byte [])ip.getPixels();
-		byte[] max = (byte [])ipMax.getPixels();
-		byte[] min = (byte [])ipMin.getPixels();
-
-		for (int i=0; i<pixels.length; i++) {
-				pixels[i] = ( (int)(pixels[i] &0xff) > (int)(((max[i]&0xff) +(min[i]&0xff))/2) - c_value ) ? object : backg;
-		}    
-		//imp.updateAndDraw();
-		return;
+		final int c = c_value;
+		boolean[] objects = rankStatistics(ip, radius).apply(new LocalStatistics.Criterion() {
+			public boolean isObject(int value, LocalStatistics.Window window) {
+				return value > (window.getMax() + window.getMin()) / 2 - c;
+			}
+		});
+		setObjects(ip, objects, doIwhite);
 	}
 
 	void Niblack(ImagePlus imp, int radius,  double par1, double par2, boolean doIwhite  ) {
@@ -436,25 +334,14 @@ void Niblack(ImagePlus imp, int radius,  double par1, double par2, boolean doIwh
 		//  Niblack W. (1986) "An introduction to Digital Image Processing" Prentice-Hall.
 		// Ported to ImageJ plugin from E Celebi's fourier_0.8 routines
 		// This version uses a circular local window, instead of a rectagular one
-
-		ImagePlus Meanimp, Varimp;
-		ImageProcessor ip=imp.getProcessor(), ipMean, ipVar;
+		ImageProcessor ip=imp.getProcessor();
 		double k_value;
 		int c_value=0;
 
-		byte object;
-		byte backg ;
-
-		if (doIwhite){
+		if (doIwhite)
 			k_value=0.2;
-			object =  (byte) 0xff;
-			backg =   (byte) 0;
-		}
-		else {
+		else
 			k_value= -0.2;
-			object =  (byte) 0;
-			backg =  (byte) 0xff;
-		}
 
 		if (par1!=0) {
 			IJ.log("Niblack: changed k_value from :"+ k_value + "  to:" + par1);
@@ -466,117 +353,45 @@ void Niblack(ImagePlus imp, int radius,  double par1, double par2, boolean doIwh
 			c_value=(int)par2;
 		}
 
-		Meanimp=duplicateImage(ip);
-		ImageConverter ic = new ImageConverter(Meanimp);
-		ic.convertToGray32();
-
-		ipMean=Meanimp.getProcessor();
-		RankFilters rf=new RankFilters();
-		rf.rank(ipMean, radius, rf.MEAN);// Mean
-		//Meanimp.show();
-		Varimp=duplicateImage(ip);
-		ic = new ImageConverter(Varimp);
-		ic.convertToGray32();
-		ipVar=Varimp.getProcessor();
-		rf.rank(ipVar, radius, rf.VARIANCE); //Variance
-		//Varimp.show();
-		byte[] pixels = (byte []) ip.getPixels();
-		float[] mean = (float []) ipMean.getPixels();
-		float[] var = (float []) ipVar.getPixels();
-
-		for (int i=0; i<pixels.length; i++) 
-			pixels[i] = ( (int)(pixels[i] &0xff) > (int)( mean[i] + k_value * Math.sqrt ( var[i] ) - c_value)) ? object : backg;
-		//imp.updateAndDraw();
-		return;
+		final double k = k_value;
+		final int c = c_value;
+		boolean[] objects = rankStatistics(ip, radius).apply(new LocalStatistics.Criterion() {
+			public boolean isObject(int value, LocalStatistics.Window window) {
+				return value > (int)( window.getMean() + k * Math.sqrt ( window.getVariance() ) - c);
+			}
+		});
+		setObjects(ip, objects, doIwhite);
 	}
 
 	void Otsu(ImagePlus imp, int radius,  double par1, double par2, boolean doIwhite) {
 		// Otsu's threshold algorithm
 		// C++ code by Jordan Bevik <Jordan.Bevic@qtiworld.com>
 		// ported to ImageJ plugin by G.Landini. Same algorithm as in Auto_Threshold, this time on local circular regions
-		int[] data;
-		int w=imp.getWidth();
-		int h=imp.getHeight();
-		int position;
-		int radiusx2=radius * 2;
+		// The window is the OvalRoi of diameter 2*radius at (x-radius, y-radius), clipped to the image.
+		// 16-bit images are binned into 256 levels between their minimum and maximum.
 		ImageProcessor ip=imp.getProcessor();
-		byte[] pixels = (byte []) ip.getPixels();
-		byte[] pixelsOut = new byte[pixels.length]; // need this to avoid changing the image data (and further histograms)
-		byte object;
-		byte backg;
-
-		if (doIwhite){
-			object =  (byte) 0xff;
-			backg =   (byte) 0;
-		}
-		else {
-			object =  (byte) 0;
-			backg =  (byte) 0xff;
-		}
+		int[] values = LocalStatistics.getValues(ip);
 
-		int k,kStar;  // k = the current threshold; kStar = optimal threshold
-		int N1, N;    // N1 = # points with intensity <=k; N = total number of points
-		double BCV, BCVmax; // The current Between Class Variance and maximum BCV
-		double num, denom;  // temporary bookeeping
-		int Sk;  // The total intensity for all histogram points <=k
-		int S, L=256; // The total intensity of the image. Need to hange here if modifying for >8 bits images
-		int roiy;
-
-		Roi roi = new OvalRoi(0, 0, radiusx2, radiusx2);
-		//ip.setRoi(roi);
-		for (int y =0; y<h; y++){
-			IJ.showProgress((double)(y)/(h-1)); // this method is slow, so let's show the progress bar
-			roiy = y-radius;
-			for (int x = 0; x<w; x++){
-				roi.setLocation(x-radius,roiy);
-				ip.setRoi(roi);
-				//ip.setRoi(new OvalRoi(x-radius, roiy, radiusx2, radiusx2));
-				position=x+y*w;
-				data = ip.getHistogram();
-
-				// Initialize values:
-				S = N = 0;
-				for (k=0; k<L; k++){
-					S += k * data[k];	// Total histogram intensity
-					N += data[k];		// Total number of data points
-				}
-
-				Sk = 0;
-				N1 = data[0]; // The entry for zero intensity
-				BCV = 0;
-				BCVmax=0;
-				kStar = 0;
-
-				// Look at each possible threshold value,
-				// calculate the between-class variance, and decide if it's a max
-				for (k=1; k<L-1; k++) { // No need to check endpoints k = 0 or k = L-1
-					Sk += k * data[k];
-					N1 += data[k];
-
-					// The float casting here is to avoid compiler warning about loss of precision and
-					// will prevent overflow in the case of large saturated images
-					denom = (double)( N1) * (N - N1); // Maximum value of denom is (N^2)/4 =  approx. 3E10
-
-					if (denom != 0 ){
-						// Float here is to avoid loss of precision when dividing
-						num = ( (double)N1 / N ) * S - Sk; 	// Maximum value of num =  255*N = approx 8E7
-						BCV = (num * num) / denom;
-					}
-					else
-						BCV = 0;
-
-					if (BCV >= BCVmax){ // Assign the best threshold found so far
-						BCVmax = BCV;
-						kStar = k;
-					}
-				}
-				// kStar += 1;	// Use QTI convention that intensity -> 1 if intensity >= k
-				// (the algorithm was developed for I-> 1 if I <= k.)
-				//return kStar;
-				pixelsOut[position] = ((int) (pixels[position]&0xff)>kStar) ? object : backg;
+		if (maxValue(ip) > 255) {
+			int min = Integer.MAX_VALUE, max = 0;
+			for (int i=0; i<values.length; i++) {
+				if (values[i] < min) min = values[i];
+				if (values[i] > max) max = values[i];
 			}
+			double scale = 256.0 / (max - min + 1);
+			for (int i=0; i<values.length; i++)
+				values[i] = (int)((values[i] - min) * scale);
 		}
-		for (position=0; position<w*h; position++) pixels[position]=pixelsOut[position]; //update with thresholded pixels
+
+		LocalStatistics statistics = new LocalStatistics(values, 256, ip.getWidth(), ip.getHeight(),
+				LocalStatistics.ovalKernel(radius), false);
+		boolean[] objects = statistics.apply(new LocalStatistics.Criterion() {
+			public boolean isObject(int value, LocalStatistics.Window window) {
+				// Use QTI convention that intensity -> 1 if intensity >= k
+				return value > window.getOtsuThreshold();
+			}
+		});
+		setObjects(ip, objects, doIwhite);
 	}
 
 	void Phansalkar(ImagePlus imp, int radius,  double par1, double par2, boolean doIwhite) {
@@ -590,15 +405,12 @@ void Phansalkar(ImagePlus imp, int radius,  double par1, double par2, boolean do
 		//
 		// Implemented from Phansalkar's paper description by G. Landini
 		// This version uses a circular local window, instead of a rectagular one
-
-		ImagePlus Meanimp, Varimp, Orimp;
-		ImageProcessor ip=imp.getProcessor(), ipMean, ipVar, ipOri;
+		// Pixel values are normalised to [0, 1] by the maximum value of the image type.
+		ImageProcessor ip=imp.getProcessor();
 		double k_value = 0.25;
 		double r_value = 0.5;
-		double p_value = 2.0;
-		double q_value = 10.0;
-		byte object;
-		byte backg;
+		final double p_value = 2.0;
+		final double q_value = 10.0;
 
 		if (par1!=0) {
 			IJ.log("Phansalkar: changed k_value from :"+ k_value + "  to:" + par1);
@@ -610,55 +422,17 @@ void Phansalkar(ImagePlus imp, int radius,  double par1, double par2, boolean do
 			r_value= par2;
 		}
 
-		if (doIwhite){
-			object =  (byte) 0xff;
-			backg =   (byte) 0;
-		}
-		else {
-			object =  (byte) 0;
-			backg =  (byte) 0xff;
-		}
-
-		Meanimp=duplicateImage(ip);
-		ContrastEnhancer ce = new ContrastEnhancer();
-		ce.stretchHistogram(Meanimp, 0.0);
-		ImageConverter ic = new ImageConverter(Meanimp);
-		ic.convertToGray32();
-		ipMean=Meanimp.getProcessor();
-		ipMean.multiply(1.0/255);
-
-		Orimp=duplicateImage(ip);
-		ce.stretchHistogram(Orimp, 0.0);
-		ic = new ImageConverter(Orimp);
-		ic.convertToGray32();
-		ipOri=Orimp.getProcessor();
-		ipOri.multiply(1.0/255); //original to compare
-		//Orimp.show();
-
-		RankFilters rf=new RankFilters();
-		rf.rank(ipMean, radius, rf.MEAN);// Mean
-
-		//Meanimp.show();
-		Varimp=duplicateImage(ip);
-		ce.stretchHistogram(Varimp, 0.0);
-		ic = new ImageConverter(Varimp);
-		ic.convertToGray32();
-		ipVar=Varimp.getProcessor();
-		ipVar.multiply(1.0/255);
-
-		rf.rank(ipVar, radius, rf.VARIANCE); //Variance
-		ipVar.sqr(); //SD
-
-		//Varimp.show();
-		byte[] pixels = (byte []) ip.getPixels();
-		float[] ori = (float []) ipOri.getPixels();
-		float[] mean = (float []) ipMean.getPixels();
-		float[] sd = (float []) ipVar.getPixels();
-
-		for (int i=0; i<pixels.length; i++) 
-			pixels[i] = ( (ori[i]) > ( mean[i] * (1.0 + p_value * Math.exp(-q_value * mean[i]) + k_value * (( sd[i] / r_value)- 1.0)))) ? object : backg;
-		//imp.updateAndDraw();
-		return;
+		final double k = k_value;
+		final double r = r_value;
+		final double scale = 1.0 / maxValue(ip);
+		boolean[] objects = rankStatistics(ip, radius).apply(new LocalStatistics.Criterion() {
+			public boolean isObject(int value, LocalStatistics.Window window) {
+				double mean = window.getMean() * scale;
+				double sd = Math.sqrt(window.getVariance()) * scale;
+				return value * scale > mean * (1.0 + p_value * Math.exp(-q_value * mean) + k * (( sd / r)- 1.0));
+			}
+		});
+		setObjects(ip, objects, doIwhite);
 	}
 
 	void Sauvola(ImagePlus imp, int radius,  double par1, double par2, boolean doIwhite) {
@@ -669,13 +443,9 @@ void Sauvola(ImagePlus imp, int radius,  double par1, double par2, boolean doIwh
 		// http://www.ee.oulu.fi/mvg/publications/show_pdf.php?ID=24
 		// Ported to ImageJ plugin from E Celebi's fourier_0.8 routines
 		// This version uses a circular local window, instead of a rectagular one
-
-		ImagePlus Meanimp, Varimp;
-		ImageProcessor ip=imp.getProcessor(), ipMean, ipVar;
+		ImageProcessor ip=imp.getProcessor();
 		double k_value = 0.5;
-		double r_value = 128;
-		byte object;
-		byte backg;
+		double r_value = 128 * (maxValue(ip) + 1) / 256; // half the dynamic range
 
 		if (par1!=0) {
 			IJ.log("Sauvola: changed k_value from :"+ k_value + "  to:" + par1);
@@ -687,48 +457,43 @@ void Sauvola(ImagePlus imp, int radius,  double par1, double par2, boolean doIwh
 			r_value= par2;
 		}
 
-		if (doIwhite){
-			object =  (byte) 0xff;
-			backg =   (byte) 0;
-		}
-		else {
-			object =  (byte) 0;
-			backg =  (byte) 0xff;
-		}
+		final double k = k_value;
+		final double r = r_value;
+		boolean[] objects = rankStatistics(ip, radius).apply(new LocalStatistics.Criterion() {
+			public boolean isObject(int value, LocalStatistics.Window window) {
+				return value > (int)( window.getMean() * (1.0+ k *(( Math.sqrt ( window.getVariance() )/r)-1.0)));
+			}
+		});
+		setObjects(ip, objects, doIwhite);
+	}
 
-		Meanimp=duplicateImage(ip);
-		ImageConverter ic = new ImageConverter(Meanimp);
-		ic.convertToGray32();
-
-		ipMean=Meanimp.getProcessor();
-		RankFilters rf=new RankFilters();
-		rf.rank(ipMean, radius, rf.MEAN);// Mean
-		//Meanimp.show();
-		Varimp=duplicateImage(ip);
-		ic = new ImageConverter(Varimp);
-		ic.convertToGray32();
-		ipVar=Varimp.getProcessor();
-		rf.rank(ipVar, radius, rf.VARIANCE); //Variance
-		//Varimp.show();
-		byte[] pixels = (byte []) ip.getPixels();
-		float[] mean = (float []) ipMean.getPixels();
-		float[] var = (float []) ipVar.getPixels();
-
-		for (int i=0; i<pixels.length; i++) 
-			pixels[i] = ( (int)(pixels[i] &0xff) > (int)( mean[i] * (1.0+ k_value *(( Math.sqrt ( var[i] )/r_value)-1.0)))) ? object : backg;
-		//imp.updateAndDraw();
-		return;
+	// The statistics of the RankFilters circular window, with edge pixels repeated outside the image
+	private LocalStatistics rankStatistics(ImageProcessor ip, int radius) {
+		return new LocalStatistics(LocalStatistics.getValues(ip), maxValue(ip) + 1,
+				ip.getWidth(), ip.getHeight(), LocalStatistics.rankKernel(radius), true);
 	}
 
+	private int maxValue(ImageProcessor ip) {
+		return ip instanceof ShortProcessor ? 65535 : 255;
+	}
 
-	private ImagePlus duplicateImage(ImageProcessor iProcessor){
-		int w=iProcessor.getWidth();
-		int h=iProcessor.getHeight();
-		ImagePlus iPlus=NewImage.createByteImage("Image", w, h, 1, NewImage.FILL_BLACK);
-		ImageProcessor imageProcessor=iPlus.getProcessor();
-		imageProcessor.copyBits(iProcessor, 0,0, Blitter.COPY);
-		return iPlus;
-	} 
+	// Sets the objects to white and the rest to black, or the other way round
+	private void setObjects(ImageProcessor ip, boolean[] objects, boolean doIwhite) {
+		Object pixels = ip.getPixels();
+		if (pixels instanceof byte[]) {
+			byte[] b = (byte[])pixels;
+			byte object = doIwhite ? (byte) 0xff : (byte) 0;
+			byte backg = doIwhite ? (byte) 0 : (byte) 0xff;
+			for (int i=0; i<b.length; i++)
+				b[i] = objects[i] ? object : backg;
+		}
+		else {
+			short[] s = (short[])pixels;
+			short object = doIwhite ? (short) 0xffff : (short) 0;
+			short backg = doIwhite ? (short) 0 : (short) 0xffff;
+			for (int i=0; i<s.length; i++)
+				s[i] = objects[i] ? object : backg;
+		}
+	}
 
 }
-
@@ -0,0 +1,341 @@
+package fiji.threshold;
+import ij.*;
+import ij.process.*;
+import ij.gui.*;
+import java.awt.Rectangle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Local statistics over a circular window, shared by the Auto Local Threshold methods.
+// The window histogram is updated incrementally while sliding along a row (T. Huang, G. Yang and
+// G. Tang, "A fast two-dimensional median filtering algorithm", IEEE Trans. ASSP 27(1), 1979),
+// so that only the pixels entering and leaving each line of the window are visited.
+// The window also keeps the sum and the sum of squares of its pixels, for the mean and variance.
+// Rows are shared among threads, each with its own window.
+
+public class LocalStatistics {
+
+	/** Criterion deciding whether a pixel belongs to the objects, given the window around it. */
+	public interface Criterion {
+		boolean isObject(int value, Window window);
+	}
+
+	/** The pixels currently in the window. */
+	public static class Window {
+		private final int[] histogram;
+		private final int[] coarse; // 256 levels per bin, only used for 16-bit data
+		private int count;
+		private long sum, sumOfSquares;
+
+		Window(int levels) {
+			histogram = new int[levels];
+			coarse = levels > 256 ? new int[(levels + 255) >> 8] : null;
+		}
+
+		final void clear() {
+			java.util.Arrays.fill(histogram, 0);
+			if (coarse != null)
+				java.util.Arrays.fill(coarse, 0);
+			count = 0;
+			sum = sumOfSquares = 0;
+		}
+
+		final void add(int v) {
+			histogram[v]++;
+			if (coarse != null)
+				coarse[v >> 8]++;
+			count++;
+			sum += v;
+			sumOfSquares += (long)v * v;
+		}
+
+		final void remove(int v) {
+			histogram[v]--;
+			if (coarse != null)
+				coarse[v >> 8]--;
+			count--;
+			sum -= v;
+			sumOfSquares -= (long)v * v;
+		}
+
+		/** The histogram of the window. Must not be modified. */
+		public int[] getHistogram() {
+			return histogram;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0 : (double)sum / count;
+		}
+
+		/** The population variance, as computed by RankFilters. */
+		public double getVariance() {
+			if (count == 0)
+				return 0;
+			double mean = (double)sum / count;
+			double variance = (double)sumOfSquares / count - mean * mean;
+			return variance > 0 ? variance : 0;
+		}
+
+		public int getMin() {
+			int bin = 0;
+			if (coarse != null) {
+				while (coarse[bin] == 0) bin++;
+				bin <<= 8;
+			}
+			while (histogram[bin] == 0) bin++;
+			return bin;
+		}
+
+		public int getMax() {
+			int bin = histogram.length - 1;
+			if (coarse != null) {
+				int c = coarse.length - 1;
+				while (coarse[c] == 0) c--;
+				bin = Math.min(bin, (c << 8) + 255);
+			}
+			while (histogram[bin] == 0) bin--;
+			return bin;
+		}
+
+		/** The value of rank count/2, i.e. the median for an odd number of pixels. */
+		public int getMedian() {
+			int rank = count / 2, bin = 0, below = 0;
+			if (coarse != null) {
+				while (below + coarse[bin] <= rank)
+					below += coarse[bin++];
+				bin <<= 8;
+			}
+			while (below + histogram[bin] <= rank)
+				below += histogram[bin++];
+			return bin;
+		}
+
+		/** Otsu's threshold of the window histogram: levels above it are the upper class. */
+		public int getOtsuThreshold() {
+			// Otsu's threshold algorithm
+			// C++ code by Jordan Bevik <Jordan.Bevic@qtiworld.com>
+			// ported to ImageJ plugin by G.Landini
+			int[] data = histogram;
+			int L = data.length;
+			int N = count;
+			long S = sum, Sk = 0;
+			int N1 = data[0];
+			double BCV, BCVmax = 0, num, denom;
+			int kStar = 0;
+
+			// Below the minimum and from the maximum on, one of the classes is empty and BCV = 0,
+			// so only the levels in between can win over the last k (kept on ties).
+			int min = getMin(), max = getMax();
+			if (min == max)
+				return L - 2;
+			for (int k = Math.max(1, min); k < Math.min(max, L - 1); k++) { // No need to check endpoints k = 0 or k = L-1
+				Sk += k * data[k];
+				N1 += data[k];
+				denom = (double)( N1) * (N - N1);
+				if (denom != 0 ){
+					num = ( (double)N1 / N ) * S - Sk;
+					BCV = (num * num) / denom;
+				}
+				else
+					BCV = 0;
+				if (BCV >= BCVmax){ // Assign the best threshold found so far
+					BCVmax = BCV;
+					kStar = k;
+				}
+			}
+			return kStar;
+		}
+	}
+
+	private final int[] values;
+	private final int levels, width, height;
+	private final int[] kernel; // dy, first dx, last dx for each line of the window
+	private final boolean pad;
+
+	/**
+	 * @param values the pixel values, row by row
+	 * @param levels the number of distinct levels, i.e. the largest value + 1
+	 * @param kernel triplets (dy, first dx, last dx), one for each line of the window
+	 * @param pad if true, pixels outside the image take the value of the nearest edge pixel
+	 *            (like RankFilters), otherwise they are left out of the window
+	 */
+	public LocalStatistics(int[] values, int levels, int width, int height, int[] kernel, boolean pad) {
+		if (values.length != width * height)
+			throw new IllegalArgumentException("Expected " + (width * height) + " values, got " + values.length);
+		this.values = values;
+		this.levels = levels;
+		this.width = width;
+		this.height = height;
+		this.kernel = kernel;
+		this.pad = pad;
+	}
+
+	/** The values of an 8-bit or 16-bit processor, ignoring its ROI. */
+	public static int[] getValues(ImageProcessor ip) {
+		int[] values = new int[ip.getWidth() * ip.getHeight()];
+		Object pixels = ip.getPixels();
+		if (pixels instanceof byte[]) {
+			byte[] b = (byte[])pixels;
+			for (int i = 0; i < values.length; i++)
+				values[i] = b[i] & 0xff;
+		}
+		else if (pixels instanceof short[]) {
+			short[] s = (short[])pixels;
+			for (int i = 0; i < values.length; i++)
+				values[i] = s[i] & 0xffff;
+		}
+		else
+			throw new IllegalArgumentException("Only 8-bit and 16-bit images are supported");
+		return values;
+	}
+
+	/** The circular kernel of RankFilters for the given radius. */
+	public static int[] rankKernel(int radius) {
+		int r2 = radius * radius + 1;
+		int kRadius = (int)(Math.sqrt(r2 + 1e-10));
+		int[] kernel = new int[3 * (2 * kRadius + 1)];
+		for (int dy = -kRadius; dy <= kRadius; dy++) {
+			int dx = (int)(Math.sqrt(r2 - dy * dy + 1e-10));
+			int i = 3 * (dy + kRadius);
+			kernel[i] = dy;
+			kernel[i + 1] = -dx;
+			kernel[i + 2] = dx;
+		}
+		return kernel;
+	}
+
+	/** The mask of an OvalRoi of diameter 2*radius placed at (x-radius, y-radius). */
+	public static int[] ovalKernel(int radius) {
+		if (radius < 1)
+			return new int[] { 0, 0, 0 };
+		Roi roi = new OvalRoi(0, 0, 2 * radius, 2 * radius);
+		ImageProcessor mask = roi.getMask();
+		Rectangle bounds = roi.getBounds();
+		int[] lines = new int[3 * bounds.height];
+		int n = 0;
+		for (int y = 0; y < bounds.height; y++) {
+			int first = -1, last = -1;
+			for (int x = 0; x < bounds.width; x++)
+				if (mask == null || mask.get(x, y) != 0) {
+					if (first < 0)
+						first = x;
+					last = x;
+				}
+			if (first < 0)
+				continue;
+			lines[n++] = bounds.y + y - radius;
+			lines[n++] = bounds.x + first - radius;
+			lines[n++] = bounds.x + last - radius;
+		}
+		int[] kernel = new int[n];
+		System.arraycopy(lines, 0, kernel, 0, n);
+		return kernel;
+	}
+
+	/**
+	 * Evaluates the criterion at every pixel, using Prefs.getThreads() threads.
+	 * @return true for the pixels of the objects, row by row
+	 */
+	public boolean[] apply(Criterion criterion) {
+		return apply(criterion, Prefs.getThreads());
+	}
+
+	public boolean[] apply(final Criterion criterion, int nThreads) {
+		final boolean[] result = new boolean[width * height];
+		final AtomicInteger nextRow = new AtomicInteger(0);
+		final AtomicInteger rowsDone = new AtomicInteger(0);
+		Thread[] threads = new Thread[Math.max(1, Math.min(nThreads, height))];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					Window window = new Window(levels);
+					for (int y = nextRow.getAndIncrement(); y < height; y = nextRow.getAndIncrement()) {
+						processRow(y, window, criterion, result);
+						int done = rowsDone.incrementAndGet();
+						if ((done & 63) == 0)
+							IJ.showProgress(done, height);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		try {
+			for (int t = 0; t < threads.length; t++)
+				threads[t].join();
+		}
+		catch (InterruptedException e) {
+			for (int t = 0; t < threads.length; t++)
+				threads[t].interrupt();
+			Thread.currentThread().interrupt();
+		}
+		IJ.showProgress(1.0);
+		return result;
+	}
+
+	private void processRow(int y, Window window, Criterion criterion, boolean[] result) {
+		// The offsets, first dx and last dx of the lines of the window that are inside the image
+		int lines = 0;
+		int[] rows = new int[kernel.length / 3], first = new int[rows.length], last = new int[rows.length];
+		for (int k = 0; k < kernel.length; k += 3) {
+			int row = row(y + kernel[k]);
+			if (row < 0)
+				continue;
+			rows[lines] = row;
+			first[lines] = kernel[k + 1];
+			last[lines++] = kernel[k + 2];
+		}
+
+		window.clear();
+		for (int l = 0; l < lines; l++)
+			for (int dx = first[l]; dx <= last[l]; dx++) {
+				int x = column(dx);
+				if (x >= 0)
+					window.add(values[rows[l] + x]);
+			}
+		int offset = y * width;
+		result[offset] = criterion.isObject(values[offset], window);
+
+		for (int x = 1; x < width; x++) {
+			for (int l = 0; l < lines; l++) {
+				int out = x - 1 + first[l], in = x + last[l];
+				if (out >= 0 && in < width) {
+					window.remove(values[rows[l] + out]);
+					window.add(values[rows[l] + in]);
+					continue;
+				}
+				out = column(out);
+				if (out >= 0)
+					window.remove(values[rows[l] + out]);
+				in = column(in);
+				if (in >= 0)
+					window.add(values[rows[l] + in]);
+			}
+			result[offset + x] = criterion.isObject(values[offset + x], window);
+		}
+	}
+
+	// The offset of line y, or -1 if it is outside the image and not padded
+	private int row(int y) {
+		if (y < 0)
+			return pad ? 0 : -1;
+		if (y >= height)
+			return pad ? (height - 1) * width : -1;
+		return y * width;
+	}
+
+	// Column x, or -1 if it is outside the image and not padded
+	private int column(int x) {
+		if (x < 0)
+			return pad ? 0 : -1;
+		if (x >= width)
+			return pad ? width - 1 : -1;
+		return x;
+	}
+}
@@ -4,6 +4,10 @@
 import ij.gui.*;
 import java.awt.*;
 import java.awt.image.*;
+import java.io.File;
+import ij.io.DirectoryChooser;
+import ij.io.FileSaver;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class Colour_Deconvolution implements PlugIn {
@@ -30,6 +34,11 @@ public class Colour_Deconvolution implements PlugIn {
 // 03/Aug/2011 v1.7 added progress bar (thanks to Oskari Jaaskelainen),
 // 			added warning about immunostains.
 //
+// 18/Oct/2026 v1.8 the optical densities are looked up in tables instead of being
+//			computed per pixel, and slices are deconvolved in bands of rows in parallel.
+//			Added optional 32-bit optical density output, and a streaming mode which
+//			writes the stain images of a virtual stack to disk slice by slice.
+//
 // This plugin implements stain separation using the colour deconvolution
 // method described in:
 //
@@ -86,12 +95,15 @@ public void run(String arg) {
 		int height = stack.getHeight();
                 String title = imp.getTitle();
 
-		GenericDialog gd = new GenericDialog("Colour Deconvolution 1.7", IJ.getInstance());
+		GenericDialog gd = new GenericDialog("Colour Deconvolution 1.8", IJ.getInstance());
 		gd.addMessage("Warning: This plugin is not suitable to quantify\n the intensity of immunostained slides because\n immunostains are not stoichiometric.");
 		String [] stain={"From ROI", "H&E", "H&E 2","H DAB", "Feulgen Light Green", "Giemsa", "FastRed FastBlue DAB", "Methyl Green DAB", "H&E DAB", "H AEC","Azan-Mallory","Masson Trichrome","Alcian blue & H","H PAS","Brilliant_Blue","RGB","CMY", "User values"};
 		gd.addChoice("Vectors", stain, stain[0]);
 		gd.addCheckbox("Show matrices",false);
 		gd.addCheckbox("Hide legend",false);
+		gd.addCheckbox("Optical density output (32-bit)",false);
+		if (stack.isVirtual())
+			gd.addCheckbox("Stream to folder",false);
 
 		//gd.addCheckbox("Linear image",false);
 
@@ -101,6 +113,14 @@ public void run(String arg) {
 		String myStain = gd.getNextChoice();
 		boolean doIshow = gd.getNextBoolean();
 		boolean hideLegend = gd.getNextBoolean();
+		boolean floatOutput = gd.getNextBoolean();
+		boolean stream = stack.isVirtual() && gd.getNextBoolean();
+		String directory = null;
+		if (stream) {
+			directory = new DirectoryChooser("Output folder for the stain images").getDirectory();
+			if (directory == null)
+				return;
+		}
 
 		double leng, A, V, C, log255=Math.log(255.0);
 		int i,j;
@@ -563,61 +583,56 @@ public void run(String arg) {
 		q[7] = -q[8] * V / A;
 		q[6] = -q[7] * cosy[0] / cosx[0] - q[8] * cosz[0] / cosx[0];
 
-                // initialize 3 output colour stacks
-                ImageStack[] outputstack = new ImageStack[3];
+		// look-up tables of the optical density of each channel value,
+		// rescaled to match original paper values, times the inverted matrix
+		double [] odLUT = new double[256];
+		for (j=0; j<256; j++)
+			odLUT[j] = -((255.0*Math.log(((double)j+1)/255.0))/log255);
+		double [][] stainLUT = new double[9][256];
+		for (i=0; i<9; i++)
+			for (j=0; j<256; j++)
+				stainLUT[i][j] = odLUT[j] * q[i];
+
+		// colour models of the 3 output stacks; high optical densities are dark
+		ColorModel [] cms = new ColorModel[3];
 		for (i=0; i<3; i++){
 			for (j=0; j<256; j++) { //LUT[1]
+				int k = floatOutput ? j : 255-j;
 				//if (cosx[i] < 0)
-				//	rLUT[255-j]=(byte)(255.0 + (double)j * cosx[i]);
+				//	rLUT[k]=(byte)(255.0 + (double)j * cosx[i]);
 				//else
-					rLUT[255-j]=(byte)(255.0 - (double)j * cosx[i]);
+					rLUT[k]=(byte)(255.0 - (double)j * cosx[i]);
 
 				//if (cosy[i] < 0)
-				//	gLUT[255-j]=(byte)(255.0 + (double)j * cosy[i]);
+				//	gLUT[k]=(byte)(255.0 + (double)j * cosy[i]);
 				//else
-					gLUT[255-j]=(byte)(255.0 - (double)j * cosy[i]);
+					gLUT[k]=(byte)(255.0 - (double)j * cosy[i]);
 
 				//if (cosz[i] < 0)
-				//	bLUT[255-j]=(byte)(255.0 + (double)j * cosz[i]);
+				//	bLUT[k]=(byte)(255.0 + (double)j * cosz[i]);
 				///else
-					bLUT[255-j]=(byte)(255.0 - (double)j * cosz[i]);
+					bLUT[k]=(byte)(255.0 - (double)j * cosz[i]);
 			}
-			IndexColorModel cm = new IndexColorModel(8, 256, rLUT, gLUT, bLUT);
-                        outputstack[i] = new ImageStack(width, height, cm);
-                }
+			cms[i] = new IndexColorModel(8, 256, rLUT, gLUT, bLUT);
+		}
+
+		if (stream) {
+			deconvolveToFolder(stack, title, directory, stainLUT, cms, floatOutput);
+			return;
+		}
+
+		// initialize 3 output colour stacks
+		ImageStack[] outputstack = new ImageStack[3];
+		for (i=0; i<3; i++)
+			outputstack[i] = new ImageStack(width, height, cms[i]);
 
 		//long startTime = System.currentTimeMillis();
 		// translate ------------------
-		int imagesize = width * height;
-		int modulo = imagesize/60;
 		for (int imagenum=1; imagenum<=stack.getSize(); imagenum++) {
 			int[] pixels = (int[])stack.getPixels(imagenum);
 			String label = stack.getSliceLabel(imagenum);
-			byte[][] newpixels = new byte[3][];
-			newpixels[0] = new byte[imagesize];
-			newpixels[1] = new byte[imagesize];
-			newpixels[2] = new byte[imagesize];
-
-			for (j=0;j<imagesize;j++){
-				if (j % modulo == 0)
-					 IJ.showProgress(j, imagesize);    //show progress bar, quicker than calling it every time.
-				 // log transform the RGB data
-				int R = (pixels[j] & 0xff0000)>>16;
-				int G = (pixels[j] & 0x00ff00)>>8 ;
-				int B = (pixels[j] & 0x0000ff);
-				double Rlog = -((255.0*Math.log(((double)R+1)/255.0))/log255);
-				double Glog = -((255.0*Math.log(((double)G+1)/255.0))/log255);
-				double Blog = -((255.0*Math.log(((double)B+1)/255.0))/log255);
-				for (i=0; i<3; i++){
-					// rescale to match original paper values
-					double Rscaled = Rlog * q[i*3];
-					double Gscaled = Glog * q[i*3+1];
-					double Bscaled = Blog * q[i*3+2];
-					double output = Math.exp(-((Rscaled + Gscaled + Bscaled) - 255.0) * log255 / 255.0);
-					if(output>255) output=255;
-					newpixels[i][j]=(byte)(0xff&(int)(Math.floor(output+.5)));
-				}
-			}
+			Object[] newpixels = newSlices(width * height, floatOutput);
+			deconvolve(pixels, newpixels, stainLUT, width, height, imagenum-1, stack.getSize());
 			 // add new values to output images
 			outputstack[0].addSlice(label,newpixels[0]);
 			outputstack[1].addSlice(label,newpixels[1]);
@@ -631,6 +646,147 @@ public void run(String arg) {
 
 	}
 
+	/*
+		Deconvolves a virtual stack slice by slice. The stain images of
+		each slice are written to TIFF files, in one folder per stain, as
+		soon as they are computed, and the folders are then opened as
+		virtual stacks. That way, only one input slice and its 3 stain
+		images are held in memory at any time.
+	*/
+	void deconvolveToFolder(ImageStack stack, String title, String directory, double[][] stainLUT, ColorModel[] cms, boolean floatOutput) {
+		int width = stack.getWidth();
+		int height = stack.getHeight();
+		int size = stack.getSize();
+		String[] dirs = new String[3];
+		VirtualStack[] outputstack = new VirtualStack[3];
+		for (int i=0; i<3; i++){
+			dirs[i] = directory + title + "-(Colour_" + (i+1) + ")" + File.separator;
+			File dir = new File(dirs[i]);
+			if (!dir.isDirectory() && !dir.mkdirs()){
+				IJ.error("Could not create " + dirs[i]);
+				return;
+			}
+			outputstack[i] = new VirtualStack(width, height, cms[i], dirs[i]);
+		}
+
+		for (int imagenum=1; imagenum<=size; imagenum++) {
+			int[] pixels = (int[])stack.getPixels(imagenum);
+			Object[] newpixels = newSlices(width * height, floatOutput);
+			deconvolve(pixels, newpixels, stainLUT, width, height, imagenum-1, size);
+			pixels = null;
+			String name = IJ.pad(imagenum, 5) + ".tif";
+			for (int i=0; i<3; i++){
+				ImageProcessor ip = floatOutput ?
+					(ImageProcessor)new FloatProcessor(width, height, (float[])newpixels[i], cms[i]) :
+					(ImageProcessor)new ByteProcessor(width, height, (byte[])newpixels[i], cms[i]);
+				newpixels[i] = null;
+				if (!new FileSaver(new ImagePlus(name, ip)).saveAsTiff(dirs[i] + name))
+					return;
+				outputstack[i].addSlice(name);
+			}
+		}
+		IJ.showProgress(1);
+		for (int i=0; i<3; i++)
+			new ImagePlus(title+"-(Colour_"+(i+1)+")",outputstack[i]).show();
+	}
+
+	static Object[] newSlices(int imagesize, boolean floatOutput) {
+		Object[] newpixels = new Object[3];
+		for (int i=0; i<3; i++)
+			newpixels[i] = floatOutput ? (Object)new float[imagesize] : (Object)new byte[imagesize];
+		return newpixels;
+	}
+
+	/*
+		Deconvolves one slice, cut into bands of rows which are handed out
+		to Prefs.getThreads() threads. The slice is the given one out of
+		the given number of slices, for the progress bar.
+	*/
+	static void deconvolve(final int[] pixels, final Object[] newpixels, final double[][] stainLUT, final int width, final int height, final int slice, final int slices) {
+		final int bandHeight = 64;
+		final int bands = (height+bandHeight-1)/bandHeight;
+		final AtomicInteger nextBand = new AtomicInteger(0);
+		final AtomicInteger bandsDone = new AtomicInteger(0);
+
+		Thread[] threads = new Thread[Math.max(1, Math.min(Prefs.getThreads(), bands))];
+		for (int t=0; t<threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int band=nextBand.getAndIncrement(); band<bands; band=nextBand.getAndIncrement()) {
+						int from = band*bandHeight*width;
+						int to = Math.min(height, (band+1)*bandHeight)*width;
+						deconvolveBand(pixels, newpixels, stainLUT, from, to);
+						IJ.showProgress(slice*bands+bandsDone.incrementAndGet(), slices*bands);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		try {
+			for (int t=0; t<threads.length; t++)
+				threads[t].join();
+		} catch (InterruptedException e) {
+			IJ.handleException(e);
+		}
+	}
+
+	/*
+		Deconvolves the pixels from (inclusive) to to (exclusive). The
+		optical density of stain i is the sum of the table entries of
+		its R, G and B values. The 8-bit output is the transmittance
+		(rounded the same as before the tables were introduced), the
+		32-bit output the optical density proper, i.e. log10(255/I).
+
+		Since the background of slides tends to be uniform, the results
+		of the previous pixel are reused when its colour is repeated.
+	*/
+	static void deconvolveBand(int[] pixels, Object[] newpixels, double[][] stainLUT, int from, int to) {
+		double log255=Math.log(255.0);
+		double odScale = log255 / 255.0 / Math.log(10.0);
+		boolean floatOutput = newpixels[0] instanceof float[];
+		byte[][] bytes = new byte[3][];
+		float[][] floats = new float[3][];
+		for (int i=0; i<3; i++){
+			if (floatOutput)
+				floats[i] = (float[])newpixels[i];
+			else
+				bytes[i] = (byte[])newpixels[i];
+		}
+		byte[] byteValue = new byte[3];
+		float[] floatValue = new float[3];
+		int last = -1;
+
+		for (int j=from; j<to; j++){
+			int rgb = pixels[j] & 0xffffff;
+			if (rgb != last){
+				int R = (rgb & 0xff0000)>>16;
+				int G = (rgb & 0x00ff00)>>8 ;
+				int B = (rgb & 0x0000ff);
+				for (int i=0; i<3; i++){
+					double od = stainLUT[i*3][R] + stainLUT[i*3+1][G] + stainLUT[i*3+2][B];
+					if (floatOutput)
+						floatValue[i] = (float)(od * odScale);
+					else {
+						double output = Math.exp(-(od - 255.0) * log255 / 255.0);
+						if(output>255) output=255;
+						byteValue[i]=(byte)(0xff&(int)(Math.floor(output+.5)));
+					}
+				}
+				last = rgb;
+			}
+			if (floatOutput){
+				floats[0][j] = floatValue[0];
+				floats[1][j] = floatValue[1];
+				floats[2][j] = floatValue[2];
+			}
+			else {
+				bytes[0][j] = byteValue[0];
+				bytes[1][j] = byteValue[1];
+				bytes[2][j] = byteValue[2];
+			}
+		}
+	}
+
 	void getmeanRGBODfromROI(int i, double [] rgbOD, ImagePlus imp){
 		//get a ROI and its mean optical density. GL
 		int [] xyzf = new int [4]; //[0]=x, [1]=y, [2]=z, [3]=flags
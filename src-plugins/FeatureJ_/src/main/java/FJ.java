@@ -1,6 +1,7 @@
 import ij.CompositeImage;
 import ij.IJ;
 import ij.ImagePlus;
+import ij.Prefs;
 import ij.WindowManager;
 import ij.process.LUT;
 import imagescience.image.Image;
@@ -12,7 +13,7 @@ public final class FJ {
 	private static final String NAME = "FeatureJ";
 	private static final String VERSION = "1.6.0";
 	private static final String MINIJVERSION = "1.44a";
-	private static final String MINISVERSION = "2.4.0";
+	private static final String MINISVERSION = "2.5.0";
 
 	public static String name() { return NAME; }
 
@@ -33,6 +34,8 @@ static boolean libcheck() {
 			return false;
 		}
 
+		ImageScience.defaultThreads(Prefs.getThreads());
+
 		return true;
 	}
 
@@ -25,6 +25,7 @@
 import edu.utexas.clm.archipelago.listen.ClusterStateListener;
 import edu.utexas.clm.archipelago.listen.MessageType;
 import edu.utexas.clm.archipelago.listen.NodeStateListener;
+import edu.utexas.clm.archipelago.listen.NodeThreadListener;
 import edu.utexas.clm.archipelago.listen.ProcessListener;
 import edu.utexas.clm.archipelago.listen.NodeShellListener;
 import edu.utexas.clm.archipelago.network.MessageXC;
@@ -37,6 +38,7 @@
 import edu.utexas.clm.archipelago.network.translation.Bottler;
 import edu.utexas.clm.archipelago.network.translation.FileBottler;
 import edu.utexas.clm.archipelago.ui.ArchipelagoUI;
+import edu.utexas.clm.archipelago.util.NodeMetrics;
 import edu.utexas.clm.archipelago.util.ProcessManagerCoreComparator;
 import edu.utexas.clm.archipelago.util.XCErrorAdapter;
 import ij.Prefs;
@@ -53,14 +55,18 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Vector;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -69,6 +75,7 @@
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -91,15 +98,24 @@ public class Cluster implements NodeStateListener, NodeShellListener
     
 
     /**
-     * This is a very dumb scheduler. It attempts to submit the first ProcessManager in its
-     * queue to the first ClusterNode that it finds available. This should work well as long as
-     * all ProcessManagers are more-or-less equals, and all ClusterNodes can accept them as
-     * equally as any other. There is code here that will attempt to recover in the case that
-     * a ProcessManager is rejected, but if this becomes a common occurrence, then this
-     * scheduler should be replaced with something more sophisticated.
+     * Schedules ProcessManagers on ClusterNodes. Rather than polling, the scheduler sleeps until
+     * something happens that could allow a job to run: a job is queued, threads are released on
+     * a ClusterNode, or a ClusterNode changes state. As a safety net, it also wakes up after
+     * pollTime milliseconds.
+     *
+     * The ClusterNodes with available threads are kept in a FreeNodeHeap, and each queued job is
+     * dispatched to the node at the top of it, so that jobs are spread over the least-loaded
+     * nodes. The heap is not rebuilt on each pass. Instead, a node's entry is updated when a job
+     * is dispatched to it, and when it reports released threads or a change of state, so that
+     * both dispatching a job and handling an event take O(log n) in the number of nodes. All
+     * nodes are only looked at again when the scheduler wakes up on its own, in case an event
+     * was missed. A pass stops as soon as all threads are in use.
+     *
+     * The dispatch latency (the time between queueing a job and submitting it to a node) is
+     * recorded for each node, and may be retrieved with getNodeMetrics().
      * @author Larry Lindsey
      */
-    public class ProcessScheduler extends Thread
+    public class ProcessScheduler extends Thread implements NodeThreadListener
     {
         private final LinkedBlockingQueue<ProcessManager> jobQueue, priorityJobQueue;
         private final AtomicInteger pollTime;
@@ -108,6 +124,14 @@ public class ProcessScheduler extends Thread
         private final Vector<ProcessManager<?>> remainingJobList;
         private final LinkedList<ProcessManager> internalQueue;
         private final ReentrantLock lock;
+        private final ReentrantLock wakeLock;
+        private final Condition wakeCondition;
+        private boolean wakeRequested;
+        private final Hashtable<Long, Long> queueTimes;
+        private final Hashtable<Long, DispatchStats> dispatchStats;
+        private final ProcessListener finishListener;
+        private final FreeNodeHeap freeNodes;
+        private final ConcurrentLinkedQueue<ClusterNode> changedNodes;
 
         private ProcessScheduler(int t)
         {
@@ -119,14 +143,72 @@ private ProcessScheduler(int t)
             remainingJobList = new Vector<ProcessManager<?>>();
             internalQueue = new LinkedList<ProcessManager>();
             lock = new ReentrantLock();
+            wakeLock = new ReentrantLock();
+            wakeCondition = wakeLock.newCondition();
+            wakeRequested = false;
+            queueTimes = new Hashtable<Long, Long>();
+            dispatchStats = new Hashtable<Long, DispatchStats>();
+            freeNodes = new FreeNodeHeap();
+            changedNodes = new ConcurrentLinkedQueue<ClusterNode>();
+
+            finishListener = new ProcessListener() {
+                /**
+                 * processFinished is called when the given ClusterNode recieves a message
+                 * from its remote counterpart indicating that the job has finished.
+                 * @param process a ProcessManager that just returned from the cluster
+                 * @return true if the Future was finished successfully, false otherwise.
+                 */
+                public boolean processFinished(ProcessManager<?> process)
+                {
+                    runningProcesses.remove(process.getID());
+                    return finishFuture(process);
+                }
+            };
         }
         
 
+        /**
+         * Sets the longest time that the scheduler will sleep without being woken up by an
+         * event.
+         * @param t the time in milliseconds
+         */
         public void setPollTimeMillis(int t)
         {
             pollTime.set(t);
         }
 
+        /**
+         * Wakes the scheduler up, so that it tries to dispatch queued jobs.
+         */
+        public void wakeUp()
+        {
+            wakeLock.lock();
+            try
+            {
+                wakeRequested = true;
+                wakeCondition.signal();
+            }
+            finally
+            {
+                wakeLock.unlock();
+            }
+        }
+
+        /**
+         * Wakes the scheduler up, and has it update the available threads of the given node.
+         * @param node a ClusterNode whose available threads or state may have changed
+         */
+        public void nodeChanged(final ClusterNode node)
+        {
+            changedNodes.add(node);
+            wakeUp();
+        }
+
+        public void threadsReleased(ClusterNode node, int nThreads)
+        {
+            nodeChanged(node);
+        }
+
         public synchronized <T> boolean queueJob(Callable<T> c, long id, float np, boolean f)
         {
             return queueJob(c, id, false, np, f);
@@ -155,10 +237,13 @@ public synchronized boolean queueJob(ProcessManager pm, boolean priority)
                     FijiArchipelago.debug("Scheduler: Put job " + pm.getID() +
                             " on the priority queue");
                 }
+                queueTimes.put(pm.getID(), System.nanoTime());
                 queue.add(pm);
+                wakeUp();
                 return true;
             } catch (IllegalStateException ise)
             {
+                queueTimes.remove(pm.getID());
                 return false;
             }
         }
@@ -173,18 +258,6 @@ public ClusterNode getNode(long id)
         {
             return self.getNode(id);
         }
-        
-        private synchronized ClusterNode getFreeNode()
-        {
-            for (ClusterNode node : nodes)
-            {
-                if (node.numAvailableThreads() > 0)
-                {
-                    return node;
-                }
-            }
-            return null;
-        }
 
         public void start()
         {
@@ -195,69 +268,119 @@ public void start()
             }
         }
 
-        private void rotate(LinkedList<ClusterNode> nodeList)
+        /**
+         * Attempts to submit the ProcessManager pm on the node at the top of the heap. Nodes that
+         * reject it are left out of the heap until the end of the pass, and are put in rejected.
+         * This function runs on the same thread as run().
+         * @param pm a queued ProcessManager that is to be run to the Cluster
+         * @param rejected the ClusterNodes that rejected a job during this pass
+         * @return true if pm was scheduled, false otherwise.
+         */
+        private boolean trySubmit(final ProcessManager<?> pm,
+                                  final ArrayList<ClusterNode> rejected)
         {
-            if (nodeList.size() > 1)
+            FreeNodeHeap.FreeNode free;
+
+            while ((free = freeNodes.peek(pm.isFractional())) != null)
             {
-                final ClusterNode front = nodeList.remove(0);
-                nodeList.addLast(front);
+                // If the job doesn't fit on the top node, it doesn't fit on any other. A fractional
+                // job that would only fit on another one thanks to rounding waits its turn.
+                if (pm.requestedCores(free.node) > free.node.numAvailableThreads())
+                {
+                    return false;
+                }
+
+                if (free.node.submit(pm, finishListener))
+                {
+                    runningProcesses.put(pm.getID(), pm);
+                    incrementJobCount();
+                    recordDispatch(pm, free.node);
+                    freeNodes.update(free.node);
+                    return true;
+                }
+
+                freeNodes.remove(free.node);
+                rejected.add(free.node);
             }
+
+            return false;
+        }
+
+        private void recordDispatch(final ProcessManager<?> pm, final ClusterNode node)
+        {
+            final Long queueTime = queueTimes.remove(pm.getID());
+            DispatchStats stats = dispatchStats.get(node.getID());
+            if (stats == null)
+            {
+                stats = new DispatchStats();
+                dispatchStats.put(node.getID(), stats);
+            }
+            stats.record(queueTime == null ? 0 : System.nanoTime() - queueTime);
         }
 
         /**
-         * Attempts to submit the ProcessManager pm on each node in nodeList. This function
-         * runs on the same thread as run().
-         * @param pm a queued ProcessManager that is to be run to the Cluster
-         * @param nodeList a List of ClusterNodes with available Threads
-         * @return true if pm was scheduled, false otherwise.
+         * Moves newly queued jobs to the internal queue, then dispatches as many of them as
+         * the available threads allow.
          */
-        private boolean trySubmit(final ProcessManager<?> pm,
-                                  final LinkedList<ClusterNode> nodeList)
+        private void schedule(final ArrayList<ProcessManager> tempQ,
+                              final ProcessManagerCoreComparator comparator,
+                              final boolean updateAll)
         {
-            if (nodeList.isEmpty())
+            comparator.setThreadCount(getMaxThreads());
+
+            //Put priority jobs in front of the internal queue, in the correct order
+            priorityJobQueue.drainTo(tempQ);
+            Collections.sort(tempQ, comparator);
+            for (int i = tempQ.size(); i > 0; --i)
             {
-                return false;
+                ProcessManager pm  = tempQ.get(i - 1);
+                FijiArchipelago.debug("Scheduler: Adding job " + pm.getID() +
+                        " to internal queue");
+                internalQueue.addFirst(pm);
+            }
+            tempQ.clear();
+
+            //Put non-priority jobs at the end of the internal queue.
+            jobQueue.drainTo(tempQ);
+            Collections.sort(tempQ, comparator);
+            internalQueue.addAll(tempQ);
+            tempQ.clear();
+
+            if (updateAll)
+            {
+                changedNodes.clear();
+                for (ClusterNode node : getNodes())
+                {
+                    freeNodes.update(node);
+                }
             }
             else
             {
-                ProcessListener listener = new ProcessListener() {
-                    /**
-                     * processFinished is called when the given ClusterNode recieves a message
-                     * from its remote counterpart indicating that the job has finished.
-                     * @param process a ProcessManager that just returned from the cluster
-                     * @return true if the Future was finished successfully, false otherwise.
-                     */
-                    public boolean processFinished(ProcessManager<?> process)
-                    {
-                        runningProcesses.remove(process.getID());
-                        return finishFuture(process);
-                    }
-                };
-                
-                /*
-                 Run through the available ClusterNodes, attempting to submit the job to each one.
-                 When a node rejects the PM, rotate the list. Assuming that our job list is rather
-                 uniform, this should reduce our overhead.
-                 */
-                for (int i = 0; i < nodeList.size(); ++i)
+                ClusterNode node;
+                while ((node = changedNodes.poll()) != null)
                 {
-                    final ClusterNode node = nodeList.getFirst();
+                    freeNodes.update(node);
+                }
+            }
 
-                    if (node.numAvailableThreads() >= pm.requestedCores(node) &&
-                            node.submit(pm, listener))
-                    {
-                        runningProcesses.put(pm.getID(), pm);
-                        incrementJobCount();
-                        if (node.numAvailableThreads() <= 0)
-                        {
-                            nodeList.remove(node);
-                        }
-                        return true;
-                    }
-                    rotate(nodeList);
+            // Stop as soon as there are no more available threads. Jobs that don't fit are
+            // left in the queue, and the next jobs are tried.
+            final ArrayList<ClusterNode> rejected = new ArrayList<ClusterNode>();
+            final Iterator<ProcessManager> it = internalQueue.iterator();
+            while (!freeNodes.isEmpty() && it.hasNext())
+            {
+                final ProcessManager<?> pm = it.next();
+                if (trySubmit(pm, rejected))
+                {
+                    FijiArchipelago.debug("Scheduler: Job " + pm.getID() +
+                            " scheduled on host " + getNode(pm.getRunningOn()));
+                    it.remove();
                 }
+            }
 
-                return false;
+            for (ClusterNode node : rejected)
+            {
+                freeNodes.update(node);
             }
         }
         
@@ -266,99 +389,60 @@ public void run()
             FijiArchipelago.log("Scheduler: Started. Running flag: " + running.get());
 
             final ArrayList<ProcessManager> tempQ = new ArrayList<ProcessManager>();
-            final ArrayList<ProcessManager> pmQ = new ArrayList<ProcessManager>();
-            final LinkedList<ClusterNode> nodeList = new LinkedList<ClusterNode>();           
             final ProcessManagerCoreComparator comparator = new ProcessManagerCoreComparator();
+            boolean timedOut = true;
             
             while (running.get())
             {
                 lock.lock();
-
-                // Remove de-activated nodes, and those that are saturated with jobs
-                for (ClusterNode node : new ArrayList<ClusterNode>(nodeList))
-                {
-                    if (node.getState() != ClusterNodeState.ACTIVE ||
-                            node.numAvailableThreads() <= 0)
-                    {
-                        nodeList.remove(node);
-                    }
-                }
-
-                // Add any newly-available nodes we might have.
-                for (ClusterNode node : nodes)
+                try
                 {
-                    if (node.numAvailableThreads() > 0 && !nodeList.contains(node))
-                    {
-                        nodeList.addFirst(node);
-                    }
+                    schedule(tempQ, comparator, timedOut);
                 }
-
-                comparator.setThreadCount(getMaxThreads());
-                
-                //Put priority jobs in front of the internal queue, in the correct order
-//                FijiArchipelago.debug("Scheduler: " + priorityJobQueue.size() +
-//                        " jobs in priority queue");
-//
-                priorityJobQueue.drainTo(tempQ);                
-                Collections.sort(tempQ, comparator);
-                for (int i = tempQ.size(); i > 0; --i)
+                finally
                 {
-                    ProcessManager pm  = tempQ.get(i - 1);
-                    FijiArchipelago.debug("Scheduler: Adding job " + pm.getID() +
-                            " to internal queue");
-                    internalQueue.addFirst(pm);
+                    lock.unlock();
                 }
-                tempQ.clear();
-
-
-                //Put non-priority jobs at the end of the internal queue.
-                jobQueue.drainTo(tempQ);
-                Collections.sort(tempQ, comparator);
-                internalQueue.addAll(tempQ);
-                tempQ.clear();
-                
-                //FijiArchipelago.debug("Scheduler: " + internalQueue.size() + " jobs in queue");
 
-                //If we have both jobs and nodes to run them on...
-                if (!internalQueue.isEmpty() && !nodeList.isEmpty())
-                {
-                    // Temporary queue so we can remove jobs from the internalQueue
-                    // without suffering ConcurrentModificationExceptions
-                    pmQ.addAll(internalQueue);
-                    for (ProcessManager<?> pm : pmQ)
-                    {
-                        if (trySubmit(pm, nodeList))
-                        {
-                            FijiArchipelago.debug("Scheduler: Job " + pm.getID() +
-                                    " scheduled on host " + getNode(pm.getRunningOn()));
-                            internalQueue.remove(pm);
-                        }
-                        // Deal PM's to the nodes like we're playing poker.
-                        rotate(nodeList);
-                    }
-                    
-                    pmQ.clear();
-                }
-                
-                lock.unlock();
-                
                 // At this stage, all PM's that can be run should be running on a ClusterNode
-                // somewhere. Sleep for a bit. Perhaps a new node will become available, or we'll
-                // get a PM that can be slotted on an available node.
+                // somewhere. Sleep until a job is queued, threads are released, or a node
+                // changes state.
+                wakeLock.lock();
                 try
-                {                    
-                    Thread.sleep(pollTime.get());
+                {
+                    timedOut = !wakeRequested &&
+                            !wakeCondition.await(pollTime.get(), TimeUnit.MILLISECONDS);
+                    wakeRequested = false;
                 }
                 catch (InterruptedException ie)
                 {
                     FijiArchipelago.log("Scheduler interrupted while sleeping, stopping.");
                     running.set(false);
                 }
-                
+                finally
+                {
+                    wakeLock.unlock();
+                }
             }
             FijiArchipelago.log("Scheduler exited");
         }
 
+        /**
+         * Returns the dispatch metrics for each ClusterNode that has run jobs so far.
+         * @return a list of NodeMetrics, one for each ClusterNode that has been sent a job.
+         */
+        public ArrayList<NodeMetrics> getNodeMetrics()
+        {
+            final ArrayList<NodeMetrics> metrics = new ArrayList<NodeMetrics>();
+            for (ClusterNode node : getNodes())
+            {
+                final DispatchStats stats = dispatchStats.get(node.getID());
+                metrics.add(stats == null ? new NodeMetrics(node, 0, 0, 0) :
+                        stats.toMetrics(node));
+            }
+            return metrics;
+        }
+
         public synchronized void setActive(boolean active)
         {
             running.set(active);
@@ -395,6 +479,7 @@ public synchronized boolean cancelJob(long id, boolean force)
                     removeFromQueue(jobQueue, id) ||
                     removeFromQueue(internalQueue, id))
             {
+                queueTimes.remove(id);
                 lock.unlock();
                 return true;
             }
@@ -495,6 +580,7 @@ public synchronized void close()
             priorityJobQueue.clear();
             jobQueue.clear();
             internalQueue.clear();
+            queueTimes.clear();
         }
         
         public int queuedJobCount()
@@ -504,6 +590,152 @@ public int queuedJobCount()
 
     }
 
+    /**
+     * The ClusterNodes with available threads, in two heaps: one ordered by the number of
+     * available threads, for jobs that request a number of threads, and one ordered by the
+     * fraction of available threads, for jobs that request a fraction of a node. Updating a node
+     * adds a new entry and leaves the old one behind, to be dropped when it reaches the top of a
+     * heap, so that updates and lookups take O(log n) amortized time. The heaps are compacted
+     * once they hold more than twice as many entries as there are nodes.
+     */
+    private static class FreeNodeHeap
+    {
+        /**
+         * A ClusterNode along with the number of threads that were available when it was added.
+         */
+        static class FreeNode
+        {
+            final ClusterNode node;
+            final int available;
+            final int limit;
+
+            FreeNode(final ClusterNode node, final int available)
+            {
+                this.node = node;
+                this.available = available;
+                limit = Math.max(node.getThreadLimit(), available);
+            }
+        }
+
+        private static final Comparator<FreeNode> byThreadsOrder = new Comparator<FreeNode>()
+        {
+            public int compare(final FreeNode a, final FreeNode b)
+            {
+                if (a.available != b.available)
+                {
+                    return a.available > b.available ? -1 : 1;
+                }
+                return compareIDs(a, b);
+            }
+        };
+
+        private static final Comparator<FreeNode> byFractionOrder = new Comparator<FreeNode>()
+        {
+            public int compare(final FreeNode a, final FreeNode b)
+            {
+                final long fa = (long)a.available * b.limit, fb = (long)b.available * a.limit;
+                if (fa != fb)
+                {
+                    return fa > fb ? -1 : 1;
+                }
+                return compareIDs(a, b);
+            }
+        };
+
+        private final HashMap<ClusterNode, FreeNode> current =
+                new HashMap<ClusterNode, FreeNode>();
+        private final PriorityQueue<FreeNode> byThreads =
+                new PriorityQueue<FreeNode>(11, byThreadsOrder);
+        private final PriorityQueue<FreeNode> byFraction =
+                new PriorityQueue<FreeNode>(11, byFractionOrder);
+
+        private static int compareIDs(final FreeNode a, final FreeNode b)
+        {
+            final long id1 = a.node.getID(), id2 = b.node.getID();
+            return id1 < id2 ? -1 : id1 == id2 ? 0 : 1;
+        }
+
+        /**
+         * Brings the entry of the given node up to date with its state and available threads.
+         */
+        public void update(final ClusterNode node)
+        {
+            final int available = node.getState() == ClusterNodeState.ACTIVE ?
+                    node.numAvailableThreads() : 0;
+            final FreeNode old = current.get(node);
+
+            if (old != null && old.available == available)
+            {
+                return;
+            }
+
+            if (available > 0)
+            {
+                final FreeNode free = new FreeNode(node, available);
+                current.put(node, free);
+                byThreads.add(free);
+                byFraction.add(free);
+            }
+            else
+            {
+                current.remove(node);
+            }
+
+            if (Math.max(byThreads.size(), byFraction.size()) > 2 * current.size() + 16)
+            {
+                byThreads.clear();
+                byFraction.clear();
+                byThreads.addAll(current.values());
+                byFraction.addAll(current.values());
+            }
+        }
+
+        public void remove(final ClusterNode node)
+        {
+            current.remove(node);
+        }
+
+        /**
+         * @param fractional true to get the node with the largest fraction of available
+         *                   threads, false to get the one with the most available threads
+         * @return the FreeNode at the top of the requested heap, or null if there is none
+         */
+        public FreeNode peek(final boolean fractional)
+        {
+            final PriorityQueue<FreeNode> heap = fractional ? byFraction : byThreads;
+            while (!heap.isEmpty() && current.get(heap.peek().node) != heap.peek())
+            {
+                heap.poll();
+            }
+            return heap.peek();
+        }
+
+        public boolean isEmpty()
+        {
+            return current.isEmpty();
+        }
+    }
+
+    /**
+     * Accumulates the dispatch latencies of the jobs sent to one ClusterNode.
+     */
+    private static class DispatchStats
+    {
+        private long dispatched = 0, totalLatency = 0, maxLatency = 0;
+
+        synchronized void record(final long latencyNanos)
+        {
+            ++dispatched;
+            totalLatency += latencyNanos;
+            maxLatency = Math.max(maxLatency, latencyNanos);
+        }
+
+        synchronized NodeMetrics toMetrics(final ClusterNode node)
+        {
+            return new NodeMetrics(node, dispatched, totalLatency, maxLatency);
+        }
+    }
+
     private class ClusterExecutorService implements ExecutorService
     {
 
@@ -1097,7 +1329,7 @@ private Cluster()
             public boolean handleCustom(final Throwable t, final MessageXC mxc,
                                         final ClusterMessage message)
             {
-                if (message.type == MessageType.PROCESS)
+                if (message != null && message.type == MessageType.PROCESS)
                 {
                     final ProcessManager<?> pm = (ProcessManager<?>)message.o;
                     pm.setException(t);
@@ -1118,7 +1350,7 @@ public boolean handleCustomRX(final Throwable t, final MessageXC xc,
                                           final ClusterMessage message)
             {
                 final long lastID = xc.getLastProcessID();
-                if (message.type == MessageType.ERROR)
+                if (message != null && message.type == MessageType.ERROR)
                 {
                     errorFuture(lastID, (Throwable)message.o);
                 }
@@ -1301,6 +1533,7 @@ private void addNode(final ClusterNode node)
         }
 */
         nodeLock.unlock();
+        node.addThreadListener(scheduler);
         node.addListener(this);
     }
 
@@ -1467,6 +1700,7 @@ public synchronized void stateChanged(ClusterNode node, ClusterNodeState stateNo
                 break;
         }
 
+        scheduler.nodeChanged(node);
         triggerListeners();
     }
 
@@ -1730,6 +1964,15 @@ public int getQueuedJobCount()
     {
         return scheduler.queuedJobCount();
     }
+
+    /**
+     * @return the scheduling metrics of each ClusterNode: the number of jobs it is running and
+     * the latency between queueing and dispatching the jobs sent to it.
+     */
+    public ArrayList<NodeMetrics> getNodeMetrics()
+    {
+        return scheduler.getNodeMetrics();
+    }
     
     protected synchronized void haltFinished()
     {
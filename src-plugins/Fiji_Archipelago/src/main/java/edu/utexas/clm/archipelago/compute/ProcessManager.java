@@ -58,6 +58,13 @@ public ProcessManager(final Callable<T> c, final long idArg, final float nc, fin
      */
     public void run()
     {
+        if (remoteException != null)
+        {
+            // This one could not be received, so there is nothing to run.
+            callable = null;
+            return;
+        }
+
         try
         {
             output = callable.call();
@@ -109,6 +116,15 @@ public synchronized void setException(final Throwable exception)
         }
     }
     
+    /**
+     * @return true if this ProcessManager requests a fraction of a node's threads, rather than
+     * a number of threads
+     */
+    public boolean isFractional()
+    {
+        return isFractional;
+    }
+
     public int requestedCores(int totalCores)
     {
         int c;
@@ -87,6 +87,8 @@ public static String typeToString(final MessageType type)
                 return "log";
             case BOTTLER:
                 return "bottler";
+            case XCMODE:
+                return "transport mode";
             default:
                 return "unknown";
         }
@@ -2,7 +2,10 @@
 
 import edu.utexas.clm.archipelago.Cluster;
 import edu.utexas.clm.archipelago.compute.ArchipelagoFuture;
+import edu.utexas.clm.archipelago.network.node.ClusterNode;
+import edu.utexas.clm.archipelago.util.NodeMetrics;
 import ij.IJ;
+import ij.gui.GenericDialog;
 import ij.plugin.PlugIn;
 
 import java.io.Serializable;
@@ -22,10 +25,26 @@ public class Stress_Test implements PlugIn
     public static class Stressor implements Callable<Double>, Serializable
     {
         private final int stresses;
+        private final float[] payload;
 
         public Stressor()
         {
-            this.stresses = 1024 * 1024;
+            this(1024 * 1024, 0);
+        }
+
+        /**
+         * @param stresses the number of iterations to run
+         * @param payloadSize the size of an array of floats to send along with the job, to
+         *                    stress the transport rather than the nodes.
+         */
+        public Stressor(final int stresses, final int payloadSize)
+        {
+            this.stresses = stresses;
+            payload = new float[payloadSize];
+            for (int i = 0; i < payloadSize; ++i)
+            {
+                payload[i] = (i % 4096) / 16f;
+            }
         }
 
         public Double call() throws Exception
@@ -57,12 +76,36 @@ public void run(String arg)
         }
         else
         {
+            final GenericDialog gd = new GenericDialog("Stress Test");
+            gd.addNumericField("Iterations per job", 1024 * 1024, 0);
+            gd.addNumericField("Payload size (floats)", 0, 0);
+            gd.addCheckbox("Compress large arrays", false);
+            gd.showDialog();
+            if (gd.wasCanceled())
+            {
+                return;
+            }
+
+            final int stresses = (int)gd.getNextNumber();
+            final int payloadSize = (int)gd.getNextNumber();
+            final boolean compress = gd.getNextBoolean();
+
+            for (ClusterNode node : cluster.getNodes())
+            {
+                if (node.getMessageXC() != null)
+                {
+                    node.getMessageXC().setCompression(compress);
+                }
+            }
+
             ExecutorService service = cluster.getService(1);
             ArrayList<Future<Double>> futures = new ArrayList<Future<Double>>(startNum);
+            long start = System.currentTimeMillis();
+            int done = 0;
 
             for (int i = 0; i < startNum; ++i)
             {
-                futures.add(service.submit(new Stressor()));
+                futures.add(service.submit(new Stressor(stresses, payloadSize)));
             }
 
             while (!futures.isEmpty())
@@ -82,7 +125,20 @@ public void run(String arg)
                     Double d = future.get();
                     IJ.log("The future came!");
                     futures.remove(0);
-                    futures.add(service.submit(new Stressor()));
+                    futures.add(service.submit(new Stressor(stresses, payloadSize)));
+
+                    // Report the throughput, and what it took to send the jobs, every so often
+                    if (++done == startNum)
+                    {
+                        final long now = System.currentTimeMillis();
+                        IJ.log("Finished " + done + " jobs in " + (now - start) + "ms");
+                        for (NodeMetrics metrics : cluster.getNodeMetrics())
+                        {
+                            IJ.log(metrics.toString());
+                        }
+                        start = now;
+                        done = 0;
+                    }
                 }
                 catch (ExecutionException ee)
                 {
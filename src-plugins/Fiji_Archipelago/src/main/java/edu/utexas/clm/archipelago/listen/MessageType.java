@@ -45,5 +45,6 @@
     HOSTNAME,
     SETFSTRANSLATION,
     BOTTLER,
-    LOG
+    LOG,
+    XCMODE
 }
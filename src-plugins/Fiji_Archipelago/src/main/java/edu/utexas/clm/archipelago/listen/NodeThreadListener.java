@@ -0,0 +1,35 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * 
+ * @author Larry Lindsey llindsey@clm.utexas.edu
+ */
+
+package edu.utexas.clm.archipelago.listen;
+
+import edu.utexas.clm.archipelago.network.node.ClusterNode;
+
+/**
+ * NodeThreadListener interface, used to notify when threads on a ClusterNode have been released,
+ * either because a job finished, was cancelled, or the node was closed.
+ */
+public interface NodeThreadListener
+{
+    /**
+     * This method will be called after threads on the given ClusterNode have become available.
+     * @param node the ClusterNode on which threads were released
+     * @param nThreads the number of threads that were released
+     */
+    public void threadsReleased(ClusterNode node, int nThreads);
+}
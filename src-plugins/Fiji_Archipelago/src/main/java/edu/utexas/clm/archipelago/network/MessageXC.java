@@ -67,7 +67,7 @@ public BottlingInputStream(final InputStream is) throws IOException
             enableResolveObject(true);
         }
 
-        protected final Object resolveObject(final Object object) throws IOException
+        protected Object resolveObject(final Object object) throws IOException
         {
             if (object instanceof Bottle)
             {
@@ -90,7 +90,7 @@ public BottlingOutputStream(final OutputStream os) throws IOException
             enableReplaceObject(true);
         }
 
-        protected final Object replaceObject(final Object object) throws IOException
+        protected Object replaceObject(final Object object) throws IOException
         {
             /*
             This seems like it could get costly as the number of bottles increases.
@@ -109,56 +109,385 @@ protected final Object replaceObject(final Object object) throws IOException
         }
     }
 
+    /**
+     * Replaces large arrays of primitives with ArrayRefs, so that their contents may be written
+     * as raw blocks after the serialized objects.
+     */
+    private class FrameOutputStream extends BottlingOutputStream
+    {
+        private final ArrayList<Object> arrays;
+
+        public FrameOutputStream(final OutputStream os, final ArrayList<Object> arrays)
+                throws IOException
+        {
+            super(os);
+            this.arrays = arrays;
+        }
+
+        protected final Object replaceObject(final Object object) throws IOException
+        {
+            if (PrimitiveBlocks.byteSize(object) >= MIN_BLOCK_BYTES)
+            {
+                arrays.add(object);
+                return new ArrayRef(arrays.size() - 1);
+            }
+            else
+            {
+                return super.replaceObject(object);
+            }
+        }
+    }
+
+    private class FrameInputStream extends BottlingInputStream
+    {
+        private final Object[] arrays;
+
+        public FrameInputStream(final InputStream is, final Object[] arrays) throws IOException
+        {
+            super(is);
+            this.arrays = arrays;
+        }
+
+        protected final Object resolveObject(final Object object) throws IOException
+        {
+            if (object instanceof ArrayRef)
+            {
+                final int index = ((ArrayRef)object).index;
+                if (index < 0 || index >= arrays.length)
+                {
+                    throw new StreamCorruptedException("Bad array reference " + index);
+                }
+                return arrays[index];
+            }
+            else
+            {
+                return super.resolveObject(object);
+            }
+        }
+    }
+
+    /**
+     * Stands in for an array that is sent as a raw block.
+     */
+    private static final class ArrayRef implements Serializable
+    {
+        private static final long serialVersionUID = -2384203711238394532L;
+
+        private final int index;
+
+        public ArrayRef(final int index)
+        {
+            this.index = index;
+        }
+    }
+
+    /**
+     * A group of messages to be sent together. A frame is written as its header: FRAME_MARK,
+     * the length of the rest of the frame and the number of messages, then an index entry for
+     * each message, the length of the serialized messages, the messages themselves, the number
+     * of array blocks and the blocks. The messages are serialized in a single
+     * ObjectOutputStream, which is reset after each one, so that a message that can't be read
+     * on the other end doesn't take the ones after it along. An index entry holds the offset
+     * at which the message ends in the serialized stream, its type and the id of its job, if
+     * any, so that the reader may skip to the next message and say which one was lost.
+     */
+    private class Frame
+    {
+        private final ByteArrayOutputStream objectBytes;
+        private final FrameOutputStream objectStream;
+        private final ByteArrayOutputStream indexBytes;
+        private final DataOutputStream indexStream;
+        private final ArrayList<Object> arrays;
+        private int count;
+        private long arrayBytes;
+
+        public Frame() throws IOException
+        {
+            objectBytes = new ByteArrayOutputStream();
+            arrays = new ArrayList<Object>();
+            objectStream = new FrameOutputStream(objectBytes, arrays);
+            indexBytes = new ByteArrayOutputStream();
+            indexStream = new DataOutputStream(indexBytes);
+            count = 0;
+            arrayBytes = 0;
+        }
+
+        public void add(final ClusterMessage message) throws IOException
+        {
+            final int nArrays = arrays.size();
+            objectStream.writeObject(message);
+            objectStream.reset();
+            objectStream.flush();
+            for (int i = nArrays; i < arrays.size(); ++i)
+            {
+                arrayBytes += PrimitiveBlocks.byteSize(arrays.get(i));
+            }
+
+            indexStream.writeInt(objectBytes.size());
+            indexStream.writeByte(message.type.ordinal());
+            indexStream.writeLong(message.o instanceof ProcessManager ?
+                    ((ProcessManager)message.o).getID() : -1);
+            ++count;
+        }
+
+        public boolean isFull()
+        {
+            return count >= MAX_FRAME_MESSAGES || objectBytes.size() + arrayBytes >= MAX_FRAME_BYTES;
+        }
+
+        public void write(final OutputStream os) throws IOException
+        {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream(indexBytes.size() +
+                    objectBytes.size() + (int)Math.min(arrayBytes, MAX_FRAME_BYTES) + 64);
+            final DataOutputStream bodyStream = new DataOutputStream(body);
+            final boolean doCompress = compress.get();
+
+            indexStream.flush();
+            indexBytes.writeTo(bodyStream);
+            bodyStream.writeInt(objectBytes.size());
+            objectBytes.writeTo(bodyStream);
+            bodyStream.writeInt(arrays.size());
+            for (final Object array : arrays)
+            {
+                PrimitiveBlocks.write(bodyStream, array, doCompress);
+            }
+            bodyStream.flush();
+
+            final DataOutputStream dos = new DataOutputStream(os);
+            dos.writeInt(FRAME_MARK);
+            dos.writeInt(body.size());
+            dos.writeInt(count);
+            body.writeTo(dos);
+            dos.flush();
+
+            framesSent.incrementAndGet();
+        }
+    }
+
     private class RXThread extends Thread
     {
         public void run()
         {
             while (active.get())
             {
-                try
+                if (framedIn)
+                {
+                    readFrame();
+                }
+                else
+                {
+                    readObject();
+                }
+            }
+        }
+
+        private void readObject()
+        {
+            try
+            {
+                handle((ClusterMessage)objectInputStream.readObject());
+            }
+            /*catch (ClassCastException cce)
+            {
+                xcExceptionListener.handleRXThrowable(cce, xc);
+            }
+            catch (IOException ioe)
+            {
+                xcExceptionListener.handleRXThrowable(ioe, xc);
+            }
+            catch (ClassNotFoundException cnfe)
+            {
+                xcExceptionListener.handleRXThrowable(cnfe, xc);
+            }*/
+            catch (Throwable e)
+            {
+                xcExceptionListener.handleRXThrowable(e, xc, null);
+            }
+            finally
+            {
+                // Each message is sent in its own stream, unless we've just switched to frames
+                if (!framedIn && active.get())
                 {
-                    ClusterMessage message = (ClusterMessage)objectInputStream.readObject();
-                    // Don't debug beats, or they'll fill your log
-                    if (message.type != MessageType.BEAT)
+                    try
+                    {
+                        objectInputStream = new BottlingInputStream(inStream);
+                    }
+                    catch (IOException ioe)
                     {
-                        FijiArchipelago.debug("RX: " + id + " got message " +
-                                ClusterMessage.messageToString(message));
-                        if (message.type == MessageType.PROCESS)
-                        {
-                            ProcessManager pm = (ProcessManager)message.o;
-                            FijiArchipelago.debug("RX: Got message for job " + pm.getID());
-                        }
+                        close();
                     }
-                    xcListener.handleMessage(message);
                 }
-                /*catch (ClassCastException cce)
+            }
+        }
+
+        private void readFrame()
+        {
+            final byte[] body;
+            final int count;
+
+            try
+            {
+                final DataInputStream dis = new DataInputStream(inStream);
+                final int mark = dis.readInt();
+                final int length = dis.readInt();
+                count = dis.readInt();
+
+                if (mark != FRAME_MARK || length < 0 || count < 0)
                 {
-                    xcExceptionListener.handleRXThrowable(cce, xc);
+                    throw new StreamCorruptedException("Bad frame header");
                 }
-                catch (IOException ioe)
+
+                body = new byte[length];
+                dis.readFully(body);
+            }
+            catch (Throwable e)
+            {
+                // We can't find the next frame without a good header
+                xcExceptionListener.handleRXThrowable(e, xc, null);
+                close();
+                return;
+            }
+
+            final int[] ends = new int[count];
+            final ClusterMessage[] lost = new ClusterMessage[count];
+            final Object[] arrays;
+            final int objectStart, objectLength;
+
+            try
+            {
+                final DataInputStream bodyStream =
+                        new DataInputStream(new ByteArrayInputStream(body));
+                final MessageType[] types = MessageType.values();
+
+                for (int i = 0; i < count; ++i)
                 {
-                    xcExceptionListener.handleRXThrowable(ioe, xc);
+                    final int end = bodyStream.readInt();
+                    final int type = bodyStream.readByte();
+                    final long jobID = bodyStream.readLong();
+
+                    if (end < (i == 0 ? STREAM_HEADER_BYTES : ends[i - 1]) || type < 0 ||
+                            type >= types.length)
+                    {
+                        throw new StreamCorruptedException("Bad frame index");
+                    }
+
+                    ends[i] = end;
+                    lost[i] = new ClusterMessage(types[type]);
+                    if (lost[i].type == MessageType.PROCESS)
+                    {
+                        lost[i].o = new ProcessManager<Object>(null, jobID, 0, false);
+                    }
                 }
-                catch (ClassNotFoundException cnfe)
+
+                objectLength = bodyStream.readInt();
+                objectStart = count * INDEX_ENTRY_BYTES + 4;
+
+                if (objectLength < STREAM_HEADER_BYTES ||
+                        (count > 0 && ends[count - 1] > objectLength) ||
+                        bodyStream.skipBytes(objectLength) != objectLength)
                 {
-                    xcExceptionListener.handleRXThrowable(cnfe, xc);
-                }*/
-                catch (Throwable e)
+                    throw new StreamCorruptedException("Truncated frame");
+                }
+
+                arrays = new Object[bodyStream.readInt()];
+                for (int i = 0; i < arrays.length; ++i)
                 {
-                    xcExceptionListener.handleRXThrowable(e, xc, null);
+                    arrays[i] = PrimitiveBlocks.read(bodyStream);
                 }
-                finally
+            }
+            catch (Throwable e)
+            {
+                // The whole frame is lost, but the next one may be read normally.
+                xcExceptionListener.handleRXThrowable(e, xc, null);
+                return;
+            }
+
+            FrameInputStream frameStream = null;
+            int position = STREAM_HEADER_BYTES;
+
+            for (int i = 0; i < count; ++i)
+            {
+                ClusterMessage message;
+
+                try
                 {
-                    try
+                    if (frameStream == null)
                     {
-                        objectInputStream = new BottlingInputStream(inStream);
+                        // Start a new stream at this message, behind the original stream header
+                        frameStream = new FrameInputStream(new SequenceInputStream(
+                                new ByteArrayInputStream(body, objectStart, STREAM_HEADER_BYTES),
+                                new ByteArrayInputStream(body, objectStart + position,
+                                        objectLength - position)), arrays);
                     }
-                    catch (IOException ioe)
+                    message = (ClusterMessage)frameStream.readObject();
+                }
+                catch (Throwable e)
+                {
+                    /*
+                     Only this message is lost. The stream may have stopped anywhere in it, so
+                     pick up the next one at its boundary.
+                     */
+                    frameStream = null;
+                    position = ends[i];
+                    message = lost[i];
+                    if (message.o instanceof ProcessManager)
                     {
-                        close();
+                        ((ProcessManager)message.o).setException(e);
+                    }
+                    xcExceptionListener.handleRXThrowable(e, xc, message);
+                    if (message.type != MessageType.PROCESS)
+                    {
+                        continue;
                     }
+                    /*
+                     Pass a lost job on as failed, so that it is acknowledged and its future
+                     finished, rather than being sent again and again.
+                     */
+                }
+
+                position = ends[i];
+
+                try
+                {
+                    handle(message);
+                }
+                catch (Throwable e)
+                {
+                    xcExceptionListener.handleRXThrowable(e, xc, message);
+                }
+            }
+        }
+
+        private void handle(final ClusterMessage message)
+        {
+            // Don't debug beats, or they'll fill your log
+            if (message.type != MessageType.BEAT)
+            {
+                FijiArchipelago.debug("RX: " + id + " got message " +
+                        ClusterMessage.messageToString(message));
+                if (message.type == MessageType.PROCESS)
+                {
+                    ProcessManager pm = (ProcessManager)message.o;
+                    FijiArchipelago.debug("RX: Got message for job " + pm.getID());
+                }
+            }
+
+            if (message.type == MessageType.XCMODE)
+            {
+                /*
+                 The remote end will send frames from now on. Switch to frames in our turn,
+                 unless it is answering our own request.
+                 */
+                framedIn = true;
+                if (!framedRequested.getAndSet(true))
+                {
+                    queueMessage(MessageType.XCMODE, TRANSPORT_VERSION);
                 }
             }
+            else
+            {
+                xcListener.handleMessage(message);
+            }
         }
     }
     
@@ -166,6 +495,8 @@ private class TXThread extends Thread
     {
         public void run()
         {
+            final ArrayList<ClusterMessage> messages = new ArrayList<ClusterMessage>();
+
             while (active.get())
             {
                 ClusterMessage nextMessage = null;
@@ -184,56 +515,195 @@ public void run()
 
                 if (nextMessage != null)
                 {
-                    try
+                    // Send everything that is waiting in the queue along with this message.
+                    messages.add(nextMessage);
+                    messageQ.drainTo(messages, MAX_FRAME_MESSAGES - 1);
+
+                    int i = 0;
+                    while (i < messages.size() && !framedOut)
                     {
-                        if (nextMessage.type != MessageType.BEAT)
-                        {
-                            FijiArchipelago.debug("TX: " + id + " writing message " +
-                                    ClusterMessage.messageToString(nextMessage));
-                        }
-                        objectOutputStream.writeObject(nextMessage);
-                        objectOutputStream.flush();
+                        writeObject(messages.get(i++));
+                    }
 
+                    if (i < messages.size())
+                    {
+                        writeFrames(messages.subList(i, messages.size()));
                     }
-                    /*catch (NotSerializableException nse)
+
+                    messagesSent.addAndGet(messages.size());
+                    messages.clear();
+                }
+            }
+        }
+
+        private void debug(final ClusterMessage message)
+        {
+            if (message.type != MessageType.BEAT)
+            {
+                FijiArchipelago.debug("TX: " + id + " writing message " +
+                        ClusterMessage.messageToString(message));
+            }
+        }
+
+        private void writeObject(final ClusterMessage message)
+        {
+            try
+            {
+                debug(message);
+                objectOutputStream.writeObject(message);
+                objectOutputStream.flush();
+
+                if (message.type == MessageType.XCMODE)
+                {
+                    // This was the last message the remote end will read as a lone object
+                    framedOut = true;
+                }
+            }
+            /*catch (NotSerializableException nse)
+            {
+                xcExceptionListener.handleTXThrowable(nse, xc);
+            }
+            catch (IOException ioe)
+            {
+                xcExceptionListener.handleTXThrowable(ioe, xc);
+            }
+            catch (ConcurrentModificationException ccme)
+            {
+                xcExceptionListener.handleTXThrowable(ccme, xc);
+            }
+            catch (RuntimeException re)
+            {
+                xcExceptionListener.handleTXThrowable(re, xc);
+            }*/
+            catch (Throwable e)
+            {
+                xcExceptionListener.handleTXThrowable(e, xc, message);
+            }
+            finally
+            {
+                if (!framedOut)
+                {
+                    try
                     {
-                        xcExceptionListener.handleTXThrowable(nse, xc);
+                        objectOutputStream = new BottlingOutputStream(outStream);
                     }
                     catch (IOException ioe)
                     {
-                        xcExceptionListener.handleTXThrowable(ioe, xc);
+                        close();
                     }
-                    catch (ConcurrentModificationException ccme)
+                }
+            }
+        }
+
+        private void writeFrames(final List<ClusterMessage> messages)
+        {
+            int i = 0;
+            while (i < messages.size())
+            {
+                final int start = i;
+                Frame frame = null;
+
+                try
+                {
+                    frame = new Frame();
+                    while (i < messages.size() && !frame.isFull())
                     {
-                        xcExceptionListener.handleTXThrowable(ccme, xc);
+                        debug(messages.get(i));
+                        frame.add(messages.get(i));
+                        ++i;
                     }
-                    catch (RuntimeException re)
+                }
+                catch (Throwable e)
+                {
+                    /*
+                     Message i couldn't be serialized. Send the messages before it on their
+                     own, so that it is the only one lost.
+                     */
+                    frame = null;
+                    for (int j = start; j < i; ++j)
                     {
-                        xcExceptionListener.handleTXThrowable(re, xc);
-                    }*/
-                    catch (Throwable e)
+                        writeFrames(messages.subList(j, j + 1));
+                    }
+                    xcExceptionListener.handleTXThrowable(e, xc, messages.get(i));
+                    ++i;
+                }
+
+                if (frame != null)
+                {
+                    try
                     {
-                        xcExceptionListener.handleTXThrowable(e, xc, nextMessage);
+                        frame.write(outStream);
                     }
-                    finally
+                    catch (Throwable e)
                     {
-                        try
-                        {
-                            objectOutputStream = new BottlingOutputStream(outStream);
-                        }
-                        catch (IOException ioe)
-                        {
-                            close();
-                        }
+                        xcExceptionListener.handleTXThrowable(e, xc, messages.get(start));
                     }
                 }
             }
         }
     }
+
+    /**
+     * Counts the bytes written to the underlying stream.
+     */
+    private class CountingOutputStream extends FilterOutputStream
+    {
+        public CountingOutputStream(final OutputStream os)
+        {
+            super(os);
+        }
+
+        public void write(final int b) throws IOException
+        {
+            out.write(b);
+            bytesSent.incrementAndGet();
+        }
+
+        public void write(final byte[] b, final int off, final int len) throws IOException
+        {
+            out.write(b, off, len);
+            bytesSent.addAndGet(len);
+        }
+    }
     
     public static final long DEFAULT_WAIT = 10000;
     public static final TimeUnit DEFAULT_UNIT = TimeUnit.MILLISECONDS;
 
+    /**
+     * The version of the framed transport. Sent along with GETID by the root node, so that
+     * clients that understand it know they may ask to switch to it.
+     */
+    public static final int TRANSPORT_VERSION = 1;
+
+    /**
+     * The largest number of messages sent in one frame.
+     */
+    public static final int MAX_FRAME_MESSAGES = 64;
+
+    /**
+     * Once a frame holds this many bytes, no more messages are added to it.
+     */
+    public static final int MAX_FRAME_BYTES = 1 << 20;
+
+    /**
+     * Arrays of primitives at least this large, in bytes, are sent as raw blocks.
+     */
+    public static final int MIN_BLOCK_BYTES = 4096;
+
+    private static final int FRAME_MARK = 0x41524346;
+
+    /**
+     * The size of a message's entry in a frame's index: its end, type and job id.
+     */
+    private static final int INDEX_ENTRY_BYTES = 4 + 1 + 8;
+
+    /**
+     * The size of the header that starts every serialization stream.
+     */
+    private static final int STREAM_HEADER_BYTES = 4;
+
+    private static final AtomicBoolean defaultCompress = new AtomicBoolean(false);
+
     private final List<Bottler> bottlers;
     private final ArrayBlockingQueue<ClusterMessage> messageQ;
     private BottlingOutputStream objectOutputStream;
@@ -249,6 +719,11 @@ public void run()
     private final OutputStream outStream;
     private final InputStream inStream;
     private long id;
+    // Each of these is only changed by the thread that uses it
+    private volatile boolean framedIn, framedOut;
+    private final AtomicBoolean framedRequested;
+    private final AtomicBoolean compress;
+    private final AtomicLong messagesSent, framesSent, bytesSent;
 
     private final MessageXC xc = this;
 
@@ -271,11 +746,19 @@ public MessageXC(InputStream inStream,
         fileTranslator = new NullFileTranslator();
         bottlers = Collections.synchronizedList(new Vector<Bottler>());
         messageQ = new ArrayBlockingQueue<ClusterMessage>(16, true);
-        objectOutputStream = new BottlingOutputStream(outStream);
+        messagesSent = new AtomicLong(0);
+        framesSent = new AtomicLong(0);
+        bytesSent = new AtomicLong(0);
+        final OutputStream counted = new CountingOutputStream(outStream);
+        objectOutputStream = new BottlingOutputStream(counted);
         objectInputStream =  new BottlingInputStream(inStream);
         FijiArchipelago.debug("XC: streams are set");
         this.inStream = inStream;
-        this.outStream = outStream;
+        this.outStream = counted;
+        framedIn = false;
+        framedOut = false;
+        framedRequested = new AtomicBoolean(false);
+        compress = new AtomicBoolean(defaultCompress.get());
         active = new AtomicBoolean(true);
         lastSentID = new AtomicLong(-1);
         waitTime = wait;
@@ -292,6 +775,69 @@ public MessageXC(InputStream inStream,
         txThread.start();
     }
 
+    /**
+     * Sets whether MessageXCs created from now on compress large arrays of primitives.
+     * @param c true to compress large arrays
+     */
+    public static void setDefaultCompression(final boolean c)
+    {
+        defaultCompress.set(c);
+    }
+
+    /**
+     * Asks the remote end to switch to the framed transport, in which messages waiting to be
+     * sent are grouped into frames, and large arrays of primitives are sent as raw blocks. Only
+     * call this if the remote end is known to understand it, that is, if it has sent a
+     * TRANSPORT_VERSION. Messages sent until the remote end answers are sent as before.
+     * @param remoteVersion the TRANSPORT_VERSION of the remote end
+     */
+    public void requestFramedTransport(final int remoteVersion)
+    {
+        if (remoteVersion >= 1 && !framedRequested.getAndSet(true))
+        {
+            queueMessage(MessageType.XCMODE, TRANSPORT_VERSION);
+        }
+    }
+
+    /**
+     * @return true if messages are sent in frames
+     */
+    public boolean isFramed()
+    {
+        return framedOut;
+    }
+
+    /**
+     * Sets whether large arrays of primitives are compressed before being sent. This only
+     * applies to the framed transport.
+     * @param c true to compress large arrays
+     */
+    public void setCompression(final boolean c)
+    {
+        compress.set(c);
+    }
+
+    public long getMessagesSent()
+    {
+        return messagesSent.get();
+    }
+
+    /**
+     * @return the number of frames sent so far, zero unless isFramed() is true
+     */
+    public long getFramesSent()
+    {
+        return framesSent.get();
+    }
+
+    /**
+     * @return the number of bytes written to the OutputStream so far
+     */
+    public long getBytesSent()
+    {
+        return bytesSent.get();
+    }
+
     public long getLastProcessID()
     {
         return lastSentID.get();
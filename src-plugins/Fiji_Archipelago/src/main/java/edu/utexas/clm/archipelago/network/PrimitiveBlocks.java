@@ -0,0 +1,356 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * 
+ * @author Larry Lindsey llindsey@clm.utexas.edu
+ */
+
+package edu.utexas.clm.archipelago.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes primitive arrays as raw blocks of big-endian values, rather than through
+ * Java serialization. Blocks may optionally be compressed. Before compression, the bytes of
+ * multi-byte values are regrouped by significance, so that the slowly-varying high bytes of
+ * image data end up next to each other, which Deflater handles much better.
+ *
+ * @author Larry Lindsey
+ */
+public final class PrimitiveBlocks
+{
+    private static final byte BYTE = 1, SHORT = 2, CHAR = 3, INT = 4, FLOAT = 5, LONG = 6,
+            DOUBLE = 7;
+
+    private static final byte RAW = 0, DEFLATED = 1;
+
+    private PrimitiveBlocks() {}
+
+    /**
+     * @param o an Object
+     * @return the size in bytes of o's data if it is an array of primitives, or -1 if it is not.
+     */
+    public static long byteSize(final Object o)
+    {
+        if (o instanceof byte[])
+        {
+            return ((byte[])o).length;
+        }
+        else if (o instanceof short[])
+        {
+            return 2l * ((short[])o).length;
+        }
+        else if (o instanceof char[])
+        {
+            return 2l * ((char[])o).length;
+        }
+        else if (o instanceof int[])
+        {
+            return 4l * ((int[])o).length;
+        }
+        else if (o instanceof float[])
+        {
+            return 4l * ((float[])o).length;
+        }
+        else if (o instanceof long[])
+        {
+            return 8l * ((long[])o).length;
+        }
+        else if (o instanceof double[])
+        {
+            return 8l * ((double[])o).length;
+        }
+        else
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Writes an array of primitives as a block.
+     * @param dos the stream to write to
+     * @param array the array, which must be an array of primitives
+     * @param compress true to compress the block, if that makes it smaller
+     * @throws IOException if one is thrown by dos
+     */
+    public static void write(final DataOutputStream dos, final Object array,
+                             final boolean compress) throws IOException
+    {
+        final byte type;
+        final int length, size;
+        final ByteBuffer buffer;
+
+        if (array instanceof byte[])
+        {
+            type = BYTE;
+            length = ((byte[])array).length;
+            size = 1;
+            buffer = ByteBuffer.wrap((byte[])array);
+        }
+        else
+        {
+            final int n = (int)byteSize(array);
+            buffer = ByteBuffer.allocate(n);
+            if (array instanceof short[])
+            {
+                type = SHORT;
+                length = ((short[])array).length;
+                size = 2;
+                buffer.asShortBuffer().put((short[])array);
+            }
+            else if (array instanceof char[])
+            {
+                type = CHAR;
+                length = ((char[])array).length;
+                size = 2;
+                buffer.asCharBuffer().put((char[])array);
+            }
+            else if (array instanceof int[])
+            {
+                type = INT;
+                length = ((int[])array).length;
+                size = 4;
+                buffer.asIntBuffer().put((int[])array);
+            }
+            else if (array instanceof float[])
+            {
+                type = FLOAT;
+                length = ((float[])array).length;
+                size = 4;
+                buffer.asFloatBuffer().put((float[])array);
+            }
+            else if (array instanceof long[])
+            {
+                type = LONG;
+                length = ((long[])array).length;
+                size = 8;
+                buffer.asLongBuffer().put((long[])array);
+            }
+            else if (array instanceof double[])
+            {
+                type = DOUBLE;
+                length = ((double[])array).length;
+                size = 8;
+                buffer.asDoubleBuffer().put((double[])array);
+            }
+            else
+            {
+                throw new IllegalArgumentException("Not an array of primitives: " + array);
+            }
+        }
+
+        final byte[] raw = buffer.array();
+        byte[] deflated = null;
+        int deflatedLength = 0;
+
+        if (compress && raw.length > 0)
+        {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try
+            {
+                deflater.setInput(shuffle(raw, size));
+                deflater.finish();
+                // Only worth it if we save at least an eighth
+                deflated = new byte[raw.length - raw.length / 8];
+                while (!deflater.finished() && deflatedLength < deflated.length)
+                {
+                    deflatedLength += deflater.deflate(deflated, deflatedLength,
+                            deflated.length - deflatedLength);
+                }
+                if (!deflater.finished())
+                {
+                    deflated = null;
+                }
+            }
+            finally
+            {
+                deflater.end();
+            }
+        }
+
+        dos.writeByte(type);
+        dos.writeInt(length);
+        if (deflated == null)
+        {
+            dos.writeByte(RAW);
+            dos.write(raw);
+        }
+        else
+        {
+            dos.writeByte(DEFLATED);
+            dos.writeInt(deflatedLength);
+            dos.write(deflated, 0, deflatedLength);
+        }
+    }
+
+    /**
+     * Reads a block written by write().
+     * @param dis the stream to read from
+     * @return the array of primitives held in the block
+     * @throws IOException if one is thrown by dis, or if the block is corrupt
+     */
+    public static Object read(final DataInputStream dis) throws IOException
+    {
+        final byte type = dis.readByte();
+        final int length = dis.readInt();
+        final byte codec = dis.readByte();
+        final int size;
+
+        switch (type)
+        {
+            case BYTE:
+                size = 1;
+                break;
+            case SHORT:
+            case CHAR:
+                size = 2;
+                break;
+            case INT:
+            case FLOAT:
+                size = 4;
+                break;
+            case LONG:
+            case DOUBLE:
+                size = 8;
+                break;
+            default:
+                throw new StreamCorruptedException("Unknown block type " + type);
+        }
+
+        if (length < 0 || (long)length * size > Integer.MAX_VALUE)
+        {
+            throw new StreamCorruptedException("Bad block length " + length);
+        }
+
+        byte[] raw = new byte[length * size];
+
+        if (codec == RAW)
+        {
+            dis.readFully(raw);
+        }
+        else if (codec == DEFLATED)
+        {
+            final byte[] deflated = new byte[dis.readInt()];
+            final Inflater inflater = new Inflater();
+            dis.readFully(deflated);
+            try
+            {
+                inflater.setInput(deflated);
+                if (inflater.inflate(raw) != raw.length || !inflater.finished())
+                {
+                    throw new StreamCorruptedException("Bad compressed block");
+                }
+            }
+            catch (DataFormatException dfe)
+            {
+                throw new StreamCorruptedException("Bad compressed block: " + dfe);
+            }
+            finally
+            {
+                inflater.end();
+            }
+            raw = unshuffle(raw, size);
+        }
+        else
+        {
+            throw new StreamCorruptedException("Unknown block codec " + codec);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(raw);
+
+        switch (type)
+        {
+            case BYTE:
+                return raw;
+            case SHORT:
+                final short[] s = new short[length];
+                buffer.asShortBuffer().get(s);
+                return s;
+            case CHAR:
+                final char[] c = new char[length];
+                buffer.asCharBuffer().get(c);
+                return c;
+            case INT:
+                final int[] i = new int[length];
+                buffer.asIntBuffer().get(i);
+                return i;
+            case FLOAT:
+                final float[] f = new float[length];
+                buffer.asFloatBuffer().get(f);
+                return f;
+            case LONG:
+                final long[] l = new long[length];
+                buffer.asLongBuffer().get(l);
+                return l;
+            default:
+                final double[] d = new double[length];
+                buffer.asDoubleBuffer().get(d);
+                return d;
+        }
+    }
+
+    /*
+     * Puts the first byte of every value first, then every second byte, and so on.
+     */
+    private static byte[] shuffle(final byte[] raw, final int size)
+    {
+        if (size == 1)
+        {
+            return raw;
+        }
+
+        final int n = raw.length / size;
+        final byte[] shuffled = new byte[raw.length];
+
+        for (int b = 0; b < size; ++b)
+        {
+            final int offset = b * n;
+            for (int i = 0; i < n; ++i)
+            {
+                shuffled[offset + i] = raw[i * size + b];
+            }
+        }
+
+        return shuffled;
+    }
+
+    private static byte[] unshuffle(final byte[] shuffled, final int size)
+    {
+        if (size == 1)
+        {
+            return shuffled;
+        }
+
+        final int n = shuffled.length / size;
+        final byte[] raw = new byte[shuffled.length];
+
+        for (int b = 0; b < size; ++b)
+        {
+            final int offset = b * n;
+            for (int i = 0; i < n; ++i)
+            {
+                raw[i * size + b] = shuffled[offset + i];
+            }
+        }
+
+        return raw;
+    }
+}
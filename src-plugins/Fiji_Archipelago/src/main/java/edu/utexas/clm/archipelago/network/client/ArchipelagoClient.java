@@ -307,6 +307,11 @@ public void handleMessage(final ClusterMessage cm) {
 
                 case GETID:
                     xc.queueMessage(MessageType.GETID, clientId);
+                    // A root node that sends its transport version can also handle frames.
+                    if (object instanceof Integer)
+                    {
+                        xc.requestFramedTransport((Integer)object);
+                    }
                     break;
 
 /*
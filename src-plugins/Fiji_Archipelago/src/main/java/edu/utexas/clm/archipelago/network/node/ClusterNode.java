@@ -58,6 +58,7 @@ public class ClusterNode implements TransceiverListener
     private final AtomicBoolean idSet, cpuSet;
     private ClusterNodeState state;
     private final Vector<NodeStateListener> stateListeners;
+    private final Vector<NodeThreadListener> threadListeners;
     private final TransceiverExceptionListener xcEListener;
     private final NodeManager manager;
 
@@ -82,6 +83,7 @@ public ClusterNode(final TransceiverExceptionListener tel, final NodeManager nod
         nodeID = -1;
         nodeParam = null;
         stateListeners = new Vector<NodeStateListener>();
+        threadListeners = new Vector<NodeThreadListener>();
         xcEListener = tel;
         manager = nodeManager;
     }
@@ -174,7 +176,8 @@ public synchronized void setIOStreams(final InputStream is, final OutputStream o
         FijiArchipelago.debug("Setting IO Streams for a new Cluster Node");
         
         xc = new MessageXC(is, os, this, xcEListener);
-        xc.queueMessage(MessageType.GETID);
+        // Older clients ignore the transport version, and never ask for frames.
+        xc.queueMessage(MessageType.GETID, MessageXC.TRANSPORT_VERSION);
         
         idSet.set(false);
         cpuSet.set(false);
@@ -250,6 +253,15 @@ public NodeManager.NodeParameters getParam()
         return nodeParam;
     }
 
+    /**
+     * @return the MessageXC used to communicate with the remote node, or null if the streams
+     * have not been set yet.
+     */
+    public MessageXC getMessageXC()
+    {
+        return xc;
+    }
+
     /*public void setShell(final NodeShell shell)
     {
         nodeParam.setShell(shell);
@@ -570,11 +582,17 @@ else if (xc.queueMessage(MessageType.CANCELJOB, id))
     
     private boolean removeProcess(ProcessManager pm)
     {
-        if (runningProcesses.containsKey(pm.getID()))
+        // Count the cores of the job that was sent, pm may be a stand-in for one that was lost
+        final ProcessManager running = runningProcesses.remove(pm.getID());
+        if (running != null)
         {
-            runningProcesses.remove(pm.getID());
             processHandlers.remove(pm.getID());
-            runningCores.addAndGet(-(pm.requestedCores(this)));
+            final int nThreads = running.requestedCores(this);
+            runningCores.addAndGet(-nThreads);
+            for (NodeThreadListener listener : threadListeners)
+            {
+                listener.threadsReleased(this, nThreads);
+            }
             return true;
         }
         else
@@ -614,6 +632,21 @@ public void removeListener(final NodeStateListener listener)
     {
         stateListeners.remove(listener);
     }
+
+    /**
+     * Adds a NodeThreadListener to the list of listeners that are notified whenever threads on
+     * this ClusterNode are released.
+     * @param listener a NodeThreadListener to register with the ClusterNode
+     */
+    public void addThreadListener(final NodeThreadListener listener)
+    {
+        threadListeners.add(listener);
+    }
+
+    public void removeThreadListener(final NodeThreadListener listener)
+    {
+        threadListeners.remove(listener);
+    }
     
     public ClusterNodeState getState()
     {
@@ -0,0 +1,143 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * 
+ * @author Larry Lindsey llindsey@clm.utexas.edu
+ */
+
+package edu.utexas.clm.archipelago.util;
+
+import edu.utexas.clm.archipelago.network.MessageXC;
+import edu.utexas.clm.archipelago.network.node.ClusterNode;
+
+/**
+ * A snapshot of the scheduling metrics of a ClusterNode: how many jobs it is running, how many
+ * threads it has available, how long the jobs sent to it had to wait in the queue, and how much
+ * has been sent to it.
+ */
+public class NodeMetrics
+{
+    private final long nodeID;
+    private final String host;
+    private final int runningJobs;
+    private final int availableThreads;
+    private final long dispatchedJobs;
+    private final double meanLatencyMillis;
+    private final double maxLatencyMillis;
+    private final boolean framed;
+    private final long messagesSent;
+    private final long framesSent;
+    private final long bytesSent;
+
+    public NodeMetrics(final ClusterNode node, final long dispatched,
+                       final long totalLatencyNanos, final long maxLatencyNanos)
+    {
+        nodeID = node.getID();
+        host = node.getHost();
+        runningJobs = node.getRunningProcesses().size();
+        availableThreads = node.numAvailableThreads();
+        dispatchedJobs = dispatched;
+        meanLatencyMillis = dispatched > 0 ? totalLatencyNanos / (dispatched * 1e6) : 0;
+        maxLatencyMillis = maxLatencyNanos / 1e6;
+
+        final MessageXC xc = node.getMessageXC();
+        framed = xc != null && xc.isFramed();
+        messagesSent = xc == null ? 0 : xc.getMessagesSent();
+        framesSent = xc == null ? 0 : xc.getFramesSent();
+        bytesSent = xc == null ? 0 : xc.getBytesSent();
+    }
+
+    public long getNodeID()
+    {
+        return nodeID;
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    /**
+     * @return the number of jobs that were running on the node when this snapshot was taken.
+     * Jobs wait in the Cluster's queue rather than on a node, see Cluster.getQueuedJobCount().
+     */
+    public int getRunningJobs()
+    {
+        return runningJobs;
+    }
+
+    public int getAvailableThreads()
+    {
+        return availableThreads;
+    }
+
+    /**
+     * @return the number of jobs that have been dispatched to the node so far.
+     */
+    public long getDispatchedJobs()
+    {
+        return dispatchedJobs;
+    }
+
+    /**
+     * @return the mean time, in milliseconds, between queueing a job and dispatching it to
+     * the node.
+     */
+    public double getMeanLatencyMillis()
+    {
+        return meanLatencyMillis;
+    }
+
+    /**
+     * @return the longest time, in milliseconds, between queueing a job and dispatching it to
+     * the node.
+     */
+    public double getMaxLatencyMillis()
+    {
+        return maxLatencyMillis;
+    }
+
+    /**
+     * @return true if messages are sent to the node in frames.
+     */
+    public boolean isFramed()
+    {
+        return framed;
+    }
+
+    public long getMessagesSent()
+    {
+        return messagesSent;
+    }
+
+    public long getFramesSent()
+    {
+        return framesSent;
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent;
+    }
+
+    public String toString()
+    {
+        return host + " (" + nodeID + "): " + runningJobs + " running, " + availableThreads +
+                " threads available, " + dispatchedJobs + " dispatched, latency mean " +
+                String.format("%.1f", meanLatencyMillis) + "ms, max " +
+                String.format("%.1f", maxLatencyMillis) + "ms, " + messagesSent +
+                " messages sent in " + (framed ? framesSent + " frames, " : "") +
+                bytesSent + " bytes";
+    }
+}
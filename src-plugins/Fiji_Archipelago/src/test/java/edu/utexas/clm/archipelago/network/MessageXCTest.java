@@ -0,0 +1,316 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+
+package edu.utexas.clm.archipelago.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import edu.utexas.clm.archipelago.compute.ProcessManager;
+import edu.utexas.clm.archipelago.data.ClusterMessage;
+import edu.utexas.clm.archipelago.listen.MessageType;
+import edu.utexas.clm.archipelago.listen.TransceiverExceptionListener;
+import edu.utexas.clm.archipelago.listen.TransceiverListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Verifies that messages and arrays of primitives survive the framed transport, and that a
+ * message that can't be read only takes itself down.
+ */
+public class MessageXCTest
+{
+    private static final long TIMEOUT = 10;
+
+    @Test
+    public void testPrimitiveBlocks() throws IOException
+    {
+        testPrimitiveBlocks(false);
+        testPrimitiveBlocks(true);
+    }
+
+    private void testPrimitiveBlocks(final boolean compress) throws IOException
+    {
+        final int n = 5000;
+        final byte[] b = new byte[n];
+        final short[] s = new short[n];
+        final char[] c = new char[n];
+        final int[] i = new int[n];
+        final float[] f = new float[n];
+        final long[] l = new long[n];
+        final double[] d = new double[n];
+        final double[] noise = new double[n];
+        final Random random = new Random(42);
+
+        for (int j = 0; j < n; ++j)
+        {
+            b[j] = (byte)(j / 64);
+            s[j] = (short)(1000 + j / 8);
+            c[j] = (char)('a' + j / 512);
+            i[j] = 100000 + j;
+            f[j] = j / 16f;
+            l[j] = 1l << 40 | j;
+            d[j] = j / 4.0;
+            noise[j] = random.nextGaussian();
+        }
+
+        for (final Object array : new Object[]{b, s, c, i, f, l, d, noise, new float[0]})
+        {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream dos = new DataOutputStream(bytes);
+            PrimitiveBlocks.write(dos, array, compress);
+            dos.flush();
+
+            // The codec follows the type and length. Only smooth data is worth compressing.
+            final byte[] block = bytes.toByteArray();
+            final boolean deflated = compress && array != noise &&
+                    PrimitiveBlocks.byteSize(array) > 0;
+            assertEquals(deflated ? 1 : 0, block[5]);
+
+            final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(block));
+            assertArrayEquals(array, PrimitiveBlocks.read(dis));
+            assertEquals(-1, dis.read());
+        }
+    }
+
+    @Test
+    public void testFrames() throws Exception
+    {
+        testFrames(false);
+        testFrames(true);
+    }
+
+    /**
+     * Sends a frame holding readable messages with large arrays and two messages that can't be
+     * read, one of them a job, through a MessageXC that is connected to itself.
+     */
+    private void testFrames(final boolean compress) throws Exception
+    {
+        final PipedInputStream in = new PipedInputStream(1 << 20);
+        final GateOutputStream out = new GateOutputStream(new PipedOutputStream(in));
+        final Listener listener = new Listener();
+        final MessageXC xc = new MessageXC(in, out, listener, listener, 100,
+                TimeUnit.MILLISECONDS);
+
+        try
+        {
+            xc.setCompression(compress);
+            xc.requestFramedTransport(MessageXC.TRANSPORT_VERSION);
+            while (!xc.isFramed())
+            {
+                Thread.sleep(10);
+            }
+
+            // Hold the first frame back, so that the rest of the messages go into the second one
+            out.close.set(true);
+            xc.queueMessage(MessageType.USER, "first");
+            assertTrue(out.entered.await(TIMEOUT, TimeUnit.SECONDS));
+
+            final float[] f = new float[3000];
+            final double[] d = new double[3000];
+            for (int j = 0; j < f.length; ++j)
+            {
+                f[j] = j / 8f;
+                d[j] = Math.sin(j);
+            }
+
+            xc.queueMessage(MessageType.USER, f);
+            xc.queueMessage(MessageType.USER, new Unreadable());
+            xc.queueMessage(MessageType.PROCESS,
+                    new ProcessManager<Object>(new Unreadable(), 7, 1, false));
+            xc.queueMessage(MessageType.USER, d);
+            out.open.countDown();
+
+            assertEquals("first", listener.poll().o);
+            assertArrayEquals(f, listener.poll().o);
+
+            final ClusterMessage error = listener.pollError();
+            assertEquals(MessageType.USER, error.type);
+            assertNull(error.o);
+
+            final ClusterMessage jobError = listener.pollError();
+            assertEquals(MessageType.PROCESS, jobError.type);
+            assertEquals(7, ((ProcessManager)jobError.o).getID());
+
+            // The lost job is handed on as failed
+            final ClusterMessage job = listener.poll();
+            assertEquals(MessageType.PROCESS, job.type);
+            assertEquals(7, ((ProcessManager)job.o).getID());
+            assertNotNull(((ProcessManager)job.o).getRemoteException());
+
+            assertArrayEquals(d, listener.poll().o);
+            assertEquals(2, xc.getFramesSent());
+            assertTrue(listener.messages.isEmpty());
+            assertTrue(listener.errors.isEmpty());
+        }
+        finally
+        {
+            out.open.countDown();
+            xc.close();
+            xc.join();
+        }
+    }
+
+    private static void assertArrayEquals(final Object expect, final Object actual)
+    {
+        assertNotNull(actual);
+        assertEquals(expect.getClass(), actual.getClass());
+        assertTrue(Arrays.deepEquals(new Object[]{expect}, new Object[]{actual}));
+    }
+
+    /**
+     * Can be written, but not read.
+     */
+    private static class Unreadable implements Callable<Object>, Serializable
+    {
+        private static final long serialVersionUID = 2741393205914537116L;
+
+        public Object call()
+        {
+            return null;
+        }
+
+        private void writeObject(final ObjectOutputStream oos) throws IOException
+        {
+            oos.writeInt(42);
+            oos.writeUTF("some data the reader does not get to");
+        }
+
+        private void readObject(final ObjectInputStream ois) throws IOException
+        {
+            ois.readInt();
+            throw new InvalidObjectException("Unreadable");
+        }
+    }
+
+    /**
+     * Blocks the first write after close is set, until open is counted down.
+     */
+    private static class GateOutputStream extends FilterOutputStream
+    {
+        private final AtomicBoolean close = new AtomicBoolean(false);
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch open = new CountDownLatch(1);
+
+        public GateOutputStream(final OutputStream os)
+        {
+            super(os);
+        }
+
+        private void pass() throws IOException
+        {
+            if (close.getAndSet(false))
+            {
+                entered.countDown();
+                try
+                {
+                    open.await();
+                }
+                catch (InterruptedException ie)
+                {
+                    throw new IOException("Interrupted");
+                }
+            }
+        }
+
+        public void write(final int b) throws IOException
+        {
+            pass();
+            out.write(b);
+        }
+
+        public void write(final byte[] b, final int off, final int len) throws IOException
+        {
+            pass();
+            out.write(b, off, len);
+        }
+    }
+
+    private static class Listener implements TransceiverListener, TransceiverExceptionListener
+    {
+        private final LinkedBlockingQueue<ClusterMessage> messages =
+                new LinkedBlockingQueue<ClusterMessage>();
+        private final LinkedBlockingQueue<ClusterMessage> errors =
+                new LinkedBlockingQueue<ClusterMessage>();
+        private volatile boolean closed = false;
+
+        public ClusterMessage poll() throws InterruptedException
+        {
+            final ClusterMessage message = messages.poll(TIMEOUT, TimeUnit.SECONDS);
+            assertNotNull("Timed out waiting for a message", message);
+            return message;
+        }
+
+        public ClusterMessage pollError() throws InterruptedException
+        {
+            final ClusterMessage message = errors.poll(TIMEOUT, TimeUnit.SECONDS);
+            assertNotNull("Timed out waiting for an error", message);
+            return message;
+        }
+
+        public void streamClosed()
+        {
+            closed = true;
+        }
+
+        public void handleMessage(final ClusterMessage cm)
+        {
+            messages.add(cm);
+        }
+
+        public void handleRXThrowable(final Throwable t, final MessageXC mxc,
+                                      final ClusterMessage message)
+        {
+            // Errors after closing are from the pipe going away
+            if (!closed)
+            {
+                errors.add(message == null ? new ClusterMessage(MessageType.ERROR) : message);
+            }
+        }
+
+        public void handleTXThrowable(final Throwable t, final MessageXC mxc,
+                                      final ClusterMessage message)
+        {
+            if (!closed)
+            {
+                errors.add(message == null ? new ClusterMessage(MessageType.ERROR) : message);
+            }
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package fiji.process3d;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
 
@@ -57,6 +56,9 @@
  * After this step, the list of parabolae is iterated to calculate
  * the values for g(x).
  *
+ * The calculation itself is done by DistanceTransform, which
+ * processes the lines of each dimension in parallel.
+ *
  * To make the Euclidean Distance Transform a signed one, the
  * stored function values can be positive or negative, but not
  * zero. For every row, effectively two different calculations
@@ -67,7 +69,6 @@
 public class SEDT implements PlugInFilter {
 	ImagePlus image;
 	int w, h, d;
-	int current, total;
 
 	public int setup(String arg, ImagePlus image) {
 		this.image = image;
@@ -82,199 +83,17 @@ public ImagePlus compute(ImageStack stack) {
 		w = stack.getWidth();
 		h = stack.getHeight();
 		d = stack.getSize();
-		ImageStack result = new ImageStack(w, h, d);
-		for (int i = 1; i <= d; i++)
-			result.setPixels(new float[w * h], i);
-
-		current = 0;
-		total = w * h * d * 3;
-
-		new Z(stack, result).compute();
-		new Y(result).compute();
-		new X(result).compute();
-
-		return new ImagePlus("EDT", result);
-	}
-
-	abstract class EDTBase {
-		int width;
-		/*
-		 * parabola k is defined by y[k] (v in the paper)
-		 * and f[k] (f(v[k]) in the paper): (y, f) is the
-		 * coordinate of the minimum of the parabola.
-		 * z[k] determines the left bound of the interval
-		 * in which the k-th parabola determines the lower
-		 * envelope.
-		 */
-
-		int kNeg, kPos;
-		float[] fNeg, fPos, zNeg, zPos;
-		int[] yNeg, yPos;
-
-		EDTBase(int rowWidth) {
-			width = rowWidth;
-			fNeg = new float[width + 1];
-			zNeg = new float[width + 1];
-			yNeg = new int[width + 1];
-			fPos = new float[width + 1];
-			zPos = new float[width + 1];
-			yPos = new int[width + 1];
-		}
-
-		final void computeRow() {
-			// calculate the parabolae ("lower envelope")
-			fNeg[0] = -Float.MAX_VALUE;
-			yNeg[0] = -1;
-			zNeg[0] = Float.MAX_VALUE;
-			kNeg = 0;
-			fPos[0] = Float.MAX_VALUE;
-			yPos[0] = -1;
-			zPos[0] = Float.MAX_VALUE;
-			kPos = 0;
-			float fx, fxNeg, fxPos, s;
-			for (int x = 0; x < width; x++) {
-				fx = get(x);
-				fxNeg = fx < 0 ? fx : 0f;
-				for (;;) {
-					// calculate the intersection
-					s = ((fxNeg - x * x) - (fNeg[kNeg] - yNeg[kNeg] * yNeg[kNeg])) / -2 / (x - yNeg[kNeg]);
-					if (s > zNeg[kNeg])
-						break;
-					if (--kNeg < 0)
-						break;
-				}
-				kNeg++;
-				yNeg[kNeg] = x;
-				fNeg[kNeg] = fxNeg;
-				zNeg[kNeg] = s;
-				fxPos = fx > 0 ? fx : 0f;
-				for (;;) {
-					// calculate the intersection
-					s = ((fxPos + x * x) - (fPos[kPos] + yPos[kPos] * yPos[kPos])) / 2 / (x - yPos[kPos]);
-					if (s > zPos[kPos])
-						break;
-					if (--kPos < 0)
-						break;
-				}
-				kPos++;
-				yPos[kPos] = x;
-				fPos[kPos] = fxPos;
-				zPos[kPos] = s;
-			}
-			zNeg[++kNeg] = Float.MAX_VALUE;
-			zPos[++kPos] = Float.MAX_VALUE;
-			// calculate g(x)
-			int iNeg = 0, iPos = 0;
-			for (int x = 0; x < width; x++) {
-				while (zNeg[iNeg + 1] < x)
-					iNeg++;
-				while (zPos[iPos + 1] < x)
-					iPos++;
-				if (get(x) < 0)
-					set(x, -(x - yNeg[iNeg]) * (x - yNeg[iNeg]) + fNeg[iNeg]);
-				else
-					set(x, (x - yPos[iPos]) * (x - yPos[iPos]) + fPos[iPos]);
-			}
-		}
-
-		abstract float get(int column);
-
-		abstract void set(int column, float value);
-
-		final void compute() {
-			while (nextRow()) {
-				computeRow();
-				if (total > 0) {
-					current += width;
-					IJ.showProgress(current, total);
-				}
-			}
-		}
-
-		abstract boolean nextRow();
-	}
-
-	class Z extends EDTBase {
-		byte[][] inSlice;
-		float[][] outSlice;
-		int offset;
-
-		Z(ImageStack in, ImageStack out) {
-			super(d);
-			inSlice = new byte[d][];
-			outSlice = new float[d][];
-			for (int i = 0; i < d; i++) {
-				inSlice[i] = (byte[])in.getPixels(i + 1);
-				outSlice[i] = (float[])out.getPixels(i + 1);
-			}
-			offset = -1;
-		}
-
-		final float get(int x) {
-			return inSlice[x][offset] == 0 ? -Float.MAX_VALUE : Float.MAX_VALUE;
+		DistanceTransform transform = new DistanceTransform(w, h, d);
+		transform.setSigned(true);
+		ImageStack result = transform.compute(stack);
+
+		// the border between background and foreground is at +/-0.5
+		for (int i = 1; i <= d; i++) {
+			float[] pixels = (float[])result.getPixels(i);
+			for (int j = 0; j < pixels.length; j++)
+				pixels[j] += pixels[j] < 0 ? 0.5f : -0.5f;
 		}
 
-		final void set(int x, float value) {
-			outSlice[x][offset] = value;
-		}
-
-		final boolean nextRow() {
-			return ++offset < w * h;
-		}
-	}
-
-	abstract class OneDimension extends EDTBase {
-		ImageStack stack;
-		float[] slice;
-		int offset, lastOffset, rowStride, columnStride, sliceIndex;
-
-		OneDimension(ImageStack out, boolean iterateX) {
-			super(iterateX ? w : h);
-			stack = out;
-			columnStride = iterateX ? 1 : w;
-			rowStride = iterateX ? w : 1;
-			offset = w * h;
-			lastOffset = rowStride * (iterateX ? h : w);
-			sliceIndex = -1;
-		}
-
-		final float get(int x) {
-			return slice[x * columnStride + offset];
-		}
-
-		final boolean nextRow() {
-			offset += rowStride;
-			if (offset >= lastOffset) {
-				if (++sliceIndex >= d)
-					return false;
-				offset = 0;
-				slice = (float[])stack.getPixels(sliceIndex + 1);
-			}
-			return true;
-		}
-	}
-
-	class Y extends OneDimension {
-		Y(ImageStack out) {
-			super(out, false);
-		}
-
-		final void set(int x, float value) {
-			slice[x * columnStride + offset] = value;
-		}
-	}
-
-	class X extends OneDimension {
-		X(ImageStack out) {
-			super(out, true);
-		}
-
-		final void set(int x, float value) {
-			if (value < 0)
-				value = 0.5f - (float)Math.sqrt(-value);
-			else
-				value = -0.5f + (float)Math.sqrt(value);
-			slice[x * columnStride + offset] = value;
-		}
+		return new ImagePlus("EDT", result);
 	}
 }
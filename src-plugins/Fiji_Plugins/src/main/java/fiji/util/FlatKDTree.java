@@ -0,0 +1,453 @@
+package fiji.util;
+
+import ij.Prefs;
+
+import java.lang.reflect.Array;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fiji.util.node.Leaf;
+
+/**
+ * A KD-tree of {@link Leaf} elements which stores the coordinates in one
+ * flat array, without any node objects.
+ *
+ * The tree is implicit: the subtree covering the index range [lo, hi)
+ * has its splitting element at mid = (lo + hi) / 2, the left subtree
+ * covers [lo, mid) and the right one [mid + 1, hi). As in {@link KDTree},
+ * the splitting axis is the depth modulo the dimension. The elements are
+ * arranged in this order by selecting the median of every range (in
+ * parallel for the upper levels), so the tree is balanced.
+ *
+ * Unlike {@link KDTree}, duplicates are kept in the tree.
+ *
+ * Searches go through a {@link Query}, which holds all the buffers it
+ * needs, so that repeated searches do not allocate anything. The batch
+ * methods distribute many searches over several threads, each with its
+ * own Query.
+ */
+public class FlatKDTree<T extends Leaf<T>>
+{
+	/* do not hand off smaller ranges to another thread */
+	final protected static int MIN_PARALLEL_SIZE = 4096;
+	/* number of queries a thread of the batch methods picks up at a time */
+	final protected static int CHUNK_SIZE = 256;
+
+	final protected int dimension, size;
+	/* the k'th coordinate of the element at index i is at i * dimension + k */
+	final protected double[] coordinates;
+	final protected T[] leaves;
+	protected int numThreads;
+
+	public FlatKDTree(final List<T> leaves) {
+		this(leaves, Prefs.getThreads());
+	}
+
+	public FlatKDTree(final List<T> leaves, final int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+		this.size = leaves.size();
+		this.dimension = leaves.get( 0 ).getNumDimensions();
+
+		final double[] source = new double[size * dimension];
+		int i = 0;
+		for (final T leaf : leaves) {
+			if (leaf.getNumDimensions() != dimension)
+				throw new RuntimeException("Dimensionality of nodes is not preserved, first entry has dimensionality " + dimension + " entry " + i + " has dimensionality " + leaf.getNumDimensions() );
+			for (int k = 0; k < dimension; k++)
+				source[i * dimension + k] = leaf.get(k);
+			++i;
+		}
+
+		final int[] order = new int[size];
+		for (i = 0; i < size; i++)
+			order[i] = i;
+		int parallelLevels = 0;
+		while ((1 << parallelLevels) < this.numThreads)
+			parallelLevels++;
+		build(order, source, 0, size, 0, parallelLevels);
+
+		coordinates = new double[size * dimension];
+		this.leaves = leaves.get( 0 ).createArray(size);
+		for (i = 0; i < size; i++) {
+			System.arraycopy(source, order[i] * dimension, coordinates, i * dimension, dimension);
+			this.leaves[i] = leaves.get(order[i]);
+		}
+	}
+
+	/*
+	 * Arranges order[lo..hi-1] such that the element in the middle is the
+	 * median along the splitting axis, and recurses into both halves. The
+	 * left halves of the first parallelLevels levels get their own thread.
+	 */
+	protected void build(final int[] order, final double[] source, final int lo, final int hi, final int depth, final int parallelLevels) {
+		if (hi - lo < 2)
+			return;
+		final int mid = (lo + hi) >>> 1;
+		select(order, source, dimension, depth % dimension, lo, hi - 1, mid);
+
+		if (parallelLevels > 0 && hi - lo >= MIN_PARALLEL_SIZE) {
+			final Thread left = new Thread() {
+				public void run() {
+					build(order, source, lo, mid, depth + 1, parallelLevels - 1);
+				}
+			};
+			left.start();
+			build(order, source, mid + 1, hi, depth + 1, parallelLevels - 1);
+			try {
+				left.join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException("Interrupted", e);
+			}
+		}
+		else {
+			build(order, source, lo, mid, depth + 1, 0);
+			build(order, source, mid + 1, hi, depth + 1, 0);
+		}
+	}
+
+	/*
+	 * Hoare's selection: afterwards, order[nth] is the element which would
+	 * be there if order[lo..hi] (inclusive) was sorted by the k'th
+	 * coordinate, no element before it is larger and none after it is
+	 * smaller.
+	 */
+	protected static void select(final int[] order, final double[] source, final int dimension, final int k, int lo, int hi, final int nth) {
+		while (hi > lo) {
+			final double a = source[order[lo] * dimension + k];
+			final double b = source[order[(lo + hi) >>> 1] * dimension + k];
+			final double c = source[order[hi] * dimension + k];
+			final double pivot = a < b ? (b < c ? b : (a < c ? c : a)) : (a < c ? a : (b < c ? c : b));
+
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (source[order[i] * dimension + k] < pivot)
+					i++;
+				while (source[order[j] * dimension + k] > pivot)
+					j--;
+				if (i <= j) {
+					final int swap = order[i];
+					order[i] = order[j];
+					order[j] = swap;
+					i++;
+					j--;
+				}
+			}
+
+			if (nth <= j)
+				hi = j;
+			else if (nth >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void setNumThreads(final int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Creates a Query for the n nearest neighbors. A Query must not be
+	 * shared between threads.
+	 */
+	public Query createQuery(final int n) {
+		return new Query(n);
+	}
+
+	public T findNearestNeighbor(final T point) {
+		final Query query = new Query(1);
+		query.search(point);
+		return query.get(0);
+	}
+
+	/**
+	 * Returns the n nearest neighbors sorted by distance, or all elements
+	 * if there are fewer than n.
+	 */
+	public T[] findNNearestNeighbors(final T point, final int n) {
+		return new Query(n).findNNearestNeighbors(point);
+	}
+
+	public ArrayList<T> findNeighborsUnsorted(final T point, final double radius) {
+		final Query query = new Query(1);
+		final int count = query.searchRadius(point, radius);
+		final ArrayList<T> result = new ArrayList<T>(count);
+		for (int i = 0; i < count; i++)
+			result.add(query.get(i));
+		return result;
+	}
+
+	/**
+	 * Finds the n nearest neighbors of all the given points, using as
+	 * many threads as set.
+	 */
+	public T[][] findNNearestNeighbors(final List<T> points, final int n) {
+		final Object[] result = new Object[points.size()];
+		runBatch(points.size(), new BatchSearch() {
+			public void search(final Query query, final int i) {
+				result[i] = query.findNNearestNeighbors(points.get(i));
+			}
+		}, n);
+		final T[][] neighbors = (T[][])Array.newInstance(leaves.getClass(), result.length);
+		for (int i = 0; i < result.length; i++)
+			neighbors[i] = (T[])result[i];
+		return neighbors;
+	}
+
+	/**
+	 * Finds the (unsorted) neighbors within the radius of all the given
+	 * points, using as many threads as set.
+	 */
+	public List<ArrayList<T>> findNeighborsUnsorted(final List<T> points, final double radius) {
+		final List<ArrayList<T>> result = new ArrayList<ArrayList<T>>(points.size());
+		for (int i = 0; i < points.size(); i++)
+			result.add(null);
+		runBatch(points.size(), new BatchSearch() {
+			public void search(final Query query, final int i) {
+				final int count = query.searchRadius(points.get(i), radius);
+				final ArrayList<T> list = new ArrayList<T>(count);
+				for (int j = 0; j < count; j++)
+					list.add(query.get(j));
+				result.set(i, list);
+			}
+		}, 1);
+		return result;
+	}
+
+	protected abstract class BatchSearch {
+		public abstract void search(final Query query, final int i);
+	}
+
+	protected void runBatch(final int count, final BatchSearch batch, final int n) {
+		final AtomicInteger next = new AtomicInteger(0);
+		final Thread[] threads = new Thread[Math.max(1, Math.min(numThreads, (count + CHUNK_SIZE - 1) / CHUNK_SIZE))];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					final Query query = new Query(n);
+					for (int start = next.getAndAdd(CHUNK_SIZE); start < count; start = next.getAndAdd(CHUNK_SIZE)) {
+						final int stop = Math.min(count, start + CHUNK_SIZE);
+						for (int i = start; i < stop; i++)
+							batch.search(query, i);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		try {
+			for (int t = 0; t < threads.length; t++)
+				threads[t].join();
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Interrupted", e);
+		}
+	}
+
+	/**
+	 * A reusable search for the n nearest neighbors, or for the neighbors
+	 * within a radius.
+	 *
+	 * The n nearest candidates are kept in a max-heap of squared
+	 * distances, so that the current worst one can be replaced in
+	 * logarithmic time; the heap is sorted in place after the search.
+	 * Distances are calculated only once per visited element.
+	 */
+	public class Query
+	{
+		final protected int n, capacity;
+		final protected double[] position;
+		/* indices and squared distances of the results */
+		protected int[] found;
+		protected double[] distances;
+		protected int count;
+		protected double radius2;
+
+		protected Query(final int n) {
+			if (n < 1)
+				throw new IllegalArgumentException("Need to search for at least one neighbor: " + n);
+			this.n = n;
+			position = new double[dimension];
+			capacity = Math.min(n, size);
+			found = new int[capacity];
+			distances = new double[capacity];
+		}
+
+		/**
+		 * Searches the n nearest neighbors, returning how many were found
+		 * (n unless the tree has fewer elements). They are accessible
+		 * through get() and getDistance(), sorted by distance.
+		 */
+		public int search(final T point) {
+			setPosition(point);
+			count = 0;
+			searchNearest(0, size, 0);
+
+			// heap sort
+			for (int end = count - 1; end > 0; end--) {
+				swap(0, end);
+				siftDown(0, end);
+			}
+			return count;
+		}
+
+		/**
+		 * Searches all neighbors within the given radius, returning how
+		 * many were found. They are accessible through get() and
+		 * getDistance(), in no particular order.
+		 */
+		public int searchRadius(final T point, final double radius) {
+			setPosition(point);
+			count = 0;
+			radius2 = radius * radius;
+			searchRadius(0, size, 0);
+			return count;
+		}
+
+		public T[] findNNearestNeighbors(final T point) {
+			final T[] result = point.createArray(search(point));
+			for (int i = 0; i < result.length; i++)
+				result[i] = leaves[found[i]];
+			return result;
+		}
+
+		public T get(final int i) {
+			return leaves[found[i]];
+		}
+
+		public double getDistance(final int i) {
+			return Math.sqrt(distances[i]);
+		}
+
+		public double getSquaredDistance(final int i) {
+			return distances[i];
+		}
+
+		protected void setPosition(final T point) {
+			if (point.getNumDimensions() != dimension)
+				throw new IllegalArgumentException("Dimensionality of the point (" + point.getNumDimensions() + ") does not match the tree (" + dimension + ")");
+			for (int k = 0; k < dimension; k++)
+				position[k] = point.get(k);
+		}
+
+		protected double squaredDistance(final int index) {
+			double result = 0;
+			for (int k = 0, i = index * dimension; k < dimension; k++, i++) {
+				final double diff = coordinates[i] - position[k];
+				result += diff * diff;
+			}
+			return result;
+		}
+
+		protected void searchNearest(int lo, int hi, int depth) {
+			while (lo < hi) {
+				final int mid = (lo + hi) >>> 1;
+				final double diff = position[depth % dimension] - coordinates[mid * dimension + depth % dimension];
+				offer(mid);
+				depth++;
+				// descend into the side of the point first
+				if (diff < 0) {
+					searchNearest(lo, mid, depth);
+					lo = mid + 1;
+				}
+				else {
+					searchNearest(mid + 1, hi, depth);
+					hi = mid;
+				}
+				// the other side can only contain better ones if the plane is close enough
+				if (count == capacity && diff * diff >= distances[0])
+					return;
+			}
+		}
+
+		protected void offer(final int index) {
+			final double distance = squaredDistance(index);
+			if (count < capacity) {
+				// sift up
+				int i = count++;
+				while (i > 0) {
+					final int parent = (i - 1) >>> 1;
+					if (distances[parent] >= distance)
+						break;
+					found[i] = found[parent];
+					distances[i] = distances[parent];
+					i = parent;
+				}
+				found[i] = index;
+				distances[i] = distance;
+			}
+			else if (distance < distances[0]) {
+				found[0] = index;
+				distances[0] = distance;
+				siftDown(0, count);
+			}
+		}
+
+		protected void siftDown(int i, final int end) {
+			for (;;) {
+				int child = 2 * i + 1;
+				if (child >= end)
+					return;
+				if (child + 1 < end && distances[child + 1] > distances[child])
+					child++;
+				if (distances[i] >= distances[child])
+					return;
+				swap(i, child);
+				i = child;
+			}
+		}
+
+		protected void swap(final int i, final int j) {
+			final int index = found[i];
+			found[i] = found[j];
+			found[j] = index;
+			final double distance = distances[i];
+			distances[i] = distances[j];
+			distances[j] = distance;
+		}
+
+		protected void searchRadius(int lo, int hi, int depth) {
+			while (lo < hi) {
+				final int mid = (lo + hi) >>> 1;
+				final double diff = position[depth % dimension] - coordinates[mid * dimension + depth % dimension];
+				final double distance = squaredDistance(mid);
+				if (distance <= radius2)
+					add(mid, distance);
+				depth++;
+				if (diff * diff > radius2) {
+					// only the side of the point can contain neighbors
+					if (diff < 0)
+						hi = mid;
+					else
+						lo = mid + 1;
+				}
+				else {
+					searchRadius(lo, mid, depth);
+					lo = mid + 1;
+				}
+			}
+		}
+
+		protected void add(final int index, final double distance) {
+			if (count == found.length) {
+				final int[] newFound = new int[Math.max(16, 2 * count)];
+				System.arraycopy(found, 0, newFound, 0, count);
+				found = newFound;
+				final double[] newDistances = new double[newFound.length];
+				System.arraycopy(distances, 0, newDistances, 0, count);
+				distances = newDistances;
+			}
+			found[count] = index;
+			distances[count++] = distance;
+		}
+	}
+}
@@ -152,6 +152,89 @@ protected static boolean testNearestNeighbor(final int numDimensions, final int
 		return true;
 	}
 
+	protected static boolean testFlatKDTree(final int neighbors, final int numDimensions, final int numPoints, final int numTests, final float min, final float max) {
+		final ArrayList<SimpleNode> points = new ArrayList<SimpleNode>();
+		final Random rnd = new Random(435435435);
+
+		final float[] p = new float[numDimensions];
+
+		for (int i = 0; i < numPoints; ++i) {
+			for (int d = 0; d < numDimensions; ++d)
+				p[d] = rnd.nextFloat() * (max - min) + min;
+
+			final SimpleNode t = new SimpleNode(p);
+			points.add(t);
+		}
+
+		long start = System.currentTimeMillis();
+		final FlatKDTree<SimpleNode> kdTree = new FlatKDTree<SimpleNode>(points);
+		final long kdSetupTime = System.currentTimeMillis() - start;
+		System.out.println("flat kdtree setup took: " + kdSetupTime + " ms.");
+
+		final ArrayList<SimpleNode> queries = new ArrayList<SimpleNode>();
+		for (int i = 0; i < numTests; ++i) {
+			for (int d = 0; d < numDimensions; ++d)
+				p[d] = rnd.nextFloat() * (2*max - 2*min) + 2*min;
+			queries.add(new SimpleNode(p));
+		}
+
+		final FlatKDTree<SimpleNode>.Query query = kdTree.createQuery(neighbors);
+		final float radius = (max - min) / 10;
+		for (final SimpleNode t : queries) {
+			final SimpleNode nnKdtree = kdTree.findNearestNeighbor(t);
+			final SimpleNode nnExhaustive = findNearestNeighborExhaustive(points, t);
+			if (!nnKdtree.equals(nnExhaustive)) {
+				System.out.println("Nearest neighbor to: " + t);
+				System.out.println("Flat KD-Tree says: " + nnKdtree);
+				System.out.println("Exhaustive says: " + nnExhaustive);
+				return false;
+			}
+
+			final int count = query.search(t);
+			final SimpleNode[] nnExhaustiveN = findNNearestNeighborExhaustive(points, t, neighbors);
+			for (int j = 0; j < count; ++j) {
+				if (!query.get(j).equals(nnExhaustiveN[j])) {
+					System.out.println((j+1) + " - Nearest neighbor to: " + t);
+					System.out.println("Flat KD-Tree says: " + query.get(j) + " (" + query.getDistance(j) + ")");
+					System.out.println("Exhaustive says: " + nnExhaustiveN[j] + " (" + nnExhaustiveN[j].distanceTo(t) + ")");
+					return false;
+				}
+			}
+
+			int within = 0;
+			for (final SimpleNode node : points)
+				if (node.distanceTo(t) <= radius)
+					within++;
+			final ArrayList<SimpleNode> radiusKdtree = kdTree.findNeighborsUnsorted(t, radius);
+			for (final SimpleNode node : radiusKdtree)
+				if (node.distanceTo(t) > radius)
+					within = -1;
+			if (radiusKdtree.size() != within) {
+				System.out.println("Neighbors within " + radius + " of " + t + ": " + radiusKdtree.size() + " instead of " + within);
+				return false;
+			}
+		}
+
+		start = System.currentTimeMillis();
+		for (final SimpleNode t : queries)
+			query.search(t);
+		System.out.println("flat kdtree search took: " + (System.currentTimeMillis() - start) + " ms.");
+
+		start = System.currentTimeMillis();
+		final SimpleNode[][] batch = kdTree.findNNearestNeighbors(queries, neighbors);
+		System.out.println("flat kdtree batch search took: " + (System.currentTimeMillis() - start) + " ms.");
+		for (int i = 0; i < numTests; ++i) {
+			query.search(queries.get(i));
+			for (int j = 0; j < neighbors; ++j)
+				if (batch[i][j] != query.get(j)) {
+					System.out.println("Batch search differs for " + queries.get(i));
+					return false;
+				}
+		}
+
+		return true;
+	}
+
 	private static SimpleNode findNearestNeighborExhaustive(final ArrayList<SimpleNode> points, final SimpleNode t) {
 		float minDistance = Float.MAX_VALUE;
 		SimpleNode nearest = null;
@@ -202,6 +285,9 @@ public static void main(String[] args) {
 		if (testNearestNeighbor(3, 100000, 1000, -5, 5))
 			System.out.println("Nearest neighbor test successfull\n");
 
+		if (testFlatKDTree(3, 3, 100000, 1000, -5, 5))
+			System.out.println("Flat KD-Tree test successfull\n");
+
 		final ArrayList<SimpleNode> points = new ArrayList<SimpleNode>();
 
 		points.add(new SimpleNode(new float[]{ 1, 1, 0 }));
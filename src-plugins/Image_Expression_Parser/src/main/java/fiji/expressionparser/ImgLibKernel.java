@@ -0,0 +1,371 @@
+package fiji.expressionparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Stack;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.multithreading.Chunk;
+import mpicbg.imglib.multithreading.SimpleMultiThreading;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.nfunk.jep.ASTFunNode;
+import org.nfunk.jep.Node;
+import org.nfunk.jep.ParseException;
+import org.nfunk.jep.function.PostfixMathCommandI;
+
+import fiji.expressionparser.function.ImgLibFunction;
+import fiji.expressionparser.function.SingleOperandPixelBasedAbstractFunction;
+import fiji.expressionparser.function.TwoOperandsPixelBasedAbstractFunction;
+
+/**
+ * Evaluates a parsed expression by fusing its pixel-based functions into
+ * per-pixel kernels.
+ * <p>
+ * Evaluated operator by operator, each pixel-based function
+ * ({@link SingleOperandPixelBasedAbstractFunction}, {@link TwoOperandsPixelBasedAbstractFunction})
+ * iterates over its operands and creates a new image for its result, so that
+ * an expression such as <code>(A-B)/(A+B)*C</code> makes several passes over
+ * the memory and creates several temporary images. Here, every subtree made of
+ * pixel-based functions only is compiled into one kernel, that computes the
+ * whole subtree pixel per pixel, in a single pass over its source images and
+ * without intermediate images. The pixels are split in chunks of at least
+ * {@link #MIN_CHUNK_SIZE} pixels that are processed in parallel, by at most
+ * {@link ImgLibParser#getNumThreads()} threads.
+ * <p>
+ * Other functions, such as gaussian convolution, are evaluated as before, and
+ * their results are fed to the kernels as source images. Each function of a
+ * kernel is still computed by its own <code>evaluate</code> method, so the
+ * result is the same as the operator by operator evaluation.
+ *
+ * @see ImgLibParser#setFusedEvaluation(boolean)
+ */
+public class ImgLibKernel {
+
+	/** Minimal number of pixels processed by one thread. */
+	public static final long MIN_CHUNK_SIZE = 1 << 16;
+
+	private final ImgLibParser<?> parser;
+
+	public ImgLibKernel(final ImgLibParser<?> parser) {
+		this.parser = parser;
+	}
+
+	/**
+	 * Evaluate the expression represented by the given node.
+	 * @param node  the root of the parsed expression
+	 * @return  an {@link Image} of {@link FloatType} or a {@link FloatType}, as
+	 * the operator by operator evaluation
+	 */
+	public Object evaluate(final Node node) throws ParseException {
+		if (!isPixelBased(node)) {
+			if (node instanceof ASTFunNode && ((ASTFunNode) node).getPFMC() instanceof ImgLibFunction<?>)
+				return evaluateFunction((ASTFunNode) node);
+			return parser.evaluatePerOperator(node);
+		}
+
+		final List<Image<?>> sources = new ArrayList<Image<?>>();
+		final Op kernel = compile(node, sources);
+		if (kernel instanceof Constant)
+			return ((Constant) kernel).value;
+
+		// Only images of the same size can be read with the same pixel index
+		final int[] dims = sources.get(0).getDimensions();
+		for (Image<?> source : sources) {
+			if (!Arrays.equals(dims, source.getDimensions()))
+				return parser.evaluatePerOperator(node);
+		}
+		return run(kernel, sources);
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static boolean isPixelBased(final Node node) {
+		if (!(node instanceof ASTFunNode))
+			return false;
+		final PostfixMathCommandI function = ((ASTFunNode) node).getPFMC();
+		return (function instanceof SingleOperandPixelBasedAbstractFunction<?> && node.jjtGetNumChildren() == 1)
+			|| (function instanceof TwoOperandsPixelBasedAbstractFunction<?> && node.jjtGetNumChildren() == 2);
+	}
+
+	/**
+	 * Evaluate a function that is not pixel-based on its evaluated arguments, the same
+	 * way the JEP evaluator does.
+	 */
+	@SuppressWarnings("unchecked")
+	private Object evaluateFunction(final ASTFunNode node) throws ParseException {
+		final PostfixMathCommandI function = node.getPFMC();
+		final Stack<Object> stack = new Stack<Object>();
+		for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+			stack.push(evaluate(node.jjtGetChild(i)));
+		}
+		if (function.getNumberOfParameters() == -1) {
+			function.setCurNumberOfParameters(node.jjtGetNumChildren());
+		}
+		function.run(stack);
+		return stack.pop();
+	}
+
+	/**
+	 * Compile a pixel-based node into a kernel. Sub-expressions that only involve
+	 * numbers are computed right away.
+	 * @param sources  the images read by the kernel, new ones are added to it
+	 */
+	private Op compile(final Node node, final List<Image<?>> sources) throws ParseException {
+		final PostfixMathCommandI function = ((ASTFunNode) node).getPFMC();
+		final Op op;
+		boolean constant = true;
+
+		if (function instanceof SingleOperandPixelBasedAbstractFunction<?>) {
+			final SingleOperandPixelBasedAbstractFunction<?> f = (SingleOperandPixelBasedAbstractFunction<?>) function;
+			final Op operand = compileOperand(node.jjtGetChild(0), f.getFunctionString(), "", sources);
+			constant = operand instanceof Constant;
+			op = new SingleOperand(f, operand);
+		} else {
+			final TwoOperandsPixelBasedAbstractFunction<?> f = (TwoOperandsPixelBasedAbstractFunction<?>) function;
+			final Op operand1 = compileOperand(node.jjtGetChild(0), f.getFunctionString(), " 1", sources);
+			final Op operand2 = compileOperand(node.jjtGetChild(1), f.getFunctionString(), " 2", sources);
+			constant = operand1 instanceof Constant && operand2 instanceof Constant;
+			op = new TwoOperands(f, operand1, operand2);
+		}
+
+		if (constant)
+			return new Constant(new FloatType(op.get().getRealFloat()));
+		return op;
+	}
+
+	private Op compileOperand(final Node node, final String function_string, final String operand_number,
+			final List<Image<?>> sources) throws ParseException {
+		if (isPixelBased(node))
+			return compile(node, sources);
+
+		final Object value = evaluate(node);
+		if (value instanceof Image<?>) {
+			int index = 0;
+			while (index < sources.size() && sources.get(index) != value)
+				index++;
+			if (index == sources.size())
+				sources.add((Image<?>) value);
+			return new Source(index, null);
+		} else if (value instanceof RealType<?>) {
+			return new Constant((RealType<?>) value);
+		} else if (value instanceof Number) {
+			return new Constant(new FloatType(((Number) value).floatValue()));
+		}
+		throw new ParseException("In function '" + function_string
+				+"': Bad type of operand"+operand_number+": "+value.getClass().getSimpleName() );
+	}
+
+	/**
+	 * Compute the kernel over all pixels, in parallel.
+	 */
+	private Image<FloatType> run(final Op kernel, final List<Image<?>> sources) throws ParseException {
+		// Create target image
+		final Image<?> first = sources.get(0);
+		final Image<FloatType> result = new ImageFactory<FloatType>(new FloatType(), first.getContainerFactory())
+			.createImage(first.getDimensions(), first.getName());
+
+		// Check if all Containers are compatibles
+		boolean compatible = true;
+		for (Image<?> source : sources) {
+			compatible = compatible && result.getContainer().compareStorageContainerCompatibility(source.getContainer());
+		}
+		final boolean compatible_containers = compatible;
+
+		final long size = result.getNumPixels();
+		final int num_threads = (int) Math.max(1, Math.min(parser.getNumThreads(), size / MIN_CHUNK_SIZE));
+		if (num_threads == 1) {
+			computeChunk(kernel, sources, result, compatible_containers, 0, size);
+			return result;
+		}
+
+		final Vector<Chunk> chunks = SimpleMultiThreading.divideIntoChunks(size, num_threads);
+		final Thread[] threads = SimpleMultiThreading.newThreads(num_threads);
+		final AtomicInteger ai = new AtomicInteger(0);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		for (int ithread = 0; ithread < threads.length; ithread++) {
+			threads[ithread] = new Thread(new Runnable() {
+				public void run() {
+					final Chunk chunk = chunks.get(ai.getAndIncrement());
+					try {
+						computeChunk(kernel, sources, result, compatible_containers,
+								chunk.getStartPosition(), chunk.getLoopSize());
+					} catch (Throwable t) {
+						error.compareAndSet(null, t);
+					}
+				}
+			});
+		}
+		SimpleMultiThreading.startAndJoin(threads);
+
+		final Throwable t = error.get();
+		if (t instanceof ParseException)
+			throw (ParseException) t;
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		return result;
+	}
+
+	/**
+	 * Compute the kernel over <code>loop_size</code> pixels, starting at pixel
+	 * index <code>start</code>, with a copy of the kernel reading its own cursors.
+	 */
+	private static void computeChunk(final Op kernel, final List<Image<?>> sources, final Image<FloatType> result,
+			final boolean compatible_containers, final long start, final long loop_size) throws ParseException {
+		final Cursor<?>[] cursors = new Cursor<?>[sources.size()];
+
+		if (compatible_containers) {
+
+			final Cursor<FloatType> rc = result.createCursor();
+			for (int i = 0; i < cursors.length; i++) {
+				cursors[i] = sources.get(i).createCursor();
+			}
+			final Op op = kernel.copy(cursors);
+			try {
+				if (start > 0) {
+					rc.fwd(start);
+					for (Cursor<?> c : cursors)
+						c.fwd(start);
+				}
+				for (long j = 0; j < loop_size; j++) {
+					rc.fwd();
+					for (Cursor<?> c : cursors)
+						c.fwd();
+					rc.getType().set( op.get().getRealFloat() );
+				}
+			} finally {
+				rc.close();
+				for (Cursor<?> c : cursors)
+					c.close();
+			}
+
+		} else {
+
+			final LocalizableCursor<FloatType> rc = result.createLocalizableCursor();
+			final LocalizableByDimCursor<?>[] lcs = new LocalizableByDimCursor<?>[cursors.length];
+			for (int i = 0; i < cursors.length; i++) {
+				cursors[i] = lcs[i] = sources.get(i).createLocalizableByDimCursor();
+			}
+			final Op op = kernel.copy(cursors);
+			try {
+				if (start > 0)
+					rc.fwd(start);
+				for (long j = 0; j < loop_size; j++) {
+					rc.fwd();
+					for (LocalizableByDimCursor<?> c : lcs)
+						c.setPosition(rc);
+					rc.getType().set( op.get().getRealFloat() );
+				}
+			} finally {
+				rc.close();
+				for (Cursor<?> c : cursors)
+					c.close();
+			}
+
+		}
+	}
+
+	/*
+	 * KERNEL OPERATIONS
+	 */
+
+	/**
+	 * One node of a compiled kernel.
+	 */
+	private static abstract class Op {
+		/** Return the value of this node at the current pixel. */
+		abstract RealType<?> get() throws ParseException;
+		/** Return a copy of this node, whose sources read the given cursors. */
+		abstract Op copy(Cursor<?>[] cursors);
+	}
+
+	private static final class Constant extends Op {
+		private final RealType<?> value;
+
+		Constant(final RealType<?> value) {
+			this.value = value;
+		}
+
+		RealType<?> get() {
+			return value;
+		}
+
+		Op copy(final Cursor<?>[] cursors) {
+			return this;
+		}
+	}
+
+	private static final class Source extends Op {
+		private final int index;
+		private final Cursor<?> cursor;
+
+		Source(final int index, final Cursor<?> cursor) {
+			this.index = index;
+			this.cursor = cursor;
+		}
+
+		RealType<?> get() {
+			return (RealType<?>) cursor.getType();
+		}
+
+		Op copy(final Cursor<?>[] cursors) {
+			return new Source(index, cursors[index]);
+		}
+	}
+
+	private static final class SingleOperand extends Op {
+		private final SingleOperandPixelBasedAbstractFunction<?> function;
+		private final Op operand;
+		private final FloatType value = new FloatType();
+
+		SingleOperand(final SingleOperandPixelBasedAbstractFunction<?> function, final Op operand) {
+			this.function = function;
+			this.operand = operand;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		RealType<?> get() throws ParseException {
+			value.set( function.evaluate((RealType) operand.get()) );
+			return value;
+		}
+
+		Op copy(final Cursor<?>[] cursors) {
+			return new SingleOperand(function, operand.copy(cursors));
+		}
+	}
+
+	private static final class TwoOperands extends Op {
+		private final TwoOperandsPixelBasedAbstractFunction<?> function;
+		private final Op operand1, operand2;
+		private final FloatType value = new FloatType();
+
+		TwoOperands(final TwoOperandsPixelBasedAbstractFunction<?> function, final Op operand1, final Op operand2) {
+			this.function = function;
+			this.operand1 = operand1;
+			this.operand2 = operand2;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		RealType<?> get() throws ParseException {
+			value.set( function.evaluate((RealType) operand1.get(), (RealType) operand2.get()) );
+			return value;
+		}
+
+		Op copy(final Cursor<?>[] cursors) {
+			return new TwoOperands(function, operand1.copy(cursors), operand2.copy(cursors));
+		}
+	}
+}
@@ -5,6 +5,8 @@
 import mpicbg.imglib.type.numeric.RealType;
 
 import org.nfunk.jep.JEP;
+import org.nfunk.jep.Node;
+import org.nfunk.jep.ParseException;
 import org.nfunk.jep.type.NumberFactory;
 
 import fiji.expressionparser.function.ImgLibAbs;
@@ -30,6 +32,11 @@
 
 public class ImgLibParser <T extends RealType<T>> extends JEP {
 
+	/** If true, pixel-based functions are evaluated together, see {@link ImgLibKernel}. */
+	protected boolean fused_evaluation = true;
+	/** Maximal number of threads used by the fused evaluation. */
+	protected int num_threads = Runtime.getRuntime().availableProcessors();
+
 	/**
 	 * Creates a default ImgLib expression parser, with ImgLib operator set
 	 * {@link ImgLibOperatorSet} and {@link ImgLibNumberFactory} as number
@@ -59,6 +66,52 @@ public ImgLibParser(boolean traverseIn, boolean allowUndeclaredIn,
 		opSet = new ImgLibOperatorSet<T>();
 	}
 	
+	/**
+	 * Evaluate the expression represented by the given node. If fused evaluation
+	 * is on, which is the default, the pixel-based functions are computed together
+	 * in a single pass over the images by an {@link ImgLibKernel}. Otherwise, every
+	 * operator creates a new image for its result.
+	 */
+	@Override
+	public Object evaluate(Node node) throws ParseException {
+		if (fused_evaluation) {
+			return new ImgLibKernel(this).evaluate(node);
+		}
+		return super.evaluate(node);
+	}
+
+	/**
+	 * Evaluate the expression represented by the given node, operator by operator.
+	 */
+	Object evaluatePerOperator(Node node) throws ParseException {
+		return super.evaluate(node);
+	}
+
+	/**
+	 * Set whether pixel-based functions are fused in a single pass over the images
+	 * when evaluating an expression.
+	 */
+	public void setFusedEvaluation(boolean fused_evaluation) {
+		this.fused_evaluation = fused_evaluation;
+	}
+
+	public boolean isFusedEvaluation() {
+		return fused_evaluation;
+	}
+
+	/**
+	 * Set the maximal number of threads computing the pixel-based functions in
+	 * the fused evaluation. Defaults to the number of available processors. Images
+	 * too small to give every thread enough pixels use fewer threads.
+	 */
+	public void setNumThreads(int num_threads) {
+		this.num_threads = Math.max(1, num_threads);
+	}
+
+	public int getNumThreads() {
+		return num_threads;
+	}
+
 	@Override
 	public void addStandardFunctions() {
 		
@@ -98,7 +98,9 @@
  * of the GUI panel itself (thanks to Albert Cardona and the Fijiers input);
  * 			<li> RGB images are processed in a special way by the GUI: each of their channel is processed separately
  * and put back together in a composite image.
- * 		</ul> 
+ * 		</ul>
+ * <li>	v2.2 - Oct 2026 - Pixel-based operations are fused: they are computed in a single, multithreaded
+ * pass over the images, without intermediate images (see {@link fiji.expressionparser.ImgLibKernel}).
  * </ul>
  *   
  * @author Jean-Yves Tinevez <jeanyves.tinevez@gmail.com>, Albert Cardona <acardona@ini.phys.ethz.ch>
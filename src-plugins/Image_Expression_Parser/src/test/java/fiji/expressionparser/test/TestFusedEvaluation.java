@@ -0,0 +1,192 @@
+package fiji.expressionparser.test;
+
+import static fiji.expressionparser.test.TestUtilities.image_A;
+import static fiji.expressionparser.test.TestUtilities.image_B;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import mpicbg.imglib.container.ContainerFactory;
+import mpicbg.imglib.container.array.ArrayContainerFactory;
+import mpicbg.imglib.container.cell.CellContainerFactory;
+import mpicbg.imglib.cursor.Cursor;
+import mpicbg.imglib.cursor.LocalizableByDimCursor;
+import mpicbg.imglib.cursor.LocalizableCursor;
+import mpicbg.imglib.image.Image;
+import mpicbg.imglib.image.ImageFactory;
+import mpicbg.imglib.type.numeric.RealType;
+import mpicbg.imglib.type.numeric.real.FloatType;
+
+import org.junit.Test;
+import org.nfunk.jep.ParseException;
+
+import fiji.expressionparser.ImgLibKernel;
+import fiji.expressionparser.ImgLibParser;
+import fiji.expressionparser.function.SingleOperandPixelBasedAbstractFunction;
+
+/**
+ * Test cases checking that the fused evaluation of {@link ImgLibKernel} gives
+ * exactly the same results as the operator by operator evaluation.
+ */
+public class TestFusedEvaluation {
+
+	private static final String[] EXPRESSIONS = new String[] {
+		"(A-B)/(A+B)*A",
+		"A*A - 2*B",
+		"sqrt(abs(A-B)) + 1",
+		"atan2(A, B) > 0.5 && !(A == B)",
+		"gauss(A, 1) * (B - A) + gauss(B*2, 0.5)",
+		"normalize(A+B) ^ 2",
+		"dither(A*2, 100) - A",
+		"2 * 3 + A"
+	};
+
+	/** Large enough for 4 threads, and not a multiple of the number of threads. */
+	private static final int LARGE_WIDTH = 515, LARGE_HEIGHT = 512;
+	private static final int NUM_THREADS = 4;
+
+	@Test
+	public void sameAsPerOperator() throws ParseException {
+		Map<String, Image<?>> images = new HashMap<String, Image<?>>();
+		images.put("A", image_A);
+		images.put("B", image_B);
+		for (String expression : EXPRESSIONS)
+			assertSameAsPerOperator(expression, images, 1);
+	}
+
+	/**
+	 * Images larger than 4 chunks are split among several threads, each starting
+	 * to read its sources at the beginning of its chunk.
+	 */
+	@Test
+	public void multithreaded() throws ParseException {
+		assertTrue(LARGE_WIDTH * LARGE_HEIGHT >= NUM_THREADS * ImgLibKernel.MIN_CHUNK_SIZE);
+		Map<String, Image<?>> images = new HashMap<String, Image<?>>();
+		images.put("A", createLargeImage("A", new ArrayContainerFactory(), 0));
+		images.put("B", createLargeImage("B", new ArrayContainerFactory(), 1));
+		for (String expression : EXPRESSIONS)
+			assertSameAsPerOperator(expression, images, NUM_THREADS);
+	}
+
+	/**
+	 * Sources whose pixels are stored in a different order than the result are
+	 * read through their position, in every chunk.
+	 */
+	@Test
+	public void multithreadedIncompatibleContainers() throws ParseException {
+		Map<String, Image<?>> images = new HashMap<String, Image<?>>();
+		images.put("A", createLargeImage("A", new ArrayContainerFactory(), 0));
+		images.put("B", createLargeImage("B", new CellContainerFactory(10), 1));
+		for (String expression : EXPRESSIONS)
+			assertSameAsPerOperator(expression, images, NUM_THREADS);
+		// the result is stored like the first source
+		images.put("A", createLargeImage("A", new CellContainerFactory(10), 0));
+		images.put("B", createLargeImage("B", new ArrayContainerFactory(), 1));
+		for (String expression : EXPRESSIONS)
+			assertSameAsPerOperator(expression, images, NUM_THREADS);
+	}
+
+	/**
+	 * An error in one of the threads is thrown by the evaluation.
+	 */
+	@Test
+	public void multithreadedError() {
+		final Image<FloatType> image = createLargeImage("A", new ArrayContainerFactory(), 0);
+		// only the last pixel, in the last chunk, fails
+		final float last = LARGE_WIDTH * LARGE_HEIGHT - 1;
+		ImgLibParser<FloatType> parser = new ImgLibParser<FloatType>();
+		parser.addStandardFunctions();
+		parser.addFunction("check", new SingleOperandPixelBasedAbstractFunction<FloatType>() {
+			{
+				numberOfParameters = 1;
+			}
+
+			@Override
+			public <R extends RealType<R>> float evaluate(R alpha) throws ParseException {
+				if (alpha.getRealFloat() == last)
+					throw new ParseException("Pixel " + last);
+				return alpha.getRealFloat();
+			}
+
+			public String getFunctionString() {
+				return "check";
+			}
+
+			public String getDocumentationString() {
+				return "Fails on the last pixel";
+			}
+		});
+		parser.setNumThreads(NUM_THREADS);
+		parser.addVariable("A", image);
+		try {
+			parser.evaluate(parser.parse("check(A * 1) + 1"));
+			fail("The error of the last chunk was not thrown");
+		} catch (ParseException e) {
+			assertEquals("Pixel " + last, e.getMessage());
+		}
+	}
+
+	@Test
+	public void numbers() throws ParseException {
+		ImgLibParser<FloatType> parser = new ImgLibParser<FloatType>();
+		parser.addStandardFunctions();
+		FloatType result = (FloatType) parser.evaluate(parser.parse("2 * (3 + 4) - cos(0)"));
+		assertEquals(13f, result.get(), 0);
+	}
+
+	@Test
+	public void singleVariable() throws ParseException {
+		ImgLibParser<FloatType> parser = new ImgLibParser<FloatType>();
+		parser.addVariable("A", image_A);
+		assertTrue(image_A == parser.evaluate(parser.parse("A")));
+	}
+
+	private static void assertSameAsPerOperator(final String expression, final Map<String, Image<?>> images,
+			final int num_threads) throws ParseException {
+		Image<FloatType> expected = evaluate(expression, images, false, 1);
+		Image<FloatType> result = evaluate(expression, images, true, num_threads);
+		LocalizableCursor<FloatType> ec = expected.createLocalizableCursor();
+		LocalizableByDimCursor<FloatType> rc = result.createLocalizableByDimCursor();
+		while (ec.hasNext()) {
+			ec.fwd();
+			rc.setPosition(ec);
+			assertEquals(expression, ec.getType().get(), rc.getType().get(), 0);
+		}
+		ec.close();
+		rc.close();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Image<FloatType> evaluate(final String expression, final Map<String, Image<?>> images,
+			final boolean fused, final int num_threads) throws ParseException {
+		ImgLibParser<FloatType> parser = new ImgLibParser<FloatType>();
+		parser.addStandardFunctions();
+		parser.addImgLibAlgorithms();
+		parser.setFusedEvaluation(fused);
+		parser.setNumThreads(num_threads);
+		for (String name : images.keySet())
+			parser.addVariable(name, images.get(name));
+		return (Image<FloatType>) parser.evaluate(parser.parse(expression));
+	}
+
+	/**
+	 * Create an image whose pixels are their index, plus the given offset.
+	 */
+	private static Image<FloatType> createLargeImage(final String name, final ContainerFactory factory,
+			final int offset) {
+		Image<FloatType> image = new ImageFactory<FloatType>(new FloatType(), factory)
+			.createImage(new int[] { LARGE_WIDTH, LARGE_HEIGHT }, name);
+		LocalizableCursor<FloatType> c = image.createLocalizableCursor();
+		int[] pos = c.createPositionArray();
+		while (c.hasNext()) {
+			c.fwd();
+			c.getPosition(pos);
+			c.getType().set(pos[1] * LARGE_WIDTH + pos[0] + offset);
+		}
+		c.close();
+		return image;
+	}
+}
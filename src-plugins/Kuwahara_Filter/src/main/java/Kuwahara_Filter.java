@@ -3,6 +3,7 @@
 import ij.gui.*;
 import java.awt.*;
 import ij.plugin.filter.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*
 	Performs the Kuwahara Filter, a noise-reduction filter that preserves edges.
@@ -32,7 +33,7 @@ public int setup(String arg, ImagePlus imp) {
 		isRGB = imp.getBitDepth()==24;
 		if (!showDialog())
 			return DONE;
-		return IJ.setupDialog(imp, DOES_ALL-DOES_32+SUPPORTS_MASKING);
+		return IJ.setupDialog(imp, DOES_ALL+SUPPORTS_MASKING);
 	}
 
 	public void run(ImageProcessor ip) {
@@ -46,58 +47,140 @@ public void run(ImageProcessor ip) {
 	}
 
 	public void filter(ImageProcessor ip) {
-		Rectangle roi = ip.getRoi();
-		int width = roi.width;
-		int height = roi.height;
-		int size2 = (size+1)/2;
-		int offset = (size-1)/2;
-		int width2 = ip.getWidth()+offset;
-		int height2 = ip.getHeight()+offset;
-		float[][] mean = new float[width2][height2];
-		float[][] variance = new float[width2][height2];
-		int x1start = roi.x;
-		int y1start = roi.y;
-		double sum, sum2;
-		int n, v=0, xbase, ybase;
-		for (int y1=y1start-offset; y1<y1start+height; y1++) {
-			if ((y1%20)==0) IJ.showProgress(0.7*(y1-y1start)/height);
-			for (int x1=x1start-offset; x1<x1start+width; x1++) {
-				sum=0; sum2=0; n=0;
-				for (int x2=x1; x2<x1+size2; x2++) {
-					for (int y2=y1; y2<y1+size2; y2++) {
-						v = ip.getPixel(x2, y2);
-						sum += v;
-						sum2 += v*v;
-						n++;
+		final Rectangle roi = ip.getRoi();
+		final int offset = (size-1)/2;
+		final Object source = ip.duplicate().getPixels();
+		final Object target = ip.getPixels();
+		final int width = ip.getWidth();
+		final int height = ip.getHeight();
+
+		// the bands of rows overlap by the window size, so do not make them too thin
+		final int bandHeight = Math.max(64, 2*offset);
+		final int bands = (roi.height+bandHeight-1)/bandHeight;
+		final AtomicInteger nextBand = new AtomicInteger(0);
+		final AtomicInteger bandsDone = new AtomicInteger(0);
+
+		Thread[] threads = new Thread[Math.max(1, Math.min(Prefs.getThreads(), bands))];
+		for (int t=0; t<threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int band=nextBand.getAndIncrement(); band<bands; band=nextBand.getAndIncrement()) {
+						int y0 = roi.y+band*bandHeight;
+						int y1 = Math.min(roi.y+roi.height, y0+bandHeight);
+						filterBand(source, target, width, height, roi.x, roi.x+roi.width, y0, y1, offset);
+						IJ.showProgress(bandsDone.incrementAndGet(), bands);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		try {
+			for (int t=0; t<threads.length; t++)
+				threads[t].join();
+		} catch (InterruptedException e) {
+			IJ.handleException(e);
+		}
+		IJ.showProgress(1.0);
+	}
+
+	/*
+		Filters the rows y0 to y1-1 between the columns x0 and x1-1.
+
+		The sum and the sum of squares of the (offset+1)x(offset+1)
+		regions are looked up in summed-area tables of the band's
+		pixels plus a margin of offset pixels, so that the cost per
+		pixel does not depend on the window size. Pixels outside of
+		the image count as 0. The tables are exact integers for 8-bit
+		and 16-bit images.
+	*/
+	static void filterBand(Object source, Object target, int width, int height, int x0, int x1, int y0, int y1, int offset) {
+		int size2 = offset+1;
+		int n = size2*size2;
+		int left = x0-offset, top = y0-offset;
+		int tw = x1-x0+2*offset+1;
+		int th = y1-y0+2*offset+1;
+		boolean isFloat = source instanceof float[];
+		long[] sum = null, sum2 = null;
+		double[] fsum = null, fsum2 = null;
+		if (isFloat) {
+			fsum = new double[tw*th];
+			fsum2 = new double[tw*th];
+		} else {
+			sum = new long[tw*th];
+			sum2 = new long[tw*th];
+		}
+
+		// summed-area tables: entry (i, j) holds the sum over the pixels
+		// (left..left+i-1, top..top+j-1)
+		for (int j=1; j<th; j++) {
+			int y = top+j-1;
+			boolean inside = y>=0 && y<height;
+			long rowSum = 0, rowSum2 = 0;
+			double frowSum = 0, frowSum2 = 0;
+			for (int i=1, index=j*tw+1; i<tw; i++, index++) {
+				int x = left+i-1;
+				if (inside && x>=0 && x<width) {
+					if (isFloat) {
+						double v = ((float[])source)[x+y*width];
+						frowSum += v;
+						frowSum2 += v*v;
+					} else {
+						long v = source instanceof byte[] ?
+							((byte[])source)[x+y*width]&0xff :
+							((short[])source)[x+y*width]&0xffff;
+						rowSum += v;
+						rowSum2 += v*v;
 					}
 				}
-				mean[x1+offset][y1+offset] = (float)(sum/n);
-				variance[x1+offset][y1+offset] = (float)(sum2-sum*sum/n);
+				if (isFloat) {
+					fsum[index] = fsum[index-tw]+frowSum;
+					fsum2[index] = fsum2[index-tw]+frowSum2;
+				} else {
+					sum[index] = sum[index-tw]+rowSum;
+					sum2[index] = sum2[index-tw]+rowSum2;
+				}
 			}
 		}
-		//new ImagePlus("Variance", new FloatProcessor(variance)).show(); // ImageJ 1.35b or later
-		int xbase2=0, ybase2=0;
-		float var, min;
-		for (int y1=y1start; y1<y1start+height; y1++) {
-			if ((y1%20)==0) IJ.showProgress(0.7+0.3*(y1-y1start)/height);
-			for (int x1=x1start; x1<x1start+width; x1++) {
-				min = Float.MAX_VALUE;
-				xbase = x1; ybase=y1;
-				var = variance[xbase][ybase];
-				if (var<min) {min= var; xbase2=xbase; ybase2=ybase;}
-				xbase = x1+offset;
-				var = variance[xbase][ybase];
-				if (var<min) {min= var; xbase2=xbase; ybase2=ybase;}
-				ybase = y1+offset;
-				var = variance[xbase][ybase];
-				if (var<min) {min= var; xbase2=xbase; ybase2=ybase;}
-				xbase = x1; 
-				var = variance[xbase][ybase];
-				if (var<min) {min= var; xbase2=xbase; ybase2=ybase;}
-				ip.putPixel(x1, y1, (int)(mean[xbase2][ybase2]+0.5));
+
+		// for each pixel, pick the region with the smallest variance;
+		// the regions start at (x-offset, y-offset), (x, y-offset),
+		// (x, y) and (x-offset, y), in this order of precedence
+		for (int y=y0; y<y1; y++) {
+			for (int x=x0; x<x1; x++) {
+				float min = Float.MAX_VALUE, mean = 0;
+				for (int k=0; k<4; k++) {
+					int i = x-left-(k==0 || k==3 ? offset : 0);
+					int j = y-top-(k<2 ? offset : 0);
+					double s, s2;
+					if (isFloat) {
+						s = boxSum(fsum, tw, i, j, size2);
+						s2 = boxSum(fsum2, tw, i, j, size2);
+					} else {
+						s = boxSum(sum, tw, i, j, size2);
+						s2 = boxSum(sum2, tw, i, j, size2);
+					}
+					float var = (float)(s2-s*s/n);
+					if (var<min) {
+						min = var;
+						mean = (float)(s/n);
+					}
+				}
+				if (target instanceof byte[])
+					((byte[])target)[x+y*width] = (byte)(int)(mean+0.5);
+				else if (target instanceof short[])
+					((short[])target)[x+y*width] = (short)(int)(mean+0.5);
+				else
+					((float[])target)[x+y*width] = mean;
 			}
 		}
-		IJ.showProgress(1.0);
+	}
+
+	static double boxSum(long[] table, int tw, int i, int j, int size) {
+		return table[(j+size)*tw+i+size]-table[j*tw+i+size]-table[(j+size)*tw+i]+table[j*tw+i];
+	}
+
+	static double boxSum(double[] table, int tw, int i, int j, int size) {
+		return table[(j+size)*tw+i+size]-table[j*tw+i+size]-table[(j+size)*tw+i]+table[j*tw+i];
 	}
 
 	void filterRGB(ImageProcessor ip) {
@@ -57,16 +57,26 @@ public class Distance_Ridge implements  PlugInFilter {
 	private ImagePlus imp;
 	public float[][] data;
 	public int w,h,d;
+	public float distMax;
 
 	public int setup(String arg, ImagePlus imp) {
  		this.imp = imp;
 		return DOES_32;
 	}
 	public void run(ImageProcessor ip) {
-		ImageStack stack = imp.getStack();
+		ImageStack newStack = compute(imp.getStack());
+		String title = stripExtension(imp.getTitle());
+		ImagePlus impOut = new ImagePlus(title+"_DR",newStack);
+		impOut.getProcessor().setMinAndMax(0,distMax);
+		impOut.show();
+		IJ.run("Fire");
+	}
+	//Compute the distance ridge of a distance map into a new 32-bit stack,
+	//and the largest distance into distMax.  The input is not changed.
+	public ImageStack compute(ImageStack stack) {
 		w = stack.getWidth();
 		h = stack.getHeight();
-		d = imp.getStackSize();
+		d = stack.getSize();
 		//Create 32 bit floating point stack for output, s.  Will also use it for g in Transormation 1.
 		ImageStack newStack = new ImageStack(w,h);
 		float[][] sNew = new float[d][];
@@ -86,7 +96,7 @@ public void run(ImageProcessor ip) {
 		int sk0Sq,sk0SqInd,sk1Sq;
 		//Find the largest distance in the data
 		IJ.showStatus("Distance Ridge: scanning the data");
-		float distMax = 0;
+		distMax = 0;
 		for (int k = 0; k < d; k++){
 			sk = s[k];
 			for (int j = 0; j < h; j++){
@@ -189,11 +199,7 @@ public void run(ImageProcessor ip) {
 			}//j
 		}//k
 		IJ.showStatus("Distance Ridge complete");
-		String title = stripExtension(imp.getTitle());
-		ImagePlus impOut = new ImagePlus(title+"_DR",newStack);
-		impOut.getProcessor().setMinAndMax(0,distMax);
-		impOut.show();
-		IJ.run("Fire");
+		return newStack;
 	}
 	//For each offset from the origin, (dx,dy,dz), and each radius-squared,
 	//rSq, find the smallest radius-squared, r1Squared, such that a ball
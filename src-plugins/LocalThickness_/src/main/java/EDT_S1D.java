@@ -3,6 +3,7 @@
 import ij.process.*;
 import ij.gui.*;
 import java.awt.*;
+import fiji.process3d.DistanceTransform;
 
 /* Bob Dougherty 8/8/2006
 Saito-Toriwaki algorithm for Euclidian Distance Transformation.
@@ -15,6 +16,9 @@
 Version S1C Oct. 1, 2006.  Option for inverse case.
                            Fixed inverse behavior in y and z directions.
 Version D July 30, 2007.  Multithread processing for step 2.
+Version E Oct. 18, 2026.  The transformations are done by fiji.process3d.DistanceTransform,
+           which computes the same exact squared distances with the
+           separable algorithm of Felzenszwalb and Huttenlocher.
 
 This version assumes the input stack is already in memory, 8-bit, and
 outputs to a new 32-bit stack.  Versions that are more stingy with memory
@@ -56,19 +60,27 @@ public class EDT_S1D implements  PlugInFilter {
 	public int w,h,d;
 	public int thresh;
 	public boolean inverse;
+	public float distMax;
 
 	public int setup(String arg, ImagePlus imp) {
  		this.imp = imp;
 		return DOES_8G;
 	}
 	public void run(ImageProcessor ip) {
-		ImageStack stack = imp.getStack();
+		if(!getScale())return;
+		ImageStack sStack = compute(imp.getStack());
+		String title = stripExtension(imp.getTitle());
+		ImagePlus impOut = new ImagePlus(title+"EDT",sStack);
+		impOut.getProcessor().setMinAndMax(0,distMax);
+		impOut.show();
+		IJ.run("Fire");
+	}
+	//Compute the distance map of an 8-bit stack with the current threshold
+	//into a new 32-bit stack, and the largest distance into distMax.
+	public ImageStack compute(ImageStack stack) {
 		w = stack.getWidth();
 		h = stack.getHeight();
-		d = imp.getStackSize();
-		int nThreads = Runtime.getRuntime().availableProcessors();
-
-		if(!getScale())return;
+		d = stack.getSize();
 		//Create references to input data
 		data = new byte[d][];
 		for (int k = 0; k < d; k++)data[k] = (byte[])stack.getPixels(k+1);
@@ -81,51 +93,21 @@ public void run(ImageProcessor ip) {
 			s[k] = (float[])ipk.getPixels();
 		}
 		float[] sk;
-		//Transformation 1.  Use s to store g.
-		IJ.showStatus("EDT transformation 1/3");
-		Step1Thread[] s1t = new Step1Thread[nThreads];
-		for(int thread = 0; thread < nThreads; thread++){
-			s1t[thread] = new Step1Thread(thread,nThreads,w,h,d,thresh,s,data);
-			s1t[thread].start();
-		}
-		try{
-			for(int thread = 0; thread< nThreads; thread++){
-				s1t[thread].join();
-			}
-		}catch(InterruptedException ie){
-			IJ.error("A thread was interrupted in step 1 .");
-		}		
-		//Transformation 2.  g (in s) -> h (in s)
-		IJ.showStatus("EDT transformation 2/3");
-		Step2Thread[] s2t = new Step2Thread[nThreads];
-		for(int thread = 0; thread < nThreads; thread++){
-			s2t[thread] = new Step2Thread(thread,nThreads,w,h,d,s);
-			s2t[thread].start();
-		}
-		try{
-			for(int thread = 0; thread< nThreads; thread++){
-				s2t[thread].join();
-			}
-		}catch(InterruptedException ie){
-			IJ.error("A thread was interrupted in step 2 .");
-		}
-		//Transformation 3. h (in s) -> s
-		IJ.showStatus("EDT transformation 3/3");
-		Step3Thread[] s3t = new Step3Thread[nThreads];
-		for(int thread = 0; thread < nThreads; thread++){
-			s3t[thread] = new Step3Thread(thread,nThreads,w,h,d,s,data);
-			s3t[thread].start();
-		}
-		try{
-			for(int thread = 0; thread< nThreads; thread++){
-				s3t[thread].join();
-			}
-		}catch(InterruptedException ie){
-			IJ.error("A thread was interrupted in step 3 .");
-		}		
+		//Squared distances of the foreground to the background, all three
+		//transformations are done by the shared multithreaded transform.
+		IJ.showStatus("EDT transformation");
+		DistanceTransform transform = new DistanceTransform(w,h,d);
+		transform.setThreshold(thresh,inverse);
+		transform.setOutput(DistanceTransform.SQUARED);
+		transform.compute(data,s);
 		//Find the largest distance for scaling
 		//Also fill in the background values.
-		float distMax = 0;
+		//Without any background, the distance is limited to noResult.
+		int n = w;
+		if(h > n) n = h;
+		if(d > n) n = d;
+		float noResult = 3f*(n+1)*(n+1);
+		distMax = 0;
 		int wh = w*h;
 		float dist;
 		for(int k = 0; k < d; k++){
@@ -134,7 +116,7 @@ public void run(ImageProcessor ip) {
 				if(((data[k][ind]&255) < thresh)^inverse){
 					sk[ind] = 0;
 				}else{
-					dist = (float)Math.sqrt(sk[ind]);
+					dist = (float)Math.sqrt(Math.min(sk[ind],noResult));
 					sk[ind] = dist;
 					distMax = (dist > distMax) ? dist : distMax;
 				}
@@ -143,11 +125,7 @@ public void run(ImageProcessor ip) {
 
 		IJ.showProgress(1.0);
 		IJ.showStatus("Done");
-		String title = stripExtension(imp.getTitle());
-		ImagePlus impOut = new ImagePlus(title+"EDT",sStack);
-		impOut.getProcessor().setMinAndMax(0,distMax);
-		impOut.show();
-		IJ.run("Fire");
+		return sStack;
 	}
 	//Modified from ImageJ code by Wayne Rasband
     String stripExtension(String name) {
@@ -172,173 +150,4 @@ boolean getScale() {
 		Prefs.set("edtS1.inverse", inverse);
 		return true;
 	}
-	class Step1Thread extends Thread{
-		int thread,nThreads,w,h,d,thresh;
-		float[][] s; 
-		byte[][] data;
-		public Step1Thread(int thread, int nThreads, int w, int h, int d, int thresh, float[][] s,  byte[][] data){
-			this.thread = thread;
-			this.nThreads = nThreads;
-			this.w = w;
-			this.h = h;
-			this.d = d;
-			this.thresh = thresh;
-			this.data = data;
-			this.s = s;
-		}
-		public void run(){
-			float[] sk;
-			byte[] dk;
-			int n = w;
-			if(h > n) n = h;
-			if(d > n) n = d;
-			int noResult = 3*(n+1)*(n+1);
-			boolean[] background = new boolean[n];			
-			boolean nonempty;
-			int test, min;			
-			for(int k = thread; k < d; k+=nThreads){
-				IJ.showProgress(k/(1.*d));
-				sk = s[k];
-				dk = data[k];
-				for(int j = 0; j < h; j++){
-					for (int i = 0; i < w; i++){
-						background[i] = ((dk[i+w*j]&255) < thresh)^inverse;
-					}
-					for (int i = 0; i < w; i++){
-						min = noResult;
-						for (int x = i; x < w; x++){
-							if(background[x]){
-								test = i - x;
-								test *= test;
-								min = test;
-								break;
-							}
-						}
-						for (int x = i-1; x >=0 ; x--){
-							if(background[x]){
-								test = i - x;
-								test *= test;
-								if(test < min)min = test;
-								break;
-							}
-						}
-						sk[i+w*j] = min;
-					}
-				}
-			}
-		}//run
-	}//Step1Thread
-	class Step2Thread extends Thread{
-		int thread,nThreads,w,h,d;
-		float[][] s; 
-		public Step2Thread(int thread, int nThreads, int w, int h, int d, float[][] s){
-			this.thread = thread;
-			this.nThreads = nThreads;
-			this.w = w;
-			this.h = h;
-			this.d = d;
-			this.s = s;
-		}
-		public void run(){
-			float[] sk;
-			int n = w;
-			if(h > n) n = h;
-			if(d > n) n = d;
-			int noResult = 3*(n+1)*(n+1);
-			int[] tempInt = new int[n];
-			int[] tempS = new int[n];
-			boolean nonempty;
-			int test, min, delta;
-			for(int k = thread; k < d; k+=nThreads){
-				IJ.showProgress(k/(1.*d));
-				sk = s[k];
-				for (int i = 0; i < w; i++){
-					nonempty = false;
-					for (int j = 0; j < h; j++){
-						tempS[j] = (int)sk[i+w*j];
-						if(tempS[j] >0)nonempty = true;
-					}
-					if(nonempty){
-						for (int j = 0; j < h; j++){
-							min = noResult;
-							delta = j;
-							for(int y = 0; y < h; y++){
-								test = tempS[y] + delta*delta--;
-								if(test < min)min = test;
-							}
-							tempInt[j] = min;
-						}
-						for (int j = 0; j < h; j++){
-							sk[i+w*j] = tempInt[j];
-						}
-					}
-				}
-			}
-		}//run
-	}//Step2Thread	
-	class Step3Thread extends Thread{
-		int thread,nThreads,w,h,d;
-		float[][] s; 
-		byte[][] data;
-		public Step3Thread(int thread, int nThreads, int w, int h, int d, float[][] s, byte[][] data){
-			this.thread = thread;
-			this.nThreads = nThreads;
-			this.w = w;
-			this.h = h;
-			this.d = d;
-			this.s = s;
-			this.data = data;
-		}
-		public void run(){
-			int zStart,zStop,zBegin,zEnd;
-			float[] sk;
-			int n = w;
-			if(h > n) n = h;
-			if(d > n) n = d;
-			int noResult = 3*(n+1)*(n+1);
-			int[] tempInt = new int[n];
-			int[] tempS = new int[n];
-			boolean nonempty;
-			int test, min, delta;
-			for(int j = thread; j < h; j+=nThreads){
-				IJ.showProgress(j/(1.*h));
-				for(int i = 0; i < w; i++){
-					nonempty = false;
-					for(int k = 0; k < d; k++){
-						tempS[k] = (int)s[k][i+w*j];
-						if(tempS[k] >0)nonempty = true;
-					}
-					if(nonempty){
-						zStart = 0;
-						while((zStart < (d-1))&&(tempS[zStart] == 0))zStart++;
-						if(zStart > 0)zStart--;
-						zStop = d-1;
-						while((zStop > 0)&&(tempS[zStop] == 0))zStop--;
-						if(zStop < (d-1))zStop++;
-	
-						for(int k = 0; k < d; k++){
-							//Limit to the non-background to save time,
-							if(((data[k][i+w*j]&255) >= thresh)^inverse){
-								min = noResult;
-								zBegin = zStart;
-								zEnd = zStop;
-								if(zBegin > k)zBegin = k;
-								if(zEnd < k)zEnd = k;
-								delta = k - zBegin;
-								for (int z = zBegin; z <= zEnd; z++){
-									test = tempS[z] + delta*delta--;
-									if(test < min)min = test;
-									//min = (test < min) ? test : min;
-								}
-								tempInt[k] = min;
-							}
-						}
-						for(int k = 0; k < d; k++){
-							s[k][i+w*j] = tempInt[k];
-						}
-					}
-				}
-			}
-		}//run
-	}//Step2Thread	
-}
\ No newline at end of file
+}
@@ -51,19 +51,19 @@ public void run(ImageProcessor ip) {
 		String title = stripExtension(imp.getTitle());
 		imp.unlock();
 		if(!getScale())return;
-		if(inverse){
-			IJ.run("Geometry to Distance Map", "threshold="+thresh+" inverse");
-		}else{
-			IJ.run("Geometry to Distance Map", "threshold="+thresh);
-		}
-		ImagePlus impDM = WindowManager.getCurrentImage();
-		IJ.run("Distance Map to Distance Ridge");
-		ImagePlus impDR = WindowManager.getCurrentImage();	
-		impDM.hide();
-		impDM.flush();
-		WindowManager.setTempCurrentImage(impDR);
-		IJ.run("Distance Ridge to Local Thickness");
-		ImagePlus impLT = WindowManager.getCurrentImage();	
+		//Pass the intermediate stacks from step to step directly,
+		//without showing them.
+		EDT_S1D edt = new EDT_S1D();
+		edt.thresh = thresh;
+		edt.inverse = inverse;
+		ImageStack stackDM = edt.compute(imp.getStack());
+		ImageStack stackDR = new Distance_Ridge().compute(stackDM);
+		stackDM = null;
+		//The local thickness is computed in place
+		float sMax = new Local_Thickness_Parallel().compute(stackDR);
+		ImagePlus impLT = new ImagePlus(title+"_LT_",stackDR);
+		impLT.getProcessor().setMinAndMax(0,sMax);
+		impLT.show();
 		IJ.run("Local Thickness to Cleaned-Up Local Thickness");
 		ImagePlus impLTC = WindowManager.getCurrentImage();
 		impLT.hide();
@@ -58,10 +58,18 @@ public int setup(String arg, ImagePlus imp) {
 		return DOES_32;
 	}
 	public void run(ImageProcessor ip) {
-		ImageStack stack = imp.getStack();
+		float sMax = compute(imp.getStack());
+		String title = stripExtension(imp.getTitle());
+		imp.setTitle(title+"_LT_");
+		imp.getProcessor().setMinAndMax(0,sMax);
+		imp.updateAndDraw();
+	}
+	//Compute the local thickness of a distance ridge in place, and return
+	//the largest distance ridge value.
+	public float compute(ImageStack stack) {
 		w = stack.getWidth();
 		h = stack.getHeight();
-		d = imp.getStackSize();
+		d = stack.getSize();
 		int wh = w*h;
 		//Create reference to input data
 		float[][] s = new float[d][];
@@ -147,10 +155,7 @@ public void run(ImageProcessor ip) {
 			}
 		}
 		IJ.showStatus("Local Thickness complete");
-		String title = stripExtension(imp.getTitle());
-		imp.setTitle(title+"_LT_");
-		imp.getProcessor().setMinAndMax(0,sMax);
-		imp.updateAndDraw();
+		return sMax;
 	}
 	//Modified from ImageJ code by Wayne Rasband
     String stripExtension(String name) {
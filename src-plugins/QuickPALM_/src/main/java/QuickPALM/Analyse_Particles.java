@@ -10,6 +10,10 @@
 import ij.measure.CurveFitter.*;
 import java.awt.*;
 import java.lang.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** This plugin detectes sub-diffraction particles in a sequence of images, it
  * is the main plugin for the QuickPALM package.
@@ -62,17 +66,32 @@ else if (imp.getType() != ImagePlus.GRAY8 && imp.getType() != ImagePlus.GRAY16 )
 			}
 		}
 	
-		ReconstructionViewer viewer = new ReconstructionViewer(imp.getShortTitle()+" Reconstruction", imp.getWidth(), imp.getHeight(), dg, f);
-		ViewerUpdate vUpdate;
-		ViewerUpdateShort vUpdateShort;
+		final ReconstructionViewer viewer = new ReconstructionViewer(imp.getShortTitle()+" Reconstruction", imp.getWidth(), imp.getHeight(), dg, f);
 		
-		ProcessFrame [] threads = new ProcessFrame[dg.threads];
-		int freeThread=-1;
+		// Pipeline: this thread reads (and prefetches) the frames, a fixed
+		// pool of workers detects the particles into their own buffers and a
+		// single flusher hands the full buffers to the file, the table and the
+		// viewer. The queues are bounded, so at most a few frames and buffers
+		// per worker are in memory at any time.
+		final int nthreads = Math.max(1, dg.threads);
+		final BlockingQueue<QueuedFrame> frames = new ArrayBlockingQueue<QueuedFrame>(2*nthreads);
+		final BlockingQueue<Localisations> full = new ArrayBlockingQueue<Localisations>(2*nthreads);
+		final BlockingQueue<Localisations> free = new ArrayBlockingQueue<Localisations>(2*nthreads);
+		for (int b=0;b<2*nthreads;b++)
+			free.add(new Localisations());
+		final AtomicInteger processed = new AtomicInteger();
+		final Thread reader = Thread.currentThread();
 		
-		long time_start = java.lang.System.currentTimeMillis();
-		long time_took = 0;
-		long time_now=0;
-		long nparticles=0;
+		ProcessFrames [] workers = new ProcessFrames[nthreads];
+		for (int t=0;t<nthreads;t++)
+		{
+			workers[t] = new ProcessFrames();
+			workers[t].mysetup(f, dg, frames, full, free, processed, reader);
+			workers[t].start();
+		}
+		FlushParticles flusher = new FlushParticles();
+		flusher.mysetup(f, dg, viewer, full, free, processed, reader);
+		flusher.start();
 
 		int s=0;
 		boolean ok = true;
@@ -88,90 +107,47 @@ else if (imp.getType() != ImagePlus.GRAY8 && imp.getType() != ImagePlus.GRAY16 )
 			else
 			{
 				if (s>=imp.getStackSize()) ok=false;
-				else
-				{
-					imp.setSlice(s+1);
-					ip=imp.getProcessor().duplicate();
-				}
+				else ip=imp.getStack().getProcessor(s+1).duplicate();
 			}
 			
 			if (ok)
 			{
-				if (s<threads.length)
-					freeThread=s;
-				else
-				{
-					freeThread=-1;
-					while (freeThread==-1)
-					{
-						for (int t=0;t<threads.length;t++)
-						{
-							if (!threads[t].isAlive())
-							{
-								freeThread=t;
-								break;
-							}
-						}
-						if (freeThread==-1)
-						{
-							try
-							{
-								Thread.currentThread().sleep(1);
-							}
-							catch(Exception e)
-							{
-									IJ.error(""+e);
-							}
-						}
-					}
-				}
-			
-				threads[freeThread] = new ProcessFrame();
-				threads[freeThread].mysetup(ip, f, dg, s);
-				threads[freeThread].start();
-				
-				time_now = java.lang.System.currentTimeMillis();
-				time_took += time_now-time_start;
-				time_start = time_now;
-				if ((s>0) && (s%dg.viewer_update==0))
-				{
-					ij.IJ.showStatus("Processing at "+time_took/dg.viewer_update+" ms/frame "+(f.ptable.getCounter()-nparticles)/dg.viewer_update+" part/frame, detected "+nparticles+" particles");
-					nparticles=f.ptable.getCounter();
-					time_took=0;
-					if (dg.viewer_accumulate==0)
-					{
-						vUpdate = new ViewerUpdate();
-						vUpdate.mysetup(viewer);
-						vUpdate.start();
-					}
-					else
-					{
-						vUpdateShort = new ViewerUpdateShort();
-						vUpdateShort.mysetup(viewer, Math.round(s+1-dg.viewer_accumulate/2), Math.round(s+1+dg.viewer_accumulate/2));
-						vUpdateShort.start();
-					}
-				}
+				put(frames, new QueuedFrame(ip, s));
+				flusher.lastFrame = s;
 			}
 			s++;
 		}
-		for (int t=0; t<threads.length;t++)
+		for (int t=0; t<nthreads;t++)
+			put(frames, new QueuedFrame(null, -1));
+		for (int t=0; t<nthreads;t++)
 		{
 			try
 			{
-				if (threads[t] != null) threads[t].join();
+				workers[t].join();
 			}
 			catch(Exception e)
 			{
 				IJ.error(""+e);
 			}
 		}
+		put(full, new Localisations(1));
+		try
+		{
+			flusher.join();
+		}
+		catch(Exception e)
+		{
+			IJ.error(""+e);
+		}
 		if (f.psave!=null) f.psave.close();
 		
 		if (dg.viewer_accumulate==0)
 			viewer.update();
 		else
 			viewer.updateShort(Math.round(s-dg.viewer_accumulate/2), s);
-		if (f.ptable.getCounter()<5000000)
+		if (!dg.keeptable)
+			IJ.showStatus("Detected "+flusher.nparticles+" particles, saved into "+f.psave.filename);
+		else if (f.ptable.getCounter()<5000000)
 		{
             IJ.showStatus("Creating particle table, this should take a few seconds...");
 			f.ptable.show("Results");
@@ -180,65 +156,172 @@ else if (imp.getType() != ImagePlus.GRAY8 && imp.getType() != ImagePlus.GRAY16 )
             IJ.showMessage("Warning", "Results table has too many particles, they will not be shown but the data still exists within it\nyou can still use all the plugin functionality or save table changes though the 'Save Particle Table' command.");
 
 	}
+	
+	static <T> void put(BlockingQueue<T> queue, T element)
+	{
+		try
+		{
+			queue.put(element);
+		}
+		catch(InterruptedException e)
+		{
+			IJ.error(""+e);
+		}
+	}
 }
 
-class ProcessFrame extends Thread 
+/** A frame waiting to be processed, a frame without image marks the end. */
+class QueuedFrame
 {
-	private ImageProcessor ip;
-	private MyDialogs dg;
-	private int frame;
-	private MyFunctions f;
+	final ImageProcessor ip;
+	final int index;
 	
-	public void mysetup(ImageProcessor ip, MyFunctions f, MyDialogs dg, int frame)
+	QueuedFrame(ImageProcessor ip, int index)
 	{
-		this.f=f;
 		this.ip=ip;
-		this.dg=dg;
-		this.frame=frame;
-	}
-	
-	public void run()
-	{
-		this.f.detectParticles(this.ip, this.dg, this.frame);
+		this.index=index;
 	}
 }
 
-/** Threaded call to the viewer.update method - used to refresh the reconstruction
- * viewer to show the newly detected particles.
+/** Worker of the fixed detection pool - takes frames from the queue until
+ * it gets the end mark, and hands its buffer of particles to the flusher
+ * when it is full (after every frame with online rendering).
 */
-class ViewerUpdate extends Thread
+class ProcessFrames extends Thread 
 {
-	private ReconstructionViewer viewer;
+	static final int BLOCK = 4096; // particles per flushed buffer
 	
-	public void mysetup(ReconstructionViewer viewer)
+	private MyDialogs dg;
+	private MyFunctions f;
+	private BlockingQueue<QueuedFrame> frames;
+	private BlockingQueue<Localisations> full;
+	private BlockingQueue<Localisations> free;
+	private AtomicInteger processed;
+	private Thread reader;
+	
+	public void mysetup(MyFunctions f, MyDialogs dg, BlockingQueue<QueuedFrame> frames, BlockingQueue<Localisations> full, BlockingQueue<Localisations> free, AtomicInteger processed, Thread reader)
 	{
-		this.viewer=viewer;
+		this.f=f;
+		this.dg=dg;
+		this.frames=frames;
+		this.full=full;
+		this.free=free;
+		this.processed=processed;
+		this.reader=reader;
 	}
 	
 	public void run()
 	{
-		this.viewer.update();
+		try
+		{
+			Localisations particles = free.take();
+			while (true)
+			{
+				QueuedFrame frame = frames.poll(100, TimeUnit.MILLISECONDS);
+				if (frame==null)
+				{
+					if (!reader.isAlive()) break; // processing was stopped
+					continue;
+				}
+				if (frame.ip==null) break;
+				try
+				{
+					this.f.detectParticles(frame.ip, this.dg, frame.index, particles);
+				}
+				catch(Exception e)
+				{
+					IJ.log("Frame "+(frame.index+1)+": "+e);
+				}
+				processed.incrementAndGet();
+				if (particles.size>=BLOCK || (dg.view && particles.size>0))
+				{
+					full.put(particles);
+					particles = free.take();
+				}
+			}
+			if (particles.size>0) full.put(particles);
+		}
+		catch(InterruptedException e)
+		{
+			IJ.error(""+e);
+		}
 	}
 }
 
-/** Threaded call to the viewer.updateShort method - used to update the reconstruction
- * viewer in order to show the particles detected between the given frame range.
+/** Hands the buffers of detected particles to the particle saver, the
+ * results table and the reconstruction viewer, and refreshes the viewer
+ * every dg.viewer_update frames. An empty buffer marks the end.
 */
-class ViewerUpdateShort extends Thread
+class FlushParticles extends Thread
 {
+	volatile int lastFrame = 0; // last frame read
+	long nparticles = 0;
+	
+	private MyDialogs dg;
+	private MyFunctions f;
 	private ReconstructionViewer viewer;
-	private int start;
-	private int stop;
+	private BlockingQueue<Localisations> full;
+	private BlockingQueue<Localisations> free;
+	private AtomicInteger processed;
+	private Thread reader;
 	
-	public void mysetup(ReconstructionViewer viewer, int start, int stop)
+	public void mysetup(MyFunctions f, MyDialogs dg, ReconstructionViewer viewer, BlockingQueue<Localisations> full, BlockingQueue<Localisations> free, AtomicInteger processed, Thread reader)
 	{
+		this.f=f;
+		this.dg=dg;
 		this.viewer=viewer;
-		this.start=start;
-		this.stop=stop;
+		this.full=full;
+		this.free=free;
+		this.processed=processed;
+		this.reader=reader;
 	}
 	
 	public void run()
 	{
-		this.viewer.updateShort(this.start, this.stop);
+		int update = Math.max(1, dg.viewer_update);
+		int nextUpdate = update;
+		long time_start = java.lang.System.currentTimeMillis();
+		long last_nparticles = 0;
+		try
+		{
+			while (true)
+			{
+				Localisations particles = full.poll(100, TimeUnit.MILLISECONDS);
+				if (particles==null)
+				{
+					if (!reader.isAlive() && full.isEmpty()) break; // processing was stopped
+				}
+				else if (particles.size==0) break;
+				else
+				{
+					if (f.psave!=null) f.psave.saveParticles(particles);
+					if (dg.keeptable) particles.addTo(f.ptable);
+					viewer.add(particles);
+					nparticles+=particles.size;
+					particles.clear();
+					free.put(particles);
+				}
+				
+				int nframes = processed.get();
+				if (nframes>=nextUpdate)
+				{
+					long time_now = java.lang.System.currentTimeMillis();
+					int nnew = nframes-nextUpdate+update;
+					ij.IJ.showStatus("Processing at "+(time_now-time_start)/nnew+" ms/frame "+(nparticles-last_nparticles)/nnew+" part/frame, detected "+nparticles+" particles");
+					time_start = time_now;
+					last_nparticles = nparticles;
+					nextUpdate = nframes+update;
+					int s = lastFrame;
+					if (dg.viewer_accumulate==0)
+						viewer.update();
+					else
+						viewer.updateShort(Math.round(s+1-dg.viewer_accumulate/2), Math.round(s+1+dg.viewer_accumulate/2));
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			IJ.error(""+e);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package QuickPALM;
+
+import ij.measure.*;
+
+/** Buffer of particle localisations, stored column by column in primitive
+ * arrays. Each detection thread fills its own buffer, so no locking is needed
+ * while particles are found, and full buffers are handed over as a whole to
+ * the file, the results table and the reconstruction viewer.
+*/
+class Localisations
+{
+	/** Column headings, in the order of the values passed to add. */
+	static final java.lang.String [] COLUMNS = {"Intensity", "X (px)", "Y (px)", "X (nm)", "Y (nm)", "Z (nm)", "Left-Width (px)", "Right-Width (px)", "Up-Height (px)", "Down-Height (px)", "X Symmetry (%)", "Y Symmetry (%)", "Width minus Height (px)", "Frame Number"};
+
+	static final int INTENSITY = 0;
+	static final int X = 1;
+	static final int Y = 2;
+	static final int Z = 5;
+	static final int FRAME = 13;
+
+	double [][] values = new double [COLUMNS.length][];
+	int size = 0;
+
+	Localisations()
+	{
+		this(1024);
+	}
+
+	Localisations(int capacity)
+	{
+		for (int c=0;c<values.length;c++)
+			values[c] = new double [capacity];
+	}
+
+	/** Appends a particle.
+	 * @param v one value for each of the COLUMNS
+	*/
+	void add(double... v)
+	{
+		setSize(size+1);
+		for (int c=0;c<values.length;c++)
+			values[c][size-1] = v[c];
+	}
+
+	/** Changes the number of particles, the values of added particles are undefined. */
+	void setSize(int n)
+	{
+		if (n>values[0].length)
+		{
+			int capacity = Math.max(n, 2*values[0].length);
+			for (int c=0;c<values.length;c++)
+			{
+				double [] column = new double [capacity];
+				java.lang.System.arraycopy(values[c], 0, column, 0, size);
+				values[c] = column;
+			}
+		}
+		size = n;
+	}
+
+	void clear()
+	{
+		size = 0;
+	}
+
+	/** Appends all particles of the buffer to a results table.
+	 * @param table particle table, its columns are created if needed
+	*/
+	void addTo(ResultsTable table)
+	{
+		int [] index = new int [COLUMNS.length];
+		for (int c=0;c<COLUMNS.length;c++)
+		{
+			index[c] = table.getColumnIndex(COLUMNS[c]);
+			if (index[c]==ResultsTable.COLUMN_NOT_FOUND)
+				index[c] = table.getFreeColumn(COLUMNS[c]);
+		}
+		for (int n=0;n<size;n++)
+		{
+			table.incrementCounter();
+			for (int c=0;c<COLUMNS.length;c++)
+				table.addValue(index[c], values[c][n]);
+		}
+	}
+}
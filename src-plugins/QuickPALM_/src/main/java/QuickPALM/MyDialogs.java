@@ -66,6 +66,9 @@
 	int viewer_update;
 	double saturation;
 	
+	// used on stream
+	boolean keeptable = true;
+	
 	// used on attach
 	boolean attach;
 	java.lang.String imagedir;
@@ -341,6 +344,7 @@ public boolean analyseParticles(MyFunctions f) {
 		gd.addCheckbox("Online rendering", prefs.get("QuickPALM.view", true));
 		gd.addCheckbox("Attach to running acquisition", prefs.get("QuickPALM.attach", false));
 		gd.addCheckbox("Stream particle info directly into file", prefs.get("QuickPALM.stream", true));
+		gd.addCheckbox("Keep particles in the results table (needs ~150 bytes per particle)", prefs.get("QuickPALM.keeptable", true));
 		gd.addMessage("\n");
 		// -----------------------------------------
 		gd.addMessage("-- Online rendering settings (used only if selected) --");
@@ -393,6 +397,9 @@ public boolean analyseParticles(MyFunctions f) {
 			prefs.set("QuickPALM.stream", true);
 		}
 		else prefs.set("QuickPALM.stream", false);
+		keeptable = gd.getNextBoolean();
+		prefs.set("QuickPALM.keeptable", keeptable);
+		if (f.psave==null || f.psave.filename==null) keeptable=true; // the particles have to be kept somewhere
 		//--
 		
 		magn = pixelsize/gd.getNextNumber();
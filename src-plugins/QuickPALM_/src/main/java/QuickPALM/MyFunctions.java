@@ -109,8 +109,9 @@ ImagePlus getNextImage(MyDialogs dg, int frame)
 	 * @param ip image to search for particles on
 	 * @param dg dialog manager
 	 * @param nframe the frame index corresponding to this image
+	 * @param particles buffer the found particles are appended to
 	*/
-	void detectParticles(ImageProcessor ip, MyDialogs dg, int nframe)
+	void detectParticles(ImageProcessor ip, MyDialogs dg, int nframe, Localisations particles)
 	{
 		int i, j;
 		int width = ip.getWidth();
@@ -193,7 +194,7 @@ void detectParticles(ImageProcessor ip, MyDialogs dg, int nframe)
 		{
 			maxs = getMaxPositions(ip);
 			if (ip.get(maxs[1], maxs[2])<snrthresh) break;
-			else if (getParticle(ip, mask, maxs, dg, ptable, nframe))
+			else if (getParticle(ip, mask, maxs, dg, particles, nframe))
 				ok_nparticles++;
 			else notok_nparticles++;
 			if (dg.smartsnr)
@@ -214,9 +215,10 @@ else if (getParticle(ip, mask, maxs, dg, ptable, nframe))
 	 * detectParticles.
 	 * @param ip image to search for particles on
 	 * @param dg dialog manager
+	 * @param particles buffer the particle is appended to
 	 * @param nframe the frame index corresponding to this image
 	*/
-	boolean getParticle(ImageProcessor ip, boolean [][] mask, int [] maxs, MyDialogs dg, ResultsTable ptable, int nframe)
+	boolean getParticle(ImageProcessor ip, boolean [][] mask, int [] maxs, MyDialogs dg, Localisations particles, int nframe)
 	{
 		int roirad = (int) Math.round(dg.fwhm);
 		int xmax = maxs[1];
@@ -401,27 +403,7 @@ boolean getParticle(ImageProcessor ip, boolean [][] mask, int [] maxs, MyDialogs
 		double yrstd_=yrstd*1.177;
 		double frame_=nframe+1;
 
-		ptable_lock.lock();
-		ptable.incrementCounter();
-		ptable.addValue("Intensity", s_);
-		ptable.addValue("X (px)", xm);
-		ptable.addValue("Y (px)", ym);
-		ptable.addValue("X (nm)", xm_);
-		ptable.addValue("Y (nm)", ym_);
-		ptable.addValue("Z (nm)", z);
-		ptable.addValue("Left-Width (px)", xlstd_);
-		ptable.addValue("Right-Width (px)", xrstd_);
-		ptable.addValue("Up-Height (px)", ylstd_);
-		ptable.addValue("Down-Height (px)", yrstd_);			
-		ptable.addValue("X Symmetry (%)", xsym);
-		ptable.addValue("Y Symmetry (%)", ysym);
-		ptable.addValue("Width minus Height (px)", wmh);
-		ptable.addValue("Frame Number", frame_);
-		ptable_lock.unlock();
-		if (psave!=null)
-		{
-			psave.saveParticle(s_, xm, ym, xm_, ym_, z, xlstd_, xrstd_, ylstd_, yrstd_, xsym, ysym, wmh, frame_);
-		}
+		particles.add(s_, xm, ym, xm_, ym_, z, xlstd_, xrstd_, ylstd_, yrstd_, xsym, ysym, wmh, frame_);
 		
 		clearRegion(thrsh, ip, mask, xstart, xend, ystart, yend);
 		return true;
@@ -12,7 +12,11 @@
 import ij.io.*;
 
 import java.lang.*;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -62,6 +66,11 @@ void loadTransformation(String filename, ResultsTable res)
     
     void loadParticleResults(String filename, ResultsTable res)
     {
+        if (isParticleBinary(filename))
+        {
+            loadParticleBinary(filename, res);
+            return;
+        }
         try {
                String line;
                FileReader fr = new FileReader(filename);
@@ -111,6 +120,85 @@ void loadParticleResults(String filename, ResultsTable res)
             return;
         }
     }
+    
+    /** Checks if the file starts like a columnar binary particles file
+     * written by the ParticleSaver.
+    */
+    boolean isParticleBinary(String filename)
+    {
+        try {
+               DataInputStream in = new DataInputStream(new FileInputStream(filename));
+               byte [] magic = ParticleSaver.MAGIC.getBytes("UTF-8");
+               byte [] start = new byte [magic.length+2];
+               in.readFully(start);
+               in.close();
+               if ((((start[0]&0xff)<<8)|(start[1]&0xff))!=magic.length)
+                   return false;
+               for (int n=0;n<magic.length;n++)
+                   if (start[n+2]!=magic[n]) return false;
+               return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /** Loads a columnar binary particles file into the particles table. */
+    void loadParticleBinary(String filename, ResultsTable res)
+    {
+        try {
+               DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1<<16));
+               in.readUTF();
+               int ncolumns = in.readInt();
+               if (ncolumns!=Localisations.COLUMNS.length)
+               {
+                   in.close();
+                   IJ.error("File does not seam to be a Particles Table file");
+                   return;
+               }
+               for (int c=0;c<ncolumns;c++)
+                   in.readUTF();
+               res.reset();
+               Localisations particles = new Localisations();
+               int nblock;
+               while ((nblock = readBlockSize(in)) > 0)
+               {
+                   particles.setSize(nblock);
+                   for (int c=0;c<ncolumns;c++)
+                       for (int n=0;n<nblock;n++)
+                           particles.values[c][n] = in.readDouble();
+                   particles.addTo(res);
+                   IJ.showStatus("Loading particle "+res.getCounter()+"... sit back and relax.");
+               }
+               in.close();
+               if (res.getCounter()<5000000)
+               {
+                    IJ.showStatus("Creating particle table, this should take a few seconds...");
+                    res.show("Results");
+               }
+                else
+                    IJ.showMessage("Warning", "Results table has too many particles, they will not be shown but the data still exists within it\nyou can still use all the plugin functionality or save table changes though the 'Save Particle Table' command.");
+               IJ.showStatus("Done loading table...");
+        }   
+        catch (FileNotFoundException e) {
+            IJ.error("File not found exception" + e);
+            return;
+        } catch (IOException e) {
+            IJ.error("IOException exception" + e);
+            return;
+        }
+    }
+    
+    // number of particles of the next block, 0 at the end of the file
+    private int readBlockSize(DataInputStream in) throws IOException
+    {
+        try {
+               return in.readInt();
+        }
+        catch (EOFException e) {
+            return 0;
+        }
+    }
 }
     
 class ThreadedLoader extends Thread
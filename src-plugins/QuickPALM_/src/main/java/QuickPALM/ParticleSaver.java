@@ -12,34 +12,51 @@
 import ij.io.*;
 
 import java.lang.*;
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
-import java.io.IOException;
 
+/** Streams particles into a file while they are detected. Files whose name
+ * ends with .xls or .txt are written as a tab-separated particles table, any
+ * other file is written in a columnar binary format: the MAGIC string, the
+ * number of columns and their headings, followed by blocks of particles, each
+ * block holding its number of particles and then every column as doubles.
+*/
 public class ParticleSaver
 {
+    static final java.lang.String MAGIC = "QuickPALM localisations";
+    
     public java.lang.String filename;
     private FileWriter fw;
-    private java.util.concurrent.locks.Lock wlock = new java.util.concurrent.locks.ReentrantLock();
-    private java.util.concurrent.locks.Lock lock = new java.util.concurrent.locks.ReentrantLock();
+    private DataOutputStream out;
     private int counter = 1;
-    private ThreadedSaver tsaver;
-    private java.lang.String msg="";
     
     public void setup()
     {
 
         String path = "";
-        final SaveDialog od = new SaveDialog("File to save particles into", "Particles Table", ".xls");
+        final SaveDialog od = new SaveDialog("File to save particles into", "Particles Table", ".qpl");
         path = od.getDirectory();
         this.filename = od.getFileName();
+        if (this.filename == null) return;
         this.filename = path+filename;
         try
         {
-            this.fw = new FileWriter(this.filename);
-            this.fw.write(" 	Intensity	X (px)	Y (px)	X (nm)	Y (nm)	Z (nm)	Left-Width(px)	Right-Width (px)	Up-Height (px)	Down-Height (px)	X Symmetry (%)	Y Symmetry (%)	Width minus Height (px)	Frame Number\n");
+            java.lang.String name = this.filename.toLowerCase();
+            if (name.endsWith(".xls") || name.endsWith(".txt"))
+            {
+                this.fw = new FileWriter(this.filename);
+                this.fw.write(" 	Intensity	X (px)	Y (px)	X (nm)	Y (nm)	Z (nm)	Left-Width(px)	Right-Width (px)	Up-Height (px)	Down-Height (px)	X Symmetry (%)	Y Symmetry (%)	Width minus Height (px)	Frame Number\n");
+            }
+            else
+            {
+                this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.filename), 1<<16));
+                this.out.writeUTF(MAGIC);
+                this.out.writeInt(Localisations.COLUMNS.length);
+                for (int c=0;c<Localisations.COLUMNS.length;c++)
+                    this.out.writeUTF(Localisations.COLUMNS[c]);
+            }
         }
         catch (Exception e)
         {
@@ -47,63 +64,51 @@ public void setup()
         }
     }
     
-    public void saveParticle(double s, double x, double y, double x_, double y_, double z_, double left, double right, double up, double down, double xsym, double ysym, double wmh, double frame)
+    /** Appends a buffer of particles to the file, must not be called by
+     * several threads at once.
+     * @param particles particles to save
+    */
+    public void saveParticles(Localisations particles)
     {
-        if (this.fw == null) return;    
-        lock.lock();
-        msg+=this.counter+"\t"+s+"\t"+x+"\t"+y+"\t"+x_+"\t"+y_+"\t"+z_+"\t"+left+"\t"+right+"\t"+up+"\t"+down+"\t"+xsym+"\t"+ysym+"\t"+wmh+"\t"+frame+"\n";
-        lock.unlock();
-        
-        if (counter%1000==0)
+        if (particles.size == 0) return;
+        try
+        {
+            if (this.out != null)
+            {
+                this.out.writeInt(particles.size);
+                for (int c=0;c<particles.values.length;c++)
+                    for (int n=0;n<particles.size;n++)
+                        this.out.writeDouble(particles.values[c][n]);
+            }
+            else if (this.fw != null)
+            {
+                StringBuilder msg = new StringBuilder();
+                for (int n=0;n<particles.size;n++)
+                {
+                    msg.append(this.counter++);
+                    for (int c=0;c<particles.values.length;c++)
+                        msg.append('\t').append(particles.values[c][n]);
+                    msg.append('\n');
+                }
+                this.fw.write(msg.toString());
+            }
+        }
+        catch (Exception e)
         {
-			lock.lock();
-            this.tsaver = new ThreadedSaver();
-            this.tsaver.mysetup(this.fw, this.wlock, msg);
-            msg="";
-			this.tsaver.start();
-            lock.unlock();
+            IJ.error(""+e);
+            close();
         }
-        this.counter++;
     }
     
     public void close()
     {
-        if (this.fw == null) return;
-        wlock.lock();
-        try{this.fw.write(msg);}
-        catch (Exception e) {IJ.error(""+e);}
-        msg="";
-        wlock.unlock();
-        try {this.fw.close();}
-        catch (Exception e) {IJ.error(""+e);}
-    }    
-}
-
-class ThreadedSaver extends Thread
-{
-	private ReconstructionViewer viewer;
-    FileWriter fw;
-    java.util.concurrent.locks.Lock wlock;
-    java.lang.String msg;
-	
-	public void mysetup(FileWriter fw_, java.util.concurrent.locks.Lock wlock_, java.lang.String msg_)
-	{
-        fw=fw_;
-        wlock=wlock_;
-        msg=msg_;
-	}
-	
-	public void run()
-	{
-        wlock.lock();
         try
         {
-            fw.write(msg);
+            if (this.out != null) this.out.close();
+            if (this.fw != null) this.fw.close();
         }
-        catch (Exception e)
-        {
-            IJ.error(""+e);
-        }
-        wlock.unlock();
-	}
-}
\ No newline at end of file
+        catch (Exception e) {IJ.error(""+e);}
+        this.out = null;
+        this.fw = null;
+    }    
+}
@@ -35,6 +35,15 @@
 	
 	int nframes = 0;
 	
+	// particles received on the online rendering mode
+	float [] ls = new float [0];
+	float [] lx = new float [0];
+	float [] ly = new float [0];
+	float [] lz = new float [0];
+	int [] lf = new int [0];
+	int count = 0;
+	private int [] pixel = new int [3];
+	
 	/** Class constructer used on the online rendering mode.
 	 * @param title name for the rendering window
 	 * @param width original image width
@@ -252,11 +261,39 @@ ImagePlus calculateColorBar()
 		return c;
 	}
 
+	/** Stores newly detected particles for the online rendering mode, they
+	 * are drawn on the next update.
+	 * @param particles particles to add
+	*/
+	void add(Localisations particles)
+	{
+		if (!settings.view) return;
+		int n = count+particles.size;
+		if (n>lf.length)
+		{
+			int capacity = Math.max(n, 2*lf.length);
+			ls = java.util.Arrays.copyOf(ls, capacity);
+			lx = java.util.Arrays.copyOf(lx, capacity);
+			ly = java.util.Arrays.copyOf(ly, capacity);
+			lz = java.util.Arrays.copyOf(lz, capacity);
+			lf = java.util.Arrays.copyOf(lf, capacity);
+		}
+		for (int p=0;p<particles.size;p++)
+		{
+			ls[count] = (float) particles.values[Localisations.INTENSITY][p];
+			lx[count] = (float) particles.values[Localisations.X][p];
+			ly[count] = (float) particles.values[Localisations.Y][p];
+			lz[count] = (float) particles.values[Localisations.Z][p];
+			lf[count] = (int) particles.values[Localisations.FRAME][p];
+			count++;
+		}
+	}
+
 	/** Updates the reconstruction viewer with the lattest acquired particles. */
 	void update()
 	{
 		if (!settings.view) return;
-		int new_p=table.getCounter();
+		int new_p=count;
 		if (new_p==0 || new_p==position) return;
 		update(position, new_p-1);
 		position = new_p;		
@@ -264,35 +301,15 @@ void update()
 
 	/** Updates the reconstruction viewer by showing the new particles found between
 	 * the given indices.
-	 * @param start first particle to be updated from the table
-	 * @param stop last particle to be updated from the table
+	 * @param start first particle to be updated
+	 * @param stop last particle to be updated
 	*/
 	void update(int start, int stop)
 	{
-		// updated May 5th - instead of loading the full columns as arrays, we only grab the needed values, should increase processing speed
 		if (!settings.view) return;
 		
-		int nresults = table.getCounter();
-
 		start=(start<0)?0:start;
-		stop=(stop>nresults)?(nresults-1):stop;
-
-		s = new double [stop-start+1];
-		x = new double [stop-start+1];
-		y = new double [stop-start+1];
-		z = new double [stop-start+1];
-		
-		int index;
-		functions.ptable_lock.lock();
-		for (int n=start; n<=stop; n++)
-		{
-			index = n-start;
-			s[index] = table.getValueAsDouble(0, n);
-			x[index] = table.getValueAsDouble(1, n);
-			y[index] = table.getValueAsDouble(2, n);
-			z[index] = table.getValueAsDouble(5, n);
-		}
-		functions.ptable_lock.unlock();
+		stop=(stop>=count)?(count-1):stop;
 		
 		boolean newMax=false;
 		boolean newMin=false;
@@ -300,27 +317,27 @@ void update(int start, int stop)
 		boolean newMinZ=false;
 		
 		// check if there is a new max/min value
-		for (int n=0;n<=(stop-start);n++)
+		for (int n=start;n<=stop;n++)
 		{
-			if (s[n]>max)
+			if (ls[n]>max)
 			{
 				newMax=true;
-				max=(int) Math.round(s[n]);
+				max=(int) Math.round(ls[n]);
 			}
-			if (s[n]<min)
+			if (ls[n]<min)
 			{
 				newMin=true;
-				min=(int) Math.round(s[n]);
+				min=(int) Math.round(ls[n]);
 			}
-			if (z[n]>maxZ)
+			if (lz[n]>maxZ)
 			{
 				newMaxZ=true;
-				maxZ=z[n];
+				maxZ=lz[n];
 			}
-			if (z[n]<minZ)
+			if (lz[n]<minZ)
 			{
 				newMinZ=true;
-				minZ=z[n];
+				minZ=lz[n];
 			}
 			
 		}
@@ -332,19 +349,9 @@ void update(int start, int stop)
 			return;
 		}
 		
-		int v, xmag, ymag;
-		int [] old_rgb = new int [3];
-		int [] new_rgb = new int [3];
-		for (int n=0;n<=(stop-start);n++)
-		{
-			xmag=(int) Math.round(x[n]*settings.magn);
-			ymag=(int) Math.round(y[n]*settings.magn);
-			ip.getPixel(xmag, ymag, old_rgb);
-			new_rgb = calculateColor(s[n], z[n]);
-			if ((old_rgb[0]+old_rgb[1]+old_rgb[2])<(new_rgb[0]+new_rgb[1]+new_rgb[2]))
-				ip.putPixel(xmag, ymag, new_rgb);
-		}
-		imp.updateAndDraw();;
+		for (int n=start;n<=stop;n++)
+			drawParticle(n);
+		imp.updateAndDraw();
 	}
 	
 	/** Updates the reconstruction viewer by showing particles found between
@@ -356,32 +363,23 @@ void updateShort(int fstart, int fstop)
 	{
 		if (!settings.view) return;
 		clear();
-		functions.ptable_lock.lock();
-		s = table.getColumnAsDoubles(0);
-		x = table.getColumnAsDoubles(1);
-		y = table.getColumnAsDoubles(2);
-		z = table.getColumnAsDoubles(5);
-		f = table.getColumnAsDoubles(13);
-		functions.ptable_lock.unlock();
-		
-		int xmag, ymag;
-		int [] old_rgb = new int [3];
-		int [] new_rgb = new int [3];
-		for (int n=0;n<f.length;n++)
-		{
-			if (f[n]>=fstart && f[n]<=fstop)
-			{
-				xmag=(int) Math.round(x[n]*settings.magn);
-				ymag=(int) Math.round(y[n]*settings.magn);
-				ip.getPixel(xmag, ymag, old_rgb);
-				new_rgb = calculateColor(s[n], z[n]);
-				if ((old_rgb[0]+old_rgb[1]+old_rgb[2])<(new_rgb[0]+new_rgb[1]+new_rgb[2]))
-					ip.putPixel(xmag, ymag, new_rgb);
-			}
-		}
+		for (int n=0;n<count;n++)
+			if (lf[n]>=fstart && lf[n]<=fstop)
+				drawParticle(n);
 		imp.updateAndDraw();
 	}
 	
+	// draws particle n of the online rendering mode, unless a brighter one is already there
+	private void drawParticle(int n)
+	{
+		int xmag=(int) Math.round(lx[n]*settings.magn);
+		int ymag=(int) Math.round(ly[n]*settings.magn);
+		int [] old_rgb = ip.getPixel(xmag, ymag, pixel);
+		int [] new_rgb = calculateColor(ls[n], lz[n]);
+		if ((old_rgb[0]+old_rgb[1]+old_rgb[2])<(new_rgb[0]+new_rgb[1]+new_rgb[2]))
+			ip.putPixel(xmag, ymag, new_rgb);
+	}
+	
 	/** Cleans the reconstruction viewer image. */
 	void clear()
 	{
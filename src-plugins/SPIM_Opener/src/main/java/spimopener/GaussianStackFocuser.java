@@ -1,6 +1,5 @@
 package spimopener;
 
-import ij.macro.Interpreter;
 import ij.plugin.filter.GaussianBlur;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
@@ -37,11 +36,11 @@ public ImageProcessor getProjection() {
 	}
 
 	public static FloatProcessor focus(FloatProcessor[] slices, double radius) {
-                boolean wasBatchMode = Interpreter.batchMode;
-                Interpreter.batchMode = true;
-
-                // calculate weights
+                // calculate weights; several planes may be focused in parallel,
+                // so the progress bar is switched off per blur instead of
+                // through the global batch mode
                 GaussianBlur blur = new GaussianBlur();
+                blur.showProgress(false);
                 int pixelCount = slices[0].getWidth() * slices[0].getHeight();
                 FloatProcessor[] weights = new FloatProcessor[slices.length];
                 for (int i = 0; i < slices.length; i++) {
@@ -65,7 +64,6 @@ public static FloatProcessor focus(FloatProcessor[] slices, double radius) {
                         if (totalWeight != 0)
                                 result.setf(j, cumul / totalWeight);
                 }
-                Interpreter.batchMode = wasBatchMode;
                 return result;
         }
 
@@ -2,15 +2,26 @@
 
 import ij.IJ;
 import ij.ImagePlus;
+import ij.Prefs;
 import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class SPIMExperiment {
@@ -209,13 +220,8 @@ public ImagePlus open(int sample,
 		if(projectionMethod == NO_PROJECTION)
 			return openNotProjected(sample, tpMin, tpMax, tpStep, region, angle, channel, zMin, zMax, zStep, fMin, fMax, fStep, yMin, yMax, yStep, xMin, xMax, xStep, xDir, yDir, zDir, virtual);
 
-		Projector projector = null;
-		switch(projectionMethod) {
-			case MIN_PROJECTION:         projector = new MinimumProjector(); break;
-			case MAX_PROJECTION:         projector = new MaximumProjector(); break;
-			case GAUSSIAN_STACK_FOCUSER: projector = new GaussianStackFocuser(); break;
-			default: throw new IllegalArgumentException("Unknown projection method: " + projectionMethod);
-		}
+		// check that the projection method is known
+		createProjector(projectionMethod);
 
 		final int D = 5;
 		final int[] MIN = new int[] { xMin, yMin, fMin, zMin, tpMin };
@@ -239,58 +245,40 @@ public ImagePlus open(int sample,
 		final int[] position = new int[D];
 		System.arraycopy(MIN, 0, position, 0, D);
 
-		if(xDir == X && yDir == Y && INC[xDir] == 1 && INC[yDir] == 1) {
-			for(int z = MIN[zDir]; z <= MAX[zDir]; z+=INC[zDir]) {
-				position[zDir] = z;
-				if(IJ.escapePressed()) {
-					IJ.resetEscape();
-					break;
-				}
-				projector.reset();
-				for(int proj = MIN[projectionDir]; proj <= MAX[projectionDir]; proj+=INC[projectionDir]) {
-					position[projectionDir] = proj;
-					String path = getPath(sample, position[T], region, angle, channel, position[Z], position[F]);
-					ImageProcessor ip = openRaw(path, w, h, MIN[xDir], MAX[xDir], MIN[yDir], MAX[yDir]);
-					projector.add(ip);
-				}
-				stack.addSlice(projector.getProjection());
-				IJ.showProgress(z - MIN[zDir], MAX[zDir] - MIN[zDir] + 1);
-			}
-		}
-		else {
-			int[] ordered = new int[2];
-			ordered[0] = Math.min(xDir, yDir);
-			ordered[1] = Math.max(xDir, yDir);
-			for(int z = MIN[zDir]; z <= MAX[zDir]; z+=INC[zDir]) {
-				position[zDir] = z;
+		final boolean xy = xDir == X && yDir == Y && INC[xDir] == 1 && INC[yDir] == 1;
+		final int[][] values = getValues(MIN, MAX, INC, xDir, yDir, projectionDir);
+		final int[] zValues = getValues(MIN[zDir], MAX[zDir], INC[zDir], Integer.MAX_VALUE);
+
+		// the output planes are independent of each other: project as many in parallel as there are threads
+		final int nThreads = Prefs.getThreads();
+		// each thread reslices the planes to project in blocks that fit into its share of the memory
+		long planeBytes = 2L * ws * hs;
+		final int block = (int)Math.max(1, Math.min(values[projectionDir].length, (IJ.maxMemory() - IJ.currentMemory()) / 4 / nThreads / planeBytes));
+		final ExecutorService exe = Executors.newFixedThreadPool(nThreads);
+		try {
+			for(int z0 = 0; z0 < zValues.length; z0 += nThreads) {
 				if(IJ.escapePressed()) {
 					IJ.resetEscape();
 					break;
 				}
-				projector.reset();
-				for(int proj = MIN[projectionDir]; proj <= MAX[projectionDir]; proj+=INC[projectionDir]) {
-					position[projectionDir] = proj;
-
-					ImageProcessor ip = new ShortProcessor(ws, hs);
-
-					for(int i1 = MIN[ordered[1]]; i1 <= MAX[ordered[1]]; i1+=INC[ordered[1]]) {
-						position[ordered[1]] = i1;
-						String path = getPath(sample, position[T], region, angle, channel, position[Z], position[F]);
-						ImageProcessor org = openRaw(path, w, h);
-						for(int i2 = MIN[ordered[0]]; i2 <= MAX[ordered[0]]; i2+=INC[ordered[0]]) {
-							position[ordered[0]] = i2;
-							ip.set((position[xDir] - MIN[xDir]) / INC[xDir],
-								(position[yDir] - MIN[yDir]) / INC[yDir],
-								org.get(position[X], position[Y]));
-						}
-					}
-					projector.add(ip);
+				int z1 = Math.min(zValues.length, z0 + nThreads);
+				List<Future<ImageProcessor>> projections = new ArrayList<Future<ImageProcessor>>();
+				for(int z = z0; z < z1; z++) {
+					position[zDir] = zValues[z];
+					projections.add(exe.submit(xy ?
+						projectPlanes(sample, region, angle, channel, position, MIN, MAX, INC, projectionDir, projectionMethod) :
+						projectResliced(sample, region, angle, channel, position, values, xDir, yDir, projectionDir, projectionMethod, block)));
 				}
-
-				stack.addSlice(projector.getProjection());
-				System.out.println((z - MIN[zDir]) + " / " + (MAX[zDir] - MIN[zDir] + 1));
-				IJ.showProgress(z - MIN[zDir], MAX[zDir] - MIN[zDir] + 1);
+				for(Future<ImageProcessor> projection : projections)
+					stack.addSlice(projection.get());
+				IJ.showProgress(z1, zValues.length);
 			}
+		} catch(InterruptedException e) {
+			throw new RuntimeException("Interrupted while projecting", e);
+		} catch(ExecutionException e) {
+			throw new RuntimeException("Cannot project", e.getCause());
+		} finally {
+			exe.shutdown();
 		}
 		IJ.showProgress(1);
 
@@ -378,32 +366,22 @@ public ImagePlus openNotProjected(int sample,
 			}
 		}
 		else {
-			int[] ordered = new int[2];
-			ordered[0] = Math.min(xDir, yDir);
-			ordered[1] = Math.max(xDir, yDir);
-			for(int z = MIN[zDir]; z <= MAX[zDir]; z+=INC[zDir]) {
+			// read the planes in blocks that fit into memory, each raw file only once per block
+			final int[][] values = getValues(MIN, MAX, INC, xDir, yDir, zDir);
+			final int[] zValues = values[zDir];
+			long planeBytes = 2L * ws * hs;
+			int block = (int)Math.max(1, Math.min(zValues.length, (IJ.maxMemory() - IJ.currentMemory()) / 4 / planeBytes));
+			for(int z0 = 0; z0 < zValues.length; z0 += block) {
 				if(IJ.escapePressed()) {
 					IJ.resetEscape();
 					break;
 				}
-				position[zDir] = z;
-				ImageProcessor ip = new ShortProcessor(ws, hs);
-
-				for(int i1 = MIN[ordered[1]]; i1 <= MAX[ordered[1]]; i1+=INC[ordered[1]]) {
-					position[ordered[1]] = i1;
-					String path = getPath(sample, position[T], region, angle, channel, position[Z], position[F]);
-					ImageProcessor org = openRaw(path, w, h);
-					for(int i2 = MIN[ordered[0]]; i2 <= MAX[ordered[0]]; i2+=INC[ordered[0]]) {
-						position[ordered[0]] = i2;
-						ip.set((position[xDir] - MIN[xDir]) / INC[xDir],
-							(position[yDir] - MIN[yDir]) / INC[yDir],
-							org.get(position[X], position[Y]));
-					}
-				}
-
-				stack.addSlice(ip);
-				System.out.println((z - MIN[zDir]) + " / " + (MAX[zDir] - MIN[zDir] + 1));
-				IJ.showProgress(z - MIN[zDir], MAX[zDir] - MIN[zDir] + 1);
+				int z1 = Math.min(zValues.length, z0 + block);
+				values[zDir] = Arrays.copyOfRange(zValues, z0, z1);
+				short[][] planes = readPlanes(sample, region, angle, channel, values, xDir, yDir, zDir, Prefs.getThreads());
+				for(short[] plane : planes)
+					stack.addSlice(new ShortProcessor(ws, hs, plane, null));
+				IJ.showProgress(z1, zValues.length);
 			}
 		}
 		IJ.showProgress(1);
@@ -420,74 +398,198 @@ public ImagePlus openNotProjected(int sample,
 		return ret;
 	}
 
-	public static ImageProcessor openRaw(String path, int orgW, int orgH, int xMin, int xMax, int yMin, int yMax) {
-		if(xMin == 0 && xMax == orgW - 1 && yMin == 0 && yMax == orgH - 1)
-			return openRaw(path, orgW, orgH);
-		int ws = xMax - xMin + 1;
-		int hs = yMax - yMin + 1;
+	private static Projector createProjector(int projectionMethod) {
+		switch(projectionMethod) {
+			case MIN_PROJECTION:         return new MinimumProjector();
+			case MAX_PROJECTION:         return new MaximumProjector();
+			case GAUSSIAN_STACK_FOCUSER: return new GaussianStackFocuser();
+			default: throw new IllegalArgumentException("Unknown projection method: " + projectionMethod);
+		}
+	}
 
-		byte[] bytes = new byte[ws * hs * 2];
-		short[] pixels = new short[ws * hs];
+	/**
+	 * Projects the xy planes at the given position along the projection direction.
+	 */
+	private Callable<ImageProcessor> projectPlanes(final int sample, final int region, final int angle, final int channel,
+			int[] position, final int[] MIN, final int[] MAX, final int[] INC,
+			final int projectionDir, final int projectionMethod) {
+		final int[] pos = position.clone();
+		return new Callable<ImageProcessor>() {
+			public ImageProcessor call() {
+				Projector projector = createProjector(projectionMethod);
+				for(int proj = MIN[projectionDir]; proj <= MAX[projectionDir]; proj+=INC[projectionDir]) {
+					pos[projectionDir] = proj;
+					String path = getPath(sample, pos[T], region, angle, channel, pos[Z], pos[F]);
+					projector.add(openRaw(path, w, h, MIN[X], MAX[X], MIN[Y], MAX[Y]));
+				}
+				return projector.getProjection();
+			}
+		};
+	}
 
-		FileInputStream in = null;
-		try {
-			in = new FileInputStream(path);
+	/**
+	 * Projects the resliced planes at the given position along the projection direction.
+	 * The planes are read in blocks of at most <code>block</code> planes, so that only
+	 * one block needs to be in memory at a time.
+	 */
+	private Callable<ImageProcessor> projectResliced(final int sample, final int region, final int angle, final int channel,
+			final int[] position, int[][] values, final int xDir, final int yDir,
+			final int projectionDir, final int projectionMethod, final int block) {
+		final int[][] vals = values.clone();
+		for(int d = 0; d < vals.length; d++)
+			if(d != xDir && d != yDir && d != projectionDir)
+				vals[d] = new int[] { position[d] };
+		final int[] projValues = vals[projectionDir];
+		return new Callable<ImageProcessor>() {
+			public ImageProcessor call() {
+				int ws = vals[xDir].length;
+				int hs = vals[yDir].length;
+				int[][] blockValues = vals.clone();
+				Projector projector = createProjector(projectionMethod);
+				for(int p0 = 0; p0 < projValues.length; p0 += block) {
+					blockValues[projectionDir] = Arrays.copyOfRange(projValues, p0, Math.min(projValues.length, p0 + block));
+					for(short[] plane : readPlanes(sample, region, angle, channel, blockValues, xDir, yDir, projectionDir, 1))
+						projector.add(new ShortProcessor(ws, hs, plane, null));
+				}
+				return projector.getProjection();
+			}
+		};
+	}
 
-			// skip the top
-			int toSkip = 2 * (yMin * orgW + xMin);
-			while(toSkip > 0)
-				toSkip -= in.skip(toSkip);
+	/**
+	 * Returns the coordinates MIN, MIN + INC, ... up to MAX, and at most n of them.
+	 */
+	private static int[] getValues(int min, int max, int inc, int n) {
+		n = Math.min(n, (max - min) / inc + 1);
+		int[] values = new int[n];
+		for(int i = 0; i < n; i++)
+			values[i] = min + i * inc;
+		return values;
+	}
 
-			// read through it line by line
-			int offs = 0;
-			for(int r = 0; r < hs; r++) {
-				// read the data
-				int read = 0;
-				while(read < ws)
-					read += in.read(bytes, offs + read, 2 * ws - read);
-				offs += 2 * ws;
-
-				// skip to next line
-				toSkip = 2 * (orgW - xMax - 1 + xMin);
-				while(toSkip > 0)
-					toSkip -= in.skip(toSkip);
-			}
-			in.close();
-		} catch(IOException e) {
-			throw new RuntimeException("Cannot load " + path, e);
+	/**
+	 * Returns the coordinates of each dimension: the output ranges for xDir
+	 * and yDir, the whole range for sDir and the minimum for all others.
+	 */
+	private static int[][] getValues(int[] MIN, int[] MAX, int[] INC, int xDir, int yDir, int sDir) {
+		int[][] values = new int[MIN.length][];
+		for(int d = 0; d < values.length; d++) {
+			if(d == xDir || d == yDir)
+				values[d] = getValues(MIN[d], MAX[d], INC[d], (MAX[d] - MIN[d] + 1) / INC[d]);
+			else if(d == sDir)
+				values[d] = getValues(MIN[d], MAX[d], INC[d], Integer.MAX_VALUE);
+			else
+				values[d] = new int[] { MIN[d] };
 		}
+		return values;
+	}
 
-		for(int i = 0; i < pixels.length; i++) {
-			int low  = 0xff & bytes[2 * i];
-			int high = 0xff & bytes[2 * i + 1];
-			pixels[i] = (short)((high << 8) | low);
+	/**
+	 * Reads the planes spanned by the dimensions xDir and yDir, one for
+	 * each coordinate of sDir. Every raw file is mapped only once, and
+	 * only the lines that are needed, and its pixels are scattered into
+	 * all planes they belong to.
+	 *
+	 * @param values the coordinates of each dimension (see getValues)
+	 * @param nThreads number of threads reading files in parallel
+	 * @return the planes, with values[xDir].length x values[yDir].length pixels each
+	 */
+	private short[][] readPlanes(final int sample, final int region, final int angle, final int channel,
+			final int[][] values, final int xDir, final int yDir, final int sDir, int nThreads) {
+		final int ws = values[xDir].length;
+		final int hs = values[yDir].length;
+		final short[][] planes = new short[values[sDir].length][ws * hs];
+		final int nFiles = values[F].length * values[Z].length * values[T].length;
+		final AtomicInteger ai = new AtomicInteger(0);
+		final RuntimeException[] failure = new RuntimeException[1];
+
+		Thread[] threads = new Thread[Math.max(1, Math.min(nThreads, nFiles))];
+		for(int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					final int[] idx = new int[5];
+					final int[] xs = values[X], ys = values[Y];
+					for(int f = ai.getAndIncrement(); f < nFiles; f = ai.getAndIncrement()) {
+						idx[F] = f % values[F].length;
+						idx[Z] = f / values[F].length % values[Z].length;
+						idx[T] = f / values[F].length / values[Z].length;
+						String path = getPath(sample, values[T][idx[T]], region, angle, channel, values[Z][idx[Z]], values[F][idx[F]]);
+						ShortBuffer in;
+						try {
+							in = mapRaw(path, w, ys[0], ys[ys.length - 1]);
+						} catch(RuntimeException e) {
+							failure[0] = e;
+							return;
+						}
+						for(idx[Y] = 0; idx[Y] < ys.length; idx[Y]++) {
+							int offs = (ys[idx[Y]] - ys[0]) * w;
+							for(idx[X] = 0; idx[X] < xs.length; idx[X]++)
+								planes[idx[sDir]][idx[yDir] * ws + idx[xDir]] = in.get(offs + xs[idx[X]]);
+						}
+					}
+				}
+			};
 		}
-
-		return new ShortProcessor(ws, hs, pixels, null);
+		if(threads.length == 1)
+			threads[0].run();
+		else {
+			for(Thread thread : threads)
+				thread.start();
+			try {
+				for(Thread thread : threads)
+					thread.join();
+			} catch(InterruptedException e) {
+				throw new RuntimeException("Interrupted while reading planes", e);
+			}
+		}
+		if(failure[0] != null)
+			throw failure[0];
+		return planes;
 	}
 
-	public static ImageProcessor openRaw(String path, int w, int h) {
-		byte[] bytes = new byte[w * h * 2];
-		short[] pixels = new short[w * h];
-
-		FileInputStream in = null;
+	/**
+	 * Maps the lines yMin to yMax of a raw plane of 16-bit little endian
+	 * pixels into memory. The buffer starts with pixel (0, yMin).
+	 */
+	public static ShortBuffer mapRaw(String path, int orgW, int yMin, int yMax) {
+		RandomAccessFile in = null;
 		try {
-			in = new FileInputStream(path);
-			int read = 0;
-			while(read < bytes.length)
-				read += in.read(bytes, read, bytes.length - read);
-			in.close();
+			in = new RandomAccessFile(path, "r");
+			return in.getChannel()
+				.map(FileChannel.MapMode.READ_ONLY, 2L * yMin * orgW, 2L * (yMax - yMin + 1) * orgW)
+				.order(ByteOrder.LITTLE_ENDIAN)
+				.asShortBuffer();
 		} catch(IOException e) {
 			throw new RuntimeException("Cannot load " + path, e);
+		} finally {
+			try {
+				if(in != null)
+					in.close();
+			} catch(IOException e) {
+				// the mapping stays valid
+			}
 		}
+	}
 
-		for(int i = 0; i < pixels.length; i++) {
-			int low  = 0xff & bytes[2 * i];
-			int high = 0xff & bytes[2 * i + 1];
-			pixels[i] = (short)((high << 8) | low);
+	public static ImageProcessor openRaw(String path, int orgW, int orgH, int xMin, int xMax, int yMin, int yMax) {
+		int ws = xMax - xMin + 1;
+		int hs = yMax - yMin + 1;
+		short[] pixels = new short[ws * hs];
+
+		ShortBuffer in = mapRaw(path, orgW, yMin, yMax);
+		if(ws == orgW)
+			in.get(pixels);
+		else {
+			for(int r = 0; r < hs; r++) {
+				in.position(r * orgW + xMin);
+				in.get(pixels, r * ws, ws);
+			}
 		}
+		return new ShortProcessor(ws, hs, pixels, null);
+	}
 
-		return new ShortProcessor(w, h, pixels, null);
+	public static ImageProcessor openRaw(String path, int w, int h) {
+		return openRaw(path, w, h, 0, w - 1, 0, h - 1);
 	}
 
 	public static void saveRaw(ImageProcessor ip, String path) {
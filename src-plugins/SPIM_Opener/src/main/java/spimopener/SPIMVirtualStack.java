@@ -6,14 +6,54 @@
 import java.io.File;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class SPIMVirtualStack extends SPIMStack {
 
+	/** Fraction of the maximal heap size that the plane cache may use. */
+	private static final int CACHE_FRACTION = 8;
+
+	/** Number of planes read ahead in the direction of scrolling. */
+	private static final int PREFETCH = 4;
+
+	/** Threads reading planes ahead, shared by all stacks. */
+	private static final ExecutorService prefetcher;
+	static {
+		ThreadPoolExecutor exe = new ThreadPoolExecutor(2, 2, 10, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "SPIM plane prefetcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		exe.allowCoreThreadTimeOut(true);
+		prefetcher = exe;
+	}
+
 	protected List<String> paths = new ArrayList<String>();
 	private int x0, x1, y0, y1, orgW, orgH;
 	private String tempdir = null;
 
+	/** Least recently used planes, by slice number. */
+	private final Map<Integer, short[]> cache;
+	/** Planes being read ahead, by slice number. */
+	private final Map<Integer, Future<short[]>> pending = new HashMap<Integer, Future<short[]>>();
+	/** Incremented whenever slice numbers change, to drop outdated planes. */
+	private int generation = 0;
+	private int lastSlice = 0;
+	private final int prefetch;
+
 	/** Creates a new, empty virtual stack. */
 	public SPIMVirtualStack(int w, int h) {
 		super(w, h);
@@ -23,6 +63,18 @@ public SPIMVirtualStack(int w, int h) {
 		this.y1 = h - 1;
 		this.orgW = w;
 		this.orgH = h;
+
+		long planeBytes = 2L * w * h;
+		final int capacity = (int)Math.max(2, Math.min(Integer.MAX_VALUE,
+				Runtime.getRuntime().maxMemory() / CACHE_FRACTION / planeBytes));
+		this.prefetch = Math.min(PREFETCH, capacity - 1);
+		this.cache = new LinkedHashMap<Integer, short[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Integer, short[]> eldest) {
+				return size() > capacity;
+			}
+		};
 	}
 
 	public void setRange(int orgW, int orgH, int xOffs, int yOffs) {
@@ -35,7 +87,7 @@ public void setRange(int orgW, int orgH, int xOffs, int yOffs) {
 	}
 
 	/** Adds an image to the end of the stack. */
-	public void addSlice(String path) {
+	public synchronized void addSlice(String path) {
 		if (path == null)
 			throw new IllegalArgumentException("path is null!");
 
@@ -49,7 +101,9 @@ public void addSlice(ImageProcessor ip) {
 		} catch(Exception e) {
 			throw new RuntimeException("Cannot save tmp virtual file: " + path);
 		}
-		paths.add(path);
+		synchronized(this) {
+			paths.add(path);
+		}
 	}
 
 	/** Does nothing. */
@@ -65,10 +119,13 @@ public void addSlice(String sliceLabel, ImageProcessor ip, int n) {
 	}
 
 	/** Deletes the specified slice, were 1<=n<=nslices. */
-	public void deleteSlice(int n) {
+	public synchronized void deleteSlice(int n) {
 		if(n < 1 || n > paths.size())
 			throw new IllegalArgumentException("Argument out of range: " + n);
 		paths.remove(n - 1);
+		generation++;
+		cache.clear();
+		pending.clear();
 	}
 
 	/** Deletes the last slice in the stack. */
@@ -95,16 +152,83 @@ public void setPixels(Object pixels, int n) {
 	 *  were 1<=n<=nslices. Returns null if the stack is empty.
 	 */
 	public ImageProcessor getProcessor(int n) {
-		ImageProcessor ip = null;
+		short[] pixels = null;
 		try {
-			ip = SPIMExperiment.openRaw(paths.get(n - 1), orgW, orgH, x0, x1, y0, y1);
+			pixels = getPlane(n);
 		} catch(Exception e) {
 			e.printStackTrace();
 			return null;
 		}
-		if(!(ip instanceof ShortProcessor))
-			ip = ip.convertToShort(true);
-		return ip;
+		prefetch(n);
+		// the caller may modify the pixels, which must not end up in the cache
+		return new ShortProcessor(getWidth(), getHeight(), pixels.clone(), null);
+	}
+
+	/**
+	 * Returns the cached pixels of slice n, reading them if necessary,
+	 * or waiting for them if they are being read ahead.
+	 */
+	private short[] getPlane(int n) throws Exception {
+		Future<short[]> future;
+		int gen;
+		synchronized(this) {
+			short[] pixels = cache.get(n);
+			if(pixels != null)
+				return pixels;
+			future = pending.get(n);
+			gen = generation;
+		}
+		if(future != null)
+			return future.get();
+		short[] pixels = readPlane(n);
+		synchronized(this) {
+			if(gen == generation)
+				cache.put(n, pixels);
+		}
+		return pixels;
+	}
+
+	/**
+	 * Reads the planes following slice n in the direction of scrolling
+	 * into the cache.
+	 */
+	private synchronized void prefetch(int n) {
+		int dir = n < lastSlice ? -1 : 1;
+		lastSlice = n;
+		final int gen = generation;
+		for(int i = 1; i <= prefetch; i++) {
+			final int m = n + dir * i;
+			if(m < 1 || m > paths.size())
+				break;
+			if(cache.containsKey(m) || pending.containsKey(m))
+				continue;
+			pending.put(m, prefetcher.submit(new Callable<short[]>() {
+				public short[] call() throws Exception {
+					short[] pixels = null;
+					try {
+						pixels = readPlane(m);
+					} finally {
+						synchronized(SPIMVirtualStack.this) {
+							if(gen == generation) {
+								pending.remove(m);
+								if(pixels != null)
+									cache.put(m, pixels);
+							}
+						}
+					}
+					return pixels;
+				}
+			}));
+		}
+	}
+
+	private short[] readPlane(int n) {
+		String path;
+		synchronized(this) {
+			path = paths.get(n - 1);
+		}
+		ImageProcessor ip = SPIMExperiment.openRaw(path, orgW, orgH, x0, x1, y0, y1);
+		return (short[])ip.getPixels();
 	}
 
 	/** Currently not implemented */
@@ -113,7 +237,7 @@ public int saveChanges(int n) {
 	}
 
 	 /** Returns the number of slices in this stack. */
-	public int getSize() {
+	public synchronized int getSize() {
 		return paths.size();
 	}
 
@@ -12,15 +12,13 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import fiji.JarIndex;
 
 import org.fife.ui.autocomplete.CompletionProvider;
 import org.fife.ui.autocomplete.BasicCompletion;
@@ -47,36 +45,37 @@ public ClassNames(DefaultProvider provider) {
 		defaultProvider = provider;
 		if (packages == null) {
 			packages = new TreeMap<String, Package>();
-			addPaths(System.getProperty("java.class.path").split(File.pathSeparator));
-			addPaths(System.getProperty("sun.boot.class.path").split(File.pathSeparator));
+			String[] classPath = System.getProperty("java.class.path").split(File.pathSeparator);
+			String[] bootClassPath = System.getProperty("sun.boot.class.path").split(File.pathSeparator);
+			JarIndex index = JarIndex.getClassPathIndex();
+			List<File> jars = new ArrayList<File>();
+			addJars(jars, classPath);
+			addJars(jars, bootClassPath);
+			// sorted, so that consecutive classes are mostly in the same package
+			Package pkg = null;
+			for (String className : new TreeSet<String>(index.getClassMap(jars).keySet()))
+				pkg = addClassName(pkg, className);
+			index.save();
+			addDirectories(classPath);
+			addDirectories(bootClassPath);
 		}
 	}
 
-	protected void addPaths(String[] args) {
-		for (String arg : args)
-			addPath(arg);
-	}
-
-	protected void addPath(String path) {
-		File file = new File(path);
-		if (file.isDirectory())
-			addDirectory(file, "");
-		else if (path.endsWith(".jar") && file.length() > 0) try {
-				ZipFile jarFile = new ZipFile(file);
-				Enumeration e = jarFile.entries();
-				Package pkg = null;
-				while (e.hasMoreElements()) {
-					ZipEntry entry = (ZipEntry)e.nextElement();
-					String name = entry.getName();
-					if (name.endsWith(".class")) //ignore non-class files
-						pkg = addClassName(pkg, stripClassSuffix(name).replace('/', '.'));
-				}
-			} catch (Exception e) {
-				if (path.endsWith("/sunrsasign.jar") || path.endsWith("/jsfd.jar"))
-					return;
-				System.err.println("Exception while processing " + path);
-				e.printStackTrace();
-			}
+	protected void addJars(List<File> jars, String[] paths) {
+		for (String path : paths) {
+			File file = new File(path);
+			if (path.endsWith(".jar") && file.length() > 0 &&
+					!path.endsWith("/sunrsasign.jar") && !path.endsWith("/jsfd.jar"))
+				jars.add(file);
+		}
+	}
+
+	protected void addDirectories(String[] paths) {
+		for (String path : paths) {
+			File file = new File(path);
+			if (file.isDirectory())
+				addDirectory(file, "");
+		}
 	}
 
 	protected void addDirectory(File file, String packageName) {
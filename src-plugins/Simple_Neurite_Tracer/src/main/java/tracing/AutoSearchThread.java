@@ -73,11 +73,10 @@ public AutoSearchThread(ImagePlus image,
 		this.start_y = startPoint.y;
 		this.start_z = startPoint.z;
 
-		SearchNode s = createNewNode( start_x, start_y, start_z,
-					      0,
-					      estimateCostToGoal( start_x, start_y, start_z, 0 ),
-					      null, OPEN_FROM_START );
-		addNode(s,true);
+		addNode( start_x, start_y, start_z,
+			 0,
+			 estimateCostToGoal( start_x, start_y, start_z, 0 ),
+			 -1, OPEN_FROM_START );
 	}
 
 	@Override
@@ -95,12 +94,12 @@ protected double costMovingTo( int new_x, int new_y, int new_z ) {
 	}
 
 	@Override
-	protected void addingNode( SearchNode n ) {
-		if( tubeValues[n.z][n.y*width+n.x] > tubenessThreshold ) {
-			AutoPoint p=new AutoPoint(n.x,n.y,n.z);
+	protected void addingNode( int x, int y, int z ) {
+		if( tubeValues[z][y*width+x] > tubenessThreshold ) {
+			AutoPoint p=new AutoPoint(x,y,z);
 			destinations.add(p);
-		} else if( null != previousPathGraph.get(n.x,n.y,n.z) ) {
-			AutoPoint p=new AutoPoint(n.x,n.y,n.z);
+		} else if( null != previousPathGraph.get(x,y,z) ) {
+			AutoPoint p=new AutoPoint(x,y,z);
 			destinations.add(p);
 		}
 	}
@@ -114,7 +113,7 @@ float estimateCostToGoal( int current_x, int current_y, int current_z, int to_go
         }
 
 	Path getPathBack( int from_x, int from_y, int from_z ) {
-		return nodes_as_image_from_start[from_z][from_y*width+from_x].asPath( x_spacing, y_spacing, z_spacing, spacing_units );
+		return nodes_from_start.asPath( nodes_from_start.find( from_x, from_y, from_z ), x_spacing, y_spacing, z_spacing, spacing_units );
 	}
 
 	public Path getResult() {
@@ -627,8 +627,8 @@ public void finished( SearchInterface source, boolean success ) {
 
 		// Just log how many nodes were explored in that time:
 		System.out.println("  "+
-				   (sourceThread.open_from_start.size()+
-				    sourceThread.closed_from_start.size())+
+				   (sourceThread.nodes_from_start.openSize()+
+				    sourceThread.nodes_from_start.closedSize())+
 				   " nodes in "+secondsSinceThreadStarted+" seconds");
 	}
 
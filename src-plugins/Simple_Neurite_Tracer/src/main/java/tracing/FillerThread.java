@@ -52,26 +52,23 @@ public float getDistanceAtPoint( double xd, double yd, double zd ) {
 		int y = (int)Math.round( yd );
 		int z = (int)Math.round( zd );
 
-                SearchNode [] slice = nodes_as_image_from_start[z];
-                if( slice == null )
-			return -1.0f;
-
-		SearchNode n = slice[y*width+x];
-		if( n == null )
+		int n = nodes_from_start.find( x, y, z );
+		if( n < 0 )
 			return -1.0f;
 		else
-			return n.g;
+			return nodes_from_start.getG( n );
         }
 
         // FIXME: may be buggy, synchronization issues
 
         Fill getFill( ) {
 
-                Hashtable< SearchNode, Integer > h =
-                        new Hashtable< SearchNode, Integer >();
+		SearchState nodes = nodes_from_start;
+		int size = nodes.size();
 
-                ArrayList< SearchNode > a =
-                        new ArrayList< SearchNode >();
+		// The index in the fill of each slot, and the reverse:
+		int [] h = new int[size];
+		int [] a = new int[size];
 
                 // The tricky bit here is that we want to create a
                 // Fill object with index
@@ -80,26 +77,28 @@ Fill getFill( ) {
 
                 int i = 0;
 
-                for( SearchNode current : closed_from_start ) {
-                        /* if( current.g <= threshold ) { */
-			h.put( current, new Integer(i) );
-			a.add( current );
-			++ i;
-			/* } */
+                for( int slot = 0; slot < size; ++slot ) {
+			if( nodes.getStatus( slot ) == CLOSED_FROM_START ) {
+				h[slot] = i;
+				a[i] = slot;
+				++ i;
+			}
                 }
 
 		openAtOrAbove = i;
 
 		if (verbose) System.out.println("openAtOrAbove is: "+openAtOrAbove);
 
-		for( SearchNode current : open_from_start ) {
-                        /* if( current.g <= threshold ) { */
-			h.put( current, new Integer(i) );
-			a.add( current );
-			++ i;
-			/* } */
+                for( int slot = 0; slot < size; ++slot ) {
+			if( nodes.getStatus( slot ) == OPEN_FROM_START ) {
+				h[slot] = i;
+				a[i] = slot;
+				++ i;
+			}
                 }
 
+		int fillSize = i;
+
                 Fill fill = new Fill();
 
                 fill.setThreshold( threshold );
@@ -113,19 +112,16 @@ Fill getFill( ) {
                                  z_spacing,
                                  spacing_units );
 
-		if (verbose) System.out.println("... out of a.size() "+a.size()+" entries");
+		if (verbose) System.out.println("... out of "+fillSize+" entries");
 
-                for( i = 0; i < a.size(); ++i ) {
-                        SearchNode f = a.get(i);
+                for( i = 0; i < fillSize; ++i ) {
+                        int f = a[i];
                         int previousIndex = -1;
-                        SearchNode previous = f.getPredecessor();
-                        if( previous != null ) {
-                                Integer p = h.get(previous);
-                                if( p != null ) {
-                                        previousIndex = p.intValue();
-                                }
+                        int previous = nodes.getPredecessor( f );
+                        if( previous >= 0 && previous < size ) {
+				previousIndex = h[previous];
                         }
-                        fill.add( f.x, f.y, f.z, f.g, previousIndex, i >= openAtOrAbove );
+                        fill.add( nodes.getX( f ), nodes.getY( f ), nodes.getZ( f ), nodes.getG( f ), previousIndex, i >= openAtOrAbove );
                 }
 
                 if( sourcePaths != null ) {
@@ -165,33 +161,24 @@ public static FillerThread fromFill( ImagePlus imagePlus,
 							fill.getThreshold(),
 							5000 );
 
-		ArrayList< SearchNode > tempNodes = new ArrayList< SearchNode >();
-
-		for( Fill.Node n : fill.nodeList ) {
+		int [] slots = new int[ fill.nodeList.size() ];
 
-			SearchNode s = new SearchNode( n.x,
-						       n.y,
-						       n.z,
-						       (float)n.distance,
-						       0,
-						       null,
-						       SearchThread.FREE );
-			tempNodes.add(s);
+		for( int i = 0; i < slots.length; ++i ) {
+			Fill.Node n = fill.nodeList.get(i);
+			slots[i] = result.addNode( n.x,
+						   n.y,
+						   n.z,
+						   (float)n.distance,
+						   0,
+						   -1,
+						   n.open ? OPEN_FROM_START : CLOSED_FROM_START );
 		}
 
-		for( int i = 0; i < tempNodes.size(); ++i ) {
+		// Predecessors may come later in the list, so link them afterwards:
+		for( int i = 0; i < slots.length; ++i ) {
 			Fill.Node n = fill.nodeList.get(i);
-			SearchNode s = tempNodes.get(i);
-			if( n.previous >= 0 ) {
-				s.setPredecessor( tempNodes.get(n.previous) );
-			}
-			if( n.open ) {
-				s.searchStatus = OPEN_FROM_START;
-				result.addNode( s, true );
-			} else {
-				s.searchStatus = CLOSED_FROM_START;
-				result.addNode( s, true );
-			}
+			if( n.previous >= 0 )
+				result.nodes_from_start.setPredecessor( slots[i], slots[n.previous] );
 		}
 		result.setSourcePaths( fill.sourcePaths );
 		return result;
@@ -239,14 +226,13 @@ public void setSourcePaths( Set<Path> newSourcePaths ) {
 			if( p == null )
 				return;
                         for( int k = 0; k < p.size(); ++k ) {
-                                SearchNode f = new SearchNode( p.getXUnscaled(k),
-                                                               p.getYUnscaled(k),
-                                                               p.getZUnscaled(k),
-                                                               0,
-							       0,
-                                                               null,
-							       OPEN_FROM_START );
-				addNode(f,true);
+                                addNode( p.getXUnscaled(k),
+					 p.getYUnscaled(k),
+					 p.getZUnscaled(k),
+					 0,
+					 0,
+					 -1,
+					 OPEN_FROM_START );
                         }
 		}
 	}
@@ -274,31 +260,30 @@ public ImagePlus fillAsImagePlus( boolean realData ) {
 
                 ImageStack stack = new ImageStack(width,height);
 
-                for( int z = 0; z < depth; ++z ) {
-			SearchNode [] nodes_this_slice=nodes_as_image_from_start[z];
-			if( nodes_this_slice != null )
-				for( int y = 0; y < height; ++y ) {
-					for( int x = 0; x < width; ++x ) {
-						SearchNode s = nodes_as_image_from_start[z][y*width+x];
-						if( (s != null) && (s.g <= threshold) ) {
-							switch( imageType ) {
-							case ImagePlus.GRAY8:
-							case ImagePlus.COLOR_256:
-								new_slice_data_b[z][y*width+x] = realData ? slices_data_b[z][y*width+x] : (byte)255;
-								break;
-							case ImagePlus.GRAY16:
-								new_slice_data_s[z][y*width+x] = realData ? slices_data_s[z][y*width+x] : 255;
-								break;
-							case ImagePlus.GRAY32:
-								new_slice_data_f[z][y*width+x] = realData ? slices_data_f[z][y*width+x] : 255;
-								break;
-							default:
-								break;
-							}
-						}
-					}
-				}
+		SearchState nodes = nodes_from_start;
+		int size = nodes.size();
+		for( int s = 0; s < size; ++s ) {
+			if( nodes.getG( s ) > threshold )
+				continue;
+			int z = nodes.getZ( s );
+			int i = nodes.getY( s ) * width + nodes.getX( s );
+			switch( imageType ) {
+			case ImagePlus.GRAY8:
+			case ImagePlus.COLOR_256:
+				new_slice_data_b[z][i] = realData ? slices_data_b[z][i] : (byte)255;
+				break;
+			case ImagePlus.GRAY16:
+				new_slice_data_s[z][i] = realData ? slices_data_s[z][i] : 255;
+				break;
+			case ImagePlus.GRAY32:
+				new_slice_data_f[z][i] = realData ? slices_data_f[z][i] : 255;
+				break;
+			default:
+				break;
+			}
+		}
 
+                for( int z = 0; z < depth; ++z ) {
 			switch( imageType ) {
 			case ImagePlus.GRAY8:
 			case ImagePlus.COLOR_256:
@@ -335,11 +320,11 @@ protected void reportPointsInSearch() {
 		super.reportPointsInSearch();
 
 		// Find the minimum distance in the open list.
-		SearchNode p = open_from_start.peek();
-		if( p == null )
+		int p = nodes_from_start.peek();
+		if( p < 0 )
 			return;
 
-		float minimumDistanceInOpen = p.g;
+		float minimumDistanceInOpen = nodes_from_start.getG( p );
 
 		for( SearchProgressCallback progress : progressListeners ) {
 			if( progress instanceof FillerProgressCallback ) {
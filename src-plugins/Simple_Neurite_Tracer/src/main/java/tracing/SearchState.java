@@ -0,0 +1,330 @@
+/* -*- mode: java; c-basic-offset: 8; indent-tabs-mode: t; tab-width: 8 -*- */
+
+/*
+  This file is part of the ImageJ plugin "Simple Neurite Tracer".
+
+  The ImageJ plugin "Simple Neurite Tracer" is free software; you
+  can redistribute it and/or modify it under the terms of the GNU
+  General Public License as published by the Free Software
+  Foundation; either version 3 of the License, or (at your option)
+  any later version.
+
+  The ImageJ plugin "Simple Neurite Tracer" is distributed in the
+  hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+  PARTICULAR PURPOSE.  See the GNU General Public License for more
+  details.
+
+  In addition, as a special exception, the copyright holders give
+  you permission to combine this program with free software programs or
+  libraries that are released under the Apache Public License.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package tracing;
+
+import java.util.Arrays;
+
+/* This holds the nodes reached by one direction of a search (from
+   the start or from the goal) without creating an object per node.
+
+   Each node is identified by a "slot", an index into a set of
+   primitive arrays holding its position, g, h, predecessor and
+   status.  The slot of each voxel is found through an image-like
+   array of slot indices, allocated slice by slice as the search
+   reaches them.  The open list is an indexed binary heap of slots,
+   so that a node whose cost improves can be moved up in place
+   (decrease-key) rather than removed from and re-added to a
+   PriorityQueue, which is a linear scan.
+
+   Nodes are ordered by f = g + h, and ties are broken on the x, y
+   and z coordinates just as in SearchNode.compareTo, so nodes come
+   off the open list in exactly the same order as they used to. */
+
+public class SearchState {
+
+	final int width;
+	final int height;
+	final int depth;
+
+	final byte openStatus;
+	final byte closedStatus;
+
+	/* For each slice (null until the search gets there), the slot
+	   of each voxel plus one, so that 0 means "not reached": */
+	private int [][] slots_as_image;
+
+	// Per-node storage, indexed by slot:
+	private int [] xs;
+	private int [] ys;
+	private int [] zs;
+	private float [] gs;
+	private float [] hs;
+	private float [] fs;
+	private int [] predecessors;
+	private byte [] statuses;
+	private int [] heapPositions;
+
+	private int size;
+	private int closedSize;
+
+	// The binary heap of open slots:
+	private int [] heap;
+	private int heapSize;
+
+	public SearchState( int width, int height, int depth, byte openStatus, byte closedStatus ) {
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.openStatus = openStatus;
+		this.closedStatus = closedStatus;
+		slots_as_image = new int[depth][];
+		int capacity = 1024;
+		xs = new int[capacity];
+		ys = new int[capacity];
+		zs = new int[capacity];
+		gs = new float[capacity];
+		hs = new float[capacity];
+		fs = new float[capacity];
+		predecessors = new int[capacity];
+		statuses = new byte[capacity];
+		heapPositions = new int[capacity];
+		heap = new int[capacity];
+	}
+
+	/* Returns the slot of the node at (x,y,z) or -1 if the
+	   search hasn't reached that point: */
+
+	public int find( int x, int y, int z ) {
+		int [] slice = slots_as_image[z];
+		if( slice == null )
+			return -1;
+		return slice[y*width+x] - 1;
+	}
+
+	/* Add a new node, which must not have been reached yet.  If
+	   its status is neither openStatus nor closedStatus, it is
+	   just stored. Returns the slot of the new node. */
+
+	public int add( int x, int y, int z, float g, float h, int predecessor, byte status ) {
+		if( size == xs.length )
+			grow();
+		int slot = size;
+		xs[slot] = x;
+		ys[slot] = y;
+		zs[slot] = z;
+		gs[slot] = g;
+		hs[slot] = h;
+		fs[slot] = g + h;
+		predecessors[slot] = predecessor;
+		statuses[slot] = status;
+		heapPositions[slot] = -1;
+		++ size;
+		if( status == openStatus )
+			push( slot );
+		else if( status == closedStatus )
+			++ closedSize;
+		if( slots_as_image[z] == null )
+			slots_as_image[z] = new int[width*height];
+		slots_as_image[z][y*width+x] = slot + 1;
+		return slot;
+	}
+
+	/* Removes the node with the lowest f from the open list and
+	   returns its slot (or -1 if the list is empty).  It's up to
+	   the caller to close it. */
+
+	public int poll( ) {
+		if( heapSize == 0 )
+			return -1;
+		int slot = heap[0];
+		heapPositions[slot] = -1;
+		-- heapSize;
+		if( heapSize > 0 ) {
+			heap[0] = heap[heapSize];
+			heapPositions[heap[0]] = 0;
+			siftDown( 0 );
+		}
+		return slot;
+	}
+
+	/* Returns the slot of the node with the lowest f in the open
+	   list without removing it (or -1 if the list is empty) */
+
+	public int peek( ) {
+		return heapSize == 0 ? -1 : heap[0];
+	}
+
+	public void close( int slot ) {
+		if( heapPositions[slot] >= 0 )
+			remove( slot );
+		if( statuses[slot] != closedStatus ) {
+			statuses[slot] = closedStatus;
+			++ closedSize;
+		}
+	}
+
+	/* A better route to an already reached node has been found:
+	   update it and (re)open it. */
+
+	public void improve( int slot, float g, float h, int predecessor ) {
+		gs[slot] = g;
+		hs[slot] = h;
+		fs[slot] = g + h;
+		predecessors[slot] = predecessor;
+		if( statuses[slot] == closedStatus )
+			-- closedSize;
+		statuses[slot] = openStatus;
+		int position = heapPositions[slot];
+		if( position < 0 )
+			push( slot );
+		else {
+			siftUp( position );
+			siftDown( heapPositions[slot] );
+		}
+	}
+
+	public void setPredecessor( int slot, int predecessor ) {
+		predecessors[slot] = predecessor;
+	}
+
+	public int getX( int slot ) { return xs[slot]; }
+	public int getY( int slot ) { return ys[slot]; }
+	public int getZ( int slot ) { return zs[slot]; }
+	public float getG( int slot ) { return gs[slot]; }
+	public float getH( int slot ) { return hs[slot]; }
+	public float getF( int slot ) { return fs[slot]; }
+	public int getPredecessor( int slot ) { return predecessors[slot]; }
+	public byte getStatus( int slot ) { return statuses[slot]; }
+
+	/* The number of nodes reached, in the open list and in the
+	   closed list: */
+
+	public int size( ) {
+		return size;
+	}
+
+	public int openSize( ) {
+		return heapSize;
+	}
+
+	public int closedSize( ) {
+		return closedSize;
+	}
+
+	/* This may be called from another thread (e.g. when drawing
+	   the progress of the search) so it shouldn't fail if the
+	   arrays are being grown at the same time.  Returns the status
+	   of the node at (x,y,z) if its g is not above the threshold
+	   (a negative threshold means no threshold) or 0 otherwise. */
+
+	public byte statusUnderThreshold( int x, int y, int z, float threshold ) {
+		int [] slice = slots_as_image[z];
+		if( slice == null )
+			return 0;
+		int slot = slice[y*width+x] - 1;
+		float [] g = gs;
+		byte [] status = statuses;
+		if( slot < 0 || slot >= g.length || slot >= status.length )
+			return 0;
+		if( threshold >= 0 && g[slot] > threshold )
+			return 0;
+		return status[slot];
+	}
+
+	public Path asPath( int slot, double x_spacing, double y_spacing, double z_spacing, String spacing_units ) {
+		return asPathReversed( slot, x_spacing, y_spacing, z_spacing, spacing_units ).reversed();
+	}
+
+	public Path asPathReversed( int slot, double x_spacing, double y_spacing, double z_spacing, String spacing_units ) {
+		Path result = new Path(x_spacing, y_spacing, z_spacing, spacing_units);
+		int p = slot;
+		do {
+			result.addPointDouble( xs[p] * x_spacing, ys[p] * y_spacing, zs[p] * z_spacing );
+			p = predecessors[p];
+		} while( p >= 0 );
+		return result;
+	}
+
+	private void grow( ) {
+		int capacity = xs.length + (xs.length >> 1);
+		xs = Arrays.copyOf( xs, capacity );
+		ys = Arrays.copyOf( ys, capacity );
+		zs = Arrays.copyOf( zs, capacity );
+		gs = Arrays.copyOf( gs, capacity );
+		hs = Arrays.copyOf( hs, capacity );
+		fs = Arrays.copyOf( fs, capacity );
+		predecessors = Arrays.copyOf( predecessors, capacity );
+		statuses = Arrays.copyOf( statuses, capacity );
+		heapPositions = Arrays.copyOf( heapPositions, capacity );
+	}
+
+	/* The same ordering as SearchNode.compareTo */
+
+	private boolean lessThan( int a, int b ) {
+		if( fs[a] != fs[b] )
+			return fs[a] < fs[b];
+		if( xs[a] != xs[b] )
+			return xs[a] < xs[b];
+		if( ys[a] != ys[b] )
+			return ys[a] < ys[b];
+		return zs[a] < zs[b];
+	}
+
+	private void push( int slot ) {
+		if( heapSize == heap.length )
+			heap = Arrays.copyOf( heap, heap.length + (heap.length >> 1) );
+		heap[heapSize] = slot;
+		heapPositions[slot] = heapSize;
+		siftUp( heapSize ++ );
+	}
+
+	private void remove( int slot ) {
+		int position = heapPositions[slot];
+		heapPositions[slot] = -1;
+		-- heapSize;
+		if( position < heapSize ) {
+			int moved = heap[heapSize];
+			heap[position] = moved;
+			heapPositions[moved] = position;
+			siftUp( position );
+			if( heapPositions[moved] == position )
+				siftDown( position );
+		}
+	}
+
+	private void siftUp( int position ) {
+		int slot = heap[position];
+		while( position > 0 ) {
+			int parent = (position - 1) >> 1;
+			int parentSlot = heap[parent];
+			if( ! lessThan( slot, parentSlot ) )
+				break;
+			heap[position] = parentSlot;
+			heapPositions[parentSlot] = position;
+			position = parent;
+		}
+		heap[position] = slot;
+		heapPositions[slot] = position;
+	}
+
+	private void siftDown( int position ) {
+		int slot = heap[position];
+		int half = heapSize >> 1;
+		while( position < half ) {
+			int child = 2 * position + 1;
+			int right = child + 1;
+			if( right < heapSize && lessThan( heap[right], heap[child] ) )
+				child = right;
+			if( ! lessThan( heap[child], slot ) )
+				break;
+			heap[position] = heap[child];
+			heapPositions[heap[child]] = position;
+			position = child;
+		}
+		heap[position] = slot;
+		heapPositions[slot] = position;
+	}
+}
@@ -96,23 +96,14 @@ protected double costMovingTo( int new_x, int new_y, int new_z ) {
 
 	protected void reportPointsInSearch( ) {
 		for( SearchProgressCallback progress : progressListeners )
-			progress.pointsInSearch(this, open_from_start.size() + (bidirectional ? open_from_goal.size() : 0), closed_from_start.size() + (bidirectional ? closed_from_goal.size() : 0));
+			progress.pointsInSearch(this, nodes_from_start.openSize() + (bidirectional ? nodes_from_goal.openSize() : 0), nodes_from_start.closedSize() + (bidirectional ? nodes_from_goal.closedSize() : 0));
 	}
 
 	public int pointsConsideredInSearch( ) {
-		return open_from_start.size() +
-			(bidirectional ? open_from_goal.size() : 0) +
-			closed_from_start.size() +
-			(bidirectional ? closed_from_goal.size() : 0);
-	}
-
-	/* This is a factory method for creating specialized search
-	   nodes, subclasses of SearchNode: */
-
-	protected SearchNode createNewNode( int x, int y, int z, float g, float h,
-					    SearchNode predecessor,
-					    byte searchStatus ) {
-		return new SearchNode( x, y, z, g, h, predecessor, searchStatus );
+		return nodes_from_start.openSize() +
+			(bidirectional ? nodes_from_goal.openSize() : 0) +
+			nodes_from_start.closedSize() +
+			(bidirectional ? nodes_from_goal.closedSize() : 0);
 	}
 
 	/* This is called if the goal has been found in the search.
@@ -229,7 +220,7 @@ public void requestStop( ) {
 	/** Override this method if you want to find out when a point
 	 * was first discovered:
 	 */
-	protected void addingNode( SearchNode n ) { }
+	protected void addingNode( int x, int y, int z ) { }
 
 	public void reportThreadStatus( ) {
 		for( SearchProgressCallback progress : progressListeners )
@@ -340,38 +331,29 @@ public SearchThread( ImagePlus imagePlus,
 		this.timeoutSeconds = timeoutSeconds;
 		this.reportEveryMilliseconds = reportEveryMilliseconds;
 
-		closed_from_start = new PriorityQueue<SearchNode>();
-		open_from_start = new PriorityQueue<SearchNode>();
-		if( bidirectional ) {
-			closed_from_goal = new PriorityQueue<SearchNode>();
-			open_from_goal = new PriorityQueue<SearchNode>();
-		}
-
-		nodes_as_image_from_start = new SearchNode[depth][];
+		nodes_from_start = new SearchState( width, height, depth, OPEN_FROM_START, CLOSED_FROM_START );
 		if( bidirectional )
-			nodes_as_image_from_goal = new SearchNode[depth][];
+			nodes_from_goal = new SearchState( width, height, depth, OPEN_FROM_GOAL, CLOSED_FROM_GOAL );
 
 		minimum_cost_per_unit_distance = minimumCostPerUnitDistance();
 
 		progressListeners = new ArrayList< SearchProgressCallback >();
 	}
 
-	PriorityQueue<SearchNode> closed_from_start;
-	PriorityQueue<SearchNode> open_from_start;
+	/* The open and closed lists of each direction of the search,
+	   also indexed in the same way as voxels in the image: */
 
-	// The next two are null if the search is not bidirectional
-	PriorityQueue<SearchNode> closed_from_goal;
-	PriorityQueue<SearchNode> open_from_goal;
+	SearchState nodes_from_start;
 
-	SearchNode [][] nodes_as_image_from_start;
-	SearchNode [][] nodes_as_image_from_goal;
+	// This is null if the search is not bidirectional
+	SearchState nodes_from_goal;
 
 	public void printStatus() {
-		System.out.println("... with " + open_from_start.size() + " open nodes at the start" );
-		System.out.println(" ... and " + closed_from_start.size() + " closed nodes at the start" );
+		System.out.println("... with " + nodes_from_start.openSize() + " open nodes at the start" );
+		System.out.println(" ... and " + nodes_from_start.closedSize() + " closed nodes at the start" );
 		if( bidirectional ) {
-			System.out.println("... with " + open_from_goal.size() + " open nodes at the goal" );
-			System.out.println(" ... and " + closed_from_goal.size() + " closed nodes at the goal" );
+			System.out.println("... with " + nodes_from_goal.openSize() + " open nodes at the goal" );
+			System.out.println(" ... and " + nodes_from_goal.closedSize() + " closed nodes at the goal" );
 		} else
 			System.out.println(" ... unidirectional search");
 	}
@@ -396,18 +378,15 @@ public void run( ) {
 			int loops = 0;
 
 			/*
-			  We maintain the list of nodes in the search in a
-			  couple of different data structures here, which is
-			  bad for memory usage but good for the speed of the
-			  search.
-
-			  As well as keeping the nodes in priority lists, we
-			  keep them in a set of arrays that are indexed in the
-			  same way as voxels in the image.
+			  The nodes of each direction of the search are
+			  kept in a SearchState, which holds them in
+			  primitive arrays: an indexed heap for the open
+			  list and arrays indexed in the same way as voxels
+			  in the image to find them again.
 			*/
 
-			while( (open_from_start.size() > 0) ||
-			       (bidirectional && (open_from_goal.size() > 0)) ) {
+			while( (nodes_from_start.openSize() > 0) ||
+			       (bidirectional && (nodes_from_goal.openSize() > 0)) ) {
 
 				if( threadStatus == STOPPING ) {
 					reportThreadStatus();
@@ -456,61 +435,51 @@ public void run( ) {
 
 				boolean fromStart = true;
 				if( bidirectional )
-					fromStart = open_from_goal.size() > open_from_start.size();
-
-				PriorityQueue<SearchNode> open_queue = fromStart ? open_from_start : open_from_goal;
-				PriorityQueue<SearchNode> closed_queue = fromStart ? closed_from_start : closed_from_goal;
-
-				SearchNode [][] nodes_as_image_this_search = fromStart ? nodes_as_image_from_start : nodes_as_image_from_goal;
-				SearchNode [][] nodes_as_image_other_search = fromStart ? nodes_as_image_from_goal : nodes_as_image_from_start;
+					fromStart = nodes_from_goal.openSize() > nodes_from_start.openSize();
 
-				SearchNode p = null;
+				SearchState this_search = fromStart ? nodes_from_start : nodes_from_goal;
+				SearchState other_search = fromStart ? nodes_from_goal : nodes_from_start;
 
-				if( open_queue.size() == 0 )
+				int p = this_search.poll();
+				if( p < 0 )
 					continue;
 
-				// p = get_highest_priority( open_from_start, open_from_start_hash );
-				p = open_queue.poll();
-				if( p == null )
-					continue;
+				int p_x = this_search.getX( p );
+				int p_y = this_search.getY( p );
+				int p_z = this_search.getZ( p );
+				float p_g = this_search.getG( p );
 
 				// Has the route from the start found the goal?
-				if( definedGoal && atGoal( p.x, p.y, p.z, fromStart ) ) {
+				if( definedGoal && atGoal( p_x, p_y, p_z, fromStart ) ) {
 					if (verbose) System.out.println( "Found the goal!" );
 					if( fromStart )
-						foundGoal( p.asPath( x_spacing, y_spacing, z_spacing, spacing_units ) );
+						foundGoal( this_search.asPath( p, x_spacing, y_spacing, z_spacing, spacing_units ) );
 					else
-						foundGoal( p.asPathReversed( x_spacing, y_spacing, z_spacing, spacing_units ) );
+						foundGoal( this_search.asPathReversed( p, x_spacing, y_spacing, z_spacing, spacing_units ) );
 					setExitReason(SUCCESS);
 					reportFinished( true );
 					return;
 				}
 
-				p.searchStatus = fromStart ? CLOSED_FROM_START : CLOSED_FROM_GOAL;
-				closed_queue.add( p );
-				nodes_as_image_this_search[p.z][p.y*width+p.x] = p;
+				this_search.close( p );
 
 				// Now look at the neighbours of p.  We're going to consider
 				// the 26 neighbours in 3D.
 
 				for( int zdiff = -1; zdiff <= 1; zdiff++ ) {
 
-					int new_z = p.z + zdiff;
+					int new_z = p_z + zdiff;
 					if( new_z < 0 || new_z >= depth )
 						continue;
 
-					if( nodes_as_image_this_search[new_z] == null ) {
-						nodes_as_image_this_search[new_z] = new SearchNode[width*height];
-					}
-
 					for( int xdiff = -1; xdiff <= 1; xdiff++ )
 						for( int ydiff = -1; ydiff <= 1; ydiff++ ) {
 
 							if( (xdiff == 0) && (ydiff == 0) && (zdiff == 0) )
 								continue;
 
-							int new_x = p.x + xdiff;
-							int new_y = p.y + ydiff;
+							int new_x = p_x + xdiff;
+							int new_y = p_y + ydiff;
 
 							if( new_x < 0 || new_x >= width )
 								continue;
@@ -529,77 +498,55 @@ public void run( ) {
 								cost_moving_to_new_point = minimum_cost_per_unit_distance;
 							}
 
-							float g_for_new_point = (float) ( p.g + Math.sqrt( xdiffsq + ydiffsq + zdiffsq ) * cost_moving_to_new_point );
+							float g_for_new_point = (float) ( p_g + Math.sqrt( xdiffsq + ydiffsq + zdiffsq ) * cost_moving_to_new_point );
 
 							float f_for_new_point = h_for_new_point + g_for_new_point;
 
-							SearchNode newNode = createNewNode( new_x, new_y, new_z,
-											    g_for_new_point, h_for_new_point,
-											    p, FREE );
-
-							// Is this newNode really new?
-							SearchNode alreadyThereInThisSearch = nodes_as_image_this_search[new_z][new_y*width+new_x];
+							// Is this point really new?
+							int alreadyThereInThisSearch = this_search.find( new_x, new_y, new_z );
 
-							if( alreadyThereInThisSearch == null ) {
+							if( alreadyThereInThisSearch < 0 ) {
 
-								newNode.searchStatus = fromStart ? OPEN_FROM_START : OPEN_FROM_GOAL;
-								open_queue.add( newNode );
-								addingNode( newNode );
-								nodes_as_image_this_search[new_z][new_y*width+new_x] = newNode;
+								this_search.add( new_x, new_y, new_z,
+										 g_for_new_point, h_for_new_point,
+										 p, this_search.openStatus );
+								addingNode( new_x, new_y, new_z );
 
-							} else {
+							} else if( this_search.getF( alreadyThereInThisSearch ) > f_for_new_point ) {
 
 								// The other alternative is that this node is already in one
 								// of the lists working from the start but has a better way
-								// of getting to that point.
+								// of getting to that point: reopen it with the new route
+								// (or just move it up if it's still open).
 
-								if( alreadyThereInThisSearch.f > f_for_new_point ) {
+								this_search.improve( alreadyThereInThisSearch, g_for_new_point, h_for_new_point, p );
+							}
 
-									if( alreadyThereInThisSearch.searchStatus == (fromStart ? OPEN_FROM_START : OPEN_FROM_GOAL) ) {
+							if( bidirectional ) {
 
-										open_queue.remove( alreadyThereInThisSearch );
-										alreadyThereInThisSearch.setFrom( newNode );
-										alreadyThereInThisSearch.searchStatus = fromStart ? OPEN_FROM_START : OPEN_FROM_GOAL;
-										open_queue.add( alreadyThereInThisSearch );
+								int alreadyThereInOtherSearch = other_search.find( new_x, new_y, new_z );
 
-									} else if( alreadyThereInThisSearch.searchStatus == (fromStart ? CLOSED_FROM_START : CLOSED_FROM_GOAL) ) {
+								// If it's been closed in the other search, then
+								// we've finished.
 
-										closed_queue.remove( alreadyThereInThisSearch );
-										alreadyThereInThisSearch.setFrom( newNode );
-										alreadyThereInThisSearch.searchStatus = fromStart ? OPEN_FROM_START : OPEN_FROM_GOAL;
-										open_queue.add( alreadyThereInThisSearch );
-									}
-								}
-							}
-
-							if( bidirectional && nodes_as_image_other_search[new_z] != null ) {
-
-								SearchNode alreadyThereInOtherSearch = nodes_as_image_other_search[new_z][new_y*width+new_x];
-								if( alreadyThereInOtherSearch != null ) {
+								if( alreadyThereInOtherSearch >= 0 &&
+								    other_search.getStatus( alreadyThereInOtherSearch ) == other_search.closedStatus ) {
 
 									Path result = null;
 
-									// If either of the next two if conditions are true
-									// then we've finished.
-
-									if( alreadyThereInOtherSearch != null &&
-									    (alreadyThereInOtherSearch.searchStatus == CLOSED_FROM_START ||
-									     alreadyThereInOtherSearch.searchStatus == CLOSED_FROM_GOAL) ) {
-
-										if( fromStart ) {
-											result = p.asPath( x_spacing, y_spacing, z_spacing, spacing_units );
-											Path fromGoalReversed = alreadyThereInOtherSearch.asPathReversed( x_spacing, y_spacing, z_spacing, spacing_units );
-											result.add( fromGoalReversed );
-										} else {
-											result = alreadyThereInOtherSearch.asPath( x_spacing, y_spacing, z_spacing, spacing_units );
-											result.add( p.asPathReversed( x_spacing, y_spacing, z_spacing, spacing_units ) );
-										}
-										if (verbose) System.out.println("Searches met!");
-										foundGoal( result );
-										setExitReason(SUCCESS);
-										reportFinished( true );
-										return;
+									if( fromStart ) {
+										result = this_search.asPath( p, x_spacing, y_spacing, z_spacing, spacing_units );
+										Path fromGoalReversed = other_search.asPathReversed( alreadyThereInOtherSearch, x_spacing, y_spacing, z_spacing, spacing_units );
+										result.add( fromGoalReversed );
+									} else {
+										result = other_search.asPath( alreadyThereInOtherSearch, x_spacing, y_spacing, z_spacing, spacing_units );
+										result.add( this_search.asPathReversed( p, x_spacing, y_spacing, z_spacing, spacing_units ) );
 									}
+									if (verbose) System.out.println("Searches met!");
+									foundGoal( result );
+									setExitReason(SUCCESS);
+									reportFinished( true );
+									return;
 								}
 							}
 						}
@@ -675,24 +622,16 @@ int getExitReason( ) {
 		return exitReason;
 	}
 
-	SearchNode anyNodeUnderThreshold( int x, int y, int z, double threshold ) {
-		SearchNode [] startSlice = nodes_as_image_from_start[z];
-		SearchNode [] goalSlice = null;
-		if( nodes_as_image_from_goal != null )
-			goalSlice = nodes_as_image_from_goal[z];
-		int index = y*width+x;
-		SearchNode n = null;
-		if( startSlice != null ) {
-			n = startSlice[index];
-			if( n != null && threshold >= 0 && n.g > threshold )
-				n = null;
-			if( n == null && goalSlice != null ) {
-				n = goalSlice[index];
-				if( threshold >= 0 && n.g > threshold )
-					n = null;
-			}
-		}
-		return n;
+	/* Returns the status of the node at (x,y,z) in the search
+	   from the start or, failing that, in the search from the
+	   goal, or 0 if neither has a node there whose g is under
+	   the threshold. */
+
+	byte statusUnderThreshold( int x, int y, int z, float threshold ) {
+		byte status = nodes_from_start.statusUnderThreshold( x, y, z, threshold );
+		if( status == 0 && nodes_from_goal != null )
+			status = nodes_from_goal.statusUnderThreshold( x, y, z, threshold );
+		return status;
 	}
 
 	/* This draws over the Graphics object the current progress of
@@ -726,10 +665,7 @@ public void drawProgressOnSlice( int plane,
 				int z = currentSliceInPlane;
 				for( int y = 0; y < height; ++y )
 					for( int x = 0; x < width; ++x ) {
-						SearchNode n = anyNodeUnderThreshold(x,y,z,drawingThreshold);
-						if (n == null)
-							continue;
-						byte status = n.searchStatus;
+						byte status = statusUnderThreshold(x,y,z,drawingThreshold);
 						if( status == start_status || status == goal_status )
 							g.fillRect( canvas.myScreenX(x) - pixel_size / 2, canvas.myScreenY(y) - pixel_size / 2, pixel_size, pixel_size );
 					}
@@ -737,10 +673,7 @@ public void drawProgressOnSlice( int plane,
 				int y = currentSliceInPlane;
 				for( int z = 0; z < depth; ++ z )
 					for( int x = 0; x < width; ++x ) {
-						SearchNode n = anyNodeUnderThreshold(x,y,z,drawingThreshold);
-						if (n == null)
-							continue;
-						byte status = n.searchStatus;
+						byte status = statusUnderThreshold(x,y,z,drawingThreshold);
 						if( status == start_status || status == goal_status )
 							g.fillRect( canvas.myScreenX(x) - pixel_size / 2, canvas.myScreenY(z) - pixel_size / 2, pixel_size, pixel_size );
 					}
@@ -748,10 +681,7 @@ public void drawProgressOnSlice( int plane,
 				int x = currentSliceInPlane;
 				for( int y = 0; y < height; ++y )
 					for( int z = 0; z < depth; ++z ) {
-						SearchNode n = anyNodeUnderThreshold(x,y,z,drawingThreshold);
-						if (n == null)
-							continue;
-						byte status = n.searchStatus;
+						byte status = statusUnderThreshold(x,y,z,drawingThreshold);
 						if( status == start_status || status == goal_status )
 							g.fillRect( canvas.myScreenX(z) - pixel_size / 2, canvas.myScreenY(y) - pixel_size / 2, pixel_size, pixel_size );
 					}
@@ -759,45 +689,43 @@ public void drawProgressOnSlice( int plane,
 		}
 	}
 
-	// Add a node, ignoring requests to add duplicate nodes:
+	/* Add a node, ignoring requests to add duplicate nodes.  The
+	   status must be one of OPEN_FROM_START, CLOSED_FROM_START,
+	   OPEN_FROM_GOAL or CLOSED_FROM_GOAL, and predecessor the slot
+	   of an existing node of the same search (or -1 for none).
+	   Returns the slot of the node at that point, or -1 if the
+	   status was invalid. */
 
-	public void addNode( SearchNode n, boolean fromStart ) {
+	public int addNode( int x, int y, int z, float g, float h, int predecessor, byte searchStatus ) {
 
-		SearchNode [][] nodes_as_image = fromStart ? nodes_as_image_from_start : nodes_as_image_from_goal;
-
-		if( nodes_as_image[n.z] == null ) {
-			nodes_as_image[n.z] = new SearchNode[width*height];
-		}
+		SearchState nodes;
+		if( searchStatus == OPEN_FROM_START || searchStatus == CLOSED_FROM_START )
+			nodes = nodes_from_start;
+		else if( searchStatus == OPEN_FROM_GOAL || searchStatus == CLOSED_FROM_GOAL ) {
+			assert bidirectional && definedGoal;
+			nodes = nodes_from_goal;
+		} else
+			return -1;
 
-		if( nodes_as_image[n.z][n.y*width+n.x] != null ) {
+		int existing = nodes.find( x, y, z );
+		if( existing >= 0 ) {
 			// Then there's already a node there:
-			return;
+			return existing;
 		}
 
-		if( n.searchStatus == OPEN_FROM_START ) {
-
-			open_from_start.add( n );
-			nodes_as_image[n.z][n.y*width+n.x] = n;
-
-		} else if( n.searchStatus == OPEN_FROM_GOAL ) {
-			assert bidirectional && definedGoal;
-
-			open_from_goal.add( n );
-			nodes_as_image[n.z][n.y*width+n.x] = n;
-
-		} else if( n.searchStatus == CLOSED_FROM_START ) {
-
-			closed_from_start.add( n );
-			nodes_as_image[n.z][n.y*width+n.x] = n;
+		return nodes.add( x, y, z, g, h, predecessor, searchStatus );
+	}
 
-		} else if( n.searchStatus == CLOSED_FROM_GOAL ) {
-			assert bidirectional && definedGoal;
+	public void addNode( SearchNode n, boolean fromStart ) {
 
-			closed_from_goal.add( n );
-			nodes_as_image[n.z][n.y*width+n.x] = n;
+		SearchState nodes = fromStart ? nodes_from_start : nodes_from_goal;
 
-		}
+		int predecessor = -1;
+		SearchNode p = n.getPredecessor();
+		if( p != null )
+			predecessor = nodes.find( p.x, p.y, p.z );
 
+		addNode( n.x, n.y, n.z, n.g, n.h, predecessor, n.searchStatus );
 	}
 
 }
@@ -1281,18 +1281,35 @@ public double getMinimumSeparation() {
 	   (or -1 if 'hessian' is null) ... */
 	volatile double hessianSigma = -1;
 
+	/* For stacks, the Gaussian is computed block by block as the
+	   searches reach each block, keeping at most this many bytes of
+	   blocks, rather than for the whole stack before tracing can
+	   start.  Set it to 0 to compute the whole Gaussian up front. */
+	protected long hessianCacheBytes = Runtime.getRuntime().maxMemory() / 4;
+
+	public void setHessianCacheBytes( long bytes ) {
+		hessianCacheBytes = bytes;
+	}
+
+	protected ComputeCurvatures createHessian( double sigma ) {
+		ComputeCurvatures result = new ComputeCurvatures( xy, sigma, this, true );
+		if( ! singleSlice )
+			result.setComputeOnDemand( hessianCacheBytes );
+		return result;
+	}
+
 	public void startHessian() {
 		if( hessian == null ) {
 			resultsDialog.changeState(NeuriteTracerResultsDialog.CALCULATING_GAUSSIAN);
 			hessianSigma = resultsDialog.getSigma();
-			hessian = new ComputeCurvatures( xy, hessianSigma, this, true );
+			hessian = createHessian( hessianSigma );
 			new Thread(hessian).start();
 		} else {
 			double newSigma = resultsDialog.getSigma();
 			if( newSigma != hessianSigma ) {
 				resultsDialog.changeState(NeuriteTracerResultsDialog.CALCULATING_GAUSSIAN);
 				hessianSigma = newSigma;
-				hessian = new ComputeCurvatures( xy, hessianSigma, this, true );
+				hessian = createHessian( hessianSigma );
 				new Thread(hessian).start();
 			}
 		}
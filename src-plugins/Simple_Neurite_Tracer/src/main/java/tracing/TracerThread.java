@@ -132,18 +132,15 @@ public TracerThread( ImagePlus imagePlus,
                 this.goal_y = goal_y;
                 this.goal_z = goal_z;
 
-		SearchNode s = createNewNode( start_x, start_y, start_z,
-					      0,
-					      estimateCostToGoal( start_x, start_y, start_z, true ),
-					      null, OPEN_FROM_START );
-		addNode(s,true);
-
-		SearchNode g = createNewNode( goal_x, goal_y, goal_z,
-					      0,
-					      estimateCostToGoal( goal_x, goal_y, goal_z, false ),
-					      null, OPEN_FROM_GOAL );
-
-		addNode(g,false);
+		addNode( start_x, start_y, start_z,
+			 0,
+			 estimateCostToGoal( start_x, start_y, start_z, true ),
+			 -1, OPEN_FROM_START );
+
+		addNode( goal_x, goal_y, goal_z,
+			 0,
+			 estimateCostToGoal( goal_x, goal_y, goal_z, false ),
+			 -1, OPEN_FROM_GOAL );
 
                 this.result = null;
         }
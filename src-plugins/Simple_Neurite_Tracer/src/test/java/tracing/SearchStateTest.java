@@ -0,0 +1,76 @@
+/* -*- mode: java; c-basic-offset: 8; indent-tabs-mode: t; tab-width: 8 -*- */
+
+/* Unit tests for the indexed heap holding the nodes of a search */
+
+package tracing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SearchStateTest {
+
+	static final byte OPEN = SearchThread.OPEN_FROM_START;
+	static final byte CLOSED = SearchThread.CLOSED_FROM_START;
+
+	@Test
+	public void testPollOrder() {
+		SearchState state = new SearchState( 50, 40, 3, OPEN, CLOSED );
+		Random random = new Random( 42 );
+		for( int i = 0; i < 2000; ++i ) {
+			int x = random.nextInt( 50 );
+			int y = random.nextInt( 40 );
+			int z = random.nextInt( 3 );
+			if( state.find( x, y, z ) < 0 )
+				state.add( x, y, z, random.nextInt( 100 ), 0, -1, OPEN );
+		}
+		// Improve some of them:
+		for( int slot = 0; slot < state.size(); slot += 7 )
+			state.improve( slot, state.getG( slot ) / 2, 0, -1 );
+
+		int polled = 0;
+		int previous = -1;
+		while( state.openSize() > 0 ) {
+			int slot = state.poll();
+			state.close( slot );
+			if( previous >= 0 ) {
+				assertTrue( state.getF( previous ) < state.getF( slot ) ||
+					    ( state.getF( previous ) == state.getF( slot ) &&
+					      state.getX( previous ) <= state.getX( slot ) ) );
+			}
+			previous = slot;
+			++ polled;
+		}
+		assertEquals( state.size(), polled );
+		assertEquals( state.size(), state.closedSize() );
+		assertEquals( -1, state.poll() );
+	}
+
+	@Test
+	public void testReopen() {
+		SearchState state = new SearchState( 10, 10, 1, OPEN, CLOSED );
+		int a = state.add( 1, 1, 0, 5, 0, -1, OPEN );
+		int b = state.add( 2, 1, 0, 3, 0, a, OPEN );
+		assertEquals( b, state.find( 2, 1, 0 ) );
+		assertEquals( -1, state.find( 3, 1, 0 ) );
+
+		assertEquals( b, state.poll() );
+		state.close( b );
+		assertEquals( 1, state.closedSize() );
+
+		// A better route to a closed node reopens it:
+		state.improve( b, 1, 0, -1 );
+		assertEquals( OPEN, state.getStatus( b ) );
+		assertEquals( 0, state.closedSize() );
+		assertEquals( 2, state.openSize() );
+		assertEquals( -1, state.getPredecessor( b ) );
+
+		// ... and decreasing the key of an open node moves it up:
+		state.improve( a, 0, 0, -1 );
+		assertEquals( a, state.poll() );
+		assertEquals( b, state.poll() );
+	}
+}
@@ -45,16 +45,17 @@
 // ImageJ
 import ij.IJ;
 import ij.ImagePlus;
+import ij.ImageStack;
+import ij.Prefs;
 import ij.WindowManager;
 import ij.gui.GUI;
 import ij.gui.GenericDialog;
-import ij.io.FileSaver;
 import ij.plugin.PlugIn;
-import ij.process.Blitter;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.FloatProcessor;
 import ij.process.ImageConverter;
+import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
 
 // Java 1.1
@@ -69,9 +70,11 @@
 import java.awt.TextArea;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.ColorModel;
 import java.awt.image.IndexColorModel;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+
+// Java 1.5
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*====================================================================
 |	StackReg_
@@ -88,6 +91,25 @@
 	Private global variables
 ....................................................................*/
 private static final double TINY = (double)Float.intBitsToFloat((int)0x33FFFFFF);
+private static final int[] TURBOREG_TRANSFORMATION = {
+	turboRegAligner.TRANSLATION,
+	turboRegAligner.RIGID_BODY,
+	turboRegAligner.SCALED_ROTATION,
+	turboRegAligner.AFFINE
+};
+private ImageStack stack;
+private ColorModel colorModel;
+private int imageType;
+private int width;
+private int height;
+private int transformation;
+private int targetSlice;
+private double[][] anchorPoints;
+private double[] colorWeights;
+private double[][][] localTransform;
+private double[][][] globalTransform;
+private turboRegAligner targetAligner;
+private volatile Throwable failure;
 
 /*....................................................................
 	Public methods
@@ -130,11 +152,6 @@ public void run (
 	final int width = imp.getWidth();
 	final int height = imp.getHeight();
 	final int targetSlice = imp.getCurrentSlice();
-	double[][] globalTransform = {
-		{1.0, 0.0, 0.0},
-		{0.0, 1.0, 0.0},
-		{0.0, 0.0, 1.0}
-	};
 	double[][] anchorPoints = null;
 	switch (transformation) {
 		case 0: {
@@ -185,36 +202,17 @@ public void run (
 			return;
 		}
 	}
-	ImagePlus source = null;
-	ImagePlus target = null;
-	double[] colorWeights = null;
+	stack = imp.getStack();
+	colorWeights = null;
 	switch (imp.getType()) {
 		case ImagePlus.COLOR_256:
 		case ImagePlus.COLOR_RGB: {
 			colorWeights = getColorWeightsFromPrincipalComponents(imp);
-			imp.setSlice(targetSlice);
-			target = getGray32("StackRegTarget", imp, colorWeights);
-			break;
-		}
-		case ImagePlus.GRAY8: {
-			target = new ImagePlus("StackRegTarget",
-				new ByteProcessor(width, height, new byte[width * height],
-				imp.getProcessor().getColorModel()));
-			target.getProcessor().copyBits(imp.getProcessor(), 0, 0, Blitter.COPY);
-			break;
-		}
-		case ImagePlus.GRAY16: {
-			target = new ImagePlus("StackRegTarget",
-				new ShortProcessor(width, height, new short[width * height],
-				imp.getProcessor().getColorModel()));
-			target.getProcessor().copyBits(imp.getProcessor(), 0, 0, Blitter.COPY);
 			break;
 		}
+		case ImagePlus.GRAY8:
+		case ImagePlus.GRAY16:
 		case ImagePlus.GRAY32: {
-			target = new ImagePlus("StackRegTarget",
-				new FloatProcessor(width, height, new float[width * height],
-				imp.getProcessor().getColorModel()));
-			target.getProcessor().copyBits(imp.getProcessor(), 0, 0, Blitter.COPY);
 			break;
 		}
 		default: {
@@ -222,50 +220,41 @@ public void run (
 			return;
 		}
 	}
-	for (int s = targetSlice - 1; (0 < s); s--) {
-		source = registerSlice(source, target, imp, width, height,
-			transformation, globalTransform, anchorPoints, colorWeights, s);
-		if (source == null) {
-			imp.setSlice(targetSlice);
-			return;
+	imageType = imp.getType();
+	colorModel = imp.getProcessor().getColorModel();
+	this.width = width;
+	this.height = height;
+	this.transformation = transformation;
+	this.targetSlice = targetSlice;
+	this.anchorPoints = anchorPoints;
+	final int[] slices = new int[stack.getSize() - 1];
+	for (int s = 1, k = 0; (s <= stack.getSize()); s++) {
+		if (s != targetSlice) {
+			slices[k++] = s;
 		}
 	}
-	if ((1 < targetSlice) && (targetSlice < imp.getStackSize())) {
-		globalTransform[0][0] = 1.0;
-		globalTransform[0][1] = 0.0;
-		globalTransform[0][2] = 0.0;
-		globalTransform[1][0] = 0.0;
-		globalTransform[1][1] = 1.0;
-		globalTransform[1][2] = 0.0;
-		globalTransform[2][0] = 0.0;
-		globalTransform[2][1] = 0.0;
-		globalTransform[2][2] = 1.0;
+	localTransform = new double[stack.getSize() + 1][][];
+	if (!processSlices(slices, true)) {
 		imp.setSlice(targetSlice);
-		switch (imp.getType()) {
-			case ImagePlus.COLOR_256:
-			case ImagePlus.COLOR_RGB: {
-				target = getGray32("StackRegTarget", imp, colorWeights);
-				break;
-			}
-			case ImagePlus.GRAY8:
-			case ImagePlus.GRAY16:
-			case ImagePlus.GRAY32: {
-				target.getProcessor().copyBits(imp.getProcessor(), 0, 0, Blitter.COPY);
-				break;
-			}
-			default: {
-				IJ.error("Unexpected image type");
-				return;
-			}
-		}
+		return;
 	}
-	for (int s = targetSlice + 1; (s <= imp.getStackSize()); s++) {
-		source = registerSlice(source, target, imp, width, height,
-			transformation, globalTransform, anchorPoints, colorWeights, s);
-		if (source == null) {
-			imp.setSlice(targetSlice);
-			return;
-		}
+	globalTransform = new double[stack.getSize() + 1][][];
+	globalTransform[targetSlice] = new double[][] {
+		{1.0, 0.0, 0.0},
+		{0.0, 1.0, 0.0},
+		{0.0, 0.0, 1.0}
+	};
+	for (int s = targetSlice - 1; (0 < s); s--) {
+		globalTransform[s] = multiply(localTransform[s],
+			globalTransform[s + 1]);
+	}
+	for (int s = targetSlice + 1; (s <= stack.getSize()); s++) {
+		globalTransform[s] = multiply(localTransform[s],
+			globalTransform[s - 1]);
+	}
+	if (!processSlices(slices, false)) {
+		imp.setSlice(targetSlice);
+		return;
 	}
 	imp.setSlice(targetSlice);
 	imp.updateAndDraw();
@@ -275,6 +264,25 @@ public void run (
 	Private methods
 ....................................................................*/
 
+/*------------------------------------------------------------------*/
+private void alignSlice (
+	final int s
+) {
+	final int t = (s < targetSlice) ? (s + 1) : (s - 1);
+	final turboRegAligner aligner = (t == targetSlice)
+		? (targetAligner)
+		: (new turboRegAligner(getGraySlice(t), TURBOREG_TRANSFORMATION[transformation]));
+	final double[][] landmarks = new double[anchorPoints.length][2];
+	for (int n = 0; (n < anchorPoints.length); n++) {
+		landmarks[n][0] = anchorPoints[n][0];
+		landmarks[n][1] = anchorPoints[n][1];
+	}
+	final double[][] sourcePoints = aligner.align(getGraySlice(s),
+		landmarks, landmarks);
+	localTransform[s] = getTransformationMatrix(landmarks, sourcePoints,
+		transformation);
+} /* end alignSlice */
+
 /*------------------------------------------------------------------*/
 private void computeStatistics (
 	final ImagePlus imp,
@@ -631,21 +639,20 @@ private double[] getEigenvector (
 } /* getEigenvector */
 
 /*------------------------------------------------------------------*/
-private ImagePlus getGray32 (
-	final String title,
-	final ImagePlus imp,
+private FloatProcessor getGray32 (
+	final ImageProcessor ip,
 	final double[] colorWeights
 ) {
-	final int length = imp.getWidth() * imp.getHeight();
-	final ImagePlus gray32 = new ImagePlus(title,
-		new FloatProcessor(imp.getWidth(), imp.getHeight()));
-	final float[] gray = (float[])gray32.getProcessor().getPixels();
+	final int length = ip.getWidth() * ip.getHeight();
+	final FloatProcessor gray32 = new FloatProcessor(ip.getWidth(),
+		ip.getHeight());
+	final float[] gray = (float[])gray32.getPixels();
 	double r;
 	double g;
 	double b;
-	if (imp.getProcessor().getPixels() instanceof byte[]) {
-		final byte[] pixels = (byte[])imp.getProcessor().getPixels();
-		final IndexColorModel icm = (IndexColorModel)imp.getProcessor().getColorModel();
+	if (ip.getPixels() instanceof byte[]) {
+		final byte[] pixels = (byte[])ip.getPixels();
+		final IndexColorModel icm = (IndexColorModel)ip.getColorModel();
 		final int mapSize = icm.getMapSize();
 		final byte[] reds = new byte[mapSize];
 		final byte[] greens = new byte[mapSize];
@@ -662,8 +669,8 @@ private ImagePlus getGray32 (
 			gray[k] = (float)(colorWeights[0] * r + colorWeights[1] * g + colorWeights[2] * b);
 		}
 	}
-	else if (imp.getProcessor().getPixels() instanceof int[]) {
-		final int[] pixels = (int[])imp.getProcessor().getPixels();
+	else if (ip.getPixels() instanceof int[]) {
+		final int[] pixels = (int[])ip.getPixels();
 		for (int k = 0; (k < length); k++) {
 			r = (double)((pixels[k] & 0x00FF0000) >>> 16);
 			g = (double)((pixels[k] & 0x0000FF00) >>> 8);
@@ -674,6 +681,19 @@ else if (imp.getProcessor().getPixels() instanceof int[]) {
 	return(gray32);
 } /* getGray32 */
 
+/*------------------------------------------------------------------*/
+private ImageProcessor getGraySlice (
+	final int s
+) {
+	final ImageProcessor gray = (colorWeights == null)
+		? (getSlice(s))
+		: (getGray32(getSlice(s), colorWeights));
+	// Same region as the former "-align 0 0 (width - 1) (height - 1)"
+	// command line of TurboReg_, which takes the crop as a rectangle
+	gray.setRoi(0, 0, width - 1, height - 1);
+	return(gray.crop());
+} /* end getGraySlice */
+
 /*------------------------------------------------------------------*/
 private double getLargestAbsoluteEigenvalue (
 	final double[] eigenvalue
@@ -699,6 +719,23 @@ private double[] getLuminanceFromCCIR601 (
 	return(weights);
 } /* getLuminanceFromCCIR601 */
 
+/*------------------------------------------------------------------*/
+private ImageProcessor getSlice (
+	final int s
+) {
+	final Object pixels = stack.getPixels(s);
+	if (pixels instanceof byte[]) {
+		return(new ByteProcessor(width, height, (byte[])pixels, colorModel));
+	}
+	else if (pixels instanceof short[]) {
+		return(new ShortProcessor(width, height, (short[])pixels, colorModel));
+	}
+	else if (pixels instanceof float[]) {
+		return(new FloatProcessor(width, height, (float[])pixels, colorModel));
+	}
+	return(new ColorProcessor(width, height, (int[])pixels));
+} /* end getSlice */
+
 /*------------------------------------------------------------------*/
 private double[][] getTransformationMatrix (
 	final double[][] fromCoord,
@@ -806,6 +843,33 @@ private double[][] getTransformationMatrix (
 	return(matrix);
 } /* end getTransformationMatrix */
 
+/*------------------------------------------------------------------*/
+private Object getTransformedPixels (
+	final ImageProcessor source,
+	final int type,
+	final double[][] sourcePoints,
+	final double[][] targetPoints
+) {
+	final ImagePlus transformedSource = new ImagePlus("StackRegSource",
+		turboRegAligner.transform(source, width, height,
+		TURBOREG_TRANSFORMATION[transformation], sourcePoints, targetPoints));
+	switch (type) {
+		case ImagePlus.GRAY8: {
+			transformedSource.getProcessor().setMinAndMax(0.0, 255.0);
+			final ImageConverter converter = new ImageConverter(transformedSource);
+			converter.convertToGray8();
+			break;
+		}
+		case ImagePlus.GRAY16: {
+			transformedSource.getProcessor().setMinAndMax(0.0, 65535.0);
+			final ImageConverter converter = new ImageConverter(transformedSource);
+			converter.convertToGray16();
+			break;
+		}
+	}
+	return(transformedSource.getProcessor().getPixels());
+} /* end getTransformedPixels */
+
 /*------------------------------------------------------------------*/
 private void invertGauss (
 	final double[][] matrix
@@ -920,6 +984,79 @@ private double[] linearLeastSquares (
 	return(x);
 } /* end linearLeastSquares */
 
+/*------------------------------------------------------------------*/
+private double[][] multiply (
+	final double[][] a,
+	final double[][] b
+) {
+	final double[][] c = new double[3][3];
+	for (int i = 0; (i < 3); i++) {
+		for (int j = 0; (j < 3); j++) {
+			c[i][j] = 0.0;
+			for (int k = 0; (k < 3); k++) {
+				c[i][j] += a[i][k] * b[k][j];
+			}
+		}
+	}
+	return(c);
+} /* end multiply */
+
+/*------------------------------------------------------------------*/
+private boolean processSlices (
+	final int[] slices,
+	final boolean align
+) {
+	failure = null;
+	try {
+		if (align && (slices.length != 0)) {
+			targetAligner = new turboRegAligner(getGraySlice(targetSlice),
+				TURBOREG_TRANSFORMATION[transformation]);
+		}
+		final AtomicInteger next = new AtomicInteger(0);
+		final Thread[] threads = new Thread[Math.max(1,
+			Math.min(Prefs.getThreads(), slices.length))];
+		for (int t = 0; (t < threads.length); t++) {
+			threads[t] = new Thread() {
+				public void run () {
+					try {
+						for (int k = next.getAndIncrement(); ((k < slices.length)
+							&& (failure == null)); k = next.getAndIncrement()) {
+							if (align) {
+								alignSlice(slices[k]);
+							}
+							else {
+								transformSlice(slices[k]);
+							}
+						}
+					} catch (Throwable e) {
+						failure = e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; (t < threads.length); t++) {
+			threads[t].join();
+		}
+	} catch (InterruptedException e) {
+		IJ.log("Unexpected interruption exception " + e.getMessage());
+		return(false);
+	} catch (Throwable e) {
+		failure = e;
+	} finally {
+		targetAligner = null;
+	}
+	if (failure instanceof NoClassDefFoundError) {
+		IJ.error("Please download TurboReg_ from\nhttp://bigwww.epfl.ch/thevenaz/turboreg/");
+		return(false);
+	}
+	if (failure != null) {
+		IJ.error("Unexpected " + failure);
+		return(false);
+	}
+	return(true);
+} /* end processSlices */
+
 /*------------------------------------------------------------------*/
 private void QRdecomposition (
 	final double[][] Q,
@@ -970,838 +1107,76 @@ private void QRdecomposition (
 } /* end QRdecomposition */
 
 /*------------------------------------------------------------------*/
-private ImagePlus registerSlice (
-	ImagePlus source,
-	final ImagePlus target,
-	final ImagePlus imp,
-	final int width,
-	final int height,
-	final int transformation,
-	final double[][] globalTransform,
-	final double[][] anchorPoints,
-	final double[] colorWeights,
+private void transformSlice (
 	final int s
 ) {
-	imp.setSlice(s);
-	try {
-		Object turboReg = null;
-		Method method = null;
-		double[][] sourcePoints = null;
-		double[][] targetPoints = null;
-		double[][] localTransform = null;
-		switch (imp.getType()) {
-			case ImagePlus.COLOR_256:
-			case ImagePlus.COLOR_RGB: {
-				source = getGray32("StackRegSource", imp, colorWeights);
-				break;
-			}
-			case ImagePlus.GRAY8: {
-				source = new ImagePlus("StackRegSource", new ByteProcessor(
-					width, height, (byte[])imp.getProcessor().getPixels(),
-					imp.getProcessor().getColorModel()));
-				break;
-			}
-			case ImagePlus.GRAY16: {
-				source = new ImagePlus("StackRegSource", new ShortProcessor(
-					width, height, (short[])imp.getProcessor().getPixels(),
-					imp.getProcessor().getColorModel()));
-				break;
-			}
-			case ImagePlus.GRAY32: {
-				source = new ImagePlus("StackRegSource", new FloatProcessor(
-					width, height, (float[])imp.getProcessor().getPixels(),
-					imp.getProcessor().getColorModel()));
-				break;
-			}
-			default: {
-				IJ.error("Unexpected image type");
-				return(null);
+	final double[][] sourcePoints = new double[anchorPoints.length][2];
+	final double[][] targetPoints = new double[anchorPoints.length][2];
+	for (int n = 0; (n < anchorPoints.length); n++) {
+		for (int i = 0; (i < 2); i++) {
+			sourcePoints[n][i] = 0.0;
+			for (int j = 0; (j < 3); j++) {
+				sourcePoints[n][i] += globalTransform[s][i][j]
+					* anchorPoints[n][j];
 			}
+			targetPoints[n][i] = anchorPoints[n][i];
 		}
-		final FileSaver sourceFile = new FileSaver(source);
-		final String sourcePathAndFileName = IJ.getDirectory("temp") + source.getTitle();
-		sourceFile.saveAsTiff(sourcePathAndFileName);
-		final FileSaver targetFile = new FileSaver(target);
-		final String targetPathAndFileName = IJ.getDirectory("temp") + target.getTitle();
-		targetFile.saveAsTiff(targetPathAndFileName);
-		switch (transformation) {
-			case 0: {
-				turboReg = IJ.runPlugIn("TurboReg_", "-align"
-					+ " -file " + sourcePathAndFileName
-					+ " 0 0 " + (width - 1) + " " + (height - 1)
-					+ " -file " + targetPathAndFileName
-					+ " 0 0 " + (width - 1) + " " + (height - 1)
-					+ " -translation"
-					+ " " + (width / 2) + " " + (height / 2)
-					+ " " + (width / 2) + " " + (height / 2)
-					+ " -hideOutput"
-				);
-				break;
-			}
-			case 1: {
-				turboReg = IJ.runPlugIn("TurboReg_", "-align"
-					+ " -file " + sourcePathAndFileName
-					+ " 0 0 " + (width - 1) + " " + (height - 1)
-					+ " -file " + targetPathAndFileName
-					+ " 0 0 " + (width - 1) + " " + (height - 1)
-					+ " -rigidBody"
-					+ " " + (width / 2) + " " + (height / 2)
-					+ " " + (width / 2) + " " + (height / 2)
-					+ " " + (width / 2) + " " + (height / 4)
-					+ " " + (width / 2) + " " + (height / 4)
-					+ " " + (width / 2) + " " + ((3 * height) / 4)
-					+ " " + (width / 2) + " " + ((3 * height) / 4)
-					+ " -hideOutput"
-				);
-				break;
-			}
-			case 2: {
-				turboReg = IJ.runPlugIn("TurboReg_", "-align"
-					+ " -file " + sourcePathAndFileName
-					+ " 0 0 " + (width - 1) + " " + (height - 1)
-					+ " -file " + targetPathAndFileName
-					+ " 0 0 " + (width - 1) + " " + (height - 1)
-					+ " -scaledRotation"
-					+ " " + (width / 4) + " " + (height / 2)
-					+ " " + (width / 4) + " " + (height / 2)
-					+ " " + ((3 * width) / 4) + " " + (height / 2)
-					+ " " + ((3 * width) / 4) + " " + (height / 2)
-					+ " -hideOutput"
-				);
-				break;
-			}
-			case 3: {
-				turboReg = IJ.runPlugIn("TurboReg_", "-align"
-					+ " -file " + sourcePathAndFileName
-					+ " 0 0 " + (width - 1) + " " + (height - 1)
-					+ " -file " + targetPathAndFileName
-					+ " 0 0 " + (width - 1) + " " + (height - 1)
-					+ " -affine"
-					+ " " + (width / 2) + " " + (height / 4)
-					+ " " + (width / 2) + " " + (height / 4)
-					+ " " + (width / 4) + " " + ((3 * height) / 4)
-					+ " " + (width / 4) + " " + ((3 * height) / 4)
-					+ " " + ((3 * width) / 4) + " " + ((3 * height) / 4)
-					+ " " + ((3 * width) / 4) + " " + ((3 * height) / 4)
-					+ " -hideOutput"
-				);
-				break;
-			}
-			default: {
-				IJ.error("Unexpected transformation");
-				return(null);
+	}
+	switch (imageType) {
+		case ImagePlus.COLOR_256: {
+			final ImagePlus source = new ImagePlus("StackRegSource",
+				getSlice(s));
+			final ImageConverter converter = new ImageConverter(source);
+			converter.convertToRGB();
+			final byte[] r = new byte[width * height];
+			final byte[] g = new byte[width * height];
+			final byte[] b = new byte[width * height];
+			((ColorProcessor)source.getProcessor()).getRGB(r, g, b);
+			final byte[] transformedR = (byte[])getTransformedPixels(
+				new ByteProcessor(width, height, r, null), ImagePlus.GRAY8,
+				sourcePoints, targetPoints);
+			final byte[] transformedG = (byte[])getTransformedPixels(
+				new ByteProcessor(width, height, g, null), ImagePlus.GRAY8,
+				sourcePoints, targetPoints);
+			final byte[] transformedB = (byte[])getTransformedPixels(
+				new ByteProcessor(width, height, b, null), ImagePlus.GRAY8,
+				sourcePoints, targetPoints);
+			final IndexColorModel icm = (IndexColorModel)colorModel;
+			final byte[] pixels = (byte[])stack.getPixels(s);
+			final int[] color = new int[4];
+			color[3] = 255;
+			for (int k = 0; (k < pixels.length); k++) {
+				color[0] = (int)(transformedR[k] & 0xFF);
+				color[1] = (int)(transformedG[k] & 0xFF);
+				color[2] = (int)(transformedB[k] & 0xFF);
+				pixels[k] = (byte)icm.getDataElement(color, 0);
 			}
+			break;
 		}
-		if (turboReg == null) {
-			throw(new ClassNotFoundException());
-		}
-		target.setProcessor(null, source.getProcessor());
-		method = turboReg.getClass().getMethod("getSourcePoints", null);
-		sourcePoints = ((double[][])method.invoke(turboReg, null));
-		method = turboReg.getClass().getMethod("getTargetPoints", null);
-		targetPoints = ((double[][])method.invoke(turboReg, null));
-		localTransform = getTransformationMatrix(targetPoints, sourcePoints,
-			transformation);
-		double[][] rescued = {
-			{globalTransform[0][0], globalTransform[0][1], globalTransform[0][2]},
-			{globalTransform[1][0], globalTransform[1][1], globalTransform[1][2]},
-			{globalTransform[2][0], globalTransform[2][1], globalTransform[2][2]}
-		};
-		for (int i = 0; (i < 3); i++) {
-			for (int j = 0; (j < 3); j++) {
-				globalTransform[i][j] = 0.0;
-				for (int k = 0; (k < 3); k++) {
-					globalTransform[i][j] += localTransform[i][k] * rescued[k][j];
-				}
-			}
+		case ImagePlus.COLOR_RGB: {
+			final ColorProcessor source = (ColorProcessor)getSlice(s);
+			final byte[] r = new byte[width * height];
+			final byte[] g = new byte[width * height];
+			final byte[] b = new byte[width * height];
+			source.getRGB(r, g, b);
+			source.setRGB(
+				(byte[])getTransformedPixels(new ByteProcessor(width, height,
+				r, null), ImagePlus.GRAY8, sourcePoints, targetPoints),
+				(byte[])getTransformedPixels(new ByteProcessor(width, height,
+				g, null), ImagePlus.GRAY8, sourcePoints, targetPoints),
+				(byte[])getTransformedPixels(new ByteProcessor(width, height,
+				b, null), ImagePlus.GRAY8, sourcePoints, targetPoints));
+			break;
 		}
-		switch (imp.getType()) {
-			case ImagePlus.COLOR_256: {
-				source = new ImagePlus("StackRegSource", new ByteProcessor(
-					width, height, (byte[])imp.getProcessor().getPixels(),
-					imp.getProcessor().getColorModel()));
-				ImageConverter converter = new ImageConverter(source);
-				converter.convertToRGB();
-				Object turboRegR = null;
-				Object turboRegG = null;
-				Object turboRegB = null;
-				byte[] r = new byte[width * height];
-				byte[] g = new byte[width * height];
-				byte[] b = new byte[width * height];
-				((ColorProcessor)source.getProcessor()).getRGB(r, g, b);
-				final ImagePlus sourceR = new ImagePlus("StackRegSourceR",
-					new ByteProcessor(width, height));
-				final ImagePlus sourceG = new ImagePlus("StackRegSourceG",
-					new ByteProcessor(width, height));
-				final ImagePlus sourceB = new ImagePlus("StackRegSourceB",
-					new ByteProcessor(width, height));
-				sourceR.getProcessor().setPixels(r);
-				sourceG.getProcessor().setPixels(g);
-				sourceB.getProcessor().setPixels(b);
-				ImagePlus transformedSourceR = null;
-				ImagePlus transformedSourceG = null;
-				ImagePlus transformedSourceB = null;
-				final FileSaver sourceFileR = new FileSaver(sourceR);
-				final String sourcePathAndFileNameR = IJ.getDirectory("temp") + sourceR.getTitle();
-				sourceFileR.saveAsTiff(sourcePathAndFileNameR);
-				final FileSaver sourceFileG = new FileSaver(sourceG);
-				final String sourcePathAndFileNameG = IJ.getDirectory("temp") + sourceG.getTitle();
-				sourceFileG.saveAsTiff(sourcePathAndFileNameG);
-				final FileSaver sourceFileB = new FileSaver(sourceB);
-				final String sourcePathAndFileNameB = IJ.getDirectory("temp") + sourceB.getTitle();
-				sourceFileB.saveAsTiff(sourcePathAndFileNameB);
-				switch (transformation) {
-					case 0: {
-						sourcePoints = new double[1][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-							}
-						}
-						turboRegR = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameR
-							+ " " + width + " " + height
-							+ " -translation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						if (turboRegR == null) {
-							throw(new ClassNotFoundException());
-						}
-						turboRegG = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameG
-							+ " " + width + " " + height
-							+ " -translation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						turboRegB = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameB
-							+ " " + width + " " + height
-							+ " -translation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					case 1: {
-						sourcePoints = new double[3][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							sourcePoints[1][i] = 0.0;
-							sourcePoints[2][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-								sourcePoints[1][i] += globalTransform[i][j]
-									* anchorPoints[1][j];
-								sourcePoints[2][i] += globalTransform[i][j]
-									* anchorPoints[2][j];
-							}
-						}
-						turboRegR = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameR
-							+ " " + width + " " + height
-							+ " -rigidBody"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + (width / 2) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						if (turboRegR == null) {
-							throw(new ClassNotFoundException());
-						}
-						turboRegG = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameG
-							+ " " + width + " " + height
-							+ " -rigidBody"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + (width / 2) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						turboRegB = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameB
-							+ " " + width + " " + height
-							+ " -rigidBody"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + (width / 2) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					case 2: {
-						sourcePoints = new double[2][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							sourcePoints[1][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-								sourcePoints[1][i] += globalTransform[i][j]
-									* anchorPoints[1][j];
-							}
-						}
-						turboRegR = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameR
-							+ " " + width + " " + height
-							+ " -scaledRotation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 4) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + ((3 * width) / 4) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						if (turboRegR == null) {
-							throw(new ClassNotFoundException());
-						}
-						turboRegG = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameG
-							+ " " + width + " " + height
-							+ " -scaledRotation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 4) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + ((3 * width) / 4) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						turboRegB = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameB
-							+ " " + width + " " + height
-							+ " -scaledRotation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 4) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + ((3 * width) / 4) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					case 3: {
-						sourcePoints = new double[3][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							sourcePoints[1][i] = 0.0;
-							sourcePoints[2][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-								sourcePoints[1][i] += globalTransform[i][j]
-									* anchorPoints[1][j];
-								sourcePoints[2][i] += globalTransform[i][j]
-									* anchorPoints[2][j];
-							}
-						}
-						turboRegR = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameR
-							+ " " + width + " " + height
-							+ " -affine"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 4) + " " + ((3 * height) / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + ((3 * width) / 4) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						if (turboRegR == null) {
-							throw(new ClassNotFoundException());
-						}
-						turboRegG = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameG
-							+ " " + width + " " + height
-							+ " -affine"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 4) + " " + ((3 * height) / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + ((3 * width) / 4) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						turboRegB = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameB
-							+ " " + width + " " + height
-							+ " -affine"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 4) + " " + ((3 * height) / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + ((3 * width) / 4) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					default: {
-						IJ.error("Unexpected transformation");
-						return(null);
-					}
-				}
-				method = turboRegR.getClass().getMethod("getTransformedImage", null);
-				transformedSourceR = (ImagePlus)method.invoke(turboRegR, null);
-				method = turboRegG.getClass().getMethod("getTransformedImage", null);
-				transformedSourceG = (ImagePlus)method.invoke(turboRegG, null);
-				method = turboRegB.getClass().getMethod("getTransformedImage", null);
-				transformedSourceB = (ImagePlus)method.invoke(turboRegB, null);
-				transformedSourceR.getStack().deleteLastSlice();
-				transformedSourceG.getStack().deleteLastSlice();
-				transformedSourceB.getStack().deleteLastSlice();
-				transformedSourceR.getProcessor().setMinAndMax(0.0, 255.0);
-				transformedSourceG.getProcessor().setMinAndMax(0.0, 255.0);
-				transformedSourceB.getProcessor().setMinAndMax(0.0, 255.0);
-				ImageConverter converterR = new ImageConverter(transformedSourceR);
-				ImageConverter converterG = new ImageConverter(transformedSourceG);
-				ImageConverter converterB = new ImageConverter(transformedSourceB);
-				converterR.convertToGray8();
-				converterG.convertToGray8();
-				converterB.convertToGray8();
-				final IndexColorModel icm = (IndexColorModel)imp.getProcessor().getColorModel();
-				final byte[] pixels = (byte[])imp.getProcessor().getPixels();
-				r = (byte[])transformedSourceR.getProcessor().getPixels();
-				g = (byte[])transformedSourceG.getProcessor().getPixels();
-				b = (byte[])transformedSourceB.getProcessor().getPixels();
-				final int[] color = new int[4];
-				color[3] = 255;
-				for (int k = 0; (k < pixels.length); k++) {
-					color[0] = (int)(r[k] & 0xFF);
-					color[1] = (int)(g[k] & 0xFF);
-					color[2] = (int)(b[k] & 0xFF);
-					pixels[k] = (byte)icm.getDataElement(color, 0);
-				}
-				break;
-			}
-			case ImagePlus.COLOR_RGB: {
-				Object turboRegR = null;
-				Object turboRegG = null;
-				Object turboRegB = null;
-				final byte[] r = new byte[width * height];
-				final byte[] g = new byte[width * height];
-				final byte[] b = new byte[width * height];
-				((ColorProcessor)imp.getProcessor()).getRGB(r, g, b);
-				final ImagePlus sourceR = new ImagePlus("StackRegSourceR",
-					new ByteProcessor(width, height));
-				final ImagePlus sourceG = new ImagePlus("StackRegSourceG",
-					new ByteProcessor(width, height));
-				final ImagePlus sourceB = new ImagePlus("StackRegSourceB",
-					new ByteProcessor(width, height));
-				sourceR.getProcessor().setPixels(r);
-				sourceG.getProcessor().setPixels(g);
-				sourceB.getProcessor().setPixels(b);
-				ImagePlus transformedSourceR = null;
-				ImagePlus transformedSourceG = null;
-				ImagePlus transformedSourceB = null;
-				final FileSaver sourceFileR = new FileSaver(sourceR);
-				final String sourcePathAndFileNameR = IJ.getDirectory("temp") + sourceR.getTitle();
-				sourceFileR.saveAsTiff(sourcePathAndFileNameR);
-				final FileSaver sourceFileG = new FileSaver(sourceG);
-				final String sourcePathAndFileNameG = IJ.getDirectory("temp") + sourceG.getTitle();
-				sourceFileG.saveAsTiff(sourcePathAndFileNameG);
-				final FileSaver sourceFileB = new FileSaver(sourceB);
-				final String sourcePathAndFileNameB = IJ.getDirectory("temp") + sourceB.getTitle();
-				sourceFileB.saveAsTiff(sourcePathAndFileNameB);
-				switch (transformation) {
-					case 0: {
-						sourcePoints = new double[1][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-							}
-						}
-						turboRegR = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameR
-							+ " " + width + " " + height
-							+ " -translation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						if (turboRegR == null) {
-							throw(new ClassNotFoundException());
-						}
-						turboRegG = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameG
-							+ " " + width + " " + height
-							+ " -translation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						turboRegB = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameB
-							+ " " + width + " " + height
-							+ " -translation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					case 1: {
-						sourcePoints = new double[3][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							sourcePoints[1][i] = 0.0;
-							sourcePoints[2][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-								sourcePoints[1][i] += globalTransform[i][j]
-									* anchorPoints[1][j];
-								sourcePoints[2][i] += globalTransform[i][j]
-									* anchorPoints[2][j];
-							}
-						}
-						turboRegR = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameR
-							+ " " + width + " " + height
-							+ " -rigidBody"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + (width / 2) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						if (turboRegR == null) {
-							throw(new ClassNotFoundException());
-						}
-						turboRegG = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameG
-							+ " " + width + " " + height
-							+ " -rigidBody"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + (width / 2) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						turboRegB = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameB
-							+ " " + width + " " + height
-							+ " -rigidBody"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + (width / 2) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					case 2: {
-						sourcePoints = new double[2][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							sourcePoints[1][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-								sourcePoints[1][i] += globalTransform[i][j]
-									* anchorPoints[1][j];
-							}
-						}
-						turboRegR = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameR
-							+ " " + width + " " + height
-							+ " -scaledRotation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 4) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + ((3 * width) / 4) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						if (turboRegR == null) {
-							throw(new ClassNotFoundException());
-						}
-						turboRegG = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameG
-							+ " " + width + " " + height
-							+ " -scaledRotation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 4) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + ((3 * width) / 4) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						turboRegB = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameB
-							+ " " + width + " " + height
-							+ " -scaledRotation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 4) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + ((3 * width) / 4) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					case 3: {
-						sourcePoints = new double[3][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							sourcePoints[1][i] = 0.0;
-							sourcePoints[2][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-								sourcePoints[1][i] += globalTransform[i][j]
-									* anchorPoints[1][j];
-								sourcePoints[2][i] += globalTransform[i][j]
-									* anchorPoints[2][j];
-							}
-						}
-						turboRegR = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameR
-							+ " " + width + " " + height
-							+ " -affine"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 4) + " " + ((3 * height) / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + ((3 * width) / 4) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						if (turboRegR == null) {
-							throw(new ClassNotFoundException());
-						}
-						turboRegG = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameG
-							+ " " + width + " " + height
-							+ " -affine"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 4) + " " + ((3 * height) / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + ((3 * width) / 4) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						turboRegB = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileNameB
-							+ " " + width + " " + height
-							+ " -affine"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 4) + " " + ((3 * height) / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + ((3 * width) / 4) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					default: {
-						IJ.error("Unexpected transformation");
-						return(null);
-					}
-				}
-				method = turboRegR.getClass().getMethod("getTransformedImage", null);
-				transformedSourceR = (ImagePlus)method.invoke(turboRegR, null);
-				method = turboRegG.getClass().getMethod("getTransformedImage", null);
-				transformedSourceG = (ImagePlus)method.invoke(turboRegG, null);
-				method = turboRegB.getClass().getMethod("getTransformedImage", null);
-				transformedSourceB = (ImagePlus)method.invoke(turboRegB, null);
-				transformedSourceR.getStack().deleteLastSlice();
-				transformedSourceG.getStack().deleteLastSlice();
-				transformedSourceB.getStack().deleteLastSlice();
-				transformedSourceR.getProcessor().setMinAndMax(0.0, 255.0);
-				transformedSourceG.getProcessor().setMinAndMax(0.0, 255.0);
-				transformedSourceB.getProcessor().setMinAndMax(0.0, 255.0);
-				ImageConverter converterR = new ImageConverter(transformedSourceR);
-				ImageConverter converterG = new ImageConverter(transformedSourceG);
-				ImageConverter converterB = new ImageConverter(transformedSourceB);
-				converterR.convertToGray8();
-				converterG.convertToGray8();
-				converterB.convertToGray8();
-				((ColorProcessor)imp.getProcessor()).setRGB(
-					(byte[])transformedSourceR.getProcessor().getPixels(),
-					(byte[])transformedSourceG.getProcessor().getPixels(),
-					(byte[])transformedSourceB.getProcessor().getPixels());
-				break;
-			}
-			case ImagePlus.GRAY8:
-			case ImagePlus.GRAY16:
-			case ImagePlus.GRAY32: {
-				switch (transformation) {
-					case 0: {
-						sourcePoints = new double[1][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-							}
-						}
-						turboReg = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileName
-							+ " " + width + " " + height
-							+ " -translation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					case 1: {
-						sourcePoints = new double[3][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							sourcePoints[1][i] = 0.0;
-							sourcePoints[2][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-								sourcePoints[1][i] += globalTransform[i][j]
-									* anchorPoints[1][j];
-								sourcePoints[2][i] += globalTransform[i][j]
-									* anchorPoints[2][j];
-							}
-						}
-						turboReg = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileName
-							+ " " + width + " " + height
-							+ " -rigidBody"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + (width / 2) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					case 2: {
-						sourcePoints = new double[2][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							sourcePoints[1][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-								sourcePoints[1][i] += globalTransform[i][j]
-									* anchorPoints[1][j];
-							}
-						}
-						turboReg = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileName
-							+ " " + width + " " + height
-							+ " -scaledRotation"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 4) + " " + (height / 2)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + ((3 * width) / 4) + " " + (height / 2)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					case 3: {
-						sourcePoints = new double[3][3];
-						for (int i = 0; (i < 3); i++) {
-							sourcePoints[0][i] = 0.0;
-							sourcePoints[1][i] = 0.0;
-							sourcePoints[2][i] = 0.0;
-							for (int j = 0; (j < 3); j++) {
-								sourcePoints[0][i] += globalTransform[i][j]
-									* anchorPoints[0][j];
-								sourcePoints[1][i] += globalTransform[i][j]
-									* anchorPoints[1][j];
-								sourcePoints[2][i] += globalTransform[i][j]
-									* anchorPoints[2][j];
-							}
-						}
-						turboReg = IJ.runPlugIn("TurboReg_", "-transform"
-							+ " -file " + sourcePathAndFileName
-							+ " " + width + " " + height
-							+ " -affine"
-							+ " " + sourcePoints[0][0] + " " + sourcePoints[0][1]
-							+ " " + (width / 2) + " " + (height / 4)
-							+ " " + sourcePoints[1][0] + " " + sourcePoints[1][1]
-							+ " " + (width / 4) + " " + ((3 * height) / 4)
-							+ " " + sourcePoints[2][0] + " " + sourcePoints[2][1]
-							+ " " + ((3 * width) / 4) + " " + ((3 * height) / 4)
-							+ " -hideOutput"
-						);
-						break;
-					}
-					default: {
-						IJ.error("Unexpected transformation");
-						return(null);
-					}
-				}
-				if (turboReg == null) {
-					throw(new ClassNotFoundException());
-				}
-				method = turboReg.getClass().getMethod("getTransformedImage", null);
-				ImagePlus transformedSource = (ImagePlus)method.invoke(turboReg, null);
-				transformedSource.getStack().deleteLastSlice();
-				switch (imp.getType()) {
-					case ImagePlus.GRAY8: {
-						transformedSource.getProcessor().setMinAndMax(0.0, 255.0);
-						final ImageConverter converter = new ImageConverter(transformedSource);
-						converter.convertToGray8();
-						break;
-					}
-					case ImagePlus.GRAY16: {
-						transformedSource.getProcessor().setMinAndMax(0.0, 65535.0);
-						final ImageConverter converter = new ImageConverter(transformedSource);
-						converter.convertToGray16();
-						break;
-					}
-					case ImagePlus.GRAY32: {
-						break;
-					}
-					default: {
-						IJ.error("Unexpected image type");
-						return(null);
-					}
-				}
-				imp.setProcessor(null, transformedSource.getProcessor());
-				break;
-			}
-			default: {
-				IJ.error("Unexpected image type");
-				return(null);
-			}
+		case ImagePlus.GRAY8:
+		case ImagePlus.GRAY16:
+		case ImagePlus.GRAY32: {
+			stack.setPixels(getTransformedPixels(getSlice(s), imageType,
+				sourcePoints, targetPoints), s);
+			break;
 		}
-	} catch (NoSuchMethodException e) {
-		IJ.error("Unexpected NoSuchMethodException " + e);
-		return(null);
-	} catch (IllegalAccessException e) {
-		IJ.error("Unexpected IllegalAccessException " + e);
-		return(null);
-	} catch (InvocationTargetException e) {
-		IJ.error("Unexpected InvocationTargetException " + e);
-		return(null);
-	} catch (ClassNotFoundException e) {
-		IJ.error("Please download TurboReg_ from\nhttp://bigwww.epfl.ch/thevenaz/turboreg/");
-		return(null);
 	}
-	return(source);
-} /* end registerSlice */
+} /* end transformSlice */
 
 } /* end class StackReg_ */
 
@@ -63,7 +63,7 @@ public class SRM_ implements PlugInFilter {
 
 	public int setup(String arg, ImagePlus image) {
 		this.image = image;
-		return DOES_8G | NO_CHANGES;
+		return DOES_8G | DOES_16 | DOES_32 | NO_CHANGES;
 	}
 
 	public void run(ImageProcessor ip) {
@@ -82,10 +82,29 @@ public void run(ImageProcessor ip) {
 		Q = (float)gd.getNextNumber();
 		boolean showAverages = gd.getNextBoolean();
 		boolean do3D = isStack ? gd.getNextBoolean() : false;
+		srm(ip, showAverages, do3D).show();
+	}
+
+	/*
+	 * Segments the current slice, or the whole stack, using the memory
+	 * efficient implementation in StatisticalRegionMerging, which also
+	 * handles 16-bit and 32-bit data.
+	 */
+	protected ImagePlus srm(ImageProcessor ip, boolean showAverages,
+			boolean do3D) {
+		ImageStack stack = image.getStack();
+		if (!do3D) {
+			stack = new ImageStack(ip.getWidth(), ip.getHeight());
+			stack.addSlice(null, ip);
+		}
+		StatisticalRegionMerging srm =
+			new StatisticalRegionMerging(stack, Q);
+		ImageStack result = srm.run(showAverages);
+		String title = image.getTitle() + (do3D ?
+			" (SRM3D Q=" : " (SRM Q=") + Q + ")";
 		if (do3D)
-			srm3D(showAverages).show();
-		else
-			srm2D(ip, showAverages).show();
+			return new ImagePlus(title, result);
+		return new ImagePlus(title, result.getProcessor(1));
 	}
 
 	final float g = 256; // number of different intensity values
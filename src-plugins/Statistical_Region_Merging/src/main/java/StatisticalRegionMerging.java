@@ -0,0 +1,626 @@
+/*
+ * #%L
+ * Statistical Region Merging.
+ * %%
+ * Copyright (C) 2009 - 2013 Johannes Schindelin.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+import ij.IJ;
+import ij.ImageStack;
+import ij.Prefs;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Statistical Region Merging of 8-bit, 16-bit and 32-bit images and stacks,
+ * needing much less memory than SRM_'s srm2D() and srm3D().
+ *
+ * The regions are held in a union-find structure of two ints per voxel,
+ * stored in one array per slice so that stacks of more than 2^31 voxels
+ * can be segmented (a 2048^3 stack needs 64 GiB).  For a root, they hold
+ * minus the number of voxels in its region and the (raw bits of the)
+ * region average; for any other voxel, the slice and the offset in that
+ * slice of a voxel with a smaller index in the same region.  Region sizes
+ * that do not fit into an int are kept in a map, as there can only be a
+ * handful of them.
+ *
+ * The neighbor pairs are never stored for the whole volume.  The buckets
+ * of intensity differences are split into groups whose pairs fit into a
+ * buffer of limited size.  For each group, the pairs are generated slab by
+ * slab in parallel, bucket sorted into the buffer and merged.  A bucket
+ * that does not fit into the buffer by itself is merged while its pairs
+ * are generated, which gives the same order.
+ *
+ * The pairs are merged in the same order as by SRM_: in ascending order of
+ * difference, and within a bucket in ascending order of
+ *
+ *     3 * voxel_index + axis
+ *
+ * so for 8-bit data the results are identical.
+ *
+ * 16-bit and 32-bit data are mapped linearly from their range onto 0..255
+ * (like ImageJ's conversion to 8-bit, but without rounding), and the pairs
+ * are bucket sorted by the difference of the raw 16-bit values, or of the
+ * 32-bit values quantized to 65536 levels.
+ */
+
+public class StatisticalRegionMerging {
+	final float g = 256; // number of different intensity values
+	protected float Q = 25; // complexity of the assumed distributions
+	protected float factor, logDelta; // see SRM_
+
+	protected ImageStack stack;
+	protected int w, h, d, threads;
+	protected int maxPairs; // size of the pair buffer
+
+	// 8, 16 or 32 bits, and the mapping of the values
+	protected int bitDepth;
+	protected float min, valueScale, levelScale;
+	protected int buckets;
+
+	/*
+	 * For roots, parent[k][i] is -count (or HUGE, see hugeCounts), and
+	 * link[k][i] holds the bits of the region average; otherwise, they
+	 * are the slice and the offset of a voxel of the same region with a
+	 * smaller index.
+	 */
+	int[][] parent, link;
+	final static int HUGE = Integer.MIN_VALUE;
+	Map<Long, Long> hugeCounts = new HashMap<Long, Long>();
+
+	public StatisticalRegionMerging(ImageStack stack, float Q) {
+		this.stack = stack;
+		this.Q = Q;
+		w = stack.getWidth();
+		h = stack.getHeight();
+		d = stack.getSize();
+		threads = Prefs.getThreads();
+	}
+
+	/*
+	 * Segments the stack; returns the region averages (in the units of the
+	 * input), or the region labels, numbered from 0 in the order of their
+	 * first voxel.
+	 */
+	public ImageStack run(boolean showAverages) {
+		factor = g * g / 2 / Q;
+		logDelta = 2f * (float)Math.log(6.0 * w * h * d);
+
+		IJ.showStatus("Initializing regions");
+		initializeRange();
+		initializeRegions();
+		IJ.showStatus("Counting neighbors");
+		long[][] counts = countPairs();
+		IJ.showStatus("Merging neighbors");
+		mergeAllNeighbors(counts);
+		IJ.showStatus("Making stack");
+		ImageStack result = showAverages ? averages() : labels();
+		IJ.showStatus("");
+		return result;
+	}
+
+	void initializeRange() {
+		bitDepth = stack.getProcessor(1).getBitDepth();
+		if (bitDepth == 8) {
+			min = 0;
+			valueScale = 1;
+			buckets = 256;
+			return;
+		}
+		if (bitDepth != 16 && bitDepth != 32)
+			throw new IllegalArgumentException("Unsupported bit depth: "
+				+ bitDepth);
+
+		final float[][] range = new float[d][];
+		final AtomicInteger slice = new AtomicInteger();
+		parallel(new Runnable() {
+			public void run() {
+				for (int k = slice.getAndIncrement(); k < d;
+						k = slice.getAndIncrement()) {
+					ImageProcessor ip = stack.getProcessor(k + 1);
+					float lo = Float.MAX_VALUE;
+					float hi = -Float.MAX_VALUE;
+					for (int i = 0; i < w * h; i++) {
+						float v = ip.getf(i);
+						if (v < lo)
+							lo = v;
+						if (v > hi)
+							hi = v;
+					}
+					range[k] = new float[] { lo, hi };
+				}
+			}
+		});
+		float max = -Float.MAX_VALUE;
+		min = Float.MAX_VALUE;
+		for (int k = 0; k < d; k++) {
+			min = Math.min(min, range[k][0]);
+			max = Math.max(max, range[k][1]);
+		}
+		valueScale = max > min ? (g - 1) / (max - min) : 0;
+		if (bitDepth == 16) {
+			buckets = (int)(max - min) + 1;
+			levelScale = 1;
+		}
+		else {
+			buckets = 1 << 16;
+			levelScale = max > min ? (buckets - 1) / (max - min) : 0;
+		}
+	}
+
+	void initializeRegions() {
+		parent = new int[d][];
+		link = new int[d][];
+		final AtomicInteger slice = new AtomicInteger();
+		parallel(new Runnable() {
+			public void run() {
+				for (int k = slice.getAndIncrement(); k < d;
+						k = slice.getAndIncrement()) {
+					ImageProcessor ip = stack.getProcessor(k + 1);
+					int[] p = new int[w * h], l = new int[w * h];
+					for (int i = 0; i < w * h; i++) {
+						p[i] = -1;
+						l[i] = Float.floatToRawIntBits(
+							bitDepth == 8 ? ip.get(i) :
+							(ip.getf(i) - min) * valueScale);
+					}
+					parent[k] = p;
+					link[k] = l;
+				}
+			}
+		});
+
+		long free = Runtime.getRuntime().maxMemory()
+			- Runtime.getRuntime().totalMemory()
+			+ Runtime.getRuntime().freeMemory();
+		if (maxPairs <= 0)
+			maxPairs = (int)Math.max(1 << 16, Math.min(
+				Integer.MAX_VALUE - 8, free / 2 / 8));
+	}
+
+	// the bucket level of each voxel in slice k
+	int[] levels(int k) {
+		ImageProcessor ip = stack.getProcessor(k + 1);
+		int[] levels = new int[w * h];
+		if (bitDepth == 8)
+			for (int i = 0; i < levels.length; i++)
+				levels[i] = ip.get(i);
+		else
+			for (int i = 0; i < levels.length; i++)
+				levels[i] = (int)((ip.getf(i) - min)
+					* levelScale);
+		return levels;
+	}
+
+	/*
+	 * The slabs are ranges of slices handed out to the threads.  For each
+	 * slab, the number of pairs in each bucket is counted.
+	 */
+	int slabs() {
+		return Math.min(d, 4 * threads);
+	}
+
+	int slabStart(int slab) {
+		return (int)((long)slab * d / slabs());
+	}
+
+	long[][] countPairs() {
+		final long[][] counts = new long[slabs()][buckets];
+		final AtomicInteger nextSlab = new AtomicInteger();
+		parallel(new Runnable() {
+			public void run() {
+				for (int s = nextSlab.getAndIncrement();
+						s < counts.length;
+						s = nextSlab.getAndIncrement()) {
+					long[] count = counts[s];
+					int[] next = null;
+					for (int k = slabStart(s + 1) - 1;
+							k >= slabStart(s); k--) {
+						int[] levels = levels(k);
+						if (next == null && k < d - 1)
+							next = levels(k + 1);
+						countPairs(levels, next, count);
+						next = levels;
+					}
+				}
+			}
+		});
+		return counts;
+	}
+
+	void countPairs(int[] levels, int[] next, long[] count) {
+		for (int j = 0; j < h; j++)
+			for (int i = 0; i < w; i++) {
+				int index = i + w * j;
+				int level = levels[index];
+				if (i < w - 1)
+					count[Math.abs(level
+						- levels[index + 1])]++;
+				if (j < h - 1)
+					count[Math.abs(level
+						- levels[index + w])]++;
+				if (next != null)
+					count[Math.abs(level
+						- next[index])]++;
+			}
+	}
+
+	void mergeAllNeighbors(long[][] counts) {
+		long[] total = new long[buckets];
+		for (int s = 0; s < counts.length; s++)
+			for (int b = 0; b < buckets; b++)
+				total[b] += counts[s][b];
+
+		long[] pairs = null;
+		for (int b0 = 0; b0 < buckets; ) {
+			IJ.showProgress(b0, buckets);
+			if (total[b0] > maxPairs) {
+				mergeBucket(b0);
+				b0++;
+				continue;
+			}
+			long sum = 0;
+			int b1 = b0;
+			while (b1 < buckets && sum + total[b1] <= maxPairs)
+				sum += total[b1++];
+			if (sum > 0) {
+				if (pairs == null || pairs.length < sum)
+					pairs = new long[(int)Math.min(maxPairs,
+						pairsUpTo(total, b0))];
+				sortPairs(counts, b0, b1, pairs);
+				for (int p = 0; p < sum; p++)
+					merge(pairs[p]);
+			}
+			b0 = b1;
+		}
+		IJ.showProgress(buckets, buckets);
+	}
+
+	// the number of pairs in the remaining buckets
+	long pairsUpTo(long[] total, int b0) {
+		long sum = 0;
+		for (int b = b0; b < total.length; b++)
+			sum += total[b];
+		return sum;
+	}
+
+	/*
+	 * Bucket sorts the pairs of buckets b0 to b1 - 1 into the buffer: the
+	 * slabs fill their pairs in parallel, starting at the offsets given by
+	 * the counts of the previous buckets and slabs.
+	 */
+	void sortPairs(final long[][] counts, final int b0, final int b1,
+			final long[] pairs) {
+		// the pairs of the buckets fit into the buffer, so int is enough
+		final int[][] offsets = new int[counts.length][b1 - b0];
+		int offset = 0;
+		for (int b = b0; b < b1; b++)
+			for (int s = 0; s < counts.length; s++) {
+				offsets[s][b - b0] = offset;
+				offset += counts[s][b];
+			}
+
+		final AtomicInteger nextSlab = new AtomicInteger();
+		parallel(new Runnable() {
+			public void run() {
+				for (int s = nextSlab.getAndIncrement();
+						s < counts.length;
+						s = nextSlab.getAndIncrement()) {
+					int[] offset = offsets[s];
+					int start = slabStart(s);
+					int[] next = null;
+					int[] levels = levels(start);
+					for (int k = start; k < slabStart(s + 1);
+							k++) {
+						next = k < d - 1 ? levels(k + 1) : null;
+						addPairs(k, levels, next, b0, b1,
+							offset, pairs);
+						levels = next;
+					}
+				}
+			}
+		});
+	}
+
+	void addPairs(int k, int[] levels, int[] next, int b0, int b1,
+			int[] offset, long[] pairs) {
+		long base = 3L * k * w * h;
+		for (int j = 0; j < h; j++)
+			for (int i = 0; i < w; i++) {
+				int index = i + w * j;
+				int level = levels[index];
+				long pair = base + 3L * index;
+				int b;
+				if (i < w - 1) {
+					b = Math.abs(level - levels[index + 1]);
+					if (b >= b0 && b < b1)
+						pairs[offset[b - b0]++] = pair;
+				}
+				if (j < h - 1) {
+					b = Math.abs(level - levels[index + w]);
+					if (b >= b0 && b < b1)
+						pairs[offset[b - b0]++] = pair + 1;
+				}
+				if (next != null) {
+					b = Math.abs(level - next[index]);
+					if (b >= b0 && b < b1)
+						pairs[offset[b - b0]++] = pair + 2;
+				}
+			}
+	}
+
+	// merges the pairs of a single bucket while generating them
+	void mergeBucket(int bucket) {
+		int[] levels = levels(0), next;
+		for (int k = 0; k < d; k++) {
+			next = k < d - 1 ? levels(k + 1) : null;
+			for (int j = 0; j < h; j++)
+				for (int i = 0; i < w; i++) {
+					int index = i + w * j;
+					int level = levels[index];
+					if (i < w - 1 && bucket == Math.abs(level
+							- levels[index + 1]))
+						merge(k, index, k, index + 1);
+					if (j < h - 1 && bucket == Math.abs(level
+							- levels[index + w]))
+						merge(k, index, k, index + w);
+					if (next != null && bucket == Math.abs(level
+							- next[index]))
+						merge(k, index, k + 1, index);
+				}
+			levels = next;
+		}
+	}
+
+	void merge(long pair) {
+		long voxel = pair / 3;
+		int axis = (int)(pair % 3);
+		int k = (int)(voxel / (w * h));
+		int i = (int)(voxel % (w * h));
+		if (axis == 2)
+			merge(k, i, k + 1, i);
+		else
+			merge(k, i, k, i + (axis == 0 ? 1 : w));
+	}
+
+	void merge(int k1, int i1, int k2, int i2) {
+		long r1 = getRegionIndex(k1, i1);
+		long r2 = getRegionIndex(k2, i2);
+		if (r1 != r2 && predicate(r1, r2))
+			mergeRegions(r1, r2);
+	}
+
+	/*
+	 * The regions are identified by the slice of their root in the upper
+	 * and the offset in the lower 32 bits, which sorts like the voxel
+	 * index.
+	 */
+	static long region(int k, int i) {
+		return ((long)k << 32) | i;
+	}
+
+	static int slice(long region) {
+		return (int)(region >>> 32);
+	}
+
+	static int offset(long region) {
+		return (int)region;
+	}
+
+	// find the root, halving the path on the way
+	long getRegionIndex(int k, int i) {
+		for (;;) {
+			int pk = parent[k][i];
+			if (pk < 0)
+				return region(k, i);
+			int pi = link[k][i];
+			int qk = parent[pk][pi];
+			if (qk < 0)
+				return region(pk, pi);
+			int qi = link[pk][pi];
+			parent[k][i] = qk;
+			link[k][i] = qi;
+			k = qk;
+			i = qi;
+		}
+	}
+
+	long getCount(long region) {
+		int count = parent[slice(region)][offset(region)];
+		return count != HUGE ? -count : hugeCounts.get(region);
+	}
+
+	void setCount(long region, long count) {
+		if (count <= Integer.MAX_VALUE)
+			parent[slice(region)][offset(region)] = (int)-count;
+		else {
+			parent[slice(region)][offset(region)] = HUGE;
+			hugeCounts.put(region, count);
+		}
+	}
+
+	float getAverage(long region) {
+		return Float.intBitsToFloat(link[slice(region)][offset(region)]);
+	}
+
+	void setAverage(long region, float average) {
+		link[slice(region)][offset(region)] =
+			Float.floatToRawIntBits(average);
+	}
+
+	// should regions r1 and r2 be merged?  (see SRM_)
+	boolean predicate(long r1, long r2) {
+		long count1 = getCount(r1), count2 = getCount(r2);
+		float difference = getAverage(r1) - getAverage(r2);
+		float log1 = (float)Math.log(1 + count1)
+			* (g < count1 ? g : count1);
+		float log2 = (float)Math.log(1 + count2)
+			* (g < count2 ? g : count2);
+		return difference * difference <
+			.1f * factor * ((log1 + logDelta) / count1
+				+ ((log2 + logDelta) / count2));
+	}
+
+	// merge larger index into smaller index
+	void mergeRegions(long r1, long r2) {
+		if (r1 > r2) {
+			long r = r1;
+			r1 = r2;
+			r2 = r;
+		}
+		long count1 = getCount(r1), count2 = getCount(r2);
+		long mergedCount = count1 + count2;
+		setAverage(r1, (getAverage(r1) * count1
+				+ getAverage(r2) * count2) / mergedCount);
+		setCount(r1, mergedCount);
+		if (count2 > Integer.MAX_VALUE)
+			hugeCounts.remove(r2);
+		parent[slice(r2)][offset(r2)] = slice(r1);
+		link[slice(r2)][offset(r2)] = offset(r1);
+	}
+
+	ImageStack averages() {
+		final float[][] slices = new float[d][];
+		final AtomicInteger slice = new AtomicInteger();
+		final float scale = valueScale == 0 ? 0 : 1 / valueScale;
+		parallel(new Runnable() {
+			public void run() {
+				for (int k = slice.getAndIncrement(); k < d;
+						k = slice.getAndIncrement()) {
+					float[] p = new float[w * h];
+					for (int i = 0; i < w * h; i++) {
+						p[i] = getAverage(root(k, i));
+						if (bitDepth != 8)
+							p[i] = p[i] * scale + min;
+					}
+					slices[k] = p;
+				}
+			}
+		});
+		ImageStack result = new ImageStack(w, h);
+		for (int k = 0; k < d; k++)
+			result.addSlice(null, new FloatProcessor(w, h,
+				slices[k], null));
+		return result;
+	}
+
+	// like getRegionIndex(), but without modifying the tree
+	long root(int k, int i) {
+		while (parent[k][i] >= 0) {
+			int pk = parent[k][i];
+			i = link[k][i];
+			k = pk;
+		}
+		return region(k, i);
+	}
+
+	ImageStack labels() {
+		int regionCount = consolidateRegions();
+		if (regionCount > 1 << 24)
+			IJ.log("SRM: found " + regionCount + " regions; labels"
+				+ " above 2^24 are not exact in 32-bit.");
+
+		ImageStack result = new ImageStack(w, h);
+		for (int k = 0; k < d; k++) {
+			int[] label = parent[k];
+			ImageProcessor ip;
+			if (regionCount > 1 << 16) {
+				float[] p = new float[w * h];
+				for (int i = 0; i < p.length; i++)
+					p[i] = label[i];
+				ip = new FloatProcessor(w, h, p, null);
+			}
+			else if (regionCount > 1 << 8) {
+				short[] p = new short[w * h];
+				for (int i = 0; i < p.length; i++)
+					p[i] = (short)label[i];
+				ip = new ShortProcessor(w, h, p, null);
+			}
+			else {
+				byte[] p = new byte[w * h];
+				for (int i = 0; i < p.length; i++)
+					p[i] = (byte)label[i];
+				ip = new ByteProcessor(w, h, p, null);
+			}
+			result.addSlice(null, ip);
+		}
+		return result;
+	}
+
+	/*
+	 * As every non-root points to a smaller index, iterating from small
+	 * to large, the roots can be replaced by running numbers and the
+	 * others by the (already replaced) entry they point to.
+	 */
+	int consolidateRegions() {
+		int count = 0;
+		for (int k = 0; k < d; k++)
+			for (int i = 0; i < w * h; i++) {
+				if (parent[k][i] < 0) {
+					if (count == Integer.MAX_VALUE)
+						throw new RuntimeException("SRM: "
+							+ "too many regions"
+							+ " to label");
+					parent[k][i] = count++;
+				}
+				else
+					parent[k][i] = parent[parent[k][i]]
+						[link[k][i]];
+			}
+		hugeCounts.clear();
+		return count;
+	}
+
+	void parallel(Runnable runnable) {
+		Thread[] workers = new Thread[Math.max(1,
+			Math.min(threads, d))];
+		for (int t = 0; t < workers.length; t++) {
+			workers[t] = new Thread(runnable);
+			workers[t].start();
+		}
+		try {
+			for (int t = 0; t < workers.length; t++)
+				workers[t].join();
+		} catch (InterruptedException e) {
+			for (int t = 0; t < workers.length; t++)
+				workers[t].interrupt();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("SRM interrupted", e);
+		}
+	}
+}
@@ -94,7 +94,7 @@
  * @author Ignacio Arganda-Carreras (iarganda@mit.edu)
  *
  */
-public class BalancedRandomForest extends AbstractClassifier implements Randomizable
+public class BalancedRandomForest extends AbstractClassifier implements Randomizable, BatchClassifier
 {
 	/** serial version ID */
 	private static final long serialVersionUID = "BalancedRandomForest".hashCode();
@@ -333,6 +333,37 @@ public double[] distributionForInstance(Instance instance)
 	}
 
 
+	/**
+	 * Calculates the class membership probabilities for a block of 
+	 * samples stored in a primitive feature buffer. Each tree is applied
+	 * to the whole block before moving to the next one.
+	 *
+	 * @param features feature values, one sample after another
+	 * @param numAttributes number of features per sample (class excluded)
+	 * @param numInstances number of samples in the buffer
+	 * @param numClasses number of classes
+	 * @param distributions output buffer, one distribution after another
+	 */
+	public void distributionForInstances(
+			final float[] features,
+			final int numAttributes,
+			final int numInstances,
+			final int numClasses,
+			final double[] distributions)
+	{
+		final int length = numInstances * numClasses;
+		for (int i = 0; i < length; i++)
+			distributions[i] = 0;
+		
+		for (int t = 0; t < numTrees; t++)
+			for (int i = 0; i < numInstances; i++)
+				tree[t].addDistribution(features, i * numAttributes, numAttributes, distributions, i * numClasses);
+		
+		// Divide by the number of trees
+		for (int i = 0; i < length; i++)
+			distributions[i] /= (double) numTrees;
+	}
+
 	/**
 	 * Gets the current settings of the forest.
 	 *
@@ -82,6 +82,42 @@ public double[] evaluate(Instance instance)
 		return rootNode.eval(instance);
 	}
 
+	/**
+	 * Add the class probabilities of a sample stored in a primitive
+	 * feature buffer to an accumulator
+	 * 
+	 * @param features feature buffer (one sample after another)
+	 * @param offset index of the first feature of the sample in the buffer
+	 * @param numAttributes number of features per sample (class excluded)
+	 * @param sums accumulator of class probabilities
+	 * @param sumsOffset index of the first class of the sample in sums
+	 */
+	public void addDistribution(
+			final float[] features, 
+			final int offset, 
+			final int numAttributes, 
+			final double[] sums, 
+			final int sumsOffset)
+	{
+		if (null == rootNode)
+			return;
+		
+		BaseNode node = rootNode;
+		while( node instanceof InteriorNode )
+		{
+			final InteriorNode interior = (InteriorNode) node;
+			// leaves are always left nodes
+			if( null == interior.right || interior.splitFn.evaluate( features, offset, numAttributes ) )
+				node = interior.left;
+			else
+				node = interior.right;
+		}
+		
+		final double[] probability = ((LeafNode) node).probability;
+		for(int j = 0; j < probability.length; j++)
+			sums[ sumsOffset + j ] += probability[ j ];
+	}
+
 
 	/**
 	 * Basic node of the tree
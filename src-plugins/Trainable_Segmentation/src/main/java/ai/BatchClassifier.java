@@ -0,0 +1,30 @@
+package ai;
+
+/**
+ * Classifiers that can score a whole block of samples stored in a primitive
+ * feature buffer, without creating a weka Instance per sample.
+ *
+ * @author Ignacio Arganda-Carreras (iarganda@mit.edu)
+ */
+public interface BatchClassifier
+{
+	/**
+	 * Calculate the class membership probabilities of a block of samples.
+	 * The feature value of attribute a of sample i is stored at
+	 * features[ i * numAttributes + a ] and its probability of class k
+	 * will be stored at distributions[ i * numClasses + k ].
+	 *
+	 * @param features feature values, one sample after another (no class value)
+	 * @param numAttributes number of features per sample
+	 * @param numInstances number of samples in the buffer
+	 * @param numClasses number of classes
+	 * @param distributions output buffer (at least numInstances * numClasses long)
+	 * @throws Exception if the distributions could not be computed
+	 */
+	public void distributionForInstances(
+			float[] features,
+			int numAttributes,
+			int numInstances,
+			int numClasses,
+			double[] distributions) throws Exception;
+}
@@ -201,6 +201,22 @@ public boolean evaluate(Instance instance)
 			return instance.value(this.index) < this.threshold;
 	}
 
+	/**
+	 * Evaluate a sample stored in a primitive feature buffer
+	 * 
+	 * @param features feature buffer (one sample after another)
+	 * @param offset index of the first feature of the sample in the buffer
+	 * @param numAttributes number of features per sample (class excluded)
+	 * @return false if the sample is on the right of the splitting point, true if it's on the left 
+	 */
+	public boolean evaluate(final float[] features, final int offset, final int numAttributes) 
+	{
+		if(allSame)
+			return true;
+		else
+			return features[ offset + this.index ] < this.threshold;
+	}
+
 	@Override
 	public SplitFunction newInstance() 
 	{
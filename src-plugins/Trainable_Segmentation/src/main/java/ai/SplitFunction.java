@@ -3,8 +3,10 @@
 import java.io.Serializable;
 import java.util.ArrayList;
 
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 
 public abstract class SplitFunction implements Serializable
 {
@@ -17,5 +19,24 @@ public abstract class SplitFunction implements Serializable
 	boolean allSame;
 	public abstract void init(final Instances data, final ArrayList<Integer> indices);
 	public abstract boolean evaluate(final Instance instance);
+	/**
+	 * Evaluate a sample stored in a primitive feature buffer. By default
+	 * the sample is copied into an instance (with a missing class value
+	 * as last attribute) and passed to {@link #evaluate(Instance)}, 
+	 * subclasses should override it to read the buffer directly.
+	 * 
+	 * @param features feature buffer (one sample after another)
+	 * @param offset index of the first feature of the sample in the buffer
+	 * @param numAttributes number of features per sample (class excluded)
+	 * @return false if the sample is on the right of the splitting point, true if it's on the left
+	 */
+	public boolean evaluate(final float[] features, final int offset, final int numAttributes)
+	{
+		final double[] values = new double[ numAttributes + 1 ];
+		for(int i = 0; i < numAttributes; i++)
+			values[ i ] = features[ offset + i ];
+		values[ numAttributes ] = Utils.missingValue();
+		return evaluate( new DenseInstance( 1.0, values ) );
+	}
 	public abstract SplitFunction newInstance();
 }
@@ -23,10 +23,12 @@
 
 package hr.irb.fastRandomForest;
 
+import ai.BatchClassifier;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Capabilities;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -110,7 +112,8 @@
 public class FastRandomForest 
   extends AbstractClassifier 
   implements OptionHandler, Randomizable, WeightedInstancesHandler, 
-             AdditionalMeasureProducer, TechnicalInformationHandler {
+             AdditionalMeasureProducer, TechnicalInformationHandler,
+             BatchClassifier {
 
   /** for serialization */
   static final long serialVersionUID = 4216839470751428699L;
@@ -601,6 +604,35 @@ public double[] distributionForInstance(Instance instance) throws Exception {
     
   }
 
+  /**
+   * Calculates the class membership probabilities for a block of samples
+   * stored in a primitive feature buffer, without creating a weka Instance
+   * per sample.
+   *
+   * @param features feature values, one sample after another
+   * @param numAttributes number of features per sample (class excluded)
+   * @param numInstances number of samples in the buffer
+   * @param numClasses number of classes
+   * @param distributions output buffer, one distribution after another
+   * @throws Exception if computation fails
+   */
+  public void distributionForInstances(float[] features, int numAttributes,
+          int numInstances, int numClasses, double[] distributions)
+          throws Exception {
+
+    if (m_ZeroR != null) {  // default model? same answer for every sample
+      final Instance instance = new DenseInstance(numAttributes + 1);
+      final double[] dist = m_ZeroR.distributionForInstance(instance);
+      for (int i = 0; i < numInstances; i++)
+        System.arraycopy(dist, 0, distributions, i * numClasses, numClasses);
+      return;
+    }
+
+    m_bagger.distributionForInstances(features, numAttributes,
+            numInstances, numClasses, distributions);
+
+  }
+
   /**
    * Outputs a description of this classifier.
    *
@@ -267,6 +267,106 @@ public double[] distributionForInstance(Instance instance) throws Exception {
 
   }
 
+  /**
+   * Adds the class probability distribution of a sample stored in a
+   * primitive feature buffer to an accumulator, without creating a weka
+   * Instance. The values added are the same distributionForInstance()
+   * would return for that sample.
+   *
+   * @param features feature buffer (one sample after another)
+   * @param offset index of the first feature of the sample in the buffer
+   * @param sums accumulator of class probabilities
+   * @param sumsOffset index of the first class of the sample in sums
+   */
+  protected void addDistribution(float[] features, int offset,
+          double[] sums, int sumsOffset) {
+
+    FastRandomTree node = this;
+
+    while (node.m_Attribute > -1) {  // ===================== walk to a leaf
+
+      final float value = features[offset + node.m_Attribute];
+
+      if (Float.isNaN(value)) {  // ------------------------- missing value
+        // rare case: split the sample up as distributionForInstance() does
+        final double[] dist = node.distributionForFeatures(features, offset);
+        for (int j = 0; j < dist.length; j++) {
+          sums[sumsOffset + j] += dist[j];
+        }
+        return;
+
+      } else if (m_MotherForest.m_Info
+              .attribute(node.m_Attribute).isNominal()) { // ------ nominal
+        node = node.m_Successors[(int) value];
+
+      } else { // ------------------------------------------ numeric attributes
+        node = value < node.m_SplitPoint
+                ? node.m_Successors[0] : node.m_Successors[1];
+      }
+    }
+
+    // =============================================== node is a leaf
+    final double sum = Utils.sum(node.m_ClassProbs);
+    if (sum == 0)
+      return;
+    for (int j = 0; j < node.m_ClassProbs.length; j++) {
+      sums[sumsOffset + j] += node.m_ClassProbs[j] / sum;
+    }
+
+  }
+
+
+  /**
+   * Computes the class distribution of a sample stored in a primitive
+   * feature buffer. Same as distributionForInstance(), only used by
+   * addDistribution() when the sample has missing values.
+   *
+   * @param features feature buffer (one sample after another)
+   * @param offset index of the first feature of the sample in the buffer
+   * @return the class distribution of the sample
+   */
+  private double[] distributionForFeatures(float[] features, int offset) {
+
+    if (m_Attribute > -1) {  // ============================ node is not a leaf
+
+      final float value = features[offset + m_Attribute];
+
+      if (Float.isNaN(value)) {  // ------------------------- missing value
+
+        double[] returnedDist = new double[m_MotherForest.m_Info.numClasses()];
+        // split instance up
+        for (int i = 0; i < m_Successors.length; i++) {
+          double[] help = m_Successors[i].distributionForFeatures(features, offset);
+          if (help != null) {
+            for (int j = 0; j < help.length; j++) {
+              returnedDist[j] += m_Prop[i] * help[j];
+            }
+          }
+        }
+        return returnedDist;
+
+      } else if (m_MotherForest.m_Info
+              .attribute(m_Attribute).isNominal()) { // ------ nominal
+        return m_Successors[(int) value].distributionForFeatures(features, offset);
+
+      } else { // ------------------------------------------ numeric attributes
+        if (value < m_SplitPoint) {
+          return m_Successors[0].distributionForFeatures(features, offset);
+        } else {
+          return m_Successors[1].distributionForFeatures(features, offset);
+        }
+      }
+
+    } else { // =============================================== node is a leaf
+      double[] normalizedDistribution = (double[]) m_ClassProbs.clone();
+      if ( Utils.sum(normalizedDistribution) == 0)
+        return normalizedDistribution;
+      Utils.normalize(normalizedDistribution);
+      return normalizedDistribution;
+    }
+
+  }
+
 
   
   /**
@@ -524,6 +524,46 @@ public double[] distributionForInstance(Instance instance) throws Exception {
     
   }
 
+  /**
+   * Calculates the class membership probabilities for a block of samples
+   * stored in a primitive feature buffer. The trees are applied one after
+   * another to the whole block, so each tree stays in cache while it is
+   * used. The results are the same as calling distributionForInstance()
+   * on each sample.
+   *
+   * @param features feature values, one sample after another
+   * @param numAttributes number of features per sample (class excluded)
+   * @param numInstances number of samples in the buffer
+   * @param numClasses number of classes
+   * @param distributions output buffer, one distribution after another
+   */
+  public void distributionForInstances(float[] features, int numAttributes,
+          int numInstances, int numClasses, double[] distributions) {
+
+    final int length = numInstances * numClasses;
+    for (int i = 0; i < length; i++)
+      distributions[i] = 0;
+
+    for (int t = 0; t < m_NumIterations; t++) {
+      final FastRandomTree tree = (FastRandomTree) m_Classifiers[t];
+      for (int i = 0; i < numInstances; i++)
+        tree.addDistribution(features, i * numAttributes,
+                distributions, i * numClasses);
+    }
+
+    for (int i = 0; i < numInstances; i++) {
+      final int first = i * numClasses;
+      double sum = 0;
+      for (int j = 0; j < numClasses; j++)
+        sum += distributions[first + j];
+      if (Utils.eq(sum, 0))
+        continue;
+      for (int j = 0; j < numClasses; j++)
+        distributions[first + j] /= sum;
+    }
+
+  }
+
   /**
    * Returns description of the bagged classifier.
    *
@@ -208,6 +208,11 @@
 	/** executor service to produce concurrent threads */
 	ExecutorService exe = Executors.newFixedThreadPool( Prefs.getThreads() );
 	
+	/** Gaussian scale space of the original image, shared by the filters while the features are updated */
+	private GaussianScaleSpace scaleSpace = null;
+	/** flag to compute each scale of the scale space from the previous one instead of from the original image */
+	private boolean cascadeScaleSpace = false;
+	
 	/**
 	 * Construct object to store stack of image features
 	 * @param image original image
@@ -348,10 +353,16 @@ public void setMembranePatchSize(int patchSize)
 	 */
 	public void addGaussianBlur(float sigma)
 	{
-		ImageProcessor ip = originalImage.getProcessor().duplicate();
-		GaussianBlur gs = new GaussianBlur();
-		//gs.blur(ip, sigma);
-		gs.blurGaussian(ip, 0.4 * sigma, 0.4 * sigma,  0.0002);
+		ImageProcessor ip;
+		if( originalImage.getType() != ImagePlus.COLOR_RGB )
+			ip = getSmoothedChannels(originalImage, sigma)[0].getProcessor().duplicate();
+		else
+		{
+			ip = originalImage.getProcessor().duplicate();
+			GaussianBlur gs = new GaussianBlur();
+			//gs.blur(ip, sigma);
+			gs.blurGaussian(ip, 0.4 * sigma, 0.4 * sigma,  0.0002);
+		}
 		wholeStack.addSlice(availableFeatures[GAUSSIAN] + "_" + sigma, ip);
 	}
 	/**
@@ -370,10 +381,16 @@ public Callable<ImagePlus> getGaussianBlur(
 		return new Callable<ImagePlus>(){
 			public ImagePlus call(){
 		
-				ImageProcessor ip = originalImage.getProcessor().duplicate();
-				GaussianBlur gs = new GaussianBlur();
-				//gs.blur(ip, sigma);
-				gs.blurGaussian(ip, 0.4 * sigma, 0.4 * sigma,  0.0002);
+				ImageProcessor ip;
+				if( originalImage.getType() != ImagePlus.COLOR_RGB )
+					ip = getSmoothedChannels(originalImage, sigma)[0].getProcessor().duplicate();
+				else
+				{
+					ip = originalImage.getProcessor().duplicate();
+					GaussianBlur gs = new GaussianBlur();
+					//gs.blur(ip, sigma);
+					gs.blurGaussian(ip, 0.4 * sigma, 0.4 * sigma,  0.0002);
+				}
 				return new ImagePlus (availableFeatures[GAUSSIAN] + "_" + sigma, ip);
 			}
 		};
@@ -807,25 +824,20 @@ public void writeConfigurationToFile(String filename)
 	 */
 	public void addGradient(float sigma)
 	{
-		// Get channel(s) to process
-		ImagePlus[] channels = extractChannels(originalImage);
+		// Get channel(s) to process (already smoothed)
+		ImagePlus[] channels = getSmoothedChannels(originalImage, sigma);
 		
 		ImagePlus[] results = new ImagePlus[ channels.length ];
 		
 		for(int ch=0; ch < channels.length; ch++)
 		{
 
-			GaussianBlur gs = new GaussianBlur();
-			ImageProcessor ip_x = channels[ch].getProcessor().duplicate().convertToFloat();
-			//gs.blur(ip_x, sigma);
-			gs.blurGaussian(ip_x, 0.4 * sigma, 0.4 * sigma,  0.0002);
+			ImageProcessor ip_x = channels[ch].getProcessor().duplicate();
 			Convolver c = new Convolver();
 			float[] sobelFilter_x = {1f,2f,1f,0f,0f,0f,-1f,-2f,-1f};
 			c.convolveFloat(ip_x, sobelFilter_x, 3, 3);
 
-			ImageProcessor ip_y = channels[ch].getProcessor().duplicate().convertToFloat();
-			//gs.blur(ip_y, sigma);
-			gs.blurGaussian(ip_y, 0.4 * sigma, 0.4 * sigma,  0.0002);
+			ImageProcessor ip_y = channels[ch].getProcessor().duplicate();
 			c = new Convolver();
 			float[] sobelFilter_y = {1f,0f,-1f,2f,0f,-2f,1f,0f,-1f};
 			c.convolveFloat(ip_y, sobelFilter_y, 3, 3);
@@ -863,25 +875,20 @@ public Callable<ImagePlus> getGradient(
 		return new Callable<ImagePlus>(){
 			public ImagePlus call(){
 		
-				// Get channel(s) to process
-				ImagePlus[] channels = extractChannels(originalImage);
+				// Get channel(s) to process (already smoothed)
+				ImagePlus[] channels = getSmoothedChannels(originalImage, sigma);
 				
 				ImagePlus[] results = new ImagePlus[ channels.length ];
 				
 				for(int ch=0; ch < channels.length; ch++)
 				{
 
-					GaussianBlur gs = new GaussianBlur();
-					ImageProcessor ip_x = channels[ch].getProcessor().duplicate().convertToFloat();
-					//gs.blur(ip_x, sigma);
-					gs.blurGaussian(ip_x, 0.4 * sigma, 0.4 * sigma,  0.0002);
+					ImageProcessor ip_x = channels[ch].getProcessor().duplicate();
 					Convolver c = new Convolver();
 					float[] sobelFilter_x = {1f,2f,1f,0f,0f,0f,-1f,-2f,-1f};
 					c.convolveFloat(ip_x, sobelFilter_x, 3, 3);
 
-					ImageProcessor ip_y = channels[ch].getProcessor().duplicate().convertToFloat();
-					//gs.blur(ip_y, sigma);
-					gs.blurGaussian(ip_y, 0.4 * sigma, 0.4 * sigma,  0.0002);
+					ImageProcessor ip_y = channels[ch].getProcessor().duplicate();
 					c = new Convolver();
 					float[] sobelFilter_y = {1f,0f,-1f,2f,0f,-2f,1f,0f,-1f};
 					c.convolveFloat(ip_y, sobelFilter_y, 3, 3);
@@ -916,21 +923,18 @@ public void addHessian(float sigma)
 		float[] sobelFilter_x = {1f,2f,1f,0f,0f,0f,-1f,-2f,-1f};
 		float[] sobelFilter_y = {1f,0f,-1f,2f,0f,-2f,1f,0f,-1f};
 		Convolver c = new Convolver();				
-		GaussianBlur gs = new GaussianBlur();
 	
-		// Get channel(s) to process
-		ImagePlus[] channels = extractChannels(originalImage);
+		// Get channel(s) to process (already smoothed)
+		ImagePlus[] channels = getSmoothedChannels(originalImage, sigma);
 		
 		ImagePlus[] results = new ImagePlus[ channels.length ];
 		
 		for(int ch=0; ch < channels.length; ch++)
 		{		
-			ImageProcessor ip_x = channels[ch].getProcessor().duplicate().convertToFloat();
-			gs.blurGaussian(ip_x, 0.4 * sigma, 0.4 * sigma,  0.0002);		
+			ImageProcessor ip_x = channels[ch].getProcessor().duplicate();
 			c.convolveFloat(ip_x, sobelFilter_x, 3, 3);		
 
-			ImageProcessor ip_y = channels[ch].getProcessor().duplicate().convertToFloat();
-			gs.blurGaussian(ip_y, 0.4 * sigma, 0.4 * sigma,  0.0002);
+			ImageProcessor ip_y = channels[ch].getProcessor().duplicate();
 			c = new Convolver();
 			c.convolveFloat(ip_y, sobelFilter_y, 3, 3);
 
@@ -1049,22 +1053,19 @@ public ImagePlus call(){
 				float[] sobelFilter_x = {1f,2f,1f,0f,0f,0f,-1f,-2f,-1f};
 				float[] sobelFilter_y = {1f,0f,-1f,2f,0f,-2f,1f,0f,-1f};
 				Convolver c = new Convolver();				
-				GaussianBlur gs = new GaussianBlur();
 
-				// Get channel(s) to process
-				ImagePlus[] channels = extractChannels(originalImage);
+				// Get channel(s) to process (already smoothed)
+				ImagePlus[] channels = getSmoothedChannels(originalImage, sigma);
 
 				ImagePlus[] results = new ImagePlus[ channels.length ];
 
 				for(int ch=0; ch < channels.length; ch++)
 				{
 
-					ImageProcessor ip_x = channels[ch].getProcessor().duplicate().convertToFloat();
-					gs.blurGaussian(ip_x, 0.4 * sigma, 0.4 * sigma,  0.0002);		
+					ImageProcessor ip_x = channels[ch].getProcessor().duplicate();
 					c.convolveFloat(ip_x, sobelFilter_x, 3, 3);		
 
-					ImageProcessor ip_y = channels[ch].getProcessor().duplicate().convertToFloat();
-					gs.blurGaussian(ip_y, 0.4 * sigma, 0.4 * sigma,  0.0002);
+					ImageProcessor ip_y = channels[ch].getProcessor().duplicate();
 					c = new Convolver();
 					c.convolveFloat(ip_y, sobelFilter_y, 3, 3);
 
@@ -1163,21 +1164,16 @@ public ImagePlus call(){
 	 */
 	public void addDoG(float sigma1, float sigma2)
 	{
-		GaussianBlur gs = new GaussianBlur();
-		
-		// Get channel(s) to process
-		ImagePlus[] channels = extractChannels(originalImage);
+		// Get channel(s) to process (already smoothed, read only)
+		ImagePlus[] channels1 = getSmoothedChannels(originalImage, sigma1);
+		ImagePlus[] channels2 = getSmoothedChannels(originalImage, sigma2);
 
-		ImagePlus[] results = new ImagePlus[ channels.length ];
+		ImagePlus[] results = new ImagePlus[ channels1.length ];
 
-		for(int ch=0; ch < channels.length; ch++)
+		for(int ch=0; ch < channels1.length; ch++)
 		{
-			ImageProcessor ip_1 = channels[ch].getProcessor().duplicate();
-			//gs.blur(ip_1, sigma1);
-			gs.blurGaussian(ip_1, 0.4 * sigma1, 0.4 * sigma1,  0.0002);
-			ImageProcessor ip_2 = channels[ch].getProcessor().duplicate();			
-			//gs.blur(ip_2, sigma2);
-			gs.blurGaussian(ip_2, 0.4 * sigma2, 0.4 * sigma2,  0.0002);
+			ImageProcessor ip_1 = channels1[ch].getProcessor();
+			ImageProcessor ip_2 = channels2[ch].getProcessor();
 
 			ImageProcessor ip = new FloatProcessor(width, height);
 
@@ -1217,20 +1213,16 @@ public ImagePlus call(){
 				final int width = originalImage.getWidth();
 				final int height = originalImage.getHeight();
 				
-				GaussianBlur gs = new GaussianBlur();
-				// Get channel(s) to process
-				ImagePlus[] channels = extractChannels(originalImage);
+				// Get channel(s) to process (already smoothed, read only)
+				ImagePlus[] channels1 = getSmoothedChannels(originalImage, sigma1);
+				ImagePlus[] channels2 = getSmoothedChannels(originalImage, sigma2);
 
-				ImagePlus[] results = new ImagePlus[ channels.length ];
+				ImagePlus[] results = new ImagePlus[ channels1.length ];
 
-				for(int ch=0; ch < channels.length; ch++)
+				for(int ch=0; ch < channels1.length; ch++)
 				{
-					ImageProcessor ip_1 = channels[ch].getProcessor().duplicate();
-					//gs.blur(ip_1, sigma1);
-					gs.blurGaussian(ip_1, 0.4 * sigma1, 0.4 * sigma1,  0.0002);
-					ImageProcessor ip_2 = channels[ch].getProcessor().duplicate();
-					//gs.blur(ip_2, sigma2);
-					gs.blurGaussian(ip_2, 0.4 * sigma2, 0.4 * sigma2,  0.0002);
+					ImageProcessor ip_1 = channels1[ch].getProcessor();
+					ImageProcessor ip_2 = channels2[ch].getProcessor();
 
 					ImageProcessor ip = new FloatProcessor(width, height);
 
@@ -1437,6 +1429,90 @@ ImagePlus[] extractChannels(final ImagePlus originalImage)
 		return channels;
 	}
 	
+	/**
+	 * Get the channels of an image blurred with the Gaussian kernel used by
+	 * the features of scale sigma (0.4 * sigma). While the features are being
+	 * updated, the channels of the original image are taken from the shared
+	 * scale space, so they are computed only once for all the filters and
+	 * must not be modified (duplicate them first).
+	 * 
+	 * @param originalImage input image
+	 * @param sigma feature scale
+	 * @return array of blurred channels
+	 */
+	ImagePlus[] getSmoothedChannels(final ImagePlus originalImage, final float sigma)
+	{
+		final GaussianScaleSpace scaleSpace = this.scaleSpace;
+		if( null != scaleSpace && originalImage == this.originalImage )
+			return scaleSpace.get( 0.4 * sigma );
+
+		final ImagePlus[] channels = extractChannels( originalImage );
+		final GaussianBlur gs = new GaussianBlur();
+		for(int ch=0; ch < channels.length; ch++)
+			gs.blurGaussian(channels[ch].getProcessor(), 0.4 * sigma, 0.4 * sigma,  0.0002);
+		return channels;
+	}
+
+	/**
+	 * Create the Gaussian scale space of the original image
+	 * 
+	 * @return new (empty) scale space
+	 */
+	private GaussianScaleSpace createScaleSpace()
+	{
+		final GaussianScaleSpace scaleSpace = new GaussianScaleSpace(){
+			protected ImagePlus[] smooth(ImagePlus[] source, double sigma)
+			{
+				// extractChannels already returns copies of the original channels
+				final ImagePlus[] channels = null == source ? extractChannels( originalImage ) : source;
+				final ImagePlus[] smoothed = new ImagePlus[ channels.length ];
+				final GaussianBlur gs = new GaussianBlur();
+				for(int ch=0; ch < channels.length; ch++)
+				{
+					final ImageProcessor ip = null == source ? 
+							channels[ch].getProcessor() : channels[ch].getProcessor().duplicate();
+					gs.blurGaussian(ip, sigma, sigma,  0.0002);
+					smoothed[ch] = new ImagePlus(channels[ch].getTitle(), ip);
+				}
+				return smoothed;
+			}
+		};
+
+		if( cascadeScaleSpace )
+		{
+			final ArrayList<Double> ladder = new ArrayList<Double>();
+			for (float i=minimumSigma; i<= maximumSigma; i *=2)
+				ladder.add( 0.4 * i );
+			final double[] scales = new double[ ladder.size() ];
+			for(int i=0; i<scales.length; i++)
+				scales[i] = ladder.get(i);
+			scaleSpace.setCascade( scales );
+		}
+		return scaleSpace;
+	}
+
+	/**
+	 * Set the computation of the Gaussian scale space in cascade, i.e. 
+	 * each scale is obtained by blurring the previous one (faster but 
+	 * slightly different at the image borders)
+	 * 
+	 * @param cascadeScaleSpace cascade flag
+	 */
+	public void setCascadeScaleSpace(boolean cascadeScaleSpace)
+	{
+		this.cascadeScaleSpace = cascadeScaleSpace;
+	}
+
+	/**
+	 * Check if the Gaussian scale space is computed in cascade
+	 * 
+	 * @return true if each scale is computed from the previous one
+	 */
+	public boolean isCascadeScaleSpace()
+	{
+		return this.cascadeScaleSpace;
+	}
+
 	/**
 	 * Merge input channels if they are more than 1
 	 * @param channels results channels
@@ -2774,6 +2850,24 @@ public void addFeaturesMT(final ImagePlus filterList)
 	 * @return true if the features are correctly updated 
 	 */
 	public boolean updateFeaturesST()
+	{
+		// all Gaussian based filters share the same blurred images
+		scaleSpace = createScaleSpace();
+		try{
+			return computeFeaturesST();
+		}
+		finally{
+			scaleSpace.clear();
+			scaleSpace = null;
+		}
+	}
+
+	/**
+	 * Compute the features with current list (single-thread version)
+	 * 
+	 * @return true if the features are correctly computed
+	 */
+	private boolean computeFeaturesST()
 	{
 		wholeStack = new ImageStack(width, height);
 		if( originalImage.getType() == ImagePlus.COLOR_RGB)
@@ -3035,6 +3129,24 @@ public ImagePlus call(){
 	 * @return true if the features are correctly updated 
 	 */
 	public boolean updateFeaturesMT()
+	{
+		// all Gaussian based filters share the same blurred images
+		scaleSpace = createScaleSpace();
+		try{
+			return computeFeaturesMT();
+		}
+		finally{
+			scaleSpace.clear();
+			scaleSpace = null;
+		}
+	}
+
+	/**
+	 * Compute the features with current list (multi-thread version)
+	 * 
+	 * @return true if the features are correctly computed
+	 */
+	private boolean computeFeaturesMT()
 	{
 		if (Thread.currentThread().isInterrupted() )
 			return false;
@@ -3399,6 +3511,42 @@ public void setMaximumSigma(float maxSigma)
 		this.maximumSigma = maxSigma;		
 	}
 	
+	/**
+	 * Get the minimum sigma used in the filters
+	 * @return minimum sigma
+	 */
+	public float getMinimumSigma()
+	{
+		return minimumSigma;
+	}
+	
+	/**
+	 * Get the maximum sigma used in the filters
+	 * @return maximum sigma
+	 */
+	public float getMaximumSigma()
+	{
+		return maximumSigma;
+	}
+	
+	/**
+	 * Get the size of the patch used to enhance membranes
+	 * @return membrane patch size (in pixels, NxN)
+	 */
+	public int getMembranePatchSize()
+	{
+		return membranePatchSize;
+	}
+	
+	/**
+	 * Get the original image the features are calculated from
+	 * @return original image (null if the stack was created empty)
+	 */
+	public ImagePlus getOriginalImage()
+	{
+		return originalImage;
+	}
+	
 	/**
 	 * Create instance (feature vector) of a specific coordinate
 	 * 
@@ -3489,6 +3637,84 @@ public void createInstanceInPlace(
 		ins.setClassValue(classValue);		
 	}
 	
+	/**
+	 * Get the number of attributes of each feature vector (not counting
+	 * the class attribute)
+	 * 
+	 * @return number of features plus the neighbors (if used)
+	 */
+	public int getNumAttributes()
+	{
+		return getSize() + ( useNeighbors ? 8 : 0 );
+	}
+	
+	/**
+	 * Fill a primitive buffer with the feature vectors of a range of 
+	 * consecutive pixels (in raster order), one vector after another. 
+	 * Each feature slice is read in memory order, so no instance is 
+	 * created per pixel. The values are the same as the ones given by 
+	 * {@link #createInstance(int, int, int)}, without the class value.
+	 * 
+	 * @param first index of the first pixel (x + y * width)
+	 * @param numPixels number of pixels to fill
+	 * @param buffer output buffer (at least numPixels * getNumAttributes() long)
+	 */
+	public void fillFeatureBuffer(
+			final int first,
+			final int numPixels,
+			final float[] buffer)
+	{
+		final int numAttributes = getNumAttributes();
+		final int numFeatures = getSize();
+		final int width = getWidth();
+		
+		for (int z=1; z<=numFeatures; z++)
+		{
+			final ImageProcessor ip = getProcessor( z );
+			int n = z - 1;
+			if( colorFeatures == false || oldColorFormat == true )
+			{
+				if( ip instanceof FloatProcessor )
+				{
+					final float[] pixels = (float[]) ip.getPixels();
+					for (int i=0; i<numPixels; i++, n += numAttributes)
+						buffer[ n ] = pixels[ first + i ];
+				}
+				else
+					for (int i=0; i<numPixels; i++, n += numAttributes)
+						buffer[ n ] = ip.getf( first + i );
+			}
+			else
+			{
+				for (int i=0; i<numPixels; i++, n += numAttributes)
+				{
+					final int pos = first + i;
+					buffer[ n ] = ip.getPixelValue( pos % width, pos / width );
+				}
+			}
+		}
+		
+		// Test: add neighbors of original image
+		if( useNeighbors )
+		{
+			final ImageProcessor original = getProcessor( 1 );
+			for (int i=0; i<numPixels; i++)
+			{
+				final int pos = first + i;
+				final int x = pos % width;
+				final int y = pos / width;
+				int n = i * numAttributes + numFeatures;
+				for(int dx=-1;  dx < 2; dx++)
+					for(int dy = -1; dy < 2; dy++)
+					{
+						if(dx==0 && dy==0)
+							continue;				
+						buffer[ n++ ] = (float) getPixelMirrorConditions( original, x+dx, y+dy );
+					}
+			}
+		}
+	}
+	
 	/**
 	 * Get pixel value from an ImageProcessor with mirror boundary conditions
 	 * @param ip input image
@@ -47,9 +47,9 @@
 import ij.ImageStack;
 import ij.Prefs;
 import ij.plugin.Filters3D;
-import ij.plugin.ImageCalculator;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
 import imagescience.feature.Differentiator;
 import imagescience.feature.Edges;
 import imagescience.feature.Hessian;
@@ -127,6 +127,9 @@ public class FeatureStack3D
 	
 	private int minDerivativeOrder = 1;
 	private int maxDerivativeOrder = 5;
+	
+	/** Gaussian scale space of the (padded) original channels, shared by the filters while the features are updated */
+	private GaussianScaleSpace scaleSpace = null;
 		
 	/**
 	 * Construct object to store stack of image features
@@ -184,6 +187,30 @@ public Callable<ArrayList<ImagePlus>> getDerivatives(
 		{
 			public ArrayList<ImagePlus> call()
 			{
+				// Gaussian blur (0th order derivative): use the shared smoothed channels
+				if( xOrder + yOrder + zOrder == 0 )
+				{
+					final ImagePlus[] smoothed = getSmoothedChannels( originalImage, sigma );
+					
+					ArrayList<ImagePlus>[] results = new ArrayList[ smoothed.length ];
+					
+					for(int ch=0; ch < smoothed.length; ch++)
+					{
+						results[ ch ] = new ArrayList<ImagePlus>();
+						
+						final ImagePlus ip = smoothed[ ch ].duplicate();
+						ip.setTitle( availableFeatures[GAUSSIAN] +"_" + sigma );
+						
+						// remove pad
+						ip.getImageStack().deleteLastSlice();
+						ip.getImageStack().deleteSlice(1);
+						
+						results[ch].add( ip );
+					}
+					
+					return mergeResultChannels(results);
+				}
+				
 				// Get channel(s) to process
 				ImagePlus[] channels = extractChannels(originalImage);
 				
@@ -247,47 +274,32 @@ public Callable<ArrayList<ImagePlus>> getDoG(
 		{
 			public ArrayList<ImagePlus> call()
 			{
-				// Get channel(s) to process
-				ImagePlus[] channels = extractChannels(originalImage);
+				// Get smoothed channel(s) to process (read only)
+				final ImagePlus[] smoothed1 = getSmoothedChannels( originalImage, sigma1 );
+				final ImagePlus[] smoothed2 = getSmoothedChannels( originalImage, sigma2 );
 				
-				ArrayList<ImagePlus>[] results = new ArrayList[ channels.length ];
+				ArrayList<ImagePlus>[] results = new ArrayList[ smoothed1.length ];
 				
-				for(int ch=0; ch < channels.length; ch++)
+				for(int ch=0; ch < smoothed1.length; ch++)
 				{
 					results[ ch ] = new ArrayList<ImagePlus>();
 					
-					// pad image on the back and the front
-					final ImagePlus channel = channels [ ch ].duplicate();
-					channel.getImageStack().addSlice("pad-back", channels[ch].getImageStack().getProcessor( channels[ ch ].getImageStackSize()));
-					channel.getImageStack().addSlice("pad-front", channels[ch].getImageStack().getProcessor( 1 ), 1);
-					
-					imagescience.image.Image img = imagescience.image.Image.wrap( channel );
-					Aspects aspects = img.aspects();
-
-
-					imagescience.image.Image newimg = new FloatImage(img);
-					imagescience.image.Image newimg2 = new FloatImage(img);
-					
-					Differentiator diff = new Differentiator();
-
-					diff.run(newimg, sigma1 , 0, 0, 0);
-					diff.run(newimg2, sigma2 , 0, 0, 0);
-					
-					newimg.aspects(aspects);
-					newimg2.aspects(aspects);
-
-					final ImagePlus ip = newimg.imageplus();
-					final ImagePlus ip2 = newimg2.imageplus();
-					
-					ImageCalculator ic = new ImageCalculator();
-					final ImagePlus res = ic.run("Difference create stack", ip2, ip );
-					
+					// absolute difference, skipping the pad slices
+					final ImageStack stack1 = smoothed1[ ch ].getImageStack();
+					final ImageStack stack2 = smoothed2[ ch ].getImageStack();
+					final ImageStack is = new ImageStack( stack1.getWidth(), stack1.getHeight() );
+					for(int n=2; n<stack1.getSize(); n++)
+					{
+						final float[] pixels1 = (float[]) stack1.getPixels( n );
+						final float[] pixels2 = (float[]) stack2.getPixels( n );
+						final float[] pixels = new float[ pixels1.length ];
+						for(int i=0; i<pixels.length; i++)
+							pixels[ i ] = Math.abs( pixels2[ i ] - pixels1[ i ] );
+						is.addSlice( stack1.getSliceLabel( n ), new FloatProcessor( stack1.getWidth(), stack1.getHeight(), pixels, null ) );
+					}
 					
-					res.setTitle( availableFeatures[ DOG ] +"_" + sigma1 + "_" + sigma2 );
-										
-					// remove pad				
-					res.getImageStack().deleteLastSlice();
-					res.getImageStack().deleteSlice(1);				
+					final ImagePlus res = new ImagePlus( availableFeatures[ DOG ] +"_" + sigma1 + "_" + sigma2, is );
+					res.setCalibration( smoothed1[ ch ].getCalibration() );
 					
 					results[ch].add( res );		
 				}
@@ -795,6 +807,58 @@ ImageStack mergeStacks(ImageStack redChannel, ImageStack greenChannel, ImageStac
 		return colorStack;
 	}
 	
+	/**
+	 * Get the channels of an image, padded on the back and the front, after
+	 * Gaussian smoothing of scale sigma. While the features are being updated,
+	 * the channels of the original image are taken from the shared scale space,
+	 * so they are computed only once for all the filters and must not be modified.
+	 * 
+	 * @param originalImage input image
+	 * @param sigma isotropic smoothing scale
+	 * @return array of padded smoothed channels
+	 */
+	ImagePlus[] getSmoothedChannels(final ImagePlus originalImage, final double sigma)
+	{
+		final GaussianScaleSpace scaleSpace = this.scaleSpace;
+		if( null != scaleSpace && originalImage == this.originalImage )
+			return scaleSpace.get( sigma );
+		return smoothChannels( extractChannels( originalImage ), true, sigma );
+	}
+	
+	/**
+	 * Smooth channels with a Gaussian kernel
+	 * 
+	 * @param channels input channels
+	 * @param pad flag to pad the channels on the back and the front before smoothing
+	 * @param sigma isotropic smoothing scale
+	 * @return array of smoothed channels (as float images)
+	 */
+	static ImagePlus[] smoothChannels(final ImagePlus[] channels, final boolean pad, final double sigma)
+	{
+		final ImagePlus[] smoothed = new ImagePlus[ channels.length ];
+		for(int ch=0; ch < channels.length; ch++)
+		{
+			final ImagePlus channel = channels [ ch ].duplicate();
+			if( pad )
+			{
+				// pad image on the back and the front
+				channel.getImageStack().addSlice("pad-back", channels[ch].getImageStack().getProcessor( channels[ ch ].getImageStackSize()));
+				channel.getImageStack().addSlice("pad-front", channels[ch].getImageStack().getProcessor( 1 ), 1);
+			}
+			
+			imagescience.image.Image img = imagescience.image.Image.wrap( channel );
+			Aspects aspects = img.aspects();
+			
+			imagescience.image.Image newimg = new FloatImage(img);
+			Differentiator diff = new Differentiator();
+			diff.run(newimg, sigma , 0, 0, 0);
+			newimg.aspects(aspects);
+			
+			smoothed[ ch ] = newimg.imageplus();
+		}
+		return smoothed;
+	}
+	
 	/**
 	 * Extract channels from input image if it is RGB
 	 * @param originalImage input image
@@ -855,6 +919,31 @@ ImagePlus[] extractChannels(final ImagePlus originalImage)
 	 * @return true if the features are correctly updated 
 	 */
 	public boolean updateFeaturesMT()
+	{
+		// the Gaussian and DoG filters share the same smoothed images
+		scaleSpace = new GaussianScaleSpace(){
+			protected ImagePlus[] smooth(ImagePlus[] source, double sigma)
+			{
+				if( null == source )
+					return smoothChannels( extractChannels( originalImage ), true, sigma );
+				return smoothChannels( source, false, sigma );
+			}
+		};
+		try{
+			return computeFeaturesMT();
+		}
+		finally{
+			scaleSpace.clear();
+			scaleSpace = null;
+		}
+	}
+	
+	/**
+	 * Compute the features with current list (multi-thread version)
+	 * 
+	 * @return true if the features are correctly computed
+	 */
+	private boolean computeFeaturesMT()
 	{
 		if (Thread.currentThread().isInterrupted() )
 			return false;
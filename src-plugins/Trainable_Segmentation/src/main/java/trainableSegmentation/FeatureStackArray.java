@@ -54,6 +54,8 @@ public class FeatureStackArray
 	private float maximumSigma = 16;
 	/** use neighborhood flag */
 	private boolean useNeighbors = false;
+	/** flag to compute the Gaussian scale space in cascade */
+	private boolean cascadeScaleSpace = false;
 	/** expected membrane thickness (in pixels) */
 	private int membraneThickness = 1;	
 	/** size of the patch to use to enhance membranes (in pixels, NxN) */
@@ -64,6 +66,9 @@ public class FeatureStackArray
 	/** flag to specify the use of the old color format (using directly the RGB values as float) */
 	private boolean oldColorFormat = false;  
 	
+	/** on-disk cache of calculated features (null if not used) */
+	private FeatureStackCache cache = null;
+	
 	/**
 	 * Initialize a feature stack list of a specific size
 	 * 
@@ -178,10 +183,15 @@ public boolean updateFeaturesMT(boolean[] update)
 						featureStackArray[i].setMaximumSigma(maximumSigma);
 						featureStackArray[i].setMinimumSigma(minimumSigma);
 						featureStackArray[i].setUseNeighbors(useNeighbors);
-						if ( featureStackArray.length == 1 )
+					featureStackArray[i].setCascadeScaleSpace(cascadeScaleSpace);
+						featureStackArray[i].setCascadeScaleSpace(cascadeScaleSpace);
+						if ( null != cache && cache.load( featureStackArray[i] ) )
+							IJ.log("Features of slice number " + (i+1) + " loaded from cache.");
+						else if ( featureStackArray.length == 1 )
 						{
 							if(false == featureStackArray[i].updateFeaturesMT() )							
-								return false;							
+								return false;
+							storeInCache( featureStackArray[i] );
 						}
 						else
 							futures.add(exe.submit( updateFeatures( featureStackArray[i] ) ));
@@ -244,10 +254,14 @@ public boolean updateFeaturesMT()
 					featureStackArray[i].setMaximumSigma(maximumSigma);
 					featureStackArray[i].setMinimumSigma(minimumSigma);
 					featureStackArray[i].setUseNeighbors(useNeighbors);
-					if ( featureStackArray.length == 1 )
+					featureStackArray[i].setCascadeScaleSpace(cascadeScaleSpace);
+					if ( null != cache && cache.load( featureStackArray[i] ) )
+						IJ.log("Features of slice number " + (i+1) + " loaded from cache.");
+					else if ( featureStackArray.length == 1 )
 					{
 						if(false == featureStackArray[i].updateFeaturesMT() )						
-							return false;						
+							return false;
+						storeInCache( featureStackArray[i] );
 					}
 					else
 						futures.add(exe.submit( updateFeatures( featureStackArray[i] ) ));
@@ -308,11 +322,45 @@ public Callable<Boolean> updateFeatures(
 		
 		return new Callable<Boolean>(){
 			public Boolean call(){
-				return fs.updateFeaturesST();
+				if( false == fs.updateFeaturesST() )
+					return false;
+				storeInCache( fs );
+				return true;
 			}
 		};
 	}
 	
+	/**
+	 * Store the features of a feature stack in the cache (if used)
+	 * 
+	 * @param fs feature stack with the features already calculated
+	 */
+	private void storeInCache(final FeatureStack fs)
+	{
+		if( null != cache )
+			cache.store( fs );
+	}
+	
+	/**
+	 * Set the on-disk cache used to store and reuse the calculated features
+	 * 
+	 * @param cache feature stack cache (null to disable the cache)
+	 */
+	public void setFeatureStackCache(final FeatureStackCache cache)
+	{
+		this.cache = cache;
+	}
+	
+	/**
+	 * Get the on-disk cache used to store and reuse the calculated features
+	 * 
+	 * @return feature stack cache (null if not used)
+	 */
+	public FeatureStackCache getFeatureStackCache()
+	{
+		return cache;
+	}
+	
 	
 	/**
 	 * Reset the reference index (used when the are 
@@ -432,6 +480,28 @@ public void setUseNeighbors(boolean useNeighbors)
 			featureStackArray[referenceStackIndex].setUseNeighbors(useNeighbors);
 	}
 
+	/**
+	 * Set the computation of the Gaussian scale space in cascade
+	 * @param cascadeScaleSpace cascade flag
+	 */
+	public void setCascadeScaleSpace(boolean cascadeScaleSpace)
+	{
+		this.cascadeScaleSpace = cascadeScaleSpace;
+		if(referenceStackIndex != -1)
+			featureStackArray[referenceStackIndex].setCascadeScaleSpace(cascadeScaleSpace);
+	}
+
+	/**
+	 * Check if the Gaussian scale space is computed in cascade
+	 * @return true if each scale is computed from the previous one
+	 */
+	public boolean isCascadeScaleSpace()
+	{
+		if(referenceStackIndex != -1)
+			return featureStackArray[referenceStackIndex].isCascadeScaleSpace();
+		return cascadeScaleSpace;
+	}
+
 	public boolean useNeighborhood() {
 		if(referenceStackIndex != -1)
 			return featureStackArray[referenceStackIndex].useNeighborhood();
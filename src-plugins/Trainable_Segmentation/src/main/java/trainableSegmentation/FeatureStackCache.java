@@ -0,0 +1,415 @@
+package trainableSegmentation;
+
+/**
+ *
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Authors: Ignacio Arganda-Carreras (iarganda@mit.edu), Verena Kaynig (verena.kaynig@inf.ethz.ch),
+ *          Albert Cardona (acardona@ini.phys.ethz.ch)
+ */
+
+import ij.IJ;
+import ij.ImageStack;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Persistent on-disk cache of feature stacks. Each feature stack is stored
+ * in a file whose name is a hash of the original image pixels and the
+ * feature settings (enabled features, sigma range, membrane settings...),
+ * so the features of an image are reused across sessions and retrain
+ * cycles as long as neither the image nor the settings change.
+ * The least recently used files are removed when the cache exceeds its
+ * disk budget.
+ * 
+ * The files are read into arrays and closed right away rather than being
+ * memory-mapped: a mapping stays alive until its buffer is garbage
+ * collected, and Windows refuses to delete or rename a mapped file, which
+ * would break the eviction and the replacement of cache files.
+ * 
+ * @author Ignacio Arganda-Carreras (iarganda@mit.edu)
+ *
+ */
+public class FeatureStackCache 
+{
+	/** file extension of the cached feature stacks */
+	public static final String EXTENSION = ".features";
+	/** identifier of the cache file format */
+	private static final int MAGIC = 0x46535443;
+	/** version of the cache file format (change it if the features change) */
+	private static final int VERSION = 2;
+	/** slice type: float values */
+	private static final byte FLOAT_SLICE = 0;
+	/** slice type: RGB values */
+	private static final byte RGB_SLICE = 1;
+	/** file extension of the feature stacks being written */
+	private static final String TMP_EXTENSION = ".tmp";
+	
+	/** folder containing the cached feature stacks */
+	private final File directory;
+	/** maximum number of bytes used by the cache on disk */
+	private long maxBytes;
+	
+	/**
+	 * Create a feature stack cache
+	 * 
+	 * @param directory folder to store the feature files in (created if it does not exist)
+	 * @param maxBytes disk budget (in bytes)
+	 */
+	public FeatureStackCache(final File directory, final long maxBytes)
+	{
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		if( false == directory.exists() )
+			directory.mkdirs();
+	}
+	
+	/**
+	 * Get the folder containing the cached feature stacks
+	 * @return cache folder
+	 */
+	public File getDirectory()
+	{
+		return directory;
+	}
+	
+	/**
+	 * Set the disk budget of the cache
+	 * @param maxBytes maximum number of bytes used by the cache on disk
+	 */
+	public void setMaxBytes(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		evict( null );
+	}
+	
+	/**
+	 * Get the disk budget of the cache
+	 * @return maximum number of bytes used by the cache on disk
+	 */
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+	
+	/**
+	 * Calculate the cache key of a feature stack: a hash of the original
+	 * image pixels and all the settings the features depend on.
+	 * 
+	 * @param fs feature stack (with its settings already set)
+	 * @return hexadecimal key or null if the stack has no original image
+	 */
+	public static String getKey(final FeatureStack fs)
+	{
+		if( null == fs.getOriginalImage() )
+			return null;
+		
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance( "SHA-1" );
+		} catch (NoSuchAlgorithmException e) {
+			IJ.log("Error: feature stack cache key could not be created (" + e.getMessage() + ")");
+			return null;
+		}
+		
+		final ImageProcessor ip = fs.getOriginalImage().getProcessor();
+		final ByteBuffer buffer = ByteBuffer.allocate( 64 );
+		buffer.putInt( VERSION ).putInt( ip.getWidth() ).putInt( ip.getHeight() );
+		buffer.putFloat( fs.getMinimumSigma() ).putFloat( fs.getMaximumSigma() );
+		buffer.putInt( fs.getMembraneSize() ).putInt( fs.getMembranePatchSize() );
+		buffer.put( (byte) (fs.useNeighborhood() ? 1 : 0) );
+		buffer.put( (byte) (fs.isOldColorFormat() ? 1 : 0) );
+		buffer.put( (byte) (fs.isCascadeScaleSpace() ? 1 : 0) );
+		digest.update( buffer.array(), 0, buffer.position() );
+		
+		final boolean[] enabledFeatures = fs.getEnabledFeatures();
+		for(int i=0; i<enabledFeatures.length; i++)
+			digest.update( (byte) (enabledFeatures[ i ] ? 1 : 0) );
+		
+		// hash the pixels one row at a time
+		final int width = ip.getWidth();
+		final ByteBuffer row = ByteBuffer.allocate( width * 4 );
+		final boolean color = ip instanceof ColorProcessor;
+		digest.update( (byte) (color ? 1 : 0) );
+		for(int y=0, i=0; y<ip.getHeight(); y++)
+		{
+			row.clear();
+			for(int x=0; x<width; x++, i++)
+			{
+				if( color )
+					row.putInt( ip.get( i ) );
+				else
+					row.putFloat( ip.getf( i ) );
+			}
+			digest.update( row.array() );
+		}
+		
+		final StringBuilder key = new StringBuilder();
+		for(final byte b : digest.digest())
+			key.append( String.format( "%02x", b & 0xff ) );
+		return key.toString();
+	}
+	
+	/**
+	 * Fill a feature stack with its cached features (if any)
+	 * 
+	 * @param fs feature stack (with its settings already set)
+	 * @return true if the features were found in the cache and loaded
+	 */
+	public boolean load(final FeatureStack fs)
+	{
+		final String key = getKey( fs );
+		if( null == key )
+			return false;
+		final File file = new File( directory, key + EXTENSION );
+		if( false == file.exists() )
+			return false;
+		
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+			
+			if( in.readInt() != MAGIC || in.readInt() != VERSION )
+			{
+				IJ.log("Discarding feature cache file " + file.getName() + " (unknown format)");
+				in.close();
+				in = null;
+				file.delete();
+				return false;
+			}
+			final int width = in.readInt();
+			final int height = in.readInt();
+			final int numSlices = in.readInt();
+			final byte[] types = new byte[ numSlices ];
+			final String[] labels = new String[ numSlices ];
+			int headerSize = 20;
+			for(int i=0; i<numSlices; i++)
+			{
+				types[ i ] = in.readByte();
+				final byte[] label = new byte[ in.readShort() ];
+				in.readFully( label );
+				labels[ i ] = new String( label, "UTF-8" );
+				headerSize += 3 + label.length;
+			}
+			// the pixel data is aligned to 4 bytes
+			in.skipBytes( ((headerSize + 3) & ~3) - headerSize );
+			
+			final ImageStack stack = new ImageStack( width, height );
+			final ByteBuffer buffer = ByteBuffer.allocate( 4 * width * height );
+			for(int i=0; i<numSlices; i++)
+			{
+				in.readFully( buffer.array() );
+				if( types[ i ] == RGB_SLICE )
+				{
+					final int[] pixels = new int[ width * height ];
+					buffer.asIntBuffer().get( pixels );
+					stack.addSlice( labels[ i ], new ColorProcessor( width, height, pixels ) );
+				}
+				else
+				{
+					final float[] pixels = new float[ width * height ];
+					buffer.asFloatBuffer().get( pixels );
+					stack.addSlice( labels[ i ], new FloatProcessor( width, height, pixels, null ) );
+				}
+			}
+			fs.setStack( stack );
+		} catch (Exception e) {
+			IJ.log("Error while reading feature cache file " + file.getName() + " (" + e.getMessage() + ")");
+			return false;
+		} finally {
+			close( in );
+		}
+		
+		// mark as recently used
+		file.setLastModified( System.currentTimeMillis() );
+		return true;
+	}
+	
+	/**
+	 * Store the features of a feature stack in the cache. The least
+	 * recently used files are removed if the cache exceeds its budget.
+	 * 
+	 * @param fs feature stack with the features already calculated
+	 * @return true if the features were stored
+	 */
+	public boolean store(final FeatureStack fs)
+	{
+		final String key = getKey( fs );
+		if( null == key || fs.isEmpty() )
+			return false;
+		
+		final ImageStack stack = fs.getStack();
+		final int width = stack.getWidth();
+		final int height = stack.getHeight();
+		final int numSlices = stack.getSize();
+		final long dataSize = 4L * width * height * numSlices;
+		if( dataSize > maxBytes )
+		{
+			IJ.log("Feature stack not cached: it needs " + dataSize + " bytes and the cache budget is " + maxBytes + " bytes");
+			return false;
+		}
+		
+		final File file = new File( directory, key + EXTENSION );
+		// each writer gets its own temporary file (other threads or processes may store the same key)
+		File tmp = null;
+		DataOutputStream out = null;
+		try {
+			tmp = File.createTempFile( key + ".", TMP_EXTENSION, directory );
+			// header
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream header = new DataOutputStream( bytes );
+			header.writeInt( MAGIC );
+			header.writeInt( VERSION );
+			header.writeInt( width );
+			header.writeInt( height );
+			header.writeInt( numSlices );
+			for(int i=1; i<=numSlices; i++)
+			{
+				header.writeByte( stack.getProcessor( i ) instanceof ColorProcessor ? RGB_SLICE : FLOAT_SLICE );
+				final String label = stack.getSliceLabel( i );
+				final byte[] utf8 = (null == label ? "" : label).getBytes( "UTF-8" );
+				header.writeShort( utf8.length );
+				header.write( utf8 );
+			}
+			// align the pixel data to 4 bytes
+			while( header.size() % 4 != 0 )
+				header.writeByte( 0 );
+			header.close();
+			
+			out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) );
+			bytes.writeTo( out );
+			final ByteBuffer buffer = ByteBuffer.allocate( 4 * width * height );
+			for(int i=1; i<=numSlices; i++)
+			{
+				final ImageProcessor ip = stack.getProcessor( i );
+				buffer.clear();
+				if( ip instanceof ColorProcessor )
+					buffer.asIntBuffer().put( (int[]) ip.getPixels() );
+				else
+					buffer.asFloatBuffer().put( (float[]) ip.convertToFloat().getPixels() );
+				out.write( buffer.array() );
+			}
+			out.close();
+			out = null;
+		} catch (IOException e) {
+			IJ.log("Error while writing feature cache file " + file.getName() + " (" + e.getMessage() + ")");
+			close( out );
+			out = null;
+			if( null != tmp )
+				tmp.delete();
+			return false;
+		} finally {
+			close( out );
+		}
+		
+		// on Windows, renaming fails if the target exists (e.g. stored by another writer)
+		if( false == tmp.renameTo( file ) )
+		{
+			file.delete();
+			if( false == tmp.renameTo( file ) )
+			{
+				tmp.delete();
+				return false;
+			}
+		}
+		evict( file );
+		return true;
+	}
+	
+	/**
+	 * Remove the least recently used files until the cache fits in its budget
+	 * 
+	 * @param keep file not to remove (the one just stored), it can be null
+	 */
+	private synchronized void evict(final File keep)
+	{
+		final File[] files = directory.listFiles( new FileFilter() {
+			public boolean accept(File f) {
+				return f.getName().endsWith( EXTENSION );
+			}
+		});
+		if( null == files )
+			return;
+		
+		long total = 0;
+		for(final File f : files)
+			total += f.length();
+		if( total <= maxBytes )
+			return;
+		
+		// oldest first
+		Arrays.sort( files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				final long t1 = f1.lastModified();
+				final long t2 = f2.lastModified();
+				return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+			}
+		});
+		for(int i=0; i<files.length && total > maxBytes; i++)
+		{
+			if( files[ i ].equals( keep ) )
+				continue;
+			final long length = files[ i ].length();
+			if( files[ i ].delete() )
+				total -= length;
+		}
+	}
+	
+	/**
+	 * Remove all cached feature stacks (and the ones left half-written)
+	 */
+	public synchronized void clear()
+	{
+		final File[] files = directory.listFiles();
+		if( null == files )
+			return;
+		for(final File f : files)
+			if( f.getName().endsWith( EXTENSION ) || f.getName().endsWith( TMP_EXTENSION ) )
+				f.delete();
+	}
+	
+	/**
+	 * Close a file quietly
+	 * @param file file to close (it can be null)
+	 */
+	private static void close(final Closeable file)
+	{
+		if( null != file )
+			try {
+				file.close();
+			} catch (IOException e) {
+				// ignore
+			}
+	}
+}
@@ -0,0 +1,146 @@
+package trainableSegmentation;
+
+/**
+ *
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * Authors: Ignacio Arganda-Carreras (iarganda@mit.edu), Verena Kaynig (verena.kaynig@inf.ethz.ch),
+ *          Albert Cardona (acardona@ini.phys.ethz.ch)
+ */
+
+import ij.ImagePlus;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Gaussian scale space of an image. Each smoothing scale is computed only
+ * once, the first time any thread asks for it, and the smoothed channels
+ * are then shared by all the features derived from that scale (Gaussian
+ * blur, gradient, Hessian, difference of Gaussians...). The returned images
+ * are shared, so callers must duplicate them before modifying them.
+ * <p>
+ * Optionally, the scales of a given ladder can be computed in a cascade:
+ * each scale is obtained by smoothing the previous one with the missing
+ * amount of blur, which is cheaper than smoothing the original image
+ * (but not bit-identical to it).
+ * 
+ * @author Ignacio Arganda-Carreras (iarganda@mit.edu)
+ *
+ */
+public abstract class GaussianScaleSpace 
+{
+	/** smoothed channels indexed by scale (standard deviation of the Gaussian) */
+	private final ConcurrentHashMap<Double, FutureTask<ImagePlus[]>> scales = 
+			new ConcurrentHashMap<Double, FutureTask<ImagePlus[]>>();
+	
+	/** sorted scales computed in a cascade (null to smooth always the original image) */
+	private double[] cascade = null;
+	
+	/**
+	 * Smooth the channels of the image
+	 * 
+	 * @param source channels to smooth, or null to smooth the original image
+	 * @param sigma standard deviation of the Gaussian to apply
+	 * @return smoothed channels (new images)
+	 */
+	protected abstract ImagePlus[] smooth(ImagePlus[] source, double sigma);
+	
+	/**
+	 * Compute the scales of a ladder in a cascade (each one from the 
+	 * previous one). Scales out of the ladder are still computed from 
+	 * the original image.
+	 * 
+	 * @param ladder scales to compute in a cascade (null to disable it)
+	 */
+	public void setCascade(final double[] ladder)
+	{
+		if( null == ladder )
+			this.cascade = null;
+		else
+		{
+			this.cascade = ladder.clone();
+			Arrays.sort( this.cascade );
+		}
+	}
+	
+	/**
+	 * Get the image channels smoothed at a specific scale. They are 
+	 * computed only once and shared, so they must not be modified.
+	 * 
+	 * @param sigma standard deviation of the Gaussian
+	 * @return smoothed channels
+	 */
+	public ImagePlus[] get(final double sigma)
+	{
+		FutureTask<ImagePlus[]> task = scales.get( sigma );
+		if( null == task )
+		{
+			final FutureTask<ImagePlus[]> newTask = new FutureTask<ImagePlus[]>( new Callable<ImagePlus[]>(){
+				public ImagePlus[] call()
+				{
+					final double previous = getPreviousScale( sigma );
+					if( previous > 0 )
+						return smooth( get( previous ), Math.sqrt( sigma * sigma - previous * previous ) );
+					return smooth( null, sigma );
+				}
+			});
+			task = scales.putIfAbsent( sigma, newTask );
+			if( null == task )
+			{
+				task = newTask;
+				// the first thread asking for this scale computes it
+				newTask.run();
+			}
+		}
+		
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( "Scale space computation interrupted", e );
+		} catch (ExecutionException e) {
+			throw new RuntimeException( "Error computing scale " + sigma, e.getCause() );
+		}
+	}
+	
+	/**
+	 * Get the scale a given scale is computed from in the cascade
+	 * 
+	 * @param sigma scale to compute
+	 * @return previous scale in the cascade or 0 if it is computed from the original image
+	 */
+	private double getPreviousScale(final double sigma)
+	{
+		if( null == cascade )
+			return 0;
+		final int index = Arrays.binarySearch( cascade, sigma );
+		if( index < 1 || cascade[ index - 1 ] <= 0 )
+			return 0;
+		return cascade[ index - 1 ];
+	}
+	
+	/**
+	 * Release all the smoothed images
+	 */
+	public void clear()
+	{
+		scales.clear();
+	}
+}
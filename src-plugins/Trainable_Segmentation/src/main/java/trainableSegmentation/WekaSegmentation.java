@@ -40,6 +40,8 @@
 
 import javax.vecmath.Point3f;
 
+import ai.BatchClassifier;
+
 import hr.irb.fastRandomForest.FastRandomForest;
 
 import ij.IJ;
@@ -169,6 +171,8 @@ public class WekaSegmentation {
 	private float minimumSigma = 1f;
 	/** maximum sigma to use on the filters */
 	private float maximumSigma = 16f;
+	/** flag to compute each scale of the Gaussian scale space from the previous one */
+	private boolean cascadeScaleSpace = false;
 
 	/** flags of filters to be used */
 	private boolean[] enabledFeatures = new boolean[]{
@@ -208,6 +212,15 @@ public class WekaSegmentation {
 	/** executor service to launch threads for the library operations */
 	private ExecutorService exe = Executors.newFixedThreadPool(  Prefs.getThreads() );
 	
+	/** flag to classify whole batches of pixels at once when the classifier allows it */
+	private boolean batchClassification = true;
+	/** number of pixels classified at once in batch classification mode */
+	private static final int BATCH_SIZE = 4096;
+	/** size (in pixels) of the square tiles used in the tiled classification */
+	private int tileSize = 512;
+	/** on-disk cache of calculated features (null if not used) */
+	private FeatureStackCache featureStackCache = null;
+	
 	/**
 	 * Default constructor.
 	 *
@@ -240,6 +253,8 @@ public WekaSegmentation(ImagePlus trainingImage)
 		featureStackArray = new FeatureStackArray(trainingImage.getImageStackSize(),
 				minimumSigma, maximumSigma, useNeighbors, membraneThickness, membranePatchSize,
 				enabledFeatures);
+		featureStackArray.setFeatureStackCache( featureStackCache );
+		featureStackArray.setCascadeScaleSpace( cascadeScaleSpace );
 		
 		featureStackToUpdateTrain = new boolean[trainingImage.getImageStackSize()];
 		featureStackToUpdateTest = new boolean[trainingImage.getImageStackSize()];
@@ -303,6 +318,8 @@ public void setTrainingImage(ImagePlus imp)
 		featureStackArray = new FeatureStackArray(trainingImage.getImageStackSize(),
 				minimumSigma, maximumSigma, useNeighbors, membraneThickness, membranePatchSize,
 				enabledFeatures);
+		featureStackArray.setFeatureStackCache( featureStackCache );
+		featureStackArray.setCascadeScaleSpace( cascadeScaleSpace );
 		
 		featureStackToUpdateTrain = new boolean[trainingImage.getImageStackSize()];
 		featureStackToUpdateTest = new boolean[trainingImage.getImageStackSize()];
@@ -1919,6 +1936,8 @@ else if (null == data)
 		featureStackArray = new FeatureStackArray(trainingImage.getImageStackSize(),
 				minimumSigma, maximumSigma, useNeighbors, membraneThickness, membranePatchSize,
 				enabledFeatures);
+		featureStackArray.setFeatureStackCache( featureStackCache );
+		featureStackArray.setCascadeScaleSpace( cascadeScaleSpace );
 		
 		// Remove traces from the lists and ROI overlays and initialize each feature stack
 		IJ.log("Removing previous markings...");
@@ -2150,6 +2169,7 @@ public boolean addBinaryData(
 			featureStack.setMembraneSize(this.membraneThickness);
 			featureStack.setMaximumSigma(this.maximumSigma);
 			featureStack.setMinimumSigma(this.minimumSigma);
+			featureStack.setCascadeScaleSpace(this.cascadeScaleSpace);
 			featureStack.updateFeaturesMT();
 			filterFeatureStackByList(this.featureNames, featureStack);
 
@@ -2211,6 +2231,7 @@ public boolean addRandomBalancedBinaryData(
 			featureStack.setMembraneSize(this.membraneThickness);
 			featureStack.setMaximumSigma(this.maximumSigma);
 			featureStack.setMinimumSigma(this.minimumSigma);
+			featureStack.setCascadeScaleSpace(this.cascadeScaleSpace);
 			IJ.log("Creating feature stack for slice "+i+"...");
 			featureStack.updateFeaturesMT();
 			filterFeatureStackByList(this.featureNames, featureStack);
@@ -2276,6 +2297,7 @@ public boolean addRandomBalancedBinaryData(
 			featureStack.setMembraneSize(this.membraneThickness);
 			featureStack.setMaximumSigma(this.maximumSigma);
 			featureStack.setMinimumSigma(this.minimumSigma);
+			featureStack.setCascadeScaleSpace(this.cascadeScaleSpace);
 			IJ.log("Creating feature stack for slice "+i+"...");
 			featureStack.updateFeaturesMT();
 			filterFeatureStackByList(this.featureNames, featureStack);
@@ -2345,6 +2367,7 @@ public boolean addRandomBalancedBinaryData(
 			featureStack.setMembraneSize(this.membraneThickness);
 			featureStack.setMaximumSigma(this.maximumSigma);
 			featureStack.setMinimumSigma(this.minimumSigma);
+			featureStack.setCascadeScaleSpace(this.cascadeScaleSpace);
 			IJ.log("Creating feature stack for slice "+i+"...");
 			featureStack.updateFeaturesMT();
 			filterFeatureStackByList(this.featureNames, featureStack);
@@ -2409,6 +2432,7 @@ public boolean addRandomData(
 			featureStack.setMembraneSize(this.membraneThickness);
 			featureStack.setMaximumSigma(this.maximumSigma);
 			featureStack.setMinimumSigma(this.minimumSigma);
+			featureStack.setCascadeScaleSpace(this.cascadeScaleSpace);
 			IJ.log("Creating feature stack for slice "+i+"...");
 			featureStack.updateFeaturesMT();
 			filterFeatureStackByList(this.featureNames, featureStack);
@@ -2805,6 +2829,7 @@ public double getTestError(
 			testImageFeatures.setEnabledFeatures(featureStackArray.getEnabledFeatures());
 			testImageFeatures.setMaximumSigma(maximumSigma);
 			testImageFeatures.setMinimumSigma(minimumSigma);
+			testImageFeatures.setCascadeScaleSpace(cascadeScaleSpace);
 			testImageFeatures.setMembranePatchSize(membranePatchSize);
 			testImageFeatures.setMembraneSize(membraneThickness);
 			testImageFeatures.updateFeaturesMT();
@@ -4042,8 +4067,10 @@ public void run()
                     sliceFeatures.setEnabledFeatures(featureStackArray.getEnabledFeatures());
                     sliceFeatures.setMaximumSigma(maximumSigma);
                     sliceFeatures.setMinimumSigma(minimumSigma);
+                    sliceFeatures.setCascadeScaleSpace(cascadeScaleSpace);
                     sliceFeatures.setMembranePatchSize(membranePatchSize);
                     sliceFeatures.setMembraneSize(membraneThickness);
+                    sliceFeatures.setUseNeighbors(featureStackArray.useNeighborhood());
                     sliceFeatures.updateFeaturesST();
                     filterFeatureStackByList(featureNames, sliceFeatures);
  
@@ -4402,6 +4429,401 @@ public void run() {
 	}
 	
 
+	/**
+	 * Apply current classifier to a given image tile by tile. The features
+	 * of each tile are computed on the tile plus a halo sized to the largest
+	 * filter (see {@link #getTileHalo()}), the tile is classified and its
+	 * features are released before the next one is processed. This way the
+	 * memory needed to store the features scales with the tile size (and the
+	 * number of threads) instead of with the image size. The result is the
+	 * same as the one of {@link #applyClassifier(ImagePlus, int, boolean)}.
+	 * If some of the enabled features depend on the whole image (see
+	 * {@link #getTileHalo()}), the image is classified in memory instead.
+	 *
+	 * @param imp image (2D single image or stack)
+	 * @param numThreads The number of threads to use. Set to zero for
+	 * auto-detection.
+	 * @param probabilityMaps create probability maps for each class instead of
+	 * a classification
+	 * @return result image (probability maps or class indices)
+	 */
+	public ImagePlus applyClassifierTiled(
+			final ImagePlus imp,
+			int numThreads,
+			final boolean probabilityMaps)
+	{
+		if (numThreads == 0)
+			numThreads = Prefs.getThreads();
+
+		// Set proper class names (skip empty list ones)
+		ArrayList<String> classNames = new ArrayList<String>();
+		if( null == loadedClassNames )
+		{
+			for(int i = 0; i < numOfClasses; i++)
+				for(int j=0; j<trainingImage.getImageStackSize(); j++)
+					if(examples[j].get(i).size() > 0)
+					{
+						classNames.add(getClassLabels()[i]);
+						break;
+					}
+		}
+		else
+			classNames = loadedClassNames;
+
+		// Create instances information (each instance needs a pointer to this)
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i=1; i<=featureStackArray.getNumOfFeatures(); i++)
+			attributes.add(new Attribute(featureStackArray.getLabel(i)));
+
+		if(featureStackArray.useNeighborhood())
+			for (int i=0; i<8; i++)
+				attributes.add(new Attribute(new String("original_neighbor_" + (i+1))));
+
+		attributes.add(new Attribute("class", classNames));
+		final Instances dataInfo = new Instances("segment", attributes, 1);
+		dataInfo.setClassIndex(dataInfo.numAttributes()-1);
+
+		final int width = imp.getWidth();
+		final int height = imp.getHeight();
+		final int numSlices = imp.getImageStackSize();
+		final int numClasses = dataInfo.numClasses();
+		final int numChannels = (probabilityMaps ? numClasses : 1);
+		final int halo = getTileHalo();
+		if( halo < 0 )
+		{
+			IJ.log("The selected features can not be computed tile by tile, classifying the whole image...");
+			return applyClassifier(imp, numThreads, probabilityMaps);
+		}
+		final int tilesX = (width + tileSize - 1) / tileSize;
+		final int tilesY = (height + tileSize - 1) / tileSize;
+		final int numTiles = tilesX * tilesY * numSlices;
+
+		IJ.log("Classifying " + imp.getTitle() + " in " + numTiles + " tile(s) of " + tileSize + "x" + tileSize
+				+ " pixels (halo = " + halo + ") using " + numThreads + " thread(s)...");
+
+		final long start = System.currentTimeMillis();
+
+		// create result image (the tiles write directly in it)
+		final ImageStack classified = new ImageStack(width, height);
+		for(int i=0; i < numSlices; i++)
+			for (int c = 0; c < numChannels; c++)
+			{
+				if( probabilityMaps )
+					classified.addSlice(getClassLabels()[c], new FloatProcessor(width, height));
+				else
+					classified.addSlice("", new ByteProcessor(width, height));
+			}
+
+		// tiles are taken from a shared counter by each thread
+		final AtomicInteger nextTile = new AtomicInteger();
+		final AtomicInteger counter = new AtomicInteger();
+		final int numInstances = width * height * numSlices;
+
+		if(exe.isShutdown())
+			exe = Executors.newFixedThreadPool(numThreads);
+
+		final ArrayList< Future<Boolean> > futures = new ArrayList< Future<Boolean> >();
+		for(int i = 0; i < numThreads; i++)
+		{
+			AbstractClassifier classifierCopy = null;
+			try {
+				// The Weka random forest classifiers do not need to be duplicated on each thread 
+				// (that saves much memory)
+				if( classifier instanceof FastRandomForest || classifier instanceof RandomForest )
+					classifierCopy = classifier;
+				else
+					classifierCopy = (AbstractClassifier) (AbstractClassifier.makeCopy( classifier ));
+			} catch (Exception e) {
+				IJ.log("Error: classifier could not be copied to classify in a multi-thread way.");
+				e.printStackTrace();
+				return null;
+			}
+
+			final AbstractClassifier threadClassifier = classifierCopy;
+			futures.add( exe.submit( new Callable<Boolean>(){
+				public Boolean call()
+				{
+					int tile;
+					while( (tile = nextTile.getAndIncrement()) < numTiles )
+					{
+						if (Thread.currentThread().isInterrupted()) 
+							return false;
+
+						final int slice = tile / (tilesX * tilesY);
+						final int tileInSlice = tile - slice * tilesX * tilesY;
+						final int x0 = (tileInSlice % tilesX) * tileSize;
+						final int y0 = (tileInSlice / tilesX) * tileSize;
+						final int tileWidth = Math.min(tileSize, width - x0);
+						final int tileHeight = Math.min(tileSize, height - y0);
+
+						if( false == classifyTile( imp.getImageStack().getProcessor(slice+1), 
+								x0, y0, tileWidth, tileHeight, halo, dataInfo, threadClassifier, 
+								counter, probabilityMaps, classified, slice * numChannels ) )
+							return false;
+					}
+					return true;
+				}
+			}));
+		}
+
+		ScheduledExecutorService monitor = Executors.newScheduledThreadPool(1);
+		ScheduledFuture task = monitor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				IJ.showProgress(counter.get(), numInstances);
+			}
+		}, 0, 1, TimeUnit.SECONDS);
+
+		// Join threads
+		try {
+			for(Future<Boolean> f : futures)
+				if( false == f.get() )
+				{
+					IJ.log("Classifier execution was interrupted.");
+					return null;
+				}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			task.cancel(true);
+			monitor.shutdownNow();
+			IJ.showProgress(1);
+		}
+
+		ImagePlus result = new ImagePlus(probabilityMaps ? "Probability maps" : "Classification result", classified);
+
+		if (probabilityMaps)
+		{
+			result.setDimensions(numClasses, imp.getNSlices(), imp.getNFrames());
+			if (imp.getNSlices()*imp.getNFrames() > 1)
+				result.setOpenAsHyperStack(true);
+		}
+
+		final long end = System.currentTimeMillis();
+		IJ.log("Tiled classification took " + (end-start) + " ms.");
+		return result;
+	}
+
+	/**
+	 * Compute the features of one tile (plus halo) and classify its pixels.
+	 * The features are released when the method returns.
+	 *
+	 * @param ip slice containing the tile
+	 * @param x0 x- coordinate of the tile
+	 * @param y0 y- coordinate of the tile
+	 * @param tileWidth width of the tile
+	 * @param tileHeight height of the tile
+	 * @param halo number of extra pixels to use around the tile (cropped to the slice)
+	 * @param dataInfo empty set of instances containing the data structure (attributes and classes)
+	 * @param classifier classifier to use
+	 * @param counter counter used to display the progress in the tool bar
+	 * @param probabilityMaps flag to calculate probabilities or class indices
+	 * @param result stack to write the results in
+	 * @param firstResultSlice index (starting at 0) of the first result slice of the tile's slice
+	 * @return false if error or interruption
+	 */
+	private boolean classifyTile(
+			final ImageProcessor ip,
+			final int x0,
+			final int y0,
+			final int tileWidth,
+			final int tileHeight,
+			final int halo,
+			final Instances dataInfo,
+			final AbstractClassifier classifier,
+			final AtomicInteger counter,
+			final boolean probabilityMaps,
+			final ImageStack result,
+			final int firstResultSlice)
+	{
+		// crop tile plus halo (only inside the slice)
+		final int paddedX = Math.max(0, x0 - halo);
+		final int paddedY = Math.max(0, y0 - halo);
+		final int paddedWidth = Math.min(ip.getWidth(), x0 + tileWidth + halo) - paddedX;
+		final int paddedHeight = Math.min(ip.getHeight(), y0 + tileHeight + halo) - paddedY;
+		// the slice is shared by all threads, so its ROI must not change while cropping
+		final ImageProcessor tile;
+		synchronized( ip )
+		{
+			ip.setRoi(new Rectangle(paddedX, paddedY, paddedWidth, paddedHeight));
+			tile = ip.crop();
+			ip.resetRoi();
+		}
+		final ImagePlus tileImage = new ImagePlus("tile-" + x0 + "-" + y0, tile);
+
+		final FeatureStack tileFeatures = new FeatureStack(tileImage);
+		// Use the same features as the current classifier
+		tileFeatures.setEnabledFeatures(featureStackArray.getEnabledFeatures());
+		tileFeatures.setMaximumSigma(maximumSigma);
+		tileFeatures.setMinimumSigma(minimumSigma);
+		tileFeatures.setCascadeScaleSpace(cascadeScaleSpace);
+		tileFeatures.setMembranePatchSize(membranePatchSize);
+		tileFeatures.setMembraneSize(membraneThickness);
+		tileFeatures.setUseNeighbors(featureStackArray.useNeighborhood());
+		if(false == tileFeatures.updateFeaturesST())
+			return false;
+		filterFeatureStackByList(featureNames, tileFeatures);
+
+		final int numClasses = dataInfo.numClasses();
+		final int numChannels = probabilityMaps ? numClasses : 1;
+		final double[][] rowResult = new double[ numChannels ][ tileWidth ];
+		final DenseInstance ins = new DenseInstance(dataInfo.numAttributes());
+		ins.setDataset(dataInfo);
+
+		try{
+			for(int y = 0; y < tileHeight; y++)
+			{
+				// first pixel of the row inside the padded tile
+				final int first = (y + y0 - paddedY) * paddedWidth + (x0 - paddedX);
+
+				if( batchClassification && classifier instanceof BatchClassifier )
+				{
+					if( false == classifyPixels( tileFeatures, first, tileWidth, (BatchClassifier) classifier, 
+							numClasses, counter, probabilityMaps, false, rowResult, 0 ) )
+						return false;
+				}
+				else
+				{
+					if (Thread.currentThread().isInterrupted()) 
+						return false;
+					for(int x = 0; x < tileWidth; x++)
+					{
+						tileFeatures.createInstanceInPlace( (first + x) % paddedWidth, (first + x) / paddedWidth, 0, ins );
+						final double[] prob = classifier.distributionForInstance( ins );
+						if( probabilityMaps )
+							for(int k = 0 ; k < numClasses; k++)
+								rowResult[ k ][ x ] = prob[ k ];
+						else
+							rowResult[ 0 ][ x ] = Utils.maxIndex( prob );
+					}
+					counter.addAndGet( tileWidth );
+				}
+
+				// copy row into the result image
+				for(int c = 0; c < numChannels; c++)
+				{
+					final ImageProcessor target = result.getProcessor( firstResultSlice + c + 1 );
+					final int offset = (y0 + y) * target.getWidth() + x0;
+					for(int x = 0; x < tileWidth; x++)
+						target.setf( offset + x, (float) rowResult[ c ][ x ] );
+				}
+			}
+		}catch(Exception e){
+			IJ.log("Error while classifying tile at " + x0 + ", " + y0 + " (" + e.getMessage() + ")");
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the number of pixels added around each tile in the tiled 
+	 * classification, so that the features of the tile pixels are exactly
+	 * the same as the ones computed on the whole image. It is the largest
+	 * support of the enabled filters: the Gaussian kernels of the scale 
+	 * space (added up, as they may be computed in cascade) plus the 3x3
+	 * Sobel and Hessian stencils, the rank and entropy filter radius, the
+	 * neighbor distance and half of the membrane patch.
+	 * 
+	 * Some features depend on the whole image and can not be computed tile
+	 * by tile: the Gabor filters (normalized with the statistics of the 
+	 * whole image), the mean and variance (accumulated along the whole 
+	 * rows), the Kuwahara filter (summed-area tables of the whole image), 
+	 * the anisotropic diffusion, bilateral and Lipschitz filters, and the 
+	 * derivatives, Laplacian and structure tensor (computed with kernels 
+	 * whose extent is not known). The same happens with the Gaussian 
+	 * filters above sigma = 21, as the blur is then computed on a 
+	 * downscaled grid aligned with the image origin.
+	 * 
+	 * @return halo size (in pixels), or -1 if the enabled features can not
+	 * be computed tile by tile
+	 */
+	public int getTileHalo()
+	{
+		final boolean[] enabled = featureStackArray.getEnabledFeatures();
+		final int[] nonLocal = { FeatureStack.VARIANCE, FeatureStack.MEAN, FeatureStack.ANISOTROPIC_DIFFUSION,
+				FeatureStack.BILATERAL, FeatureStack.LIPSCHITZ, FeatureStack.KUWAHARA, FeatureStack.GABOR,
+				FeatureStack.DERIVATIVES, FeatureStack.LAPLACIAN, FeatureStack.STRUCTURE };
+		for(final int feature : nonLocal)
+			if( enabled[ feature ] )
+				return -1;
+
+		int halo = 0;
+		final boolean stencil = enabled[ FeatureStack.SOBEL ] || enabled[ FeatureStack.HESSIAN ];
+		if( enabled[ FeatureStack.GAUSSIAN ] || enabled[ FeatureStack.DOG ] || stencil )
+		{
+			// radius of the ImageJ Gaussian kernels (see GaussianBlur.makeGaussianKernel)
+			int gaussian = 0;
+			for (float i=minimumSigma; i<= maximumSigma; i *=2)
+			{
+				final double sigma = 0.4 * i;
+				if( sigma > 8.5 )
+					return -1;
+				gaussian += (int) Math.ceil( sigma * Math.sqrt( -2 * Math.log( 0.0002 ) ) ) + 1;
+			}
+			halo = Math.max( halo, gaussian + ( stencil ? 2 : 0 ) );
+		}
+		if( enabled[ FeatureStack.MINIMUM ] || enabled[ FeatureStack.MAXIMUM ] || enabled[ FeatureStack.MEDIAN ] 
+				|| enabled[ FeatureStack.ENTROPY ] || enabled[ FeatureStack.NEIGHBORS ] )
+			halo = Math.max( halo, (int) Math.ceil( maximumSigma ) + 1 );
+		if( enabled[ FeatureStack.MEMBRANE ] )
+			halo = Math.max( halo, membranePatchSize / 2 + 1 );
+		if( featureStackArray.useNeighborhood() )
+			halo = Math.max( halo, 1 );
+		return halo;
+	}
+
+	/**
+	 * Set the on-disk cache used to store and reuse the features of the
+	 * training slices across sessions and retrain cycles
+	 * 
+	 * @param cache feature stack cache (null to disable it)
+	 */
+	public void setFeatureStackCache(FeatureStackCache cache)
+	{
+		this.featureStackCache = cache;
+		if( null != featureStackArray )
+			featureStackArray.setFeatureStackCache( cache );
+	}
+
+	/**
+	 * Use an on-disk feature cache in a specific folder
+	 * 
+	 * @param directory folder to store the cached features in
+	 * @param maxBytes disk budget of the cache (in bytes)
+	 */
+	public void setFeatureStackCache(String directory, long maxBytes)
+	{
+		setFeatureStackCache( new FeatureStackCache( new File( directory ), maxBytes ) );
+	}
+
+	/**
+	 * Get the on-disk cache used to store and reuse the features
+	 * @return feature stack cache (null if not used)
+	 */
+	public FeatureStackCache getFeatureStackCache()
+	{
+		return featureStackCache;
+	}
+
+	/**
+	 * Set the size of the square tiles used in the tiled classification
+	 * @param tileSize tile size (in pixels)
+	 */
+	public void setTileSize(int tileSize)
+	{
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Get the size of the square tiles used in the tiled classification
+	 * @return tile size (in pixels)
+	 */
+	public int getTileSize()
+	{
+		return tileSize;
+	}
+
 	/**
 	 * Classify a slice in a concurrent way
 	 * @param slice image to classify
@@ -4432,6 +4854,7 @@ public ImagePlus call()
 				sliceFeatures.setEnabledFeatures(featureStackArray.getEnabledFeatures());
 				sliceFeatures.setMaximumSigma(maximumSigma);
 				sliceFeatures.setMinimumSigma(minimumSigma);
+				sliceFeatures.setCascadeScaleSpace(cascadeScaleSpace);
 				sliceFeatures.setMembranePatchSize(membranePatchSize);
 				sliceFeatures.setMembraneSize(membraneThickness);
 				if(false == sliceFeatures.updateFeaturesST())
@@ -4458,41 +4881,57 @@ public ImagePlus call()
 										
 				IJ.log("Classifying slice " + slice.getTitle() + "...");
 				
-				for (int x=0; x<width; x++)
+				if( batchClassification && classifier instanceof BatchClassifier )
+				{
+					try{
+						if( false == classifyPixels( sliceFeatures, 0, numInstances, (BatchClassifier) classifier, 
+								numClasses, counter, probabilityMaps, true, probArray, 0 ) )
+							return null;
+					}catch(Exception e){
+
+						IJ.showMessage("Could not apply Classifier!");
+						e.printStackTrace();
+						return null;
+					}
+				}
+				else
+				{
 					for(int y=0; y<height; y++)
-					{
-						try{
+						for (int x=0; x<width; x++)
+						{
+							try{
 
-							if (0 == (x+y*width) % 4000)
-							{
-								if (Thread.currentThread().isInterrupted()) 
-									return null;
-								counter.addAndGet(4000);
-							}
+								if (0 == (x+y*width) % 4000)
+								{
+									if (Thread.currentThread().isInterrupted()) 
+										return null;
+									counter.addAndGet(4000);
+								}
 							
-							final DenseInstance ins = sliceFeatures.createInstance(x, y, 0);
-							ins.setDataset(dataInfo);
+								final DenseInstance ins = sliceFeatures.createInstance(x, y, 0);
+								ins.setDataset(dataInfo);
 
-							if (probabilityMaps)
-							{							
-								double[] prob = classifier.distributionForInstance( ins );
-								for(int k = 0 ; k < numClasses; k++)
+								if (probabilityMaps)
+								{							
+									double[] prob = classifier.distributionForInstance( ins );
+									for(int k = 0 ; k < numClasses; k++)
+									{
+										probArray[k][x+y*width] = prob[ k ];
+									}
+								}
+								else
 								{
-									probArray[k][x+y*width] = prob[ k ];
+									probArray[0][ x+y*width ] = classifier.classifyInstance( ins );
 								}
-							}
-							else
-							{
-								probArray[0][ x+y*width ] = classifier.classifyInstance( ins );
-							}
 
-						}catch(Exception e){
+							}catch(Exception e){
 
-							IJ.showMessage("Could not apply Classifier!");
-							e.printStackTrace();
-							return null;
-						}
-					}		
+								IJ.showMessage("Could not apply Classifier!");
+								e.printStackTrace();
+								return null;
+							}
+						}		
+				}
 				
 				if( probabilityMaps )
 				{
@@ -4541,6 +4980,7 @@ public ArrayList < ImagePlus > call()
 					sliceFeatures.setEnabledFeatures(featureStackArray.getEnabledFeatures());
 					sliceFeatures.setMaximumSigma(maximumSigma);
 					sliceFeatures.setMinimumSigma(minimumSigma);
+					sliceFeatures.setCascadeScaleSpace(cascadeScaleSpace);
 					sliceFeatures.setMembranePatchSize(membranePatchSize);
 					sliceFeatures.setMembraneSize(membraneThickness);
 					if(false == sliceFeatures.updateFeaturesST())
@@ -4567,41 +5007,57 @@ public ArrayList < ImagePlus > call()
 
 					IJ.log("Classifying slice " + image.getTitle() + "...");
 
-					for (int x=0; x<width; x++)
+					if( batchClassification && classifier instanceof BatchClassifier )
+					{
+						try{
+							if( false == classifyPixels( sliceFeatures, 0, numInstances, (BatchClassifier) classifier, 
+									numClasses, counter, probabilityMaps, true, probArray, 0 ) )
+								return null;
+						}catch(Exception e){
+
+							IJ.showMessage("Could not apply Classifier!");
+							e.printStackTrace();
+							return null;
+						}
+					}
+					else
+					{
 						for(int y=0; y<height; y++)
-						{
-							try{
+							for (int x=0; x<width; x++)
+							{
+								try{
 
-								if (0 == (x+y*width) % 4000)
-								{
-									if (Thread.currentThread().isInterrupted()) 
-										return null;
-									counter.addAndGet(4000);
-								}
+									if (0 == (x+y*width) % 4000)
+									{
+										if (Thread.currentThread().isInterrupted()) 
+											return null;
+										counter.addAndGet(4000);
+									}
 
-								final DenseInstance ins = sliceFeatures.createInstance(x, y, 0);
-								ins.setDataset(dataInfo);
+									final DenseInstance ins = sliceFeatures.createInstance(x, y, 0);
+									ins.setDataset(dataInfo);
 
-								if (probabilityMaps)
-								{							
-									double[] prob = classifier.distributionForInstance( ins );
-									for(int k = 0 ; k < numClasses; k++)
+									if (probabilityMaps)
+									{							
+										double[] prob = classifier.distributionForInstance( ins );
+										for(int k = 0 ; k < numClasses; k++)
+										{
+											probArray[k][x+y*width] = prob[ k ];
+										}
+									}
+									else
 									{
-										probArray[k][x+y*width] = prob[ k ];
+										probArray[0][ x+y*width ] = classifier.classifyInstance( ins );
 									}
-								}
-								else
-								{
-									probArray[0][ x+y*width ] = classifier.classifyInstance( ins );
-								}
 
-							}catch(Exception e){
+								}catch(Exception e){
 
-								IJ.showMessage("Could not apply Classifier!");
-								e.printStackTrace();
-								return null;
-							}
-						}		
+									IJ.showMessage("Could not apply Classifier!");
+									e.printStackTrace();
+									return null;
+								}
+							}		
+					}
 
 					if( probabilityMaps )
 					{
@@ -5158,7 +5614,7 @@ public ImagePlus applyClassifier(
 				e.printStackTrace();
 			}
 			
-			fu[i] = exe.submit( classifyInstances( fsa, dataInfo, first, size, classifierCopy, counter, probabilityMaps ) );
+			fu[i] = exe.submit( classifyInstances( fsa, dataInfo, first, size, classifierCopy, counter, probabilityMaps, batchClassification ) );
 		}
 
 		ScheduledExecutorService monitor = Executors.newScheduledThreadPool(1);
@@ -5227,6 +5683,7 @@ public void run() {
 	 * @param classifier current classifier
 	 * @param counter auxiliary counter to be able to update the progress bar
 	 * @param probabilityMaps if true return a probability map for each class instead of a classified image
+	 * @param batch if true and the classifier allows it, classify whole batches of pixels at once
 	 * @return classification result
 	 */
 	private static Callable<double[][]> classifyInstances(
@@ -5236,7 +5693,8 @@ private static Callable<double[][]> classifyInstances(
 			final int numInstances,
 			final AbstractClassifier classifier,
 			final AtomicInteger counter,
-			final boolean probabilityMaps)
+			final boolean probabilityMaps,
+			final boolean batch)
 	{
 		if (Thread.currentThread().isInterrupted()) 
 			return null;
@@ -5263,6 +5721,31 @@ public double[][] call(){
 					classificationResult = new double[numClasses][numInstances];
 				else
 					classificationResult = new double[1][numInstances];
+				
+				if( batch && classifier instanceof BatchClassifier )
+				{
+					try{
+						// classify each slice range in batches
+						int done = 0;
+						while( done < numInstances )
+						{
+							final int absolutePos = first + done;
+							final int slice = absolutePos / sliceSize;
+							final int localPos = absolutePos - slice * sliceSize;
+							final int n = Math.min( numInstances - done, sliceSize - localPos );
+							if( false == classifyPixels( fsa.get( slice ), localPos, n, (BatchClassifier) classifier, 
+									numClasses, counter, probabilityMaps, false, classificationResult, done ) )
+								return null;
+							done += n;
+						}
+					}catch(Exception e){
+
+						IJ.showMessage("Could not apply Classifier!");
+						e.printStackTrace();
+						return null;
+					}
+					return classificationResult;
+				}
 			
 				for (int i=0; i<numInstances; i++)
 				{
@@ -5373,6 +5856,78 @@ public double[][] call(){
 		};
 	}
 
+	/**
+	 * Classify a range of consecutive pixels of a feature stack in batches.
+	 * The feature vectors of each batch are copied into a single primitive
+	 * buffer (reading the feature slices in memory order) and scored at
+	 * once by the classifier, so no weka instance is created per pixel.
+	 * 
+	 * @param features feature stack containing the pixels to classify
+	 * @param first index of the first pixel to classify (x + y * width)
+	 * @param numPixels number of pixels to classify
+	 * @param classifier classifier able to score whole batches
+	 * @param numClasses number of classes
+	 * @param counter auxiliary counter to be able to update the progress bar
+	 * @param probabilityMaps if true store the probability of each class instead of the class index
+	 * @param missingIfUndecided if true, pixels with no class probability get a missing value (as in classifyInstance) instead of class 0
+	 * @param result output arrays (one per class for probability maps, one otherwise)
+	 * @param offset position in the output arrays of the first pixel
+	 * @return false if the thread was interrupted
+	 * @throws Exception if the classifier fails
+	 */
+	private static boolean classifyPixels(
+			final FeatureStack features,
+			final int first,
+			final int numPixels,
+			final BatchClassifier classifier,
+			final int numClasses,
+			final AtomicInteger counter,
+			final boolean probabilityMaps,
+			final boolean missingIfUndecided,
+			final double[][] result,
+			final int offset) throws Exception
+	{
+		final int numAttributes = features.getNumAttributes();
+		final int batchSize = Math.min( BATCH_SIZE, numPixels );
+		final float[] buffer = new float[ batchSize * numAttributes ];
+		final double[] distributions = new double[ batchSize * numClasses ];
+		
+		for (int done = 0; done < numPixels; )
+		{
+			if (Thread.currentThread().isInterrupted()) 
+				return false;
+			
+			final int n = Math.min( batchSize, numPixels - done );
+			features.fillFeatureBuffer( first + done, n, buffer );
+			classifier.distributionForInstances( buffer, numAttributes, n, numClasses, distributions );
+			
+			for (int i = 0, d = 0; i < n; i++, d += numClasses)
+			{
+				final int pos = offset + done + i;
+				if( probabilityMaps )
+				{
+					for(int k = 0 ; k < numClasses; k++)
+						result[ k ][ pos ] = distributions[ d + k ];
+				}
+				else
+				{
+					double max = 0;
+					int maxIndex = 0;
+					for(int k = 0 ; k < numClasses; k++)
+						if( distributions[ d + k ] > max )
+						{
+							max = distributions[ d + k ];
+							maxIndex = k;
+						}
+					result[ 0 ][ pos ] = ( max > 0 || false == missingIfUndecided ) ? maxIndex : Utils.missingValue();
+				}
+			}
+			done += n;
+			counter.addAndGet( n );
+		}
+		return true;
+	}
+	
 	/**
 	 * Set features to use during training
 	 *
@@ -5472,6 +6027,27 @@ public float getMinimumSigma()
 		return minimumSigma;
 	}
 
+	/**
+	 * Set the computation of the Gaussian scale space in cascade, i.e.
+	 * each scale is obtained by blurring the previous one (faster but
+	 * slightly different at the image borders)
+	 * @param cascadeScaleSpace cascade flag
+	 */
+	public void setCascadeScaleSpace(boolean cascadeScaleSpace)
+	{
+		this.cascadeScaleSpace = cascadeScaleSpace;
+		featureStackArray.setCascadeScaleSpace(cascadeScaleSpace);
+	}
+
+	/**
+	 * Check if the Gaussian scale space is computed in cascade
+	 * @return true if each scale is computed from the previous one
+	 */
+	public boolean isCascadeScaleSpace()
+	{
+		return cascadeScaleSpace;
+	}
+
 	/**
 	 * Get current number of trees (for random forest training)
 	 * @return number of trees
@@ -5497,6 +6073,26 @@ public int getMaxDepth()
 		return maxDepth;
 	}
 
+	/**
+	 * Set the flag to classify whole batches of pixels at once (only used 
+	 * if the classifier implements {@link BatchClassifier}, the results 
+	 * are the same as in the pixel by pixel classification)
+	 * @param batchClassification boolean flag to enable/disable the batch classification
+	 */
+	public void setBatchClassification(boolean batchClassification)
+	{
+		this.batchClassification = batchClassification;
+	}
+
+	/**
+	 * Get the flag to classify whole batches of pixels at once
+	 * @return flag to enable/disable the batch classification
+	 */
+	public boolean isBatchClassification()
+	{
+		return batchClassification;
+	}
+
 	/**
 	 * Set the flag to balance the class distributions
 	 * @param homogenizeClasses boolean flag to enable/disable the class balance
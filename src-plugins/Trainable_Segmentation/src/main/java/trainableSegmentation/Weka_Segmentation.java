@@ -228,6 +228,8 @@ public class Weka_Segmentation implements PlugIn
 	public static final String SET_MAXIMUM_SIGMA = "setMaximumSigma";
 	/** name of the macro method to enable/disable the class homogenization */
 	public static final String SET_HOMOGENIZATION = "setClassHomogenization";
+	/** name of the macro method to enable/disable the cascaded scale space */
+	public static final String SET_CASCADE_SCALE_SPACE = "setCascadeScaleSpace";
 	/** name of the macro method to set a new classifier */
 	public static final String SET_CLASSIFIER = "setClassifier";
 	/** name of the macro method to save the feature stack into a file or files */
@@ -2099,6 +2101,7 @@ public boolean showSettingsDialog()
 
 		gd.addMessage("Advanced options:");
 		gd.addCheckbox("Homogenize classes", wekaSegmentation.doHomogenizeClasses());
+		gd.addCheckbox("Cascaded scale space", wekaSegmentation.isCascadeScaleSpace());
 		gd.addButton("Save feature stack", new SaveFeatureStackButtonListener("Select location to save feature stack", wekaSegmentation.getFeatureStackArray()));
 		gd.addSlider("Result overlay opacity", 0, 100, win.overlayOpacity);
 		gd.addHelp("http://fiji.sc/Trainable_Weka_Segmentation");
@@ -2238,6 +2241,16 @@ public boolean showSettingsDialog()
 			// Macro recording
 			record(SET_HOMOGENIZATION, new String[] { Boolean.toString( homogenizeClasses )});
 		}
+
+		// Update flag to compute the Gaussian scale space in cascade
+		final boolean cascadeScaleSpace = gd.getNextBoolean();
+		if( wekaSegmentation.isCascadeScaleSpace() != cascadeScaleSpace )
+		{
+			featuresChanged = true;
+			wekaSegmentation.setCascadeScaleSpace( cascadeScaleSpace );
+			// Macro recording
+			record(SET_CASCADE_SCALE_SPACE, new String[] { Boolean.toString( cascadeScaleSpace )});
+		}
 		
 		// Update result overlay alpha
 		final int newOpacity = (int) gd.getNextNumber();
@@ -2912,6 +2925,27 @@ public static void setClassHomogenization(String flagStr)
 			wekaSegmentation.setHomogenizeClasses(flag);
 		}
 	}
+
+	/**
+	 * Set the computation of the Gaussian scale space in cascade
+	 * 
+	 * @param flagStr true/false if each scale is computed from the previous one
+	 */
+	public static void setCascadeScaleSpace(String flagStr)
+	{
+		final ImageWindow iw = WindowManager.getCurrentImage().getWindow();
+		if( iw instanceof CustomWindow )
+		{
+			final CustomWindow win = (CustomWindow) iw;
+			boolean flag = Boolean.parseBoolean(flagStr);
+			final WekaSegmentation wekaSegmentation = win.getWekaSegmentation();
+			if( flag != wekaSegmentation.isCascadeScaleSpace() )
+			{
+				wekaSegmentation.setFeaturesDirty();
+				wekaSegmentation.setCascadeScaleSpace(flag);
+			}
+		}
+	}
 	
 	/**
 	 * Set classifier for current segmentation
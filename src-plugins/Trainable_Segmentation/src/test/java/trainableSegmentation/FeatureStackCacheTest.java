@@ -0,0 +1,137 @@
+package trainableSegmentation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.FloatProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies that {@link FeatureStackCache} gives back the stored features,
+ * tells different settings apart and keeps within its disk budget.
+ */
+public class FeatureStackCacheTest {
+
+	private static final int WIDTH = 32, HEIGHT = 24, NUM_FEATURES = 3;
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("feature-cache", "");
+		assertTrue(directory.delete());
+		assertTrue(directory.mkdirs());
+	}
+
+	@After
+	public void deleteDirectory() {
+		final File[] files = directory.listFiles();
+		if (files != null)
+			for (File f : files)
+				f.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void testStoreAndLoad() {
+		FeatureStackCache cache = new FeatureStackCache(directory, 1 << 20);
+		FeatureStack stored = createFeatureStack(1);
+		assertTrue(cache.store(stored));
+		// storing again replaces the file
+		assertTrue(cache.store(stored));
+		assertEquals(1, countFiles(FeatureStackCache.EXTENSION));
+		assertEquals(0, countFiles(".tmp"));
+
+		FeatureStack loaded = new FeatureStack(stored.getOriginalImage());
+		assertTrue(cache.load(loaded));
+		ImageStack expect = stored.getStack(), actual = loaded.getStack();
+		assertNotNull(actual);
+		assertEquals(expect.getSize(), actual.getSize());
+		for (int i = 1; i <= expect.getSize(); i++) {
+			assertEquals(expect.getSliceLabel(i), actual.getSliceLabel(i));
+			assertTrue(Arrays.equals((float[])expect.getPixels(i), (float[])actual.getPixels(i)));
+		}
+	}
+
+	@Test
+	public void testSettingsChangeKey() {
+		FeatureStack fs = createFeatureStack(1);
+		String key = FeatureStackCache.getKey(fs);
+		fs.setCascadeScaleSpace(true);
+		assertFalse(key.equals(FeatureStackCache.getKey(fs)));
+		fs.setCascadeScaleSpace(false);
+		fs.setMaximumSigma(8);
+		assertFalse(key.equals(FeatureStackCache.getKey(fs)));
+
+		// the direct features are not given back for the cascaded scale space
+		FeatureStackCache cache = new FeatureStackCache(directory, 1 << 20);
+		assertTrue(cache.store(createFeatureStack(1)));
+		FeatureStack cascade = new FeatureStack(fs.getOriginalImage());
+		cascade.setCascadeScaleSpace(true);
+		assertFalse(cache.load(cascade));
+		assertTrue(cache.load(new FeatureStack(fs.getOriginalImage())));
+	}
+
+	@Test
+	public void testEvict() {
+		long fileSize = 4L * WIDTH * HEIGHT * NUM_FEATURES;
+		// room for two feature stacks (plus their headers), not three
+		FeatureStackCache cache = new FeatureStackCache(directory, 2 * fileSize + 1024);
+		FeatureStack first = createFeatureStack(1);
+		assertTrue(cache.store(first));
+		File firstFile = new File(directory, FeatureStackCache.getKey(first) + FeatureStackCache.EXTENSION);
+		assertTrue(firstFile.setLastModified(System.currentTimeMillis() - 60000));
+		assertTrue(cache.store(createFeatureStack(2)));
+		assertTrue(cache.store(createFeatureStack(3)));
+
+		// the least recently used one is gone
+		assertEquals(2, countFiles(FeatureStackCache.EXTENSION));
+		assertFalse(firstFile.exists());
+		assertFalse(cache.load(new FeatureStack(first.getOriginalImage())));
+		assertTrue(cache.load(createFeatureStack(3)));
+
+		// stacks larger than the budget are not stored
+		cache.setMaxBytes(fileSize / 2);
+		assertEquals(0, countFiles(FeatureStackCache.EXTENSION));
+		assertFalse(cache.store(createFeatureStack(4)));
+	}
+
+	/**
+	 * Create a feature stack of a synthetic image with made-up features.
+	 */
+	private static FeatureStack createFeatureStack(int seed) {
+		float[] pixels = new float[WIDTH * HEIGHT];
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = seed * 1000 + i;
+		FeatureStack fs = new FeatureStack(new ImagePlus("image " + seed,
+				new FloatProcessor(WIDTH, HEIGHT, pixels, null)));
+		ImageStack stack = new ImageStack(WIDTH, HEIGHT);
+		for (int f = 0; f < NUM_FEATURES; f++) {
+			float[] feature = new float[pixels.length];
+			for (int i = 0; i < feature.length; i++)
+				feature[i] = pixels[i] * (f + 1) + 0.5f;
+			stack.addSlice("feature " + f, new FloatProcessor(WIDTH, HEIGHT, feature, null));
+		}
+		fs.setStack(stack);
+		return fs;
+	}
+
+	private int countFiles(String extension) {
+		int count = 0;
+		for (File f : directory.listFiles())
+			if (f.getName().endsWith(extension))
+				count++;
+		return count;
+	}
+}
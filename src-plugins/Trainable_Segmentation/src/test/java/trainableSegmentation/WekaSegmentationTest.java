@@ -0,0 +1,155 @@
+package trainableSegmentation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import hr.irb.fastRandomForest.FastRandomForest;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.Roi;
+import ij.process.FloatProcessor;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import weka.classifiers.AbstractClassifier;
+import ai.BalancedRandomForest;
+
+/**
+ * Verifies that the optimized classification paths of
+ * {@link WekaSegmentation} give the same results as the plain
+ * per-instance classification.
+ */
+public class WekaSegmentationTest {
+
+	@Test
+	public void testBatchClassificationFastRandomForest() {
+		FastRandomForest rf = new FastRandomForest();
+		rf.setNumTrees(20);
+		rf.setNumFeatures(2);
+		rf.setSeed(17);
+		testBatchClassification(rf);
+	}
+
+	@Test
+	public void testBatchClassificationBalancedRandomForest() {
+		BalancedRandomForest rf = new BalancedRandomForest();
+		rf.setNumTrees(20);
+		rf.setNumFeatures(2);
+		rf.setSeed(17);
+		testBatchClassification(rf);
+	}
+
+	/**
+	 * Classify the same image with and without batch classification and
+	 * compare the probabilities of every pixel.
+	 */
+	private void testBatchClassification(AbstractClassifier classifier) {
+		ImagePlus image = createImage(64, 48, 1);
+		WekaSegmentation segmentation = train(image, classifier);
+
+		segmentation.setBatchClassification(false);
+		ImagePlus expect = segmentation.applyClassifier(image, 2, true);
+		segmentation.setBatchClassification(true);
+		ImagePlus actual = segmentation.applyClassifier(image, 2, true);
+
+		assertSameProbabilities(expect, actual);
+	}
+
+	/**
+	 * Classify a stack tile by tile, with tiles smaller than the image,
+	 * and compare the probabilities of every pixel with the ones of the
+	 * in-memory classification.
+	 */
+	@Test
+	public void testTiledClassification() {
+		ImagePlus image = createImage(53, 41, 2);
+		FastRandomForest rf = new FastRandomForest();
+		rf.setNumTrees(20);
+		rf.setSeed(17);
+		WekaSegmentation segmentation = new WekaSegmentation(image);
+		segmentation.setMaximumSigma(4);
+		segmentation = train(segmentation, image, rf);
+		segmentation.setTileSize(16);
+
+		// the default features can be computed tile by tile, so the
+		// tiled path is the one being compared
+		assertTrue(segmentation.getTileHalo() >= 0);
+
+		ImagePlus expect = segmentation.applyClassifier(image, 2, true);
+		ImagePlus actual = segmentation.applyClassifierTiled(image, 2, true);
+
+		assertSameProbabilities(expect, actual);
+	}
+
+	/**
+	 * Features that depend on the whole image can not be computed tile by
+	 * tile, so tiled classification must fall back to the in-memory one.
+	 */
+	@Test
+	public void testTiledClassificationFallback() {
+		ImagePlus image = createImage(53, 41, 1);
+		WekaSegmentation segmentation = new WekaSegmentation(image);
+		boolean[] enabledFeatures = segmentation.getEnabledFeatures();
+		assertTrue(segmentation.getTileHalo() >= 0);
+
+		boolean[] allFeatures = new boolean[enabledFeatures.length];
+		for (int i = 0; i < allFeatures.length; i++)
+			allFeatures[i] = true;
+		segmentation.setEnabledFeatures(allFeatures);
+		assertEquals(-1, segmentation.getTileHalo());
+
+		// Gabor alone is normalized over the whole image
+		boolean[] gabor = new boolean[enabledFeatures.length];
+		gabor[FeatureStack.GABOR] = true;
+		segmentation.setEnabledFeatures(gabor);
+		assertEquals(-1, segmentation.getTileHalo());
+	}
+
+	/**
+	 * Create a test image with a smooth gradient, a bright disc and noise.
+	 */
+	static ImagePlus createImage(int width, int height, int depth) {
+		Random random = new Random(42);
+		ImageStack stack = new ImageStack(width, height);
+		for (int z = 0; z < depth; z++) {
+			float[] pixels = new float[width * height];
+			for (int y = 0; y < height; y++)
+				for (int x = 0; x < width; x++) {
+					float dx = x - width / 3f, dy = y - height / 2f;
+					pixels[x + y * width] = x + (dx * dx + dy * dy < 100 ? 100 : 0)
+						+ 10 * (float)random.nextGaussian();
+				}
+			stack.addSlice("", new FloatProcessor(width, height, pixels, null));
+		}
+		return new ImagePlus("test", stack);
+	}
+
+	/**
+	 * Train a classifier with one example of background and one of the disc.
+	 */
+	static WekaSegmentation train(ImagePlus image, AbstractClassifier classifier) {
+		return train(new WekaSegmentation(image), image, classifier);
+	}
+
+	static WekaSegmentation train(WekaSegmentation segmentation, ImagePlus image, AbstractClassifier classifier) {
+		segmentation.setClassifier(classifier);
+		int width = image.getWidth(), height = image.getHeight();
+		segmentation.addExample(0, new Roi(width - 12, 2, 8, height - 4), 1);
+		segmentation.addExample(1, new Roi(width / 3 - 4, height / 2 - 4, 8, 8), 1);
+		assertTrue(segmentation.trainClassifier());
+		return segmentation;
+	}
+
+	static void assertSameProbabilities(ImagePlus expect, ImagePlus actual) {
+		assertEquals(expect.getStackSize(), actual.getStackSize());
+		for (int i = 1; i <= expect.getStackSize(); i++) {
+			float[] expectPixels = (float[])expect.getStack().getProcessor(i).getPixels();
+			float[] actualPixels = (float[])actual.getStack().getProcessor(i).getPixels();
+			assertEquals(expectPixels.length, actualPixels.length);
+			for (int j = 0; j < expectPixels.length; j++)
+				assertEquals("slice " + i + ", pixel " + j, expectPixels[j], actualPixels[j], 1e-6);
+		}
+	}
+}
@@ -1,6 +1,7 @@
 import ij.CompositeImage;
 import ij.IJ;
 import ij.ImagePlus;
+import ij.Prefs;
 import ij.WindowManager;
 import ij.measure.Calibration;
 import ij.process.ImageProcessor;
@@ -17,7 +18,7 @@ public final class TJ {
 	private static final String NAME = "TransformJ";
 	private static final String VERSION = "2.8.0";
 	private static final String MINIJVERSION = "1.44a";
-	private static final String MINISVERSION = "2.4.0";
+	private static final String MINISVERSION = "2.5.0";
 	
 	public static String name() { return NAME; }
 	
@@ -38,6 +39,8 @@ static boolean libcheck() {
 			return false;
 		}
 		
+		ImageScience.defaultThreads(Prefs.getThreads());
+		
 		return true;
 	}
 	
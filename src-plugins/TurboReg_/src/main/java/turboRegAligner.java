@@ -0,0 +1,195 @@
+/*====================================================================
+| This work is based on the following paper:
+|
+| P. Thevenaz, U.E. Ruttimann, M. Unser
+| A Pyramid Approach to Subpixel Registration Based on Intensity
+| IEEE Transactions on Image Processing
+| vol. 7, no. 1, pp. 27-41, January 1998.
+|
+| This paper is available on-line at
+| http://bigwww.epfl.ch/publications/thevenaz9801.html
+\===================================================================*/
+
+// ImageJ
+import ij.ImagePlus;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+/*====================================================================
+|	turboRegAligner
+\===================================================================*/
+
+/*********************************************************************
+ In-process access to the registration engine of <code>TurboReg_</code>,
+ for plugins that register many images without going through files
+ and command lines. The pyramids of the target are computed once by the
+ constructor and are only read afterwards, so that one object can align
+ any number of sources, also from several threads at once. The result of
+ <code>align</code> is the same as the source landmarks refined by
+ <code>TurboReg_</code> with the option <code>-align</code> on the
+ uncropped images, and the result of <code>transform</code> is the same
+ as the data slice of <code>TurboReg_</code> with the option
+ <code>-transform</code>.
+ ********************************************************************/
+public class turboRegAligner
+
+{ /* begin class turboRegAligner */
+
+/*....................................................................
+	Public variables
+....................................................................*/
+
+/*********************************************************************
+ Transformation codes, with the same values as in
+ <code>TurboReg_</code>.
+ ********************************************************************/
+public static final int TRANSLATION = turboRegDialog.TRANSLATION;
+public static final int RIGID_BODY = turboRegDialog.RIGID_BODY;
+public static final int SCALED_ROTATION = turboRegDialog.SCALED_ROTATION;
+public static final int AFFINE = turboRegDialog.AFFINE;
+
+/*....................................................................
+	Private variables
+....................................................................*/
+
+private final ImageProcessor target;
+private final turboRegImage targetImg;
+private final turboRegMask targetMsk;
+private final int transformation;
+private final int pyramidDepth;
+
+/*....................................................................
+	Public methods
+....................................................................*/
+
+/*********************************************************************
+ Precompute the pyramids of a target image.
+ @param target Grayscale (8, 16, or 32 bit) target image; its pixels
+ must not change while this object is in use.
+ @param transformation Transformation code.
+ ********************************************************************/
+public turboRegAligner (
+	final ImageProcessor target,
+	final int transformation
+) {
+	this.target = target;
+	this.transformation = transformation;
+	final int width = target.getWidth();
+	final int height = target.getHeight();
+	pyramidDepth = getPyramidDepth(width, height);
+	final ImagePlus targetImp = new ImagePlus("target", target);
+	targetImg = new turboRegImage(targetImp, transformation, true);
+	targetImg.setPyramidDepth(pyramidDepth);
+	targetImg.run();
+	targetMsk = new turboRegMask(targetImp);
+	targetMsk.clearMask();
+	targetMsk.setPyramidDepth(pyramidDepth);
+	targetMsk.run();
+} /* end turboRegAligner */
+
+/*********************************************************************
+ Refine the landmarks of a source image of the same size as the
+ target image.
+ @param source Grayscale (8, 16, or 32 bit) source image.
+ @param sourcePoints Initial source landmarks,
+ <code>sourcePoints[k][0]</code> being the horizontal and
+ <code>sourcePoints[k][1]</code> the vertical coordinate.
+ @param targetPoints Target landmarks.
+ @return The refined source landmarks, as a new array of
+ <code>turboRegPointHandler.NUM_POINTS</code> landmarks.
+ ********************************************************************/
+public double[][] align (
+	final ImageProcessor source,
+	final double[][] sourcePoints,
+	final double[][] targetPoints
+) {
+	final ImagePlus sourceImp = new ImagePlus("source", source);
+	final turboRegImage sourceImg = new turboRegImage(
+		sourceImp, transformation, false);
+	sourceImg.setPyramidDepth(pyramidDepth);
+	sourceImg.run();
+	final turboRegPointHandler sourcePh = new turboRegPointHandler(
+		sourceImp, transformation);
+	final turboRegPointHandler targetPh = new turboRegPointHandler(
+		new ImagePlus("target", target), transformation);
+	sourcePh.setPoints(getPoints(sourcePoints));
+	targetPh.setPoints(getPoints(targetPoints));
+	// Without a source mask, turboRegTransform works on copies of the
+	// target pyramids and leaves them intact for the next source.
+	final turboRegTransform tt = new turboRegTransform(sourceImg, null,
+		sourcePh, targetImg, targetMsk, targetPh, transformation, false,
+		false);
+	tt.doRegistration();
+	return(getPoints(sourcePh.getPoints()));
+} /* end align */
+
+/*********************************************************************
+ Transform a source image with the transformation that maps the target
+ landmarks onto the source landmarks, using cubic B-splines.
+ @param source Grayscale (8, 16, or 32 bit) source image.
+ @param width Width of the output image.
+ @param height Height of the output image.
+ @param transformation Transformation code.
+ @param sourcePoints Source landmarks.
+ @param targetPoints Target landmarks.
+ @return The transformed image.
+ ********************************************************************/
+public static FloatProcessor transform (
+	final ImageProcessor source,
+	final int width,
+	final int height,
+	final int transformation,
+	final double[][] sourcePoints,
+	final double[][] targetPoints
+) {
+	final ImagePlus sourceImp = new ImagePlus("source", source);
+	final turboRegImage sourceImg = new turboRegImage(sourceImp,
+		turboRegDialog.GENERIC_TRANSFORMATION, false);
+	sourceImg.run();
+	final turboRegMask sourceMsk = new turboRegMask(sourceImp);
+	sourceMsk.clearMask();
+	final turboRegPointHandler sourcePh = new turboRegPointHandler(
+		getPoints(sourcePoints), transformation);
+	final turboRegPointHandler targetPh = new turboRegPointHandler(
+		getPoints(targetPoints), transformation);
+	final turboRegTransform regTransform = new turboRegTransform(
+		sourceImg, sourceMsk, sourcePh,
+		null, null, targetPh, transformation, false, false);
+	final ImagePlus transformedImage = regTransform.doFinalTransform(
+		width, height);
+	return((FloatProcessor)transformedImage.getStack().getProcessor(1));
+} /* end transform */
+
+/*....................................................................
+	Private methods
+....................................................................*/
+
+/*------------------------------------------------------------------*/
+private static int getPyramidDepth (
+	int width,
+	int height
+) {
+	int pyramidDepth = 1;
+	while (((2 * turboRegDialog.MIN_SIZE) <= width)
+		&& ((2 * turboRegDialog.MIN_SIZE) <= height)) {
+		width /= 2;
+		height /= 2;
+		pyramidDepth++;
+	}
+	return(pyramidDepth);
+} /* end getPyramidDepth */
+
+/*------------------------------------------------------------------*/
+private static double[][] getPoints (
+	final double[][] points
+) {
+	final double[][] copy =
+		new double[turboRegPointHandler.NUM_POINTS][2];
+	for (int k = 0; (k < Math.min(points.length, copy.length)); k++) {
+		copy[k][0] = points[k][0];
+		copy[k][1] = points[k][1];
+	}
+	return(copy);
+} /* end getPoints */
+
+} /* end class turboRegAligner */
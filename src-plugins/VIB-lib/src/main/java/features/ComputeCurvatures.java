@@ -89,6 +89,9 @@
 import math3d.JacobiDouble;
 import math3d.JacobiFloat;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
 public class ComputeCurvatures implements Runnable
 {
     static class TrivialProgressDisplayer implements GaussianGenerationCallback {
@@ -115,6 +118,11 @@ public void proportionDone( double proportion ) {
     protected boolean useCalibration;
     protected GaussianGenerationCallback callback;
 
+    /* If this is positive, setup() doesn't compute the Gaussian of a
+       whole stack; blocks of it are computed when first needed and at
+       most this many bytes of them are kept (see LazyGaussian3D). */
+    protected long maxCachedBytes = 0;
+
     /* This constructor should used if you're actually using this as
        an ImageJ PlugIn.  (This leaves this.imp, etc. null - they'll
        be set by the runAsPlugIn( ... ) method.) */
@@ -138,6 +146,18 @@ public ComputeCurvatures( ImagePlus imp,
         this.useCalibration = useCalibration;
     }
 
+    /* Call this before run() to compute the Gaussian of a stack in
+       blocks, only when hessianEigenvaluesAtPoint3D( ... ) first
+       needs a point in them, rather than all at once.  At most
+       maxCachedBytes of blocks are kept; the least recently used
+       ones are dropped (and recomputed if needed again).  The
+       eigenvalues are exactly the same as without this mode.  2D
+       images are always smoothed as a whole. */
+
+    public void setComputeOnDemand( long maxCachedBytes ) {
+        this.maxCachedBytes = maxCachedBytes;
+    }
+
     /**
      * This method will be called when running the PlugIn, it coordinates the main process.
      *
@@ -391,6 +411,20 @@ public void setup( ) {
             if( callback != null )
                 callback.proportionDone( 0.0 );
 
+            if (maxCachedBytes > 0 && imp.getStackSize() > 1)
+                {
+                    if (imp.getType() == ImagePlus.COLOR_RGB)
+                    {
+                        IJ.error("RGB images not supported at the moment.");
+                        return;
+                    }
+                    _3D = true;
+                    data = new LazyGaussian3D(imp.getStack(), (float)sigma, useCalibration ? imp.getCalibration() : null, maxCachedBytes);
+                    if( callback != null )
+                        callback.proportionDone( 1.0 );
+                    return;
+                }
+
             if (imp.getStackSize() > 1)
                 {
                     // IJ.log("3D");
@@ -1926,4 +1960,275 @@ public void setZPlane(float[][] plane, int z)
 
     }
 
+    /**
+     * A FloatArray3D with the Gaussian of a stack that is computed
+     * block by block, the first time a voxel of a block is read.  The
+     * blocks have a margin of one voxel so that the Hessian at any
+     * voxel of a block can be computed from that block alone.  Each
+     * block is computed from the pixels of the stack (mirrored at the
+     * borders, as in computeGaussianFastMirror) with the same
+     * arithmetic as computeGaussianFastMirror, so the values are the
+     * same as those of the Gaussian of the whole stack.  The cache of
+     * blocks is shared by all the threads reading from this.
+     */
+    public class LazyGaussian3D extends FloatArray3D
+    {
+        public static final int BLOCK_WIDTH = 64;
+        public static final int BLOCK_HEIGHT = 64;
+        public static final int BLOCK_DEPTH = 16;
+
+        final ImageStack stack;
+        final float[] kernelX, kernelY, kernelZ;
+        final float kernelsumX, kernelsumY, kernelsumZ;
+        final int blocksWide, blocksHigh;
+        final long maxBytes;
+
+        // In order of access, least recently used first:
+        final LinkedHashMap<Integer, Block> blocks = new LinkedHashMap<Integer, Block>(16, 0.75f, true);
+        long bytes = 0;
+
+        volatile Block lastBlock;
+
+        class Block
+        {
+            final int x0, y0, z0, x1, y1, z1; // x1, y1 and z1 are exclusive
+            final float[] values;
+
+            Block(int x0, int y0, int z0, int x1, int y1, int z1)
+            {
+                this.x0 = x0; this.y0 = y0; this.z0 = z0;
+                this.x1 = x1; this.y1 = y1; this.z1 = z1;
+                values = new float[(x1 - x0) * (y1 - y0) * (z1 - z0)];
+            }
+
+            boolean contains(int x, int y, int z)
+            {
+                return x >= x0 && x < x1 && y >= y0 && y < y1 && z >= z0 && z < z1;
+            }
+
+            float get(int x, int y, int z)
+            {
+                return values[(x - x0) + (x1 - x0) * ((y - y0) + (z - z0) * (y1 - y0))];
+            }
+        }
+
+        public LazyGaussian3D(ImageStack stack, float sigma, Calibration calibration, long maxBytes)
+        {
+            super(null, stack.getWidth(), stack.getHeight(), stack.getSize());
+            this.stack = stack;
+            this.maxBytes = maxBytes;
+
+            float pixelWidth = 1, pixelHeight = 1, pixelDepth = 1;
+
+            if (calibration != null) {
+                pixelWidth = (float)calibration.pixelWidth;
+                pixelHeight = (float)calibration.pixelHeight;
+                pixelDepth = (float)calibration.pixelDepth;
+            }
+
+            kernelX = createGaussianKernel1D(sigma / pixelWidth, true);
+            kernelY = createGaussianKernel1D(sigma / pixelHeight, true);
+            kernelZ = createGaussianKernel1D(sigma / pixelDepth, true);
+            kernelsumX = sum(kernelX);
+            kernelsumY = sum(kernelY);
+            kernelsumZ = sum(kernelZ);
+
+            blocksWide = (width + BLOCK_WIDTH - 1) / BLOCK_WIDTH;
+            blocksHigh = (height + BLOCK_HEIGHT - 1) / BLOCK_HEIGHT;
+        }
+
+        @Override
+        public float get(int x, int y, int z)
+        {
+            Block block = lastBlock;
+            if (block == null || !block.contains(x, y, z))
+            {
+                block = getBlock(x / BLOCK_WIDTH, y / BLOCK_HEIGHT, z / BLOCK_DEPTH);
+                lastBlock = block;
+            }
+            return block.get(x, y, z);
+        }
+
+        @Override
+        public float getMirror(int x, int y, int z)
+        {
+            return get(mirror(x, width), mirror(y, height), mirror(z, depth));
+        }
+
+        @Override
+        public void set(float value, int x, int y, int z)
+        {
+            throw new UnsupportedOperationException("The Gaussian is read-only");
+        }
+
+        @Override
+        public LazyGaussian3D clone()
+        {
+            return this;
+        }
+
+        /** Drops all the blocks computed so far */
+        public synchronized void clearCache()
+        {
+            blocks.clear();
+            bytes = 0;
+            lastBlock = null;
+        }
+
+        Block getBlock(int bx, int by, int bz)
+        {
+            Integer key = Integer.valueOf((bz * blocksHigh + by) * blocksWide + bx);
+            synchronized (this)
+            {
+                Block block = blocks.get(key);
+                if (block != null)
+                    return block;
+            }
+
+            // Compute it without holding the lock, so that other
+            // threads can still read the blocks they need:
+            Block block = computeBlock(bx, by, bz);
+
+            synchronized (this)
+            {
+                Block existing = blocks.get(key);
+                if (existing != null)
+                    return existing;
+                blocks.put(key, block);
+                bytes += 4L * block.values.length;
+                Iterator<Block> iterator = blocks.values().iterator();
+                while (bytes > maxBytes && blocks.size() > 1)
+                {
+                    Block eldest = iterator.next();
+                    iterator.remove();
+                    bytes -= 4L * eldest.values.length;
+                }
+            }
+            return block;
+        }
+
+        Block computeBlock(int bx, int by, int bz)
+        {
+            Block block = new Block(
+                Math.max(0, bx * BLOCK_WIDTH - 1),
+                Math.max(0, by * BLOCK_HEIGHT - 1),
+                Math.max(0, bz * BLOCK_DEPTH - 1),
+                Math.min(width, (bx + 1) * BLOCK_WIDTH + 1),
+                Math.min(height, (by + 1) * BLOCK_HEIGHT + 1),
+                Math.min(depth, (bz + 1) * BLOCK_DEPTH + 1));
+
+            int rx = kernelX.length / 2, ry = kernelY.length / 2, rz = kernelZ.length / 2;
+
+            // The rows and slices that the folds in y and z will read:
+            int yMin = height, yMax = -1;
+            for (int y = block.y0 - ry; y < block.y1 + ry; y++)
+            {
+                int m = mirror(y, height);
+                yMin = Math.min(yMin, m);
+                yMax = Math.max(yMax, m);
+            }
+            int zMin = depth, zMax = -1;
+            for (int z = block.z0 - rz; z < block.z1 + rz; z++)
+            {
+                int m = mirror(z, depth);
+                zMin = Math.min(zMin, m);
+                zMax = Math.max(zMax, m);
+            }
+
+            int w = block.x1 - block.x0;
+            int h = yMax - yMin + 1;
+            int d = zMax - zMin + 1;
+
+            // fold in x
+            float[] foldedX = new float[w * h * d];
+            float[] row = new float[width];
+            for (int z = zMin; z <= zMax; z++)
+            {
+                Object pixels = stack.getPixels(z + 1);
+                for (int y = yMin; y <= yMax; y++)
+                {
+                    getRow(pixels, y, row);
+                    int offset = ((z - zMin) * h + (y - yMin)) * w - block.x0;
+                    for (int x = block.x0; x < block.x1; x++)
+                    {
+                        float avg = 0;
+                        for (int f = -rx; f <= rx; f++)
+                            avg += row[mirror(x + f, width)] * kernelX[f + rx];
+                        foldedX[offset + x] = avg / kernelsumX;
+                    }
+                }
+            }
+
+            // fold in y
+            int h1 = block.y1 - block.y0;
+            float[] foldedY = new float[w * h1 * d];
+            for (int z = 0; z < d; z++)
+                for (int y = block.y0; y < block.y1; y++)
+                    for (int x = 0; x < w; x++)
+                    {
+                        float avg = 0;
+                        for (int f = -ry; f <= ry; f++)
+                            avg += foldedX[(z * h + mirror(y + f, height) - yMin) * w + x] * kernelY[f + ry];
+                        foldedY[(z * h1 + y - block.y0) * w + x] = avg / kernelsumY;
+                    }
+
+            // fold in z
+            float[] values = block.values;
+            int i = 0;
+            for (int z = block.z0; z < block.z1; z++)
+                for (int j = 0; j < w * h1; j++)
+                {
+                    float avg = 0;
+                    for (int f = -rz; f <= rz; f++)
+                        avg += foldedY[(mirror(z + f, depth) - zMin) * w * h1 + j] * kernelZ[f + rz];
+                    values[i++] = avg / kernelsumZ;
+                }
+
+            return block;
+        }
+
+        void getRow(Object pixels, int y, float[] row)
+        {
+            int offset = y * width;
+            if (pixels instanceof byte[])
+            {
+                byte[] p = (byte[])pixels;
+                for (int x = 0; x < width; x++)
+                    row[x] = (float)(p[offset + x] & 0xff);
+            }
+            else if (pixels instanceof short[])
+            {
+                short[] p = (short[])pixels;
+                for (int x = 0; x < width; x++)
+                    row[x] = (float)(p[offset + x] & 0xffff);
+            }
+            else // instance of float[]
+                System.arraycopy((float[])pixels, offset, row, 0, width);
+        }
+    }
+
+    /* Reflects an index into [0, n) without repeating the border
+       pixel, as FloatArray2D/3D.getMirror( ... ) do */
+
+    static int mirror(int i, int n)
+    {
+        if (i >= 0 && i < n)
+            return i;
+        if (n == 1)
+            return 0;
+        int period = 2 * (n - 1);
+        i %= period;
+        if (i < 0)
+            i += period;
+        return i < n ? i : period - i;
+    }
+
+    static float sum(float[] kernel)
+    {
+        float sum = 0;
+        for (int i = 0; i < kernel.length; i++)
+            sum += kernel[i];
+        return sum;
+    }
+
 }
@@ -0,0 +1,111 @@
+/*
+ * Volume Viewer 2.01
+ * 01.12.2012
+ *
+ * (C) Kai Uwe Barthel
+ */
+
+package fiji.plugin.volumeviewer;
+
+import java.util.Arrays;
+
+/*
+ * Minimum and maximum values of a volume for bricks of SIZE x SIZE x SIZE
+ * sample positions, used to skip empty space while casting rays.
+ *
+ * A sample at volume position x (0 <= x <= widthV) lies in brick x/SIZE and
+ * the interpolation reads the padded voxels floor(x+0.5) ... floor(x+0.5)+3,
+ * so the range of a brick covers the padded voxels b*SIZE ... b*SIZE+SIZE+3
+ * in each direction. This leaves a margin of half a voxel around each brick
+ * for rounding errors when stepping along a ray.
+ */
+class Bricks {
+
+	static final int SHIFT = 3;
+	static final int SIZE = 1 << SHIFT;
+
+	final int nx, ny, nz;		// number of bricks
+	final byte[] min, max;		// value range of each brick
+
+	Bricks(byte[] data, int widthV, int heightV, int depthV) {
+		int widthP = widthV+4, heightP = heightV+4, depthP = depthV+4;
+
+		nx = (widthV >> SHIFT) + 1;
+		ny = (heightV >> SHIFT) + 1;
+		nz = (depthV >> SHIFT) + 1;
+
+		// value range of the cells of SIZE^3 padded voxels
+		int cx = (widthP+SIZE-1) >> SHIFT;
+		int cy = (heightP+SIZE-1) >> SHIFT;
+		int cz = (depthP+SIZE-1) >> SHIFT;
+		int[] cellMin = new int[cx*cy*cz];
+		int[] cellMax = new int[cx*cy*cz];
+		Arrays.fill(cellMin, 255);
+
+		int pos = 0;
+		for (int z = 0; z < depthP; z++)
+			for (int y = 0; y < heightP; y++) {
+				int cell0 = ((z >> SHIFT)*cy + (y >> SHIFT))*cx;
+				for (int x = 0; x < widthP; x++) {
+					int val = 0xff & data[pos++];
+					int cell = cell0 + (x >> SHIFT);
+					if (val < cellMin[cell]) cellMin[cell] = val;
+					if (val > cellMax[cell]) cellMax[cell] = val;
+				}
+			}
+
+		// a brick spans the cells b and b+1 in each direction
+		min = new byte[nx*ny*nz];
+		max = new byte[nx*ny*nz];
+		for (int z = 0, b = 0; z < nz; z++)
+			for (int y = 0; y < ny; y++)
+				for (int x = 0; x < nx; x++, b++) {
+					int lo = 255, hi = 0;
+					for (int k = z; k <= Math.min(z+1, cz-1); k++)
+						for (int j = y; j <= Math.min(y+1, cy-1); j++)
+							for (int i = x; i <= Math.min(x+1, cx-1); i++) {
+								int cell = (k*cy + j)*cx + i;
+								lo = Math.min(lo, cellMin[cell]);
+								hi = Math.max(hi, cellMax[cell]);
+							}
+					min[b] = (byte)lo;
+					max[b] = (byte)hi;
+				}
+	}
+
+	// index of the brick containing the sample position (inside the volume)
+	int index(float xV, float yV, float zV) {
+		return ((((int)zV >> SHIFT)*ny + ((int)yV >> SHIFT))*nx + ((int)xV >> SHIFT));
+	}
+
+	// lowest value that may be interpolated in brick b, spread is the
+	// overshoot of the interpolation relative to the range (one less for
+	// rounding down a weighted sum of equal values)
+	int low(int b, float spread) {
+		int lo = 0xff & min[b], hi = 0xff & max[b];
+		return Math.max(0, (int)Math.floor(lo - spread*(hi-lo)) - 1);
+	}
+
+	int high(int b, float spread) {
+		int lo = 0xff & min[b], hi = 0xff & max[b];
+		return Math.min(255, (int)Math.ceil(hi + spread*(hi-lo)));
+	}
+
+	/*
+	 * Number of steps (at least 1) from (xV, yV, zV) along (dx, dy, dz)
+	 * that stay in the brick of this position.
+	 */
+	static int stepsInBrick(float xV, float yV, float zV, float dx, float dy, float dz) {
+		float t = Math.min(steps(xV, dx), Math.min(steps(yV, dy), steps(zV, dz)));
+		return Math.max(1, (int)Math.ceil(t));
+	}
+
+	private static float steps(float v, float d) {
+		int b = ((int)v >> SHIFT) << SHIFT;
+		if (d > 0)
+			return (b + SIZE - v)/d;
+		if (d < 0)
+			return (v - b)/-d;
+		return Float.MAX_VALUE;
+	}
+}
@@ -132,7 +132,7 @@ void makeGui() {
 		if (vv.tf_a3 == null) 
 			vv.tf_a3 = new TFalpha3(control, vv.vol, vv.lookupTable.lut, vv.lookupTable.lut2D_3);
 		if (vv.tf_a4 == null) 
-			vv.tf_a4 = new TFalpha4(control, vv.vol, vv.vol.aPaint_3D, vv.vol.aPaint_3D2);
+			vv.tf_a4 = new TFalpha4(control, vv.vol);
 		//vv.vol.calculateGradients();
 		
 		
@@ -1097,13 +1097,13 @@ else if (slider == shineSlider) {
 	private void showPositionAndValues() {
 		positionString = String.format("  x=%3d, y=%3d, z=%3d", positionX, positionY, positionZ);
 		if (control.isRGB) {
-			int r = vv.vol.data3D[1][positionZ+2][positionY+2][positionX+2] & 0xFF;
-			int g = vv.vol.data3D[2][positionZ+2][positionY+2][positionX+2] & 0xFF;
-			int b = vv.vol.data3D[3][positionZ+2][positionY+2][positionX+2] & 0xFF;
+			int r = vv.vol.data3D[1][vv.vol.index(positionZ+2, positionY+2, positionX+2)] & 0xFF;
+			int g = vv.vol.data3D[2][vv.vol.index(positionZ+2, positionY+2, positionX+2)] & 0xFF;
+			int b = vv.vol.data3D[3][vv.vol.index(positionZ+2, positionY+2, positionX+2)] & 0xFF;
 			valueString = String.format("  R=%3d, G=%3d, B=%3d", r, g, b);
 		}
 		else {
-			int val = vv.vol.data3D[0][positionZ+2][positionY+2][positionX+2] & 0xFF;	
+			int val = vv.vol.data3D[0][vv.vol.index(positionZ+2, positionY+2, positionX+2)] & 0xFF;	
 			valueString = String.format("  Value=%3d", val);
 		}
 		valueLabel.setText(valueString);
@@ -1364,13 +1364,13 @@ public void mouseMoved(MouseEvent arg0) {
 			if (xV != -1 && yV != -1 && zV != -1) {
 				positionString = String.format("  x=%3d, y=%3d, z=%3d", xV, yV, (zV+1));
 				if (control.isRGB) {
-					int r = vv.vol.data3D[1][zV+2][yV+2][xV+2] & 0xFF;
-					int g = vv.vol.data3D[2][zV+2][yV+2][xV+2] & 0xFF;
-					int b = vv.vol.data3D[3][zV+2][yV+2][xV+2] & 0xFF;
+					int r = vv.vol.data3D[1][vv.vol.index(zV+2, yV+2, xV+2)] & 0xFF;
+					int g = vv.vol.data3D[2][vv.vol.index(zV+2, yV+2, xV+2)] & 0xFF;
+					int b = vv.vol.data3D[3][vv.vol.index(zV+2, yV+2, xV+2)] & 0xFF;
 					valueString = String.format("  R=%3d, G=%3d, B=%3d", r, g, b);
 				}
 				else {
-					int val = vv.vol.data3D[0][zV+2][yV+2][xV+2] & 0xFF;	
+					int val = vv.vol.data3D[0][vv.vol.index(zV+2, yV+2, xV+2)] & 0xFF;	
 					valueString = String.format("  Value=%3d", val);
 				}
 			}
@@ -1403,13 +1403,13 @@ else if (source == imageRegion) {
 				if (xV >= 0 && xV < vv.vol.widthV && yV >= 0 && yV < vv.vol.heightV && zV >= 0 && zV < vv.vol.depthV) {
 					positionString = String.format("  x=%3d, y=%3d, z=%3d", (int)xV, (int)yV, ((int)zV+1));
 					if (control.isRGB) {
-						int r = vv.vol.data3D[1][(int)zV+2][(int)yV+2][(int)xV+2] & 0xFF;
-						int g = vv.vol.data3D[2][(int)zV+2][(int)yV+2][(int)xV+2] & 0xFF;
-						int b = vv.vol.data3D[3][(int)zV+2][(int)yV+2][(int)xV+2] & 0xFF;
+						int r = vv.vol.data3D[1][vv.vol.index((int)zV+2, (int)yV+2, (int)xV+2)] & 0xFF;
+						int g = vv.vol.data3D[2][vv.vol.index((int)zV+2, (int)yV+2, (int)xV+2)] & 0xFF;
+						int b = vv.vol.data3D[3][vv.vol.index((int)zV+2, (int)yV+2, (int)xV+2)] & 0xFF;
 						valueString = String.format("  R=%3d, G=%3d, B=%3d", r, g, b);
 					}
 					else {
-						int val = vv.vol.data3D[0][(int)zV+2][(int)yV+2][(int)xV+2] & 0xFF;	
+						int val = vv.vol.data3D[0][vv.vol.index((int)zV+2, (int)yV+2, (int)xV+2)] & 0xFF;	
 						valueString = String.format("  Value=%3d", val);
 					}
 				}
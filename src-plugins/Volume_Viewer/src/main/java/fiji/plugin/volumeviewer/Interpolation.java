@@ -12,9 +12,12 @@ public class Interpolation {
 	float[][] pw = new float[256][4]; 
 	float[][] sw = new float[256][4];
 	private Control control; 
+	private int widthP, sliceP;		// strides of the padded volumes
 
-	public Interpolation(Control control) {
+	public Interpolation(Control control, Volume vol) {
 		this.control = control;
+		this.widthP = vol.widthP;
+		this.sliceP = vol.widthP*vol.heightP;
 		initializeCubicPolynomialWeights();
 		initializeCubicSplineWeights();
 	}
@@ -91,7 +94,7 @@ void initializeCubicSplineWeights() {
 	}
 
 
-	int get(byte[][][] data3D, float z, float y, float x) {
+	int get(byte[] data3D, float z, float y, float x) {
 
 		x += 0.5; 
 		y += 0.5;
@@ -110,15 +113,14 @@ int get(byte[][][] data3D, float z, float y, float x) {
 			float[] wz = pw[(int) (dz*256)]; // getCubicPolynomialWeights(dz);
 
 			float vz = 0;
-			for (int zi = 0; zi < 4; zi++) {
-				byte[][] vDataZ = data3D[z0+zi];
+			int i0 = z0*sliceP + y0*widthP + x0;
+			for (int zi = 0; zi < 4; zi++, i0 += sliceP) {
 				float vy = 0; 
-				for (int yi = 0; yi < 4; yi++) {
-					byte[] vDataZY = vDataZ[y0+yi];
-					float vx = wx[0]*(0xFF & vDataZY[x0]) +
-							wx[1]*(0xFF & vDataZY[x0+1]) +
-							wx[2]*(0xFF & vDataZY[x0+2]) +
-							wx[3]*(0xFF & vDataZY[x0+3]);
+				for (int yi = 0, i = i0; yi < 4; yi++, i += widthP) {
+					float vx = wx[0]*(0xFF & data3D[i]) +
+							wx[1]*(0xFF & data3D[i+1]) +
+							wx[2]*(0xFF & data3D[i+2]) +
+							wx[3]*(0xFF & data3D[i+3]);
 
 					vy += wy[yi]*vx;
 				}
@@ -132,15 +134,14 @@ else if (control.interpolationMode == Control.TRICUBIC_SPLINE) {
 			float[] wz = sw[(int) (dz*256)]; // getCubicSplineWeights(dz);
 
 			float vz = 0;
-			for (int zi = 0; zi < 4; zi++) {
-				float vy = 0;
-				byte[][] vDataZ = data3D[z0+zi];
-				for (int yi = 0; yi < 4; yi++) {
-					byte[] vDataZY = vDataZ[y0+yi];
-					float vx = wx[0]*(0xFF & vDataZY[x0]) +
-							wx[1]*(0xFF & vDataZY[x0+1]) +
-							wx[2]*(0xFF & vDataZY[x0+2]) +
-							wx[3]*(0xFF & vDataZY[x0+3]);
+			int i0 = z0*sliceP + y0*widthP + x0;
+			for (int zi = 0; zi < 4; zi++, i0 += sliceP) {
+				float vy = 0; 
+				for (int yi = 0, i = i0; yi < 4; yi++, i += widthP) {
+					float vx = wx[0]*(0xFF & data3D[i]) +
+							wx[1]*(0xFF & data3D[i+1]) +
+							wx[2]*(0xFF & data3D[i+2]) +
+							wx[3]*(0xFF & data3D[i+3]);
 
 					vy += wy[yi]*vx;
 				}
@@ -153,16 +154,16 @@ else if (control.interpolationMode == Control.TRILINEAR) {
 			x0++;
 			y0++;
 			z0++;
-			int x1 = x0+1;
-			int y1 = y0+1;
 			float dx_ = 1-dx;
-			byte[][] data3D_z0 = data3D[z0]; 
-			byte[][] data3D_z1 = data3D[z0+1]; 
+			int i00 = z0*sliceP + y0*widthP + x0;	// z0 y0
+			int i10 = i00 + sliceP;					// z1 y0
+			int i01 = i00 + widthP;					// z0 y1
+			int i11 = i10 + widthP;					// z1 y1
 
-			float ab = (0xff & data3D_z0[y0][x0])*dx_ + dx*(0xff & data3D_z0[y0][x1]);
-			float ef = (0xff & data3D_z1[y0][x0])*dx_ + dx*(0xff & data3D_z1[y0][x1]);
-			float cd = (0xff & data3D_z0[y1][x0])*dx_ + dx*(0xff & data3D_z0[y1][x1]);
-			float gh = (0xff & data3D_z1[y1][x0])*dx_ + dx*(0xff & data3D_z1[y1][x1]);
+			float ab = (0xff & data3D[i00])*dx_ + dx*(0xff & data3D[i00+1]);
+			float ef = (0xff & data3D[i10])*dx_ + dx*(0xff & data3D[i10+1]);
+			float cd = (0xff & data3D[i01])*dx_ + dx*(0xff & data3D[i01+1]);
+			float gh = (0xff & data3D[i11])*dx_ + dx*(0xff & data3D[i11+1]);
 
 			float dy_ = 1-dy;
 			ab = ab*dy_ + dy*cd;
@@ -174,7 +175,7 @@ else if (control.interpolationMode == Control.TRILINEAR) {
 			x += 1.5; 
 			y += 1.5;
 			z += 1.5;
-			return 0xff & data3D[(int)z][(int)y][(int)x];	
+			return 0xff & data3D[(int)z*sliceP + (int)y*widthP + (int)x];	
 		}
 	}
 }
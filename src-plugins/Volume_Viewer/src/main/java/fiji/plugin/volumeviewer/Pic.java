@@ -15,6 +15,8 @@
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.SwingWorker;
 import javax.swing.UIManager;
@@ -26,7 +28,7 @@ public  class Pic {
 	private int width, height;
 	private Control control;
 	private Volume_Viewer vv;
-	byte[][][] volData3D = null; 
+	byte[] volData3D = null; 
 
 	private Interpolation interpolation;
 
@@ -48,7 +50,7 @@ public Pic (Control control, Volume_Viewer vv, int width, int height){
 		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 		image.setRGB(0, 0, width, height, pixels, 0, width);
 
-		interpolation = new Interpolation(control);
+		interpolation = new Interpolation(control, vv.vol);
 	}		
 
 	float xd;
@@ -130,9 +132,9 @@ void drawSlices() {
 					int pos = (yo_xy+y)*width + x + xo;
 					int x_ = (int) (x*xd);
 
-					int valR = 0xFF & vv.vol.data3D[1][z_+2][y_+2][x_+2];
-					int valG = 0xFF & vv.vol.data3D[2][z_+2][y_+2][x_+2];
-					int valB = 0xFF & vv.vol.data3D[3][z_+2][y_+2][x_+2];
+					int valR = 0xFF & vv.vol.data3D[1][vv.vol.index(z_+2, y_+2, x_+2)];
+					int valG = 0xFF & vv.vol.data3D[2][vv.vol.index(z_+2, y_+2, x_+2)];
+					int valB = 0xFF & vv.vol.data3D[3][vv.vol.index(z_+2, y_+2, x_+2)];
 					pixels[pos] = 0xFF000000 | (valR<<16) | (valG<<8) | (valB);
 				}	
 			}
@@ -146,9 +148,9 @@ void drawSlices() {
 					int pos = (yo_yz+y)*width + x + xo;
 					int y_ = (int)(x*yd);
 
-					int valR = 0xFF & vv.vol.data3D[1][vv.vol.depthV+1-z_][y_+2][x_+2];
-					int valG = 0xFF & vv.vol.data3D[2][vv.vol.depthV+1-z_][y_+2][x_+2];
-					int valB = 0xFF & vv.vol.data3D[3][vv.vol.depthV+1-z_][y_+2][x_+2];												
+					int valR = 0xFF & vv.vol.data3D[1][vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];
+					int valG = 0xFF & vv.vol.data3D[2][vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];
+					int valB = 0xFF & vv.vol.data3D[3][vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];												
 					pixels[pos] = 0xFF000000 | (valR<<16) | (valG<<8) | (valB);
 				}	
 			}
@@ -162,9 +164,9 @@ void drawSlices() {
 					int pos = (yo_xz+y)*width + x + xo;
 					x_ = (int) (x*xd); 
 
-					int valR = 0xFF & vv.vol.data3D[1][vv.vol.depthV+1-z_][y_+2][x_+2];
-					int valG = 0xFF & vv.vol.data3D[2][vv.vol.depthV+1-z_][y_+2][x_+2];
-					int valB = 0xFF & vv.vol.data3D[3][vv.vol.depthV+1-z_][y_+2][x_+2];
+					int valR = 0xFF & vv.vol.data3D[1][vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];
+					int valG = 0xFF & vv.vol.data3D[2][vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];
+					int valB = 0xFF & vv.vol.data3D[3][vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];
 					pixels[pos] = 0xFF000000 | (valR<<16) | (valG<<8) | (valB);
 				}
 			}
@@ -178,13 +180,13 @@ void drawSlices() {
 					int pos = (yo_xy+y)*width + x + xo;
 					int x_ = (int)(x*xd);
 
-					int val = 0xFF & vv.vol.data3D[0][z_+2][y_+2][x_+2];
+					int val = 0xFF & vv.vol.data3D[0][vv.vol.index(z_+2, y_+2, x_+2)];
 					pixels[pos] = 0xFF000000 | (val<<16) | (val<<8) | (val); 
 					
 //					// Gradient
-//					int valR = 0xFF & vv.vol.nx_3D[z_+2][y_+2][x_+2];
-//					int valG = 0xFF & vv.vol.ny_3D[z_+2][y_+2][x_+2];
-//					int valB = 0xFF & vv.vol.nx_3D[z_+2][y_+2][x_+2];
+//					int valR = 0xFF & vv.vol.nx_3D[vv.vol.index(z_+2, y_+2, x_+2)];
+//					int valG = 0xFF & vv.vol.ny_3D[vv.vol.index(z_+2, y_+2, x_+2)];
+//					int valB = 0xFF & vv.vol.nx_3D[vv.vol.index(z_+2, y_+2, x_+2)];
 //					pixels[pos] = 0xFF000000 | (valR<<16) | (valG<<8) | (valB);
 				}	
 			}
@@ -199,12 +201,12 @@ void drawSlices() {
 					int pos = (yo_yz+y)*width + x + xo;
 					int y_ = (int) (x*yd);
 
-					int val = 0xFF & vv.vol.data3D[0][vv.vol.depthV+1 - z_][y_+2][x_+2];
+					int val = 0xFF & vv.vol.data3D[0][vv.vol.index(vv.vol.depthV+1 - z_, y_+2, x_+2)];
 					pixels[pos] = 0xFF000000 | (val<<16) | (val<<8) | (val); 
 					
-//					int valR = 0xFF & vv.vol.nx_3D[vv.vol.depthV+1-z_][y_+2][x_+2];
-//					int valG = 0xFF & vv.vol.ny_3D[vv.vol.depthV+1-z_][y_+2][x_+2];
-//					int valB = 0xFF & vv.vol.nx_3D[vv.vol.depthV+1-z_][y_+2][x_+2];												
+//					int valR = 0xFF & vv.vol.nx_3D[vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];
+//					int valG = 0xFF & vv.vol.ny_3D[vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];
+//					int valB = 0xFF & vv.vol.nx_3D[vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];												
 //					pixels[pos] = 0xFF000000 | (valR<<16) | (valG<<8) | (valB);
 				}	
 			}
@@ -219,12 +221,12 @@ void drawSlices() {
 					int pos = (yo_xz+y)*width + x + xo;
 					x_ = (int) (x*xd); 
 
-					int val = 0xFF & vv.vol.data3D[0][vv.vol.depthV+1-z_][y_+2][x_+2];
+					int val = 0xFF & vv.vol.data3D[0][vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];
 					pixels[pos] = 0xFF000000 | (val<<16) | (val<<8) | (val); 
 					
-//					int valR = 0xFF & vv.vol.nx_3D[vv.vol.depthV+1-z_][y_+2][x_+2];
-//					int valG = 0xFF & vv.vol.ny_3D[vv.vol.depthV+1-z_][y_+2][x_+2];
-//					int valB = 0xFF & vv.vol.nz_3D[vv.vol.depthV+1-z_][y_+2][x_+2];
+//					int valR = 0xFF & vv.vol.nx_3D[vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];
+//					int valG = 0xFF & vv.vol.ny_3D[vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];
+//					int valB = 0xFF & vv.vol.nz_3D[vv.vol.index(vv.vol.depthV+1-z_, y_+2, x_+2)];
 //					pixels[pos] = 0xFF000000 | (valR<<16) | (valG<<8) | (valB);
 				}
 			}
@@ -270,10 +272,7 @@ public int[] getValuesfromSlices(int xm, int ym) {
 			int x_ = (int)(x*xd);
 			int y_ = (int)(y*yd);
 			int z_ = (int)(control.positionFactorZ*(vv.vol.depthV-1));
-			vals[0] = 0xFF & vv.vol.data3D[0][z_+2][y_+2][x_+2];
-			vals[1] = 0xFF & vv.vol.grad3D[z_+2][y_+2][x_+2];
-			vals[2] = 0xFF & vv.vol.mean3D[z_+2][y_+2][x_+2];
-			vals[3] = 0xFF & vv.vol.diff3D[z_+2][y_+2][x_+2];
+			System.arraycopy(vv.vol.getValues(z_, y_, x_), 0, vals, 0, 4);
 			vals[4] = z_;
 			vals[5] = y_;
 			vals[6] = x_;
@@ -287,10 +286,7 @@ else if (xm >= xo && xm < xo+Wy && ym >= yo_yz && ym < yo_yz+Wz) {
 			int x_ = (int)(control.positionFactorX*(vv.vol.widthV-1)); 
 			int y_ = (int) (x*yd);
 			//System.out.println(x_ + " " +y_ + " " + z_);
-			vals[0] = 0xFF & vv.vol.data3D[0][vv.vol.depthV+1 - z_][y_+2][x_+2];
-			vals[1] = 0xFF & vv.vol.grad3D[vv.vol.depthV+1 - z_][y_+2][x_+2];
-			vals[2] = 0xFF & vv.vol.mean3D[vv.vol.depthV+1 - z_][y_+2][x_+2];
-			vals[3] = 0xFF & vv.vol.diff3D[vv.vol.depthV+1 - z_][y_+2][x_+2];
+			System.arraycopy(vv.vol.getValues(vv.vol.depthV-1 - z_, y_, x_), 0, vals, 0, 4);
 			vals[4] = vv.vol.depthV-1 - z_;
 			vals[5] = y_;
 			vals[6] = x_;
@@ -303,10 +299,7 @@ else if (xm >= xo && xm < xo+Wx && ym >= yo_xz && ym < yo_xz+Wz) {
 			int z_ = (int)(y*zd);
 			int y_ = (int)(control.positionFactorY*(vv.vol.heightV-1));
 			int x_ = (int) (x*xd);
-			vals[0] = 0xFF & vv.vol.data3D[0][vv.vol.depthV+1 - z_][y_+2][x_+2];
-			vals[1] = 0xFF & vv.vol.grad3D[vv.vol.depthV+1 - z_][y_+2][x_+2];
-			vals[2] = 0xFF & vv.vol.mean3D[vv.vol.depthV+1 - z_][y_+2][x_+2];
-			vals[3] = 0xFF & vv.vol.diff3D[vv.vol.depthV+1 - z_][y_+2][x_+2];
+			System.arraycopy(vv.vol.getValues(vv.vol.depthV-1 - z_, y_, x_), 0, vals, 0, 4);
 			vals[4] = vv.vol.depthV-1 - z_;
 			vals[5] = y_;
 			vals[6] = x_;
@@ -561,8 +554,7 @@ public void render_SliceAndBorders(){
 		updateImage();
 	}
 
-	private int maxThreads = 8;
-	private int numThreads = 1;
+	private int numThreads = Runtime.getRuntime().availableProcessors();
 	private int subMax;
 	private int counter = 0;
 	private boolean doStopRendering;
@@ -573,12 +565,20 @@ public void render_SliceAndBorders(){
 	private boolean lastReady;
 	private boolean isRGB;
 
+	// the screen is rendered in tiles of about TILE x TILE pixels, handed out to the threads
+	private static final int TILE = 32;
+	private int tileSize, tileXStart, tilesX, tilesY;
+
+	// bricks of the volume in which the transfer function is zero everywhere (null: none)
+	private Bricks bricks;
+	private boolean[] emptyBricks;
+
 
 	public void render_volume(int sub){
 		if (control.LOG) System.out.println("render volume, sub: " + sub);
 		
 		isRendering = true;
-		counter = numThreads = (sub == subMax) ? 1 : maxThreads;
+		counter = numThreads;
 		
 		setPixelsToZero();
 
@@ -649,34 +649,106 @@ else if (control.alphaMode == Control.ALPHA3) {
 				}
 			}
 		}
-		// calculate gradient from alpha
-		if ((!control.drag && control.alphaWasChanged)) 
+		// calculate gradient from alpha (only needed for the illumination)
+		if (control.useLight && (vv.vol.nx_3D == null || (!control.drag && control.alphaWasChanged))) 
 			vv.vol.calculateGradients();
 
+		// make sure the volumes needed by the transfer function exist
 		volData3D = vv.vol.data3D[0];
+		if (control.alphaMode == Control.ALPHA2)
+			vv.vol.getGrad3D();
+		else if (control.alphaMode == Control.ALPHA3) {
+			vv.vol.getMean3D();
+			vv.vol.getDiff3D();
+		}
+		else if (control.alphaMode == Control.ALPHA4) {
+			vv.vol.getAPaint3D();
+			vv.vol.getCol3D();
+		}
+
+		// tricubic polynomial interpolation may overshoot the value range
+		findEmptyBricks(actualInterpolationMode == Control.TRICUBIC_POLYNOMIAL ? 0.5f : 0);
 		
+		// tiles start at multiples of sub, so that each tile contains the
+		// samples it copies for sub > 1
 		ySmin = (ySmin/sub)*sub;
-		int stripHeight = (ySmax-ySmin) / numThreads;
-		stripHeight = (stripHeight/sub) *sub;
-		int stripStart = ySmin;
+		tileSize = Math.max(1, TILE/sub)*sub;
+		tileXStart = (xSmin/sub)*sub;
+		tilesX = Math.max(0, (xSmax - tileXStart + tileSize-1) / tileSize);
+		tilesY = Math.max(0, (ySmax - ySmin + tileSize-1) / tileSize);
 
 		isRGB = control.isRGB && control.lutNr == 0;
 		
-		for(int i = 0; i < numThreads-1; i++, stripStart += stripHeight) 
-			new RenderCalculations(sub, nd, dxV, dyV, dzV, xSmin, xSmax, stripStart, stripStart+stripHeight, zSmin).execute();
-		new RenderCalculations(sub, nd, dxV, dyV, dzV, xSmin, xSmax, stripStart, stripStart+stripHeight, zSmin).execute();
+		AtomicInteger nextTile = new AtomicInteger();
+		for(int i = 0; i < numThreads; i++) 
+			new RenderCalculations(sub, nd, dxV, dyV, dzV, xSmin, xSmax, ySmin, ySmax, zSmin, nextTile).execute();
 			
 		control.interpolationMode = actualInterpolationMode;			
 	}
 
+	/*
+	 * Finds the bricks in which the opacity is zero for all values that
+	 * can be interpolated from the value ranges of the brick, so that the
+	 * rays can skip them. The spread is the relative overshoot of the
+	 * interpolation. The painted opacities (ALPHA4) are not skipped.
+	 */
+	private void findEmptyBricks(float spread) {
+		bricks = null;
+		emptyBricks = null;
+		if (control.alphaMode == Control.ALPHA4)
+			return;
+
+		Bricks b1 = vv.vol.getDataBricks(), b2 = null;
+		int[][] count;	// number of values with non-zero opacity, summed from (0, 0)
+		if (control.alphaMode == Control.ALPHA1) {
+			count = new int[257][2];
+			for (int v = 0; v < 256; v++)
+				count[v+1][1] = count[v][1] + (vv.a1_R[v] != 0 ? 1 : 0);
+		}
+		else {
+			float[][] a = vv.a2_R;
+			if (control.alphaMode == Control.ALPHA2)
+				b2 = vv.vol.getGradBricks();
+			else {
+				b1 = vv.vol.getMeanBricks();
+				b2 = vv.vol.getDiffBricks();
+				a = vv.a3_R;
+			}
+			count = new int[257][129];
+			for (int v = 0; v < 256; v++)
+				for (int g = 0; g < 128; g++)
+					count[v+1][g+1] = count[v][g+1] + count[v+1][g] - count[v][g] + (a[v][g] != 0 ? 1 : 0);
+		}
+
+		boolean[] empty = new boolean[b1.min.length];
+		int skipped = 0;
+		for (int b = 0; b < empty.length; b++) {
+			int lo = b1.low(b, spread), hi = b1.high(b, spread) + 1;
+			int lo2 = 0, hi2 = 1;
+			if (b2 != null) {
+				lo2 = Math.min(127, b2.low(b, spread));
+				hi2 = Math.min(127, b2.high(b, spread)) + 1;
+			}
+			empty[b] = count[hi][hi2] - count[lo][hi2] - count[hi][lo2] + count[lo][lo2] == 0;
+			if (empty[b])
+				skipped++;
+		}
+		if (control.LOG) System.out.println("empty bricks: " + skipped + " of " + empty.length);
+		if (skipped > 0) {
+			bricks = b1;
+			emptyBricks = empty;
+		}
+	}
+
 
 	private class RenderCalculations extends SwingWorker<Void, Void> {
 
 		private int sub, nd, xSMin, xSMax, ySMin, ySMax;
 		private float dxV, dyV, dzV, zSMin;
+		private AtomicInteger nextTile;
 		
 		public RenderCalculations(int sub, int nd, float dxV, float dyV, float dzV, 
-				int xSMin, int xSMax, int ySMin, int ySMax, float zSMin) {
+				int xSMin, int xSMax, int ySMin, int ySMax, float zSMin, AtomicInteger nextTile) {
 			this.sub = sub;
 			this.nd = nd;
 			this.dxV = dxV;
@@ -687,6 +759,7 @@ public RenderCalculations(int sub, int nd, float dxV, float dyV, float dzV,
 			this.ySMin = ySMin;
 			this.ySMax = ySMax;
 			this.zSMin = zSMin;
+			this.nextTile = nextTile;
 		}
 
 		@Override
@@ -733,226 +806,245 @@ private Void doRendering() {
 
 			// Startpunkt xSMin ySMin zSMin (tiefster Punkt) in Screenkoordinaten
 			float[] xyzV = vv.trScreen2Vol(xSMin+s_2, ySMin+s_2, zSMin);
-			float x0V = xyzV[0], y0V = xyzV[1], z0V = xyzV[2]; 
+			float x00V = xyzV[0], y00V = xyzV[1], z00V = xyzV[2]; 
 
 			// inkrementelle Aenderung in Volumenkoordinaten
 			xyzV = vv.trScreen2Vol(xSMin+s_2+1, ySMin+s_2, zSMin);
-			float dxVx = xyzV[0] - x0V, dyVx = xyzV[1] - y0V, dzVx = xyzV[2] - z0V; 
+			float dxVx = xyzV[0] - x00V, dyVx = xyzV[1] - y00V, dzVx = xyzV[2] - z00V; 
 
 			xyzV = vv.trScreen2Vol(xSMin+s_2, ySMin+s_2+1, zSMin);
-			float dxVy = xyzV[0] - x0V, dyVy = xyzV[1] - y0V, dzVy = xyzV[2] - z0V; 
-
-
-			for (int yS = ySMin; yS < ySMax; yS++) {				
-				for (int j=0, xS = xSMin; xS < xSMax; xS++, j++) {
-					if (doStopRendering) return null;
-					if (vv.cube.isInside(xS, yS)) {
-						if (yS%sub == 0 && xS%sub == 0) {
-							boolean hasBeenInTheVolume = false;
-
-							float rand = (float) (-Math.random());
-							float xV = x0V + j*dxVx + rand*dxV; 
-							float yV = y0V + j*dyVx + rand*dyV; 
-							float zV = z0V + j*dzVx + rand*dzV; 
-
-							int ns = 0;		// check where to start rendering
-							if(xV < 0) 
-								if  (dxV > 0) ns = (int) (-xV / dxV);
-								else continue;
-							else if(xV > vv.vol.widthV) 
-								if (dxV < 0) ns = (int) Math.max(((vv.vol.widthV-xV)/dxV),ns);
-								else continue;
-							if(yV < 0) 
-								if (dyV > 0) ns = (int) Math.max((-yV/dyV), ns);
-								else continue;
-							else if(yV > vv.vol.heightV) 
-								if (dyV < 0) ns = (int) Math.max(((vv.vol.heightV-yV)/dyV), ns);
-								else continue;
-							if(zV < 0) 
-								if (dzV > 0) ns = (int) Math.max((-zV/dzV), ns);
-								else continue;
-							else if(zV > vv.vol.depthV) 
-								if(dzV < 0) ns = (int) Math.max(((vv.vol.depthV-zV)/dzV), ns);
-								else continue;
-
-							xV += ns*dxV;
-							yV += ns*dyV;
-							zV += ns*dzV;		
-
-							float valR = 0, valG=0, valB=0, nx = 0, ny= 0, nz= 0, a, aNext = 1, sumA = 1;
-							int valProj = 0, mean=0, diff=0, rMax=0, gMax=0, bMax=0, val;
-							int[] actLut = null;
-
-							boolean didStartInVolume = false;
-							for (int n = ns; n < nd; n++, xV += dxV, yV += dyV, zV += dzV) {
-								if (xV >= 0 && xV <= vv.vol.widthV && yV >= 0 && yV <= vv.vol.heightV && zV >= 0 && zV <= vv.vol.depthV) { 
-									hasBeenInTheVolume = true;
+			float dxVy = xyzV[0] - x00V, dyVy = xyzV[1] - y00V, dzVy = xyzV[2] - z00V; 
+
+			Random random = new Random();
+			Bricks bricks = Pic.this.bricks;
+			boolean[] emptyBricks = Pic.this.emptyBricks;
+
+			for (int tile = nextTile.getAndIncrement(); tile < tilesX*tilesY; tile = nextTile.getAndIncrement()) {
+				int xT = tileXStart + (tile % tilesX)*tileSize;
+				int yT = ySMin + (tile / tilesX)*tileSize;
+				int xTMax = Math.min(xT + tileSize, xSMax);
+				int yTMax = Math.min(yT + tileSize, ySMax);
+
+				for (int yS = yT; yS < yTMax; yS++) {				
+					float x0V = x00V + (yS-ySMin)*dxVy;
+					float y0V = y00V + (yS-ySMin)*dyVy;
+					float z0V = z00V + (yS-ySMin)*dzVy;
+					for (int xS = Math.max(xT, xSMin); xS < xTMax; xS++) {
+						int j = xS - xSMin;
+						if (doStopRendering) return null;
+						if (vv.cube.isInside(xS, yS)) {
+							if (yS%sub == 0 && xS%sub == 0) {
+								boolean hasBeenInTheVolume = false;
+
+								float rand = -random.nextFloat();
+								float xV = x0V + j*dxVx + rand*dxV; 
+								float yV = y0V + j*dyVx + rand*dyV; 
+								float zV = z0V + j*dzVx + rand*dzV; 
+
+								int ns = 0;		// check where to start rendering
+								if(xV < 0) 
+									if  (dxV > 0) ns = (int) (-xV / dxV);
+									else continue;
+								else if(xV > vv.vol.widthV) 
+									if (dxV < 0) ns = (int) Math.max(((vv.vol.widthV-xV)/dxV),ns);
+									else continue;
+								if(yV < 0) 
+									if (dyV > 0) ns = (int) Math.max((-yV/dyV), ns);
+									else continue;
+								else if(yV > vv.vol.heightV) 
+									if (dyV < 0) ns = (int) Math.max(((vv.vol.heightV-yV)/dyV), ns);
+									else continue;
+								if(zV < 0) 
+									if (dzV > 0) ns = (int) Math.max((-zV/dzV), ns);
+									else continue;
+								else if(zV > vv.vol.depthV) 
+									if(dzV < 0) ns = (int) Math.max(((vv.vol.depthV-zV)/dzV), ns);
+									else continue;
+
+								xV += ns*dxV;
+								yV += ns*dyV;
+								zV += ns*dzV;		
+
+								float valR = 0, valG=0, valB=0, nx = 0, ny= 0, nz= 0, a, aNext = 1, sumA = 1;
+								int valProj = 0, mean=0, diff=0, rMax=0, gMax=0, bMax=0, val;
+								int[] actLut = null;
+
+								boolean didStartInVolume = false;
+								for (int n = ns; n < nd; n++, xV += dxV, yV += dyV, zV += dzV) {
+									if (xV >= 0 && xV <= vv.vol.widthV && yV >= 0 && yV <= vv.vol.heightV && zV >= 0 && zV <= vv.vol.depthV) { 
+										hasBeenInTheVolume = true;
+
+										if (emptyBricks != null && emptyBricks[bricks.index(xV, yV, zV)]) {
+											// skip the remaining samples in this brick
+											for (int k = Bricks.stepsInBrick(xV, yV, zV, dxV, dyV, dzV); k > 1; k--) {
+												n++; xV += dxV; yV += dyV; zV += dzV;
+											}
+											continue;
+										}
 									
-									if (control.alphaMode == Control.ALPHA1) {
-										val = interpolation.get(volData3D, zV, yV, xV);
-										a = vv.a1_R[val];
-										if (a == 0) continue;
-										actLut = vv.lookupTable.lut[val];
-									}
-									else if (control.alphaMode == Control.ALPHA2) {
-										val = interpolation.get(volData3D, zV, yV, xV);
-										int grad = Math.min(127,interpolation.get(vv.vol.grad3D, zV, yV, xV));
-										a = vv.a2_R[val][grad];
-										if (a == 0) continue;
-										actLut = vv.lookupTable.lut2D_2[val][grad];
-									}
-									else if (control.alphaMode == Control.ALPHA3) {
-										mean = interpolation.get(vv.vol.mean3D, zV, yV, xV);
-										diff = Math.min(127,interpolation.get(vv.vol.diff3D, zV, yV, xV));
-										a = vv.a3_R[mean][diff];
-										if (a == 0) continue;
-										actLut = vv.lookupTable.lut2D_3[mean][diff];
-										val = mean;
-									}
-									else { // ALPHA4
-										a = interpolation.get(vv.vol.aPaint_3D, zV, yV, xV);
-										if (a == 0) continue;
-										a *= 0.00392f; //  / 255;
-										a = a * a; 	
-										val = interpolation.get(vv.vol.col_3D, zV, yV, xV);
-										actLut = vv.lookupTable.lut[val];
-									}
+										if (control.alphaMode == Control.ALPHA1) {
+											val = interpolation.get(volData3D, zV, yV, xV);
+											a = vv.a1_R[val];
+											if (a == 0) continue;
+											actLut = vv.lookupTable.lut[val];
+										}
+										else if (control.alphaMode == Control.ALPHA2) {
+											val = interpolation.get(volData3D, zV, yV, xV);
+											int grad = Math.min(127,interpolation.get(vv.vol.grad3D, zV, yV, xV));
+											a = vv.a2_R[val][grad];
+											if (a == 0) continue;
+											actLut = vv.lookupTable.lut2D_2[val][grad];
+										}
+										else if (control.alphaMode == Control.ALPHA3) {
+											mean = interpolation.get(vv.vol.mean3D, zV, yV, xV);
+											diff = Math.min(127,interpolation.get(vv.vol.diff3D, zV, yV, xV));
+											a = vv.a3_R[mean][diff];
+											if (a == 0) continue;
+											actLut = vv.lookupTable.lut2D_3[mean][diff];
+											val = mean;
+										}
+										else { // ALPHA4
+											a = interpolation.get(vv.vol.aPaint_3D, zV, yV, xV);
+											if (a == 0) continue;
+											a *= 0.00392f; //  / 255;
+											a = a * a; 	
+											val = interpolation.get(vv.vol.col_3D, zV, yV, xV);
+											actLut = vv.lookupTable.lut[val];
+										}
 									
-									if (n - ns < 3 && (xV >= 3 && xV <= vv.vol.widthV-3 && yV >= 3 && yV <= vv.vol.heightV-3 && zV >= 3 && zV <= vv.vol.depthV-3))
-										didStartInVolume = true;
+										if (n - ns < 3 && (xV >= 3 && xV <= vv.vol.widthV-3 && yV >= 3 && yV <= vv.vol.heightV-3 && zV >= 3 && zV <= vv.vol.depthV-3))
+											didStartInVolume = true;
 									
-									int r, g, b;
-									if(isRGB) {
-										r = vv.lookupTable.lut[interpolation.get(vv.vol.data3D[1], zV, yV, xV)][0];
-										g = vv.lookupTable.lut[interpolation.get(vv.vol.data3D[2], zV, yV, xV)][1];
-										b = vv.lookupTable.lut[interpolation.get(vv.vol.data3D[3], zV, yV, xV)][2];
-									}
-									else {
-										r = actLut[0]; g = actLut[1]; b = actLut[2];	
-									}
+										int r, g, b;
+										if(isRGB) {
+											r = vv.lookupTable.lut[interpolation.get(vv.vol.data3D[1], zV, yV, xV)][0];
+											g = vv.lookupTable.lut[interpolation.get(vv.vol.data3D[2], zV, yV, xV)][1];
+											b = vv.lookupTable.lut[interpolation.get(vv.vol.data3D[3], zV, yV, xV)][2];
+										}
+										else {
+											r = actLut[0]; g = actLut[1]; b = actLut[2];	
+										}
 									
-									if (control.renderMode == Control.VOLUME) {
-										float an = a*aNext;
-										valR += an * r;
-										valG += an * g;
-										valB += an * b;	
+										if (control.renderMode == Control.VOLUME) {
+											float an = a*aNext;
+											valR += an * r;
+											valG += an * g;
+											valB += an * b;	
 										
-										if (control.useLight) {
-											int dx = interpolation.get(vv.vol.nx_3D, zV, yV, xV) - 128;
-											int dy = interpolation.get(vv.vol.ny_3D, zV, yV, xV) - 128;
-											int dz = interpolation.get(vv.vol.nz_3D, zV, yV, xV) - 128;
-											nx += an * dx;
-											ny += an * dy;
-											nz += an * dz;
+											if (control.useLight) {
+												int dx = interpolation.get(vv.vol.nx_3D, zV, yV, xV) - 128;
+												int dy = interpolation.get(vv.vol.ny_3D, zV, yV, xV) - 128;
+												int dz = interpolation.get(vv.vol.nz_3D, zV, yV, xV) - 128;
+												nx += an * dx;
+												ny += an * dy;
+												nz += an * dz;
 
+											}
+											aNext *= (1-a);
+											if (aNext < 0.02) {
+												aNext = 0; break;
+											}
 										}
-										aNext *= (1-a);
-										if (aNext < 0.02) {
-											aNext = 0; break;
+										else if (control.renderMode == Control.PROJECTION) {
+											valR += a * r;
+											valG += a * g;
+											valB += a * b;
+											sumA += a;	
 										}
-									}
-									else if (control.renderMode == Control.PROJECTION) {
-										valR += a * r;
-										valG += a * g;
-										valB += a * b;
-										sumA += a;	
-									}
-									else { // if (renderMode == PROJECTION_MAX) {
-										if (isRGB) {
-											if (r+g+b > valProj) {
-												valProj = r+g+b;
-												rMax = r;
-												gMax = g;
-												bMax = b;
+										else { // if (renderMode == PROJECTION_MAX) {
+											if (isRGB) {
+												if (r+g+b > valProj) {
+													valProj = r+g+b;
+													rMax = r;
+													gMax = g;
+													bMax = b;
+												}
 											}
+											else if (val > valProj) 
+												valProj = val;
 										}
-										else if (val > valProj) 
-											valProj = val;
 									}
+									else if (hasBeenInTheVolume) // has left the volume
+										break;
 								}
-								else if (hasBeenInTheVolume) // has left the volume
-									break;
-							}
 
-							if (control.renderMode == Control.VOLUME) {
-								if (didStartInVolume) {
-									nx += 20*dxV; ny += 20*dyV; nz += 20*dzV;
-								}
-								int alpha = (int) ((1-aNext)*255); 
-								if (alpha > 0) {
-									if (control.useLight) {
-										// Oberflächen Normalen-Vektor 
-										float[] xyz0 = vv.trVolume2Screen(0, 0, 0);
-										float[] xyz = vv.trVolume2Screen(nx/control.scale, ny/control.scale, nz/(control.zAspect*control.scale));
-
-										float[] n = new float[3]; 
-										n[0] = xyz[0]-xyz0[0];
-										n[1] = xyz[1]-xyz0[1];
-										n[2] = xyz[2]-xyz0[2];
+								if (control.renderMode == Control.VOLUME) {
+									if (didStartInVolume) {
+										nx += 20*dxV; ny += 20*dyV; nz += 20*dzV;
+									}
+									int alpha = (int) ((1-aNext)*255); 
+									if (alpha > 0) {
+										if (control.useLight) {
+											// Oberflächen Normalen-Vektor 
+											float[] xyz0 = vv.trVolume2Screen(0, 0, 0);
+											float[] xyz = vv.trVolume2Screen(nx/control.scale, ny/control.scale, nz/(control.zAspect*control.scale));
+
+											float[] n = new float[3]; 
+											n[0] = xyz[0]-xyz0[0];
+											n[1] = xyz[1]-xyz0[1];
+											n[2] = xyz[2]-xyz0[2];
 											
-										float lenN = (n[0]*n[0] + n[1]*n[1] + n[2]*n[2]);
-										if (lenN > 0) {
-											lenN = (float) (1/Math.sqrt(lenN));
-											n[0] *= lenN;
-											n[1] *= lenN;
-											n[2] *= lenN;
-										}
+											float lenN = (n[0]*n[0] + n[1]*n[1] + n[2]*n[2]);
+											if (lenN > 0) {
+												lenN = (float) (1/Math.sqrt(lenN));
+												n[0] *= lenN;
+												n[1] *= lenN;
+												n[2] *= lenN;
+											}
 										
-										float diffuse = (n[0]*light[0] + n[1]*light[1] + n[2]*light[2]);
-
-										// specular // Reflexion 2*(N*L)*N - L
-										float sp = 2*(n[0]*light[0] + n[1]*light[1] + n[2]*light[2]);  // scalar product sp = 2*N*L
-										//float[] r = new float[3];
-										//r[0] = sp*n[0] - light[0];
-										//r[1] = sp*n[1] - light[1];
-										//r[2] = sp*n[2] - light[2];
-
-										//float[] v = new float[3]; // view
-										//v[2] = 1;
-										//float spec = Math.max(0, r[0]*v[0] + r[1]*v[1] + r[2]*v[2]);
-										float spec = Math.max(0, (sp*n[2] - light[2]));
-										spec = (float) (Math.pow(spec,control.shineValue)*((control.shineValue+2)/(2*Math.PI)));
-
-										float lightFactor = control.ambientValue  + diffuse*control.diffuseValue  + spec*control.specularValue;
-										valR = (int) Math.min(255, Math.max(0, control.objectLightValue*valR + lightRed * lightFactor));
-										valG = (int) Math.min(255, Math.max(0, control.objectLightValue*valG + lightGreen*lightFactor));
-										valB = (int) Math.min(255, Math.max(0, control.objectLightValue*valB + lightBlue* lightFactor));										
-
-//										valR = (int) Math.min(255, Math.max(0, 128 + 127*n[0]));
-//										valG = (int) Math.min(255, Math.max(0, 128 + 127*n[1]));
-//										valB = (int) Math.min(255, Math.max(0, 128 + 127*n[2]));		
+											float diffuse = (n[0]*light[0] + n[1]*light[1] + n[2]*light[2]);
+
+											// specular // Reflexion 2*(N*L)*N - L
+											float sp = 2*(n[0]*light[0] + n[1]*light[1] + n[2]*light[2]);  // scalar product sp = 2*N*L
+											//float[] r = new float[3];
+											//r[0] = sp*n[0] - light[0];
+											//r[1] = sp*n[1] - light[1];
+											//r[2] = sp*n[2] - light[2];
+
+											//float[] v = new float[3]; // view
+											//v[2] = 1;
+											//float spec = Math.max(0, r[0]*v[0] + r[1]*v[1] + r[2]*v[2]);
+											float spec = Math.max(0, (sp*n[2] - light[2]));
+											spec = (float) (Math.pow(spec,control.shineValue)*((control.shineValue+2)/(2*Math.PI)));
+
+											float lightFactor = control.ambientValue  + diffuse*control.diffuseValue  + spec*control.specularValue;
+											valR = (int) Math.min(255, Math.max(0, control.objectLightValue*valR + lightRed * lightFactor));
+											valG = (int) Math.min(255, Math.max(0, control.objectLightValue*valG + lightGreen*lightFactor));
+											valB = (int) Math.min(255, Math.max(0, control.objectLightValue*valB + lightBlue* lightFactor));										
+
+	//										valR = (int) Math.min(255, Math.max(0, 128 + 127*n[0]));
+	//										valG = (int) Math.min(255, Math.max(0, 128 + 127*n[1]));
+	//										valB = (int) Math.min(255, Math.max(0, 128 + 127*n[2]));		
 										
-//										valR = (int) (lenN*255);
-//										valG = (int) (lenN*255);
-//										valB = (int) (lenN*255);											
+	//										valR = (int) (lenN*255);
+	//										valG = (int) (lenN*255);
+	//										valB = (int) (lenN*255);											
 
-									}
+										}
 
-									pixels[yS*width + xS] = (alpha << 24) | ((int) valR << 16) | ((int) valG << 8) | ((int) valB);
+										pixels[yS*width + xS] = (alpha << 24) | ((int) valR << 16) | ((int) valG << 8) | ((int) valB);
+									}
+								}
+								else if (control.renderMode == Control.PROJECTION) {
+									int al = 255;  
+									valR /= sumA;
+									valG /= sumA;
+									valB /= sumA;
+									pixels[yS*width + xS] = (al << 24) | ((int) valR << 16) | ((int) valG << 8) | ((int) valB);
+								}
+								else {
+									if (isRGB)
+										pixels[yS*width + xS] = (255 << 24) | (rMax << 16) | (gMax << 8) | bMax;
+									else
+										pixels[yS*width + xS] = vv.lookupTable.colors[valProj];
 								}
 							}
-							else if (control.renderMode == Control.PROJECTION) {
-								int al = 255;  
-								valR /= sumA;
-								valG /= sumA;
-								valB /= sumA;
-								pixels[yS*width + xS] = (al << 24) | ((int) valR << 16) | ((int) valG << 8) | ((int) valB);
-							}
-							else {
-								if (isRGB)
-									pixels[yS*width + xS] = (255 << 24) | (rMax << 16) | (gMax << 8) | bMax;
-								else
-									pixels[yS*width + xS] = vv.lookupTable.colors[valProj];
+							else { // copy previous value (for sub > 1)
+								pixels[yS*width + xS] = pixels[ (yS/sub)*sub*width + (xS/sub)*sub];	
 							}
-						}
-						else { // copy previous value (for sub > 1)
-							pixels[yS*width + xS] = pixels[ (yS/sub)*sub*width + (xS/sub)*sub];	
-						}
-					}	
+						}	
+					}
 				}
-				x0V += dxVy; 
-				y0V += dyVy; 
-				z0V += dzVy; 
 			}
 			return null;
 		}
@@ -12,6 +12,7 @@
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.util.Arrays;
 
 import javax.swing.JPanel;
 
@@ -22,22 +23,14 @@ public class TFalpha4 extends JPanel implements MouseListener, MouseMotionListen
 	private Control control;
 
 
-	private int widthV, heightV, depthV;
-	private byte[][][] alpha_3D;
-	private byte[][][] aPaint_3D2;
+	private Volume vol;
 	private int alphaOffset = 0;
 	
-	public TFalpha4(Control control, Volume vol, byte[][][] alpha_3D, byte[][][] aPaint_3D2) {
+	public TFalpha4(Control control, Volume vol) {
 		super();
 		
 		this.control = control;
-
-		this.alpha_3D = alpha_3D;
-		this.aPaint_3D2 = aPaint_3D2;
-		
-		depthV = vol.depthV;
-		heightV = vol.heightV;
-		widthV = vol.widthV;
+		this.vol = vol;
 		
 		setPreferredSize(new Dimension(256, 128));
 		addMouseListener(this);
@@ -46,27 +39,25 @@ public TFalpha4(Control control, Volume vol, byte[][][] alpha_3D, byte[][][] aPa
 	}
 	
 
+	// the painted volumes are only allocated once something is painted
 	public void clearAlpha() {
-		for(int z=0; z < depthV+4; z++) {
-			for (int y = 0; y < heightV+4; y++) {
-				for (int x = 0; x < widthV+4; x++) {
-					alpha_3D[z][y][x] = aPaint_3D2[z][y][x] = 0;
-				}
-			}
-		}
+		if (vol.aPaint_3D != null)
+			Arrays.fill(vol.aPaint_3D, (byte)0);
+		if (vol.aPaint_3D2 != null)
+			Arrays.fill(vol.aPaint_3D2, (byte)0);
 		control.alphaWasChanged = true;
 	}
 
 	public void scaleAlpha() {
-		for(int z=0; z < depthV+4; z++) {
-			for (int y = 0; y < heightV+4; y++) {
-				for (int x = 0; x < widthV+4; x++) {
-					int alpha = 2*aPaint_3D2[z][y][x];
-					if (alpha > 0) {
-						alpha += alphaOffset ;
-						alpha = Math.min(255, Math.max(0, alpha));
-						alpha_3D[z][y][x] = (byte)alpha;
-					}
+		byte[] alpha_3D = vol.aPaint_3D;
+		byte[] aPaint_3D2 = vol.aPaint_3D2;
+		if (alpha_3D != null && aPaint_3D2 != null) {
+			for (int i = 0; i < alpha_3D.length; i++) {
+				int alpha = 2*aPaint_3D2[i];
+				if (alpha > 0) {
+					alpha += alphaOffset ;
+					alpha = Math.min(255, Math.max(0, alpha));
+					alpha_3D[i] = (byte)alpha;
 				}
 			}
 		}
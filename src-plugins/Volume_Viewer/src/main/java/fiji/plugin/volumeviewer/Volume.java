@@ -20,25 +20,37 @@ public class Volume {
 	int heightV;
 	int depthV;
 
+	int widthP;		// size of the padded volume (2 voxels border on each side)
+	int heightP;
+	int depthP;
+
 	float xOffa;   	// center of the volume				
 	float yOffa;  	 	   
 	float zOffa; 
 
-	byte[][][][] data3D = null;
+	/*
+	 * All volumes are stored as flat arrays of the padded size, the voxel
+	 * z y x is at index(z, y, x). Only the data is read on construction,
+	 * the other volumes are computed when they are needed, using the
+	 * get...() methods.
+	 */
+	byte[][] data3D = null;		// channel, voxel
 	
-	byte[][][] grad3D = null;
+	byte[] grad3D = null;
 	
-	byte[][][] mean3D = null;
-	byte[][][] diff3D = null;
+	byte[] mean3D = null;
+	byte[] diff3D = null;
 
-	byte[][][] col_3D = null;
+	byte[] col_3D = null;
 	
-	byte[][][] aPaint_3D = null;  	
-	byte[][][] aPaint_3D2 = null;  	// -254 .. 254 
+	byte[] aPaint_3D = null;  	
+	byte[] aPaint_3D2 = null;  	// -254 .. 254 
+
+	byte[] nx_3D = null;
+	byte[] ny_3D = null;
+	byte[] nz_3D = null;
 
-	byte[][][] nx_3D = null;
-	byte[][][] ny_3D = null;
-	byte[][][] nz_3D = null;
+	private Bricks dataBricks, gradBricks, meanBricks, diffBricks;
 
 	private double a = 0, b = 1;
 	private double min, max;
@@ -66,29 +78,15 @@ public Volume(Control control, Volume_Viewer vv){
 		heightV = imp.getHeight();
 		depthV = imp.getStackSize();
 
+		widthP = widthV+4;
+		heightP = heightV+4;
+		depthP = depthV+4;
+
 		// the volume data
 		if (control.isRGB )
-			data3D = new byte[4][depthV+4][heightV+4][widthV+4]; //z y x
+			data3D = new byte[4][widthP*heightP*depthP];
 		else
-			data3D = new byte[1][depthV+4][heightV+4][widthV+4]; //z y x
-
-		// these arrays could be shared 
-		grad3D = new byte[depthV+4][heightV+4][widthV+4]; //z y x
-
-		// or
-		mean3D = new byte[depthV+4][heightV+4][widthV+4]; //z y x
-		diff3D = new byte[depthV+4][heightV+4][widthV+4]; //z y x
-
-		// or
-		aPaint_3D2 = new byte[depthV+4][heightV+4][widthV+4]; //z y x
-		aPaint_3D = new byte[depthV+4][heightV+4][widthV+4]; //z y x
-		col_3D = new byte[depthV+4][heightV+4][widthV+4]; //z y x
-
-		
-		// for the illumination		
-		nx_3D = new byte[depthV+4][heightV+4][widthV+4]; //z y x
-		ny_3D = new byte[depthV+4][heightV+4][widthV+4]; //z y x
-		nz_3D = new byte[depthV+4][heightV+4][widthV+4]; //z y x
+			data3D = new byte[1][widthP*heightP*depthP];
 
 		xOffa  = widthV/2.f;   				
 		yOffa  = heightV/2.f;  	 	   
@@ -98,6 +96,10 @@ public Volume(Control control, Volume_Viewer vv){
 
 		readVolumeData();
 	}
+
+	int index(int z, int y, int x) {
+		return (z*heightP + y)*widthP + x;
+	}
 	
 	void getMinMax() {
 		min = ip.getMin();
@@ -134,6 +136,7 @@ private void readVolumeData() {
 		int bitDepth = imp.getBitDepth();
 		if (bitDepth == 8 || bitDepth == 16 || bitDepth == 32) {
 			float scale = (float) (255f/(max-min));
+			byte[] data = data3D[0];
 
 			for (int z=1;z<=depthV;z++) {
 				IJ.showStatus("Reading stack, slice: " + z + "/" + depthV);
@@ -152,6 +155,7 @@ else if ( bitDepth == 32)
 
 				int pos = 0;
 				for (int y = 2; y < heightV+2; y++) {
+					int i = index(z+1, y, 2);
 					for (int x = 2; x < widthV+2; x++) {
 						int val;
 
@@ -170,21 +174,11 @@ else if (bitDepth == 16) {
 						if (val<0f) val = 0;
 						if (val>255) val = 255;
 
-						data3D[0][z+1][y][x] = (byte)val; 
+						data[i++] = (byte)val; 
 					}
-					data3D[0][z+1][y][0] = data3D[0][z+1][y][1] = data3D[0][z+1][y][2]; 						// duplicate first 2 pixels
-					data3D[0][z+1][y][widthV+3] = data3D[0][z+1][y][widthV+2] = data3D[0][z+1][y][widthV+1]; 	// duplicate last 2 pixels
-				}
-				for (int x = 0; x < widthV+4; x++) {
-					data3D[0][z+1][0][x] = data3D[0][z+1][1][x] = data3D[0][z+1][2][x]; 						// duplicate first 2 rows
-					data3D[0][z+1][heightV+3][x] = data3D[0][z+1][heightV+2][x] = data3D[0][z+1][heightV+1][x];	// duplicate last 2 rows
 				}
 			}
-			for (int y = 0; y < heightV+4; y++) 
-				for (int x = 0; x < widthV+4; x++) {
-					data3D[0][depthV+3][y][x] = data3D[0][depthV+2][y][x] = data3D[0][depthV+1][y][x];	// duplicate last 2 layers
-					data3D[0][0][y][x] = data3D[0][1][y][x] = data3D[0][2][y][x];						// duplicate first 2 layers
-				}
+			duplicateBorders(data);
 		}
 
 		else if (bitDepth == 24) {
@@ -195,292 +189,350 @@ else if (bitDepth == 24) {
 
 				int pos = 0;
 				for (int y = 2; y < heightV+2; y++) {
-					for (int x = 2; x < widthV+2; x++) {
+					int i = index(z+1, y, 2);
+					for (int x = 2; x < widthV+2; x++, i++) {
 						int val = pixels[pos++];
 						int r = (val>>16)&0xFF;  
 						int g = (val>> 8)&0xFF;  
 						int b =  val&0xFF; 
-						data3D[1][z+1][y][x] = (byte)r;  
-						data3D[2][z+1][y][x] = (byte)g;  
-						data3D[3][z+1][y][x] = (byte)b;  
-						data3D[0][z+1][y][x] = (byte)((r+2*g+b)>>2);
+						data3D[1][i] = (byte)r;  
+						data3D[2][i] = (byte)g;  
+						data3D[3][i] = (byte)b;  
+						data3D[0][i] = (byte)((r+2*g+b)>>2);
 					}
-					data3D[0][z+1][y][0] = data3D[0][z+1][y][1] = data3D[0][z+1][y][2]; 						// duplicate first 2 pixels
-					data3D[1][z+1][y][0] = data3D[1][z+1][y][1] = data3D[1][z+1][y][2]; 						// duplicate first 2 pixels
-					data3D[2][z+1][y][0] = data3D[2][z+1][y][1] = data3D[2][z+1][y][2]; 						// duplicate first 2 pixels
-					data3D[3][z+1][y][0] = data3D[3][z+1][y][1] = data3D[3][z+1][y][2]; 						// duplicate first 2 pixels
-					data3D[0][z+1][y][widthV+3] = data3D[0][z+1][y][widthV+2] = data3D[0][z+1][y][widthV+1]; 	// duplicate last 2 pixels
-					data3D[1][z+1][y][widthV+3] = data3D[1][z+1][y][widthV+2] = data3D[1][z+1][y][widthV+1]; 	// duplicate last 2 pixels
-					data3D[2][z+1][y][widthV+3] = data3D[2][z+1][y][widthV+2] = data3D[2][z+1][y][widthV+1]; 	// duplicate last 2 pixels
-					data3D[3][z+1][y][widthV+3] = data3D[3][z+1][y][widthV+2] = data3D[3][z+1][y][widthV+1]; 	// duplicate last 2 pixels
-				}
-				for (int x = 0; x < widthV+4; x++) {
-					data3D[0][z+1][0][x] = data3D[0][z+1][1][x] = data3D[0][z+1][2][x]; 						// duplicate first 2 rows
-					data3D[1][z+1][0][x] = data3D[1][z+1][1][x] = data3D[1][z+1][2][x]; 						// duplicate first 2 rows
-					data3D[2][z+1][0][x] = data3D[2][z+1][1][x] = data3D[2][z+1][2][x]; 						// duplicate first 2 rows
-					data3D[3][z+1][0][x] = data3D[3][z+1][1][x] = data3D[3][z+1][2][x]; 						// duplicate first 2 rows
-					data3D[0][z+1][heightV+3][x] = data3D[0][z+1][heightV+2][x] = data3D[0][z+1][heightV+1][x];	// duplicate last 2 rows
-					data3D[1][z+1][heightV+3][x] = data3D[1][z+1][heightV+2][x] = data3D[1][z+1][heightV+1][x];	// duplicate last 2 rows
-					data3D[2][z+1][heightV+3][x] = data3D[2][z+1][heightV+2][x] = data3D[2][z+1][heightV+1][x];	// duplicate last 2 rows
-					data3D[3][z+1][heightV+3][x] = data3D[3][z+1][heightV+2][x] = data3D[3][z+1][heightV+1][x];	// duplicate last 2 rows
 				}
 			}
-			for (int y = 0; y < heightV+4; y++) 
-				for (int x = 0; x < widthV+4; x++) {
-					data3D[0][depthV+3][y][x] = data3D[0][depthV+2][y][x] = data3D[0][depthV+1][y][x];	// duplicate last 2 layers
-					data3D[1][depthV+3][y][x] = data3D[1][depthV+2][y][x] = data3D[1][depthV+1][y][x];	// duplicate last 2 layers
-					data3D[2][depthV+3][y][x] = data3D[2][depthV+2][y][x] = data3D[2][depthV+1][y][x];	// duplicate last 2 layers
-					data3D[3][depthV+3][y][x] = data3D[3][depthV+2][y][x] = data3D[3][depthV+1][y][x];	// duplicate last 2 layers
-					data3D[0][0][y][x] = data3D[0][1][y][x] = data3D[0][2][y][x];						// duplicate first 2 layers
-					data3D[1][0][y][x] = data3D[1][1][y][x] = data3D[1][2][y][x];						// duplicate first 2 layers
-					data3D[2][0][y][x] = data3D[2][1][y][x] = data3D[2][2][y][x];						// duplicate first 2 layers
-					data3D[3][0][y][x] = data3D[3][1][y][x] = data3D[3][2][y][x];						// duplicate first 2 layers
-				}
+			for (int ch = 0; ch < 4; ch++)
+				duplicateBorders(data3D[ch]);
 		}
 
-		// calculate variance etc. and fill histograms
-		int[] va = new int[7];
-		int[] vb = new int[7];
-
+		// fill the histograms
 		for(int z=2; z < depthV+2; z++) {
 			IJ.showStatus("Analyzing stack, slice: " + (z-1) + "/" + depthV);
 			IJ.showProgress(0.6+0.4*z/depthV);
+			analyzeSlice(z, null, null, null, true);
+		}
+
+		dataBricks = new Bricks(data3D[0], widthV, heightV, depthV);
+
+		IJ.showProgress(1.0);
+		IJ.showStatus("");
+	}
+
+	// fill the border of 2 voxels with copies of the outermost voxels
+	private void duplicateBorders(byte[] data) {
+		for (int z = 2; z < depthV+2; z++) {
 			for (int y = 2; y < heightV+2; y++) {
-				for (int x = 2; x < widthV+2; x++) {
-					int val = 0xff & data3D[0][z][y][x];
-					va[0] = 0xff & data3D[0][z-1][y  ][x  ];
-					vb[0] = 0xff & data3D[0][z+1][y  ][x  ];
-					va[1] = 0xff & data3D[0][z  ][y-1][x  ];
-					vb[1] = 0xff & data3D[0][z  ][y+1][x  ];
-					va[2] = 0xff & data3D[0][z  ][y  ][x-1];
-					vb[2] = 0xff & data3D[0][z  ][y  ][x+1];
-					va[3] = 0xff & data3D[0][z-1][y-1][x-1];
-					vb[3] = 0xff & data3D[0][z+1][y+1][x+1];
-					va[4] = 0xff & data3D[0][z-1][y+1][x-1];
-					vb[4] = 0xff & data3D[0][z+1][y-1][x+1];
-					va[5] = 0xff & data3D[0][z-1][y-1][x+1];
-					vb[5] = 0xff & data3D[0][z+1][y+1][x-1];
-					va[6] = 0xff & data3D[0][z-1][y+1][x+1];
-					vb[6] = 0xff & data3D[0][z+1][y-1][x-1];
-
-					int grad = 0, d, dMax = 0, iMax = 0;
-					for (int i = 0; i < vb.length; i++) {
-						grad += d = Math.abs(va[i] - vb[i]);
-						if (d > dMax) {
-							dMax = d;
-							iMax = i;
-						}
-					}
+				int i = index(z, y, 0);
+				data[i] = data[i+1] = data[i+2]; 								// duplicate first 2 pixels
+				data[i+widthV+3] = data[i+widthV+2] = data[i+widthV+1]; 		// duplicate last 2 pixels
+			}
+			System.arraycopy(data, index(z, 2, 0), data, index(z, 0, 0), widthP);			// duplicate first 2 rows
+			System.arraycopy(data, index(z, 2, 0), data, index(z, 1, 0), widthP);
+			System.arraycopy(data, index(z, heightV+1, 0), data, index(z, heightV+2, 0), widthP);	// duplicate last 2 rows
+			System.arraycopy(data, index(z, heightV+1, 0), data, index(z, heightV+3, 0), widthP);
+		}
+		int slice = widthP*heightP;
+		System.arraycopy(data, index(2, 0, 0), data, index(0, 0, 0), slice);			// duplicate first 2 layers
+		System.arraycopy(data, index(2, 0, 0), data, index(1, 0, 0), slice);
+		System.arraycopy(data, index(depthV+1, 0, 0), data, index(depthV+2, 0, 0), slice);	// duplicate last 2 layers
+		System.arraycopy(data, index(depthV+1, 0, 0), data, index(depthV+3, 0, 0), slice);
+	}
 
-					int low, high;
-					if(va[iMax] < vb[iMax]) {
-						low = va[iMax]; high = vb[iMax];
-					}
-					else {
-						low = vb[iMax]; high = va[iMax];
-					}							
-					grad /= 7;
-					if (grad > 127)
-						grad = 127;
-
-					grad3D[z][y][x] = (byte)grad;
-					histValGrad[val][(int)grad]++;
+	/*
+	 * Computes the gradient, and the mean and difference of the most
+	 * different pair of opposite neighbors for the voxels of slice z. The
+	 * results are stored in the given volumes (if not null) and optionally
+	 * added to the histograms.
+	 */
+	private void analyzeSlice(int z, byte[] grad3D, byte[] mean3D, byte[] diff3D, boolean fillHistograms) {
+		byte[] data = data3D[0];
+		int[] va = new int[7];
+		int[] vb = new int[7];
+
+		for (int y = 2; y < heightV+2; y++) {
+			int i = index(z, y, 2);
+			for (int x = 2; x < widthV+2; x++, i++) {
+				int v = analyzeVoxel(data, i, va, vb);
+				int grad = v & 0xff, mean = (v >> 8) & 0xff, diff = v >> 16;
+				if (grad3D != null)
+					grad3D[i] = (byte)grad;
+				if (mean3D != null)
+					mean3D[i] = (byte) mean;
+				if (diff3D != null)
+					diff3D[i] = (byte) diff;
+				if (fillHistograms) {
+					int val = 0xff & data[i];
+					histValGrad[val][grad]++;
 					histVal[val]++;					// luminance
-					int mean = (int) (Math.max(0, Math.min(255,(low+high)*0.5)));
-					int diff = (int) (Math.max(0, Math.min(127,(high-low)*0.5)));
-					mean3D[z][y][x] = (byte) mean;
-					diff3D[z][y][x] = (byte) diff;
 					histMeanDiff[mean][diff]++;
 				}
 			}
 		}
+	}
 
-		IJ.showProgress(1.0);
-		IJ.showStatus("");
+	// returns grad | mean << 8 | diff << 16 for voxel i
+	private int analyzeVoxel(byte[] data, int i, int[] va, int[] vb) {
+		int slice = widthP*heightP;
+		va[0] = 0xff & data[i - slice];
+		vb[0] = 0xff & data[i + slice];
+		va[1] = 0xff & data[i - widthP];
+		vb[1] = 0xff & data[i + widthP];
+		va[2] = 0xff & data[i - 1];
+		vb[2] = 0xff & data[i + 1];
+		va[3] = 0xff & data[i - slice - widthP - 1];
+		vb[3] = 0xff & data[i + slice + widthP + 1];
+		va[4] = 0xff & data[i - slice + widthP - 1];
+		vb[4] = 0xff & data[i + slice - widthP + 1];
+		va[5] = 0xff & data[i - slice - widthP + 1];
+		vb[5] = 0xff & data[i + slice + widthP - 1];
+		va[6] = 0xff & data[i - slice + widthP + 1];
+		vb[6] = 0xff & data[i + slice - widthP - 1];
+
+		int grad = 0, d, dMax = 0, iMax = 0;
+		for (int k = 0; k < vb.length; k++) {
+			grad += d = Math.abs(va[k] - vb[k]);
+			if (d > dMax) {
+				dMax = d;
+				iMax = k;
+			}
+		}
+
+		int low, high;
+		if(va[iMax] < vb[iMax]) {
+			low = va[iMax]; high = vb[iMax];
+		}
+		else {
+			low = vb[iMax]; high = va[iMax];
+		}							
+		grad /= 7;
+		if (grad > 127)
+			grad = 127;
+
+		int mean = (int) (Math.max(0, Math.min(255,(low+high)*0.5)));
+		int diff = (int) (Math.max(0, Math.min(127,(high-low)*0.5)));
+		return grad | (mean << 8) | (diff << 16);
+	}
+
+	/*
+	 * Returns value, gradient, mean and difference of the voxel z y x of
+	 * the volume (without border), without computing the derived volumes.
+	 */
+	int[] getValues(int z, int y, int x) {
+		int i = index(z+2, y+2, x+2);
+		int v = analyzeVoxel(data3D[0], i, new int[7], new int[7]);
+		return new int[] { 0xff & data3D[0][i], v & 0xff, (v >> 8) & 0xff, v >> 16 };
+	}
+
+	synchronized byte[] getGrad3D() {
+		if (grad3D == null) {
+			if (control.LOG) System.out.println("Calculate gradient volume");
+			byte[] grad = new byte[widthP*heightP*depthP];
+			for(int z=2; z < depthV+2; z++) 
+				analyzeSlice(z, grad, null, null, false);
+			grad3D = grad;
+		}
+		return grad3D;
+	}
+
+	synchronized byte[] getMean3D() {
+		if (mean3D == null)
+			calculateMeanDiff();
+		return mean3D;
+	}
+
+	synchronized byte[] getDiff3D() {
+		if (diff3D == null)
+			calculateMeanDiff();
+		return diff3D;
+	}
+
+	private void calculateMeanDiff() {
+		if (control.LOG) System.out.println("Calculate mean and difference volumes");
+		byte[] mean = new byte[widthP*heightP*depthP];
+		byte[] diff = new byte[widthP*heightP*depthP];
+		for(int z=2; z < depthV+2; z++) 
+			analyzeSlice(z, null, mean, diff, false);
+		mean3D = mean;
+		diff3D = diff;
+	}
+
+	synchronized byte[] getAPaint3D() {
+		if (aPaint_3D == null)
+			aPaint_3D = new byte[widthP*heightP*depthP];
+		return aPaint_3D;
+	}
+
+	synchronized byte[] getAPaint3D2() {
+		if (aPaint_3D2 == null)
+			aPaint_3D2 = new byte[widthP*heightP*depthP];
+		return aPaint_3D2;
+	}
+
+	synchronized byte[] getCol3D() {
+		if (col_3D == null)
+			col_3D = new byte[widthP*heightP*depthP];
+		return col_3D;
+	}
+
+	Bricks getDataBricks() {
+		return dataBricks;
+	}
+
+	synchronized Bricks getGradBricks() {
+		if (gradBricks == null)
+			gradBricks = new Bricks(getGrad3D(), widthV, heightV, depthV);
+		return gradBricks;
+	}
+
+	synchronized Bricks getMeanBricks() {
+		if (meanBricks == null)
+			meanBricks = new Bricks(getMean3D(), widthV, heightV, depthV);
+		return meanBricks;
+	}
+
+	synchronized Bricks getDiffBricks() {
+		if (diffBricks == null)
+			diffBricks = new Bricks(getDiff3D(), widthV, heightV, depthV);
+		return diffBricks;
 	}
 	
-	
+	/*
+	 * Computes the normals (nx_3D, ny_3D, nz_3D) from the gradient of the
+	 * smoothed alpha values. The alpha values and their smoothed version
+	 * are only kept for the few slices needed at a time.
+	 */
 	void calculateGradients() {
 		control.alphaWasChanged = false;
 		
-		byte[][][] alpha_3D = new byte[depthV+4][heightV+4][widthV+4]; //z y x 
-		byte[][][] alpha_3D_smooth = new byte[depthV+4][heightV+4][widthV+4]; //z y x
-
 		long start = 0;
 		if (control.LOG) { 
 			IJ.log("Calculate Gradients ");
 			start = System.currentTimeMillis();
 		}
 
-		if (control.alphaMode == Control.ALPHA1) {
-			for(int z = 2; z < depthV+2; z++) {
-				for (int y = 2; y < heightV+2; y++) {
-					for (int x = 2; x < widthV+2; x++) {
-						int val = data3D[0][z][y][x] & 0xFF;
-						alpha_3D[z][y][x] = (byte) (vv.a1_R[val]*255);
-					}
-				}
-			}			
-		}
-		else if (control.alphaMode == Control.ALPHA2) {
-			for(int z = 2; z < depthV+2; z++) {
-				for (int y = 2; y < heightV+2; y++) {
-					for (int x = 2; x < widthV+2; x++) {
-						int val = data3D[0][z][y][x] & 0xFF;
-						int grad = grad3D[z][y][x] & 0xFF;
-						alpha_3D[z][y][x] = (byte) (vv.a2_R[val][grad]*255);
-					}
-				}
-			}
-		}
-		else if (control.alphaMode == Control.ALPHA3) {
-			for(int z = 2; z < depthV+2; z++) {
-				for (int y = 2; y < heightV+2; y++) {
-					for (int x = 2; x < widthV+2; x++) {
-						int val = mean3D[z][y][x] & 0xFF;
-						int diff = diff3D[z][y][x] & 0xFF;
-						alpha_3D[z][y][x] = (byte) (vv.a3_R[val][diff]*255);
-					}
-				}
-			}
-		}
-		else if (control.alphaMode == Control.ALPHA4) {
-			for(int z = 2; z < depthV+2; z++) {
-				for (int y = 2; y < heightV+2; y++) {
-					for (int x = 2; x < widthV+2; x++) {
-						alpha_3D[z][y][x] = aPaint_3D[z][y][x];
-					}
-				}
-			}
+		if (nx_3D == null) {
+			nx_3D = new byte[widthP*heightP*depthP];
+			ny_3D = new byte[widthP*heightP*depthP];
+			nz_3D = new byte[widthP*heightP*depthP];
 		}
 
-		// filter alpha
+		byte[][] alpha = new byte[depthP][];
+		byte[][] smooth = new byte[depthP][];
+		int slice = widthP*heightP;
+
 		for(int z=1; z < depthV+3; z++) {
+			for (int k = z-1; k <= z+1; k++)
+				if (smooth[k] == null)
+					smooth[k] = smoothAlphaSlice(k, alpha);
+			byte[] s0 = smooth[z-1], s1 = smooth[z], s2 = smooth[z+1];
+
+			// gradient
 			for (int y = 1; y < heightV+3; y++) {
-				int a000, a010, a020;
-				int a001 = 0xff & alpha_3D[z-1][y-1][0];
-				int a011 = 0xff & alpha_3D[z-1][y  ][0];
-				int a021 = 0xff & alpha_3D[z-1][y+1][0];
-				int a002 = 0xff & alpha_3D[z-1][y-1][1];
-				int a012 = 0xff & alpha_3D[z-1][y  ][1];
-				int a022 = 0xff & alpha_3D[z-1][y+1][1];
-				int a100, a110, a120;
-				int a101 = 0xff & alpha_3D[z][y-1][0];
-				int a111 = 0xff & alpha_3D[z][y  ][0];
-				int a121 = 0xff & alpha_3D[z][y+1][0];
-				int a102 = 0xff & alpha_3D[z][y-1][1];
-				int a112 = 0xff & alpha_3D[z][y  ][1];
-				int a122 = 0xff & alpha_3D[z][y+1][1];
-				int a200, a210, a220;
-				int a201 = 0xff & alpha_3D[z+1][y-1][0];
-				int a211 = 0xff & alpha_3D[z+1][y  ][0];
-				int a221 = 0xff & alpha_3D[z+1][y+1][0];
-				int a202 = 0xff & alpha_3D[z+1][y-1][1];
-				int a212 = 0xff & alpha_3D[z+1][y  ][1];
-				int a222 = 0xff & alpha_3D[z+1][y+1][1];
-
-				for (int x = 1; x < widthV+3; x++) {
-					a000 = a001; a010 = a011; a020 = a021;
-					a001 = a002; a011 = a012; a021 = a022;
-					a002 = 0xff & alpha_3D[z-1][y-1][x+1];
-					a012 = 0xff & alpha_3D[z-1][y  ][x+1];
-					a022 = 0xff & alpha_3D[z-1][y+1][x+1];
-
-					a100 = a101; a110 = a111; a120 = a121;
-					a101 = a102; a111 = a112; a121 = a122;
-					a102 = 0xff & alpha_3D[z][y-1][x+1];
-					a112 = 0xff & alpha_3D[z][y  ][x+1];
-					a122 = 0xff & alpha_3D[z][y+1][x+1];
-
-					a200 = a201; a210 = a211; a220 = a221;
-					a201 = a202; a211 = a212; a221 = a222;
-					a202 = 0xff & alpha_3D[z+1][y-1][x+1];
-					a212 = 0xff & alpha_3D[z+1][y  ][x+1];
-					a222 = 0xff & alpha_3D[z+1][y+1][x+1];
-
-					int a = (a000 + a001 + a002 + a010 + a011 + a012 + a020 + a021 + a022 +
-						 	 a100 + a101 + a102 + a110 + a111 + a112 + a120 + a121 + a122 +
-							 a200 + a201 + a202 + a210 + a211 + a212 + a220 + a221 + a222) >> 5;
-
-					alpha_3D_smooth[z][y][x] = (byte)a;
+				int i = y*widthP + 1;
+				for (int x = 1; x < widthV+3; x++, i++) {
+					int xm = col(s0, i-1) + col(s1, i-1) + col(s2, i-1);
+					int xp = col(s0, i+1) + col(s1, i+1) + col(s2, i+1);
+					int ym = row(s0, i-widthP) + row(s1, i-widthP) + row(s2, i-widthP);
+					int yp = row(s0, i+widthP) + row(s1, i+widthP) + row(s2, i+widthP);
+					int zm = row(s0, i-widthP) + row(s0, i) + row(s0, i+widthP);
+					int zp = row(s2, i-widthP) + row(s2, i) + row(s2, i+widthP);
+
+					int dx = (xp >> 2) - (xm >> 2);
+					int dy = (yp >> 2) - (ym >> 2);
+					int dz = (zp >> 2) - (zm >> 2);
+
+					int pos = z*slice + i;
+					nx_3D[pos] = (byte)(Math.max(-127, Math.min(127,dx))+128);
+					ny_3D[pos] = (byte)(Math.max(-127, Math.min(127,dy))+128);
+					nz_3D[pos] = (byte)(Math.max(-127, Math.min(127,dz))+128);
 				}
 			}
-		}
 
-		//alpha_3D_smooth = alpha_3D;
-		
-		// gradient
-		for(int z=1; z < depthV+3; z++) {
-			for (int y = 1; y < heightV+3; y++) {			
-				int a000, a010, a020;
-				int a001 = 0xff & alpha_3D_smooth[z-1][y-1][0];
-				int a011 = 0xff & alpha_3D_smooth[z-1][y  ][0];
-				int a021 = 0xff & alpha_3D_smooth[z-1][y+1][0];
-				int a002 = 0xff & alpha_3D_smooth[z-1][y-1][1];
-				int a012 = 0xff & alpha_3D_smooth[z-1][y  ][1];
-				int a022 = 0xff & alpha_3D_smooth[z-1][y+1][1];
-				int a100, a110, a120;
-				int a101 = 0xff & alpha_3D_smooth[z][y-1][0];
-				int a111 = 0xff & alpha_3D_smooth[z][y  ][0];
-				int a121 = 0xff & alpha_3D_smooth[z][y+1][0];
-				int a102 = 0xff & alpha_3D_smooth[z][y-1][1];
-				int a112 = 0xff & alpha_3D_smooth[z][y  ][1];
-				int a122 = 0xff & alpha_3D_smooth[z][y+1][1];
-				int a200, a210, a220;
-				int a201 = 0xff & alpha_3D_smooth[z+1][y-1][0];
-				int a211 = 0xff & alpha_3D_smooth[z+1][y  ][0];
-				int a221 = 0xff & alpha_3D_smooth[z+1][y+1][0];
-				int a202 = 0xff & alpha_3D_smooth[z+1][y-1][1];
-				int a212 = 0xff & alpha_3D_smooth[z+1][y  ][1];
-				int a222 = 0xff & alpha_3D_smooth[z+1][y+1][1];
-
-				for (int x = 1; x < widthV+3; x++) {
-					a000 = a001; a010 = a011; a020 = a021;
-					a001 = a002; a011 = a012; a021 = a022;
-					a002 = 0xff & alpha_3D_smooth[z-1][y-1][x+1];
-					a012 = 0xff & alpha_3D_smooth[z-1][y  ][x+1];
-					a022 = 0xff & alpha_3D_smooth[z-1][y+1][x+1];
-
-					a100 = a101; a110 = a111; a120 = a121;
-					a101 = a102; a111 = a112; a121 = a122;
-					a102 = 0xff & alpha_3D_smooth[z][y-1][x+1];
-					a112 = 0xff & alpha_3D_smooth[z][y  ][x+1];
-					a122 = 0xff & alpha_3D_smooth[z][y+1][x+1];
-
-					a200 = a201; a210 = a211; a220 = a221;
-					a201 = a202; a211 = a212; a221 = a222;
-					a202 = 0xff & alpha_3D_smooth[z+1][y-1][x+1];
-					a212 = 0xff & alpha_3D_smooth[z+1][y  ][x+1];
-					a222 = 0xff & alpha_3D_smooth[z+1][y+1][x+1];
-
-					int dx = ((a002 + a012 + a022 + a102 + a112 + a122 + a202 + a212 + a222) >> 2) - 
-							 ((a000 + a010 + a020 + a100 + a110 + a120 + a200 + a210 + a220) >> 2);
-
-					int dy = ((a020 + a021 + a022 + a120 + a121 + a122 + a220 + a221 + a222) >> 2) -
-							 ((a000 + a001 + a002 + a100 + a101 + a102 + a200 + a201 + a202) >> 2);
-					
-					int dz = ((a200 + a201 + a202 + a210 + a211 + a212 + a220 + a221 + a222) >> 2) -
-							 ((a000 + a001 + a002 + a010 + a011 + a012 + a020 + a021 + a022) >> 2);
-
-//					int dx = (a102 + 2*a112 + a122 - a100 - 2*a110 - a120) / 4;
-//					int dy = (a021 + 2*a121 + a221 - a001 - 2*a101 - a201) / 4;
-//					int dz = (a210 + 2*a211 + a212 - a010 - 2*a011 - a012) / 4;
-					
-					nx_3D[z][y][x] = (byte)(Math.max(-127, Math.min(127,dx))+128);
-					ny_3D[z][y][x] = (byte)(Math.max(-127, Math.min(127,dy))+128);
-					nz_3D[z][y][x] = (byte)(Math.max(-127, Math.min(127,dz))+128);
-				}
-			}
+			// release the slices that are no longer needed
+			smooth[z-1] = null;
+			alpha[z] = null;
 		}
-		
-		alpha_3D = null;
-		alpha_3D_smooth = null;
 
 		if (control.LOG) {
 			long end = System.currentTimeMillis();
 			System.out.println("  Execution time "+(end-start)+" ms.");
 		}
 	}
+
+	// alpha values of slice z according to the current transfer function
+	private byte[] alphaSlice(int z) {
+		byte[] alpha = new byte[widthP*heightP];
+		if (z < 2 || z >= depthV+2)
+			return alpha;
+
+		byte[] data = data3D[0];
+		byte[] grad = null, mean = null, diff = null, paint = null;
+		if (control.alphaMode == Control.ALPHA2)
+			grad = getGrad3D();
+		else if (control.alphaMode == Control.ALPHA3) {
+			mean = getMean3D();
+			diff = getDiff3D();
+		}
+		else if (control.alphaMode == Control.ALPHA4)
+			paint = getAPaint3D();
+
+		int offset = z*widthP*heightP;
+		for (int y = 2; y < heightV+2; y++) {
+			for (int x = 2, i = y*widthP + 2; x < widthV+2; x++, i++) {
+				int pos = offset + i;
+				if (control.alphaMode == Control.ALPHA1)
+					alpha[i] = (byte) (vv.a1_R[data[pos] & 0xFF]*255);
+				else if (control.alphaMode == Control.ALPHA2)
+					alpha[i] = (byte) (vv.a2_R[data[pos] & 0xFF][grad[pos] & 0xFF]*255);
+				else if (control.alphaMode == Control.ALPHA3)
+					alpha[i] = (byte) (vv.a3_R[mean[pos] & 0xFF][diff[pos] & 0xFF]*255);
+				else if (control.alphaMode == Control.ALPHA4)
+					alpha[i] = paint[pos];
+			}
+		}
+		return alpha;
+	}
+
+	// 3x3x3 filtered alpha values of slice z (zero at the outer border)
+	private byte[] smoothAlphaSlice(int z, byte[][] alpha) {
+		byte[] smooth = new byte[widthP*heightP];
+		if (z < 1 || z >= depthV+3)
+			return smooth;
+
+		for (int k = z-1; k <= z+1; k++)
+			if (alpha[k] == null)
+				alpha[k] = alphaSlice(k);
+		byte[] a0 = alpha[z-1], a1 = alpha[z], a2 = alpha[z+1];
+
+		for (int y = 1; y < heightV+3; y++) {
+			int i = y*widthP;
+			// sums of the 3x3 voxels in the z-y plane of the columns x-1, x and x+1
+			int c0, c1 = column(a0, a1, a2, i), c2 = column(a0, a1, a2, i+1);
+			for (int x = 1; x < widthV+3; x++) {
+				i++;
+				c0 = c1;
+				c1 = c2;
+				c2 = column(a0, a1, a2, i+1);
+				smooth[i] = (byte)((c0 + c1 + c2) >> 5);
+			}
+		}
+		return smooth;
+	}
+
+	private int column(byte[] a0, byte[] a1, byte[] a2, int i) {
+		return col(a0, i) + col(a1, i) + col(a2, i);
+	}
+
+	// sum of voxel i and its neighbors in y
+	private int col(byte[] s, int i) {
+		return (0xff & s[i-widthP]) + (0xff & s[i]) + (0xff & s[i+widthP]);
+	}
+
+	// sum of voxel i and its neighbors in x
+	private int row(byte[] s, int i) {
+		return (0xff & s[i-1]) + (0xff & s[i]) + (0xff & s[i+1]);
+	}
 	
 	private static final byte YES = 1;
 	
@@ -489,7 +541,9 @@ void findAndSetSimilarInVolume(int lum, int alpha, int z0, int y0, int x0) {
 		int width  = vv.vol.widthV+4;
 		int height = vv.vol.heightV+4;
 		int depth  = vv.vol.depthV+4;
-		byte[][][] data = vv.vol.data3D[0];
+		byte[] data = data3D[0];
+		byte[] grad = getGrad3D();
+		byte[] col = getCol3D();
 
 		control.alphaWasChanged = true;
 
@@ -527,21 +581,20 @@ void findAndSetSimilarInVolume(int lum, int alpha, int z0, int y0, int x0) {
 				else if (k == 4)  z = Math.max(0, z-1); 
 				else if (k == 5)  z = Math.min(depth-1, z+1);
 
-				col_3D[z][y][x] = (byte)control.indexPaint; // set the color of neigbors
-
 				int newPointStateIndex = width * (z * height + y) + x;
+				col[newPointStateIndex] = (byte)control.indexPaint; // set the color of neigbors
+
 				if (hasBeenProcessed[newPointStateIndex] == YES) 
 					continue;
 
-				int neighbourValue = data[z][y][x] & 0xff; 
+				int neighbourValue = data[newPointStateIndex] & 0xff; 
 				int diff = Math.abs(neighbourValue-lum);
 				//int diff = Math.abs(neighbourValue-actualValue);
 
 				if (diff > control.lumTolerance)
 					continue;
 
-				int grad = vv.vol.grad3D[z][y][x] & 0xff; 
-				if (grad > control.gradTolerance)
+				if ((grad[newPointStateIndex] & 0xff) > control.gradTolerance)
 					continue;
 
 				regionSize++;
@@ -565,16 +618,17 @@ void findAndSetSimilarInVolume(int lum, int alpha, int z0, int y0, int x0) {
 		
 
 	private void setAlphaAndColorInVolume(int alpha, int z, int y, int x) {
-		vv.vol.aPaint_3D[z][y][x] = (byte)alpha;
+		int i = index(z, y, x);
+		getAPaint3D()[i] = (byte)alpha;
 		if (alpha > 0) {
 			int a = alpha - vv.tf_a4.getAlphaOffset();
 			a = Math.min(254, Math.max(-254, a));
-			aPaint_3D2[z][y][x] = (byte) (a/2);
+			getAPaint3D2()[i] = (byte) (a/2);
 		}
 		else
-			aPaint_3D2[z][y][x] = 0;
+			getAPaint3D2()[i] = 0;
 
-		col_3D[z][y][x] = (byte)control.indexPaint;
+		getCol3D()[i] = (byte)control.indexPaint;
 	}
 	
 }
@@ -0,0 +1,347 @@
+package fiji;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A persistent index of the contents of .jar files.
+ *
+ * Listing the entries of a few hundred .jar files takes seconds on network
+ * home directories, and it used to be done at every startup. This index
+ * remembers the class names and the plugins.config of every .jar file it
+ * saw, keyed by the absolute path, and it rescans a .jar file only when its
+ * size or modification time changed.
+ *
+ * The default index is stored in the ImageJ preferences directory and is
+ * used by {@link User_Plugins}. The Script Editor's class name completion
+ * uses a separate one, so that the .jar files of the Java runtime do not
+ * slow down loading the default index at every startup.
+ */
+public class JarIndex {
+
+	protected final static int VERSION = 1;
+	protected final static String FILE_NAME = "jar-index.cache";
+	protected final static String CLASS_PATH_FILE_NAME = "class-path-index.cache";
+
+	private static JarIndex defaultIndex, classPathIndex;
+
+	protected File cacheFile;
+	protected Map<String, Entry> entries = new HashMap<String, Entry>();
+	protected boolean changed;
+
+	/**
+	 * The contents of one .jar file
+	 */
+	public static class Entry {
+		protected final String path;
+		protected final long size, lastModified;
+		protected final List<String> classNames;
+		protected final List<String> pluginsConfig;
+
+		protected Entry(String path, long size, long lastModified, List<String> classNames, List<String> pluginsConfig) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.classNames = Collections.unmodifiableList(classNames);
+			this.pluginsConfig = pluginsConfig == null ? null : Collections.unmodifiableList(pluginsConfig);
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * Get the names of all classes in the .jar file, in the order of the entries
+		 */
+		public List<String> getClassNames() {
+			return classNames;
+		}
+
+		/**
+		 * Get the lines of the first entry whose name ends in plugins.config
+		 *
+		 * @return the lines, or null if there is no plugins.config
+		 */
+		public List<String> getPluginsConfig() {
+			return pluginsConfig;
+		}
+
+		public boolean isUpToDate(File file) {
+			return file.length() == size && file.lastModified() == lastModified;
+		}
+	}
+
+	/**
+	 * Get the index stored in the ImageJ preferences directory
+	 */
+	public static synchronized JarIndex getDefault() {
+		if (defaultIndex == null) {
+			defaultIndex = new JarIndex(new File(OtherInstance.getPrefsDirectory(), FILE_NAME));
+			defaultIndex.load();
+		}
+		return defaultIndex;
+	}
+
+	/**
+	 * Get the index of the .jar files in the class path, including those of the Java runtime
+	 */
+	public static synchronized JarIndex getClassPathIndex() {
+		if (classPathIndex == null) {
+			classPathIndex = new JarIndex(new File(OtherInstance.getPrefsDirectory(), CLASS_PATH_FILE_NAME));
+			classPathIndex.load();
+		}
+		return classPathIndex;
+	}
+
+	/**
+	 * Construct an empty index
+	 *
+	 * @param cacheFile where to load it from and save it to, or null for an index that is not persisted
+	 */
+	public JarIndex(File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Get the contents of a .jar file, scanning it only if it is not up-to-date in the index
+	 *
+	 * @param jar the .jar file
+	 */
+	public Entry get(File jar) throws IOException {
+		String key = jar.getAbsolutePath();
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.isUpToDate(jar))
+				return entry;
+		}
+		Entry entry = scan(jar);
+		synchronized (this) {
+			entries.put(key, entry);
+			changed = true;
+		}
+		return entry;
+	}
+
+	/**
+	 * Scan all .jar files which are not up-to-date in the index, in parallel
+	 *
+	 * @param jars the .jar files
+	 */
+	public void update(Collection<File> jars) {
+		final List<File> stale = new ArrayList<File>();
+		synchronized (this) {
+			for (File jar : jars) {
+				Entry entry = entries.get(jar.getAbsolutePath());
+				if (entry == null || !entry.isUpToDate(jar))
+					stale.add(jar);
+			}
+		}
+		if (stale.size() == 0)
+			return;
+
+		// scanning is mostly waiting for the file system, so use more threads than cores
+		final AtomicInteger next = new AtomicInteger(0);
+		Thread[] threads = new Thread[Math.min(stale.size(), 2 * Runtime.getRuntime().availableProcessors())];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread("Jar index " + i) {
+				public void run() {
+					for (int j = next.getAndIncrement(); j < stale.size(); j = next.getAndIncrement()) try {
+						get(stale.get(j));
+					} catch (IOException e) {
+						/* ignore; get() will throw again when the contents are needed */
+					}
+				}
+			};
+			threads[i].start();
+		}
+		try {
+			for (Thread thread : threads)
+				thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Map the class names to the first of the given .jar files containing them
+	 *
+	 * @param jars the .jar files, in class path order
+	 */
+	public Map<String, File> getClassMap(List<File> jars) {
+		update(jars);
+		Map<String, File> result = new HashMap<String, File>();
+		for (File jar : jars) try {
+			for (String className : get(jar).getClassNames())
+				if (!result.containsKey(className))
+					result.put(className, jar);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return result;
+	}
+
+	/**
+	 * Find all .jar files in a directory and its subdirectories, in the order
+	 * in which {@link User_Plugins} visits them
+	 *
+	 * @param directory the top-level directory
+	 */
+	public static List<File> findJars(File directory) {
+		List<File> result = new ArrayList<File>();
+		findJars(result, directory);
+		return result;
+	}
+
+	protected static void findJars(List<File> result, File directory) {
+		String[] list = directory.list();
+		if (list == null)
+			return;
+		Arrays.sort(list);
+		for (String name : list) {
+			File file = new File(directory, name);
+			if (name.endsWith(".jar") && file.isFile())
+				result.add(file);
+			else if (file.isDirectory())
+				findJars(result, file);
+		}
+	}
+
+	/**
+	 * List the class names and read the plugins.config of a .jar file
+	 *
+	 * @param jar the .jar file
+	 */
+	public static Entry scan(File jar) throws IOException {
+		// get the time stamp first, so that a concurrent change triggers a rescan next time
+		long size = jar.length(), lastModified = jar.lastModified();
+		List<String> classNames = new ArrayList<String>();
+		List<String> pluginsConfig = null;
+		ZipFile zip = new ZipFile(jar);
+		try {
+			Enumeration<? extends ZipEntry> e = zip.entries();
+			while (e.hasMoreElements()) {
+				ZipEntry entry = e.nextElement();
+				String name = entry.getName();
+				if (name.endsWith(".class"))
+					classNames.add(name.substring(0, name.length() - 6).replace('/', '.'));
+				else if (pluginsConfig == null && name.endsWith("plugins.config")) {
+					pluginsConfig = new ArrayList<String>();
+					BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(entry)));
+					for (String line = reader.readLine(); line != null; line = reader.readLine())
+						pluginsConfig.add(line);
+					reader.close();
+				}
+			}
+		} finally {
+			zip.close();
+		}
+		return new Entry(jar.getAbsolutePath(), size, lastModified, classNames, pluginsConfig);
+	}
+
+	/**
+	 * Read the index from the cache file; a missing or invalid cache file results in an empty index
+	 */
+	public synchronized void load() {
+		if (cacheFile == null || !cacheFile.exists())
+			return;
+		Map<String, Entry> result = new LinkedHashMap<String, Entry>();
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+			try {
+				if (in.readInt() != VERSION)
+					return;
+				for (int count = in.readInt(); count > 0; count--) {
+					String path = in.readUTF();
+					long size = in.readLong(), lastModified = in.readLong();
+					List<String> classNames = new ArrayList<String>();
+					for (int i = in.readInt(); i > 0; i--)
+						classNames.add(in.readUTF());
+					List<String> pluginsConfig = null;
+					int lines = in.readInt();
+					if (lines >= 0) {
+						pluginsConfig = new ArrayList<String>();
+						for (int i = lines; i > 0; i--)
+							pluginsConfig.add(in.readUTF());
+					}
+					result.put(path, new Entry(path, size, lastModified, classNames, pluginsConfig));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			/* ignore; the index will be rebuilt */
+			return;
+		}
+		entries.putAll(result);
+	}
+
+	/**
+	 * Write the index to the cache file if anything changed, dropping the entries of deleted .jar files
+	 */
+	public synchronized void save() {
+		if (cacheFile == null || !changed)
+			return;
+		Iterator<String> iter = entries.keySet().iterator();
+		while (iter.hasNext())
+			if (!new File(iter.next()).exists())
+				iter.remove();
+		File tmp = new File(cacheFile.getPath() + ".tmp");
+		try {
+			File parent = cacheFile.getParentFile();
+			if (parent != null && !parent.isDirectory())
+				parent.mkdirs();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(VERSION);
+				out.writeInt(entries.size());
+				for (Entry entry : entries.values()) {
+					out.writeUTF(entry.path);
+					out.writeLong(entry.size);
+					out.writeLong(entry.lastModified);
+					out.writeInt(entry.classNames.size());
+					for (String className : entry.classNames)
+						out.writeUTF(className);
+					if (entry.pluginsConfig == null)
+						out.writeInt(-1);
+					else {
+						out.writeInt(entry.pluginsConfig.size());
+						for (String line : entry.pluginsConfig)
+							out.writeUTF(line);
+					}
+				}
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(cacheFile)) {
+				cacheFile.delete();
+				if (!tmp.renameTo(cacheFile))
+					throw new IOException("Could not rename " + tmp + " to " + cacheFile);
+			}
+			changed = false;
+		} catch (IOException e) {
+			/* ignore; the cache is only an optimization */
+			tmp.delete();
+		}
+	}
+}
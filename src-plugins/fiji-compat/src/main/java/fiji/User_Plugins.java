@@ -14,11 +14,8 @@
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 /**
  * A class to find user plugins, i.e. plugins not inside Fiji.app/plugins/
@@ -78,7 +75,10 @@ public void run(String arg) {
 		}
 		new MenuRefresher().run(arg);
 
+		JarIndex index = JarIndex.getDefault();
+		index.update(JarIndex.findJars(new File(path)));
 		installPlugins(path, "", menuPath);
+		index.save();
 	}
 
 	/**
@@ -153,26 +153,21 @@ else if (name.endsWith(".jar")) try {
 	 * file names have underscores , putting the menu items into the menu
 	 * specified by a menu path.
 	 *
+	 * The contents of the .jar file are looked up in the {@link JarIndex},
+	 * so the file is only opened if it changed since it was last indexed.
+	 *
 	 * @param jarFile the .jar file
 	 * @param menuPath the menu into which the discovered plugins are put
 	 */
 	public List<String[]> getJarPluginList(File jarFile, String menuPath)
 			throws IOException {
+		JarIndex.Entry entry = JarIndex.getDefault().get(jarFile);
+		if (entry.getPluginsConfig() != null)
+			return parsePluginsConfig(entry.getPluginsConfig(), menuPath);
 		List<String[]> result = new ArrayList<String[]>();
-		JarFile jar = new JarFile(jarFile);
-		Enumeration<JarEntry> entries = jar.entries();
-		while (entries.hasMoreElements()) {
-			JarEntry entry = (JarEntry)entries.nextElement();
-			String name = entry.getName();
-			if (name.endsWith("plugins.config"))
-				return parsePluginsConfig(jar
-					.getInputStream(entry), menuPath);
+		for (String name : entry.getClassNames()) {
 			if (name.indexOf('_') < 0 || name.indexOf('$') >= 0)
 				continue;
-			if (name.endsWith(".class"))
-				name = name.substring(0, name.length() - 6).replace('/', '.');
-			else
-				continue;
 			String[] item = new String[3];
 			item[0] = menuPath;
 			item[1] = makeLabel(name);
@@ -184,11 +179,19 @@ public List<String[]> getJarPluginList(File jarFile, String menuPath)
 
 	protected List<String[]> parsePluginsConfig(InputStream in, String menuPath)
 			throws IOException {
-		List<String[]> result = new ArrayList<String[]>();
+		List<String> lines = new ArrayList<String>();
 		BufferedReader reader =
 			new BufferedReader(new InputStreamReader(in));
 		String line;
-		while ((line = reader.readLine()) != null) {
+		while ((line = reader.readLine()) != null)
+			lines.add(line);
+		in.close();
+		return parsePluginsConfig(lines, menuPath);
+	}
+
+	protected List<String[]> parsePluginsConfig(List<String> lines, String menuPath) {
+		List<String[]> result = new ArrayList<String[]>();
+		for (String line : lines) {
 			if (line.startsWith("#"))
 				continue;
 			int quote = line.indexOf('"'),
@@ -207,7 +210,6 @@ protected List<String[]> parsePluginsConfig(InputStream in, String menuPath)
 				item[2] = item[2].substring(1).trim();
 			result.add(item);
 		}
-		in.close();
 		return result;
 	}
 
@@ -0,0 +1,120 @@
+package fiji;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies that the {@link JarIndex} lists the right classes and only
+ * rescans .jar files that changed.
+ */
+public class JarIndexTest {
+
+	private File tmp;
+
+	@Before
+	public void setUp() throws IOException {
+		tmp = File.createTempFile("jar-index-", "");
+		tmp.delete();
+		tmp.mkdir();
+	}
+
+	@After
+	public void tearDown() {
+		delete(tmp);
+	}
+
+	@Test
+	public void testScan() throws IOException {
+		File jar = writeJar("plain.jar", null, "Foo_.class", "a/b_c/Bar.class", "Baz$1.class", "README");
+		JarIndex.Entry entry = JarIndex.scan(jar);
+		assertEquals(Arrays.asList("Foo_", "a.b_c.Bar", "Baz$1"), entry.getClassNames());
+		assertNull(entry.getPluginsConfig());
+
+		jar = writeJar("configured.jar", "# comment\nPlugins, \"Foo\", Foo_\n", "Foo_.class");
+		entry = JarIndex.scan(jar);
+		assertEquals(Arrays.asList("# comment", "Plugins, \"Foo\", Foo_"), entry.getPluginsConfig());
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		File jar = writeJar("Cached_Plugin.jar", null, "Cached_Plugin.class");
+		File cache = new File(tmp, "cache");
+
+		JarIndex index = new JarIndex(cache);
+		index.update(JarIndex.findJars(tmp));
+		index.save();
+
+		// overwrite the contents, but keep the size and time stamp
+		long lastModified = jar.lastModified();
+		RandomAccessFile file = new RandomAccessFile(jar, "rw");
+		file.write(new byte[(int)jar.length()]);
+		file.close();
+		jar.setLastModified(lastModified);
+
+		index = new JarIndex(cache);
+		index.load();
+		assertEquals(Arrays.asList("Cached_Plugin"), index.get(jar).getClassNames());
+
+		jar.setLastModified(lastModified - 10000);
+		try {
+			index.get(jar);
+			fail("Changed .jar file was not rescanned");
+		} catch (IOException e) {
+			/* expected, as the file is no longer a valid .jar */
+		}
+	}
+
+	@Test
+	public void testClassMap() throws IOException {
+		File first = writeJar("a/first.jar", null, "Shared.class", "First_.class");
+		File second = writeJar("b/second.jar", null, "Shared.class", "Second_.class");
+		List<File> jars = JarIndex.findJars(tmp);
+		assertEquals(Arrays.asList(first, second), jars);
+
+		Map<String, File> map = new JarIndex(null).getClassMap(jars);
+		assertEquals(first, map.get("Shared"));
+		assertEquals(first, map.get("First_"));
+		assertEquals(second, map.get("Second_"));
+	}
+
+	private File writeJar(String name, String pluginsConfig, String... entries) throws IOException {
+		File file = new File(tmp, name);
+		file.getParentFile().mkdirs();
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+		for (String entry : entries) {
+			out.putNextEntry(new ZipEntry(entry));
+			out.write(new byte[] { (byte)0xca, (byte)0xfe });
+			out.closeEntry();
+		}
+		if (pluginsConfig != null) {
+			out.putNextEntry(new ZipEntry("plugins.config"));
+			out.write(pluginsConfig.getBytes("UTF-8"));
+			out.closeEntry();
+		}
+		out.close();
+		return file;
+	}
+
+	private static void delete(File file) {
+		File[] list = file.listFiles();
+		if (list != null)
+			for (File child : list)
+				delete(child);
+		file.delete();
+	}
+}
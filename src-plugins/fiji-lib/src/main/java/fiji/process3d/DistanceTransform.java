@@ -0,0 +1,322 @@
+package fiji.process3d;
+
+import ij.IJ;
+import ij.ImageStack;
+import ij.Prefs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * A parallel Euclidean Distance Transform of 3D stacks, shared by
+ * the EDT, SEDT and Local Thickness plugins.
+ *
+ * We use the algorithm proposed in
+
+	@TECHREPORT{Felzenszwalb04distancetransforms,
+	    author = {Pedro F. Felzenszwalb and Daniel P. Huttenlocher},
+	    title = {Distance transforms of sampled functions},
+	    institution = {Cornell Computing and Information Science},
+	    year = {2004}
+	}
+
+ * The squared distance is separable: for every line along z, then
+ * along y, then along x, we determine
+ *
+ *	g(x) = min(a^2 (x - y)^2 + f(y) for all y)
+ *
+ * where a is the pixel spacing along the line and f is the result of
+ * the previous pass (0 for background and "infinity" for foreground
+ * pixels in the first pass). For every line, the lower envelope of
+ * the parabolae is built in linear time, and then evaluated.
+ *
+ * The lines of a pass are independent, so they are distributed in
+ * chunks over a pool of threads shared by all transforms. Each thread
+ * allocates its line buffers once per pass, and the passes work in
+ * place on the output slices.
+ *
+ * In the signed variant, background pixels get the negative (squared)
+ * distance to the nearest foreground pixel, by performing the same
+ * calculation for both signs, where the values of the "wrong" sign
+ * are substituted by 0.
+ */
+public class DistanceTransform {
+	/** Output mode: the Euclidean distance. */
+	public static final int DISTANCE = 0;
+	/**
+	 * Output mode: the squared Euclidean distance, which is an exact
+	 * integer for isotropic pixels of unit size.
+	 */
+	public static final int SQUARED = 1;
+
+	protected final int w, h, d;
+	protected double pw = 1, ph = 1, pd = 1;
+	protected int threshold = 1;
+	protected boolean inverse, signed;
+	protected int output = DISTANCE;
+
+	private static final int CHUNK = 64;
+	private static ExecutorService pool;
+
+	protected int current, total;
+
+	public DistanceTransform(int w, int h, int d) {
+		this.w = w;
+		this.h = h;
+		this.d = d;
+	}
+
+	/** Sets the pixel width, height and depth (1 by default). */
+	public void setCalibration(double pw, double ph, double pd) {
+		this.pw = pw;
+		this.ph = ph;
+		this.pd = pd;
+	}
+
+	/**
+	 * Sets which pixels are background: those whose value is
+	 * less than the threshold, or, in the inverse case, those
+	 * whose value is at least the threshold. The default
+	 * threshold of 1 makes all pixels with value 0 background.
+	 */
+	public void setThreshold(int threshold, boolean inverse) {
+		this.threshold = threshold;
+		this.inverse = inverse;
+	}
+
+	/**
+	 * Sets whether background pixels get the negative distance
+	 * to the nearest foreground pixel (instead of 0).
+	 */
+	public void setSigned(boolean signed) {
+		this.signed = signed;
+	}
+
+	/** Sets the output mode, DISTANCE (default) or SQUARED. */
+	public void setOutput(int output) {
+		if (output != DISTANCE && output != SQUARED)
+			throw new IllegalArgumentException("Unknown output mode: " + output);
+		this.output = output;
+	}
+
+	/**
+	 * Transforms an 8-bit stack into a new 32-bit stack.
+	 */
+	public ImageStack compute(ImageStack stack) {
+		byte[][] in = new byte[d][];
+		ImageStack result = new ImageStack(w, h, d);
+		float[][] out = new float[d][];
+		for (int i = 0; i < d; i++) {
+			in[i] = (byte[])stack.getPixels(i + 1);
+			out[i] = new float[w * h];
+			result.setPixels(out[i], i + 1);
+		}
+		compute(in, out);
+		return result;
+	}
+
+	/**
+	 * Transforms 8-bit slices into new 32-bit slices.
+	 */
+	public float[][] compute(byte[][] in) {
+		float[][] out = new float[d][w * h];
+		compute(in, out);
+		return out;
+	}
+
+	/**
+	 * Transforms 8-bit slices into the given 32-bit slices, e.g.
+	 * the pixels of an existing stack.
+	 */
+	public void compute(final byte[][] in, final float[][] out) {
+		final boolean toDistance = output == DISTANCE;
+
+		current = 0;
+		total = 3 * w * h * d;
+
+		// along z, initializing f from the input
+		final float background = signed ? -Float.MAX_VALUE : 0;
+		run(new Pass(d, w * h, pd) {
+			final void get(int line, double[] f) {
+				for (int z = 0; z < d; z++)
+					f[z] = ((in[z][line] & 0xff) < threshold) ^ inverse ?
+						background : Float.MAX_VALUE;
+			}
+
+			final void set(int line, double[] g) {
+				for (int z = 0; z < d; z++)
+					out[z][line] = (float)g[z];
+			}
+		});
+
+		// along y
+		run(new Pass(h, w * d, ph) {
+			final void get(int line, double[] f) {
+				float[] slice = out[line / w];
+				for (int y = 0, i = line % w; y < h; y++, i += w)
+					f[y] = slice[i];
+			}
+
+			final void set(int line, double[] g) {
+				float[] slice = out[line / w];
+				for (int y = 0, i = line % w; y < h; y++, i += w)
+					slice[i] = (float)g[y];
+			}
+		});
+
+		// along x, finally taking the square root if needed
+		run(new Pass(w, h * d, pw) {
+			final void get(int line, double[] f) {
+				float[] slice = out[line / h];
+				for (int x = 0, i = (line % h) * w; x < w; x++, i++)
+					f[x] = slice[i];
+			}
+
+			final void set(int line, double[] g) {
+				float[] slice = out[line / h];
+				for (int x = 0, i = (line % h) * w; x < w; x++, i++) {
+					double value = g[x];
+					if (toDistance)
+						value = value < 0 ? -Math.sqrt(-value) : Math.sqrt(value);
+					slice[i] = (float)value;
+				}
+			}
+		});
+	}
+
+	/*
+	 * A pass of the transform along one dimension: n is the length of
+	 * the lines, a2 the squared pixel spacing along them.
+	 */
+	abstract class Pass {
+		final int n, lines;
+		final double a2;
+
+		Pass(int n, int lines, double spacing) {
+			this.n = n;
+			this.lines = lines;
+			this.a2 = spacing * spacing;
+		}
+
+		abstract void get(int line, double[] f);
+
+		abstract void set(int line, double[] g);
+	}
+
+	protected void run(final Pass pass) {
+		final AtomicInteger ai = new AtomicInteger(0);
+		int nThreads = Math.max(1, Math.min(Prefs.getThreads(),
+					(pass.lines + CHUNK - 1) / CHUNK));
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < nThreads; t++)
+			futures.add(getPool().submit(new Runnable() {
+				public void run() {
+					transformLines(pass, ai);
+				}
+			}));
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private void transformLines(Pass pass, AtomicInteger ai) {
+		int n = pass.n;
+		double[] f = new double[n], g = new double[n];
+		double[] fNeg = signed ? new double[n] : null;
+		double[] gNeg = signed ? new double[n] : null;
+		double[] z = new double[n + 1];
+		int[] v = new int[n];
+
+		for (int start = ai.getAndAdd(CHUNK); start < pass.lines;
+				start = ai.getAndAdd(CHUNK)) {
+			int stop = Math.min(pass.lines, start + CHUNK);
+			for (int line = start; line < stop; line++) {
+				pass.get(line, f);
+				if (signed) {
+					for (int x = 0; x < n; x++) {
+						fNeg[x] = f[x] < 0 ? -f[x] : 0;
+						if (f[x] < 0)
+							f[x] = 0;
+					}
+					transformLine(fNeg, gNeg, n, pass.a2, v, z);
+					transformLine(f, g, n, pass.a2, v, z);
+					for (int x = 0; x < n; x++)
+						if (fNeg[x] > 0)
+							g[x] = -gNeg[x];
+				}
+				else
+					transformLine(f, g, n, pass.a2, v, z);
+				pass.set(line, g);
+			}
+			if (total > 0)
+				showProgress(stop - start, n);
+		}
+	}
+
+	private synchronized void showProgress(int lines, int n) {
+		current += lines * n;
+		IJ.showProgress(current, total);
+	}
+
+	/*
+	 * The one-dimensional transform of f into g: parabola k has its
+	 * minimum at (v[k], f[v[k]]), and z[k] is the left bound of the
+	 * interval in which it determines the lower envelope.
+	 */
+	static void transformLine(double[] f, double[] g, int n, double a2,
+			int[] v, double[] z) {
+		int k = 0;
+		v[0] = 0;
+		z[0] = Double.NEGATIVE_INFINITY;
+		z[1] = Double.POSITIVE_INFINITY;
+		for (int q = 1; q < n; q++) {
+			double s;
+			for (;;) {
+				int p = v[k];
+				// calculate the intersection
+				s = ((f[q] + a2 * q * q) - (f[p] + a2 * p * p))
+					/ (2 * a2 * (q - p));
+				if (s > z[k])
+					break;
+				k--;
+			}
+			k++;
+			v[k] = q;
+			z[k] = s;
+			z[k + 1] = Double.POSITIVE_INFINITY;
+		}
+		k = 0;
+		for (int q = 0; q < n; q++) {
+			while (z[k + 1] < q)
+				k++;
+			int p = v[k];
+			g[q] = a2 * (q - p) * (q - p) + f[p];
+		}
+	}
+
+	protected static synchronized ExecutorService getPool() {
+		if (pool == null)
+			pool = Executors.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable,
+						"Distance Transform");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		return pool;
+	}
+}
@@ -0,0 +1,89 @@
+package fiji.process3d;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the {@link DistanceTransform} with the brute-force calculation.
+ */
+public class DistanceTransformTest {
+	final int w = 23, h = 17, d = 9;
+
+	@Test
+	public void testSquared() {
+		final byte[][] slices = randomSlices(0.8, 1);
+		final DistanceTransform transform = new DistanceTransform(w, h, d);
+		transform.setOutput(DistanceTransform.SQUARED);
+		assertDistances(slices, transform.compute(slices), 1, 1, 1, false, true, 0);
+	}
+
+	@Test
+	public void testAnisotropic() {
+		final byte[][] slices = randomSlices(0.9, 2);
+		final DistanceTransform transform = new DistanceTransform(w, h, d);
+		transform.setCalibration(0.5, 1.25, 3);
+		assertDistances(slices, transform.compute(slices), 0.5, 1.25, 3, false, false, 1e-5);
+	}
+
+	@Test
+	public void testSigned() {
+		final byte[][] slices = randomSlices(0.5, 3);
+		final DistanceTransform transform = new DistanceTransform(w, h, d);
+		transform.setSigned(true);
+		transform.setCalibration(1, 1, 2);
+		assertDistances(slices, transform.compute(slices), 1, 1, 2, true, false, 1e-5);
+	}
+
+	@Test
+	public void testThreshold() {
+		final byte[][] slices = randomSlices(0.7, 4);
+		final byte[][] inverted = new byte[d][w * h];
+		for (int z = 0; z < d; z++)
+			for (int i = 0; i < w * h; i++)
+				inverted[z][i] = (byte)(slices[z][i] == 0 ? 200 : 50);
+		final DistanceTransform transform = new DistanceTransform(w, h, d);
+		transform.setThreshold(128, true);
+		transform.setOutput(DistanceTransform.SQUARED);
+		assertDistances(slices, transform.compute(inverted), 1, 1, 1, false, true, 0);
+	}
+
+	private byte[][] randomSlices(final double foreground, final long seed) {
+		final Random random = new Random(seed);
+		final byte[][] slices = new byte[d][w * h];
+		for (int z = 0; z < d; z++)
+			for (int i = 0; i < w * h; i++)
+				slices[z][i] = (byte)(random.nextDouble() < foreground ? 255 : 0);
+		return slices;
+	}
+
+	private void assertDistances(final byte[][] slices, final float[][] result,
+			final double pw, final double ph, final double pd,
+			final boolean signed, final boolean squared, final double tolerance) {
+		for (int z = 0; z < d; z++)
+			for (int y = 0; y < h; y++)
+				for (int x = 0; x < w; x++) {
+					final boolean background = slices[z][x + w * y] == 0;
+					double expect = 0;
+					if (signed || !background) {
+						expect = Double.MAX_VALUE;
+						for (int z1 = 0; z1 < d; z1++)
+							for (int y1 = 0; y1 < h; y1++)
+								for (int x1 = 0; x1 < w; x1++) {
+									if ((slices[z1][x1 + w * y1] == 0) == background)
+										continue;
+									final double dx = (x - x1) * pw, dy = (y - y1) * ph, dz = (z - z1) * pd;
+									expect = Math.min(expect, dx * dx + dy * dy + dz * dz);
+								}
+						if (!squared)
+							expect = Math.sqrt(expect);
+						if (background)
+							expect = -expect;
+					}
+					assertEquals("(" + x + ", " + y + ", " + z + ")", expect,
+						result[z][x + w * y], tolerance * Math.abs(expect));
+				}
+	}
+}
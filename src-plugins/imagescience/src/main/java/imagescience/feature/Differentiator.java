@@ -9,10 +9,11 @@
 import imagescience.utility.FMath;
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
+import imagescience.utility.Parallel;
 import imagescience.utility.Progressor;
 import imagescience.utility.Timer;
 
-/** Computes Gaussian derivatives of images. */
+/** Computes Gaussian derivatives of images. The lines along each dimension are convolved in parallel, using the number of threads set by {@link ImageScience#threads(int)}. */
 public class Differentiator {
 	
 	/** The largest supported order of differentiation. Currently this is {@code 10}. */
@@ -80,19 +81,24 @@ public Image run(final Image image, final double scale, final int xorder, final
 			logstatus(info(xorder)+" in x-dimension...");
 			final double[] kernel = kernel(xscale,xorder,dims.x);
 			final int klenm1 = kernel.length - 1;
-			final double[] ain = new double[dims.x + 2*klenm1];
-			final double[] aout = new double[dims.x];
-			final Coordinates coords = new Coordinates();
 			deriv.axes(Axes.X);
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.z=0; coords.z<dims.z; ++coords.z)
-						for (coords.y=0; coords.y<dims.y; ++coords.y) {
-							coords.x = -klenm1; deriv.get(coords,ain);
-							convolve(ain,aout,kernel);
-							coords.x = 0; deriv.set(coords,aout);
-							progressor.step();
-						}
+			Parallel.run(dims.c*dims.t*dims.z*dims.y,new Parallel.Range() {
+				public void run(final int start, final int stop) {
+					final double[] ain = new double[dims.x + 2*klenm1];
+					final double[] aout = new double[dims.x];
+					final Coordinates coords = new Coordinates();
+					for (int line=start; line<stop; ++line) {
+						coords.y = line % dims.y;
+						coords.z = (line/dims.y) % dims.z;
+						coords.t = (line/(dims.y*dims.z)) % dims.t;
+						coords.c = line/(dims.y*dims.z*dims.t);
+						coords.x = -klenm1; deriv.get(coords,ain);
+						convolve(ain,aout,kernel);
+						coords.x = 0; deriv.set(coords,aout);
+					}
+					progressor.step(stop - start);
+				}
+			});
 		}
 		
 		// Differentiation in y-dimension:
@@ -109,19 +115,24 @@ public Image run(final Image image, final double scale, final int xorder, final
 			logstatus(info(yorder)+" in y-dimension...");
 			final double[] kernel = kernel(yscale,yorder,dims.y);
 			final int klenm1 = kernel.length - 1;
-			final double[] ain = new double[dims.y + 2*klenm1];
-			final double[] aout = new double[dims.y];
-			final Coordinates coords = new Coordinates();
 			deriv.axes(Axes.Y);
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.z=0; coords.z<dims.z; ++coords.z)
-						for (coords.x=0; coords.x<dims.x; ++coords.x) {
-							coords.y = -klenm1; deriv.get(coords,ain);
-							convolve(ain,aout,kernel);
-							coords.y = 0; deriv.set(coords,aout);
-							progressor.step();
-						}
+			Parallel.run(dims.c*dims.t*dims.z*dims.x,new Parallel.Range() {
+				public void run(final int start, final int stop) {
+					final double[] ain = new double[dims.y + 2*klenm1];
+					final double[] aout = new double[dims.y];
+					final Coordinates coords = new Coordinates();
+					for (int line=start; line<stop; ++line) {
+						coords.x = line % dims.x;
+						coords.z = (line/dims.x) % dims.z;
+						coords.t = (line/(dims.x*dims.z)) % dims.t;
+						coords.c = line/(dims.x*dims.z*dims.t);
+						coords.y = -klenm1; deriv.get(coords,ain);
+						convolve(ain,aout,kernel);
+						coords.y = 0; deriv.set(coords,aout);
+					}
+					progressor.step(stop - start);
+				}
+			});
 		}
 		
 		// Differentiation in z-dimension:
@@ -138,20 +149,25 @@ public Image run(final Image image, final double scale, final int xorder, final
 			logstatus(info(zorder)+" in z-dimension...");
 			final double[] kernel = kernel(zscale,zorder,dims.z);
 			final int klenm1 = kernel.length - 1;
-			final double[] ain = new double[dims.z + 2*klenm1];
-			final double[] aout = new double[dims.z];
-			final Coordinates coords = new Coordinates();
 			deriv.axes(Axes.Z);
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.y=0; coords.y<dims.y; ++coords.y) {
+			Parallel.run(dims.c*dims.t*dims.y,new Parallel.Range() {
+				public void run(final int start, final int stop) {
+					final double[] ain = new double[dims.z + 2*klenm1];
+					final double[] aout = new double[dims.z];
+					final Coordinates coords = new Coordinates();
+					for (int row=start; row<stop; ++row) {
+						coords.y = row % dims.y;
+						coords.t = (row/dims.y) % dims.t;
+						coords.c = row/(dims.y*dims.t);
 						for (coords.x=0; coords.x<dims.x; ++coords.x) {
 							coords.z = -klenm1; deriv.get(coords,ain);
 							convolve(ain,aout,kernel);
 							coords.z = 0; deriv.set(coords,aout);
 						}
-						progressor.step(dims.z);
 					}
+					progressor.step((stop - start)*dims.z);
+				}
+			});
 		}
 		
 		messenger.status("");
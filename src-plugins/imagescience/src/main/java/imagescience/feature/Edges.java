@@ -10,10 +10,11 @@
 import imagescience.utility.FMath;
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
+import imagescience.utility.Parallel;
 import imagescience.utility.Progressor;
 import imagescience.utility.Timer;
 
-/** Detects edges in images. */
+/** Detects edges in images. The gradient and the non-maxima suppression are computed in parallel, using the number of threads set by {@link ImageScience#threads(int)}. */
 public class Edges {
 	
 	/** Default constructor. */
@@ -79,23 +80,27 @@ public Image run(final Image image, final double scale, final boolean nonmaxsup)
 			logstatus("Computing gradient magnitude");
 			progressor.range(pls[pl],pls[++pl]);
 			progressor.steps(dims.c*dims.t*dims.y);
-			edgeImage = nonmaxsup ? new FloatImage(dims) : Ix;
-			Ix.axes(Axes.X); Iy.axes(Axes.X); edgeImage.axes(Axes.X);
-			final double[] aIx = new double[dims.x];
-			final double[] aIy = new double[dims.x];
-			final Coordinates coords = new Coordinates();
+			final Image magImage = nonmaxsup ? new FloatImage(dims) : Ix;
+			Ix.axes(Axes.X); Iy.axes(Axes.X); magImage.axes(Axes.X);
 			
 			progressor.start();
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.y=0; coords.y<dims.y; ++coords.y) {
+			Parallel.run(dims,new Parallel.Rows() {
+				public void run(final int channel, final int frame, final int slice, final int ystart, final int ystop) {
+					final double[] aIx = new double[dims.x];
+					final double[] aIy = new double[dims.x];
+					final Coordinates coords = new Coordinates();
+					coords.c = channel; coords.t = frame; coords.z = slice;
+					for (coords.y=ystart; coords.y<ystop; ++coords.y) {
 						Ix.get(coords,aIx); Iy.get(coords,aIy);
 						for (int x=0; x<dims.x; ++x)
 							aIx[x] = Math.sqrt(aIx[x]*aIx[x] + aIy[x]*aIy[x]);
-						edgeImage.set(coords,aIx);
-						progressor.step();
+						magImage.set(coords,aIx);
 					}
+					progressor.step(ystop - ystart);
+				}
+			});
 			progressor.stop();
+			edgeImage = magImage;
 			
 			// Apply non-maxima suppression if requested (using mirror-boundary conditions and linear interpolation):
 			if (nonmaxsup) {
@@ -103,51 +108,57 @@ public Image run(final Image image, final double scale, final boolean nonmaxsup)
 				progressor.steps(dims.c*dims.t*dims.y);
 				progressor.range(pls[pl],pls[++pl]);
 				final Image supImage = Ix;
-				final double[][] gm = new double[3][dims.x+2];
-				final Coordinates cgm = new Coordinates();
-				cgm.x = -1; coords.reset();
 				
 				progressor.start();
-				if (dims.y == 1) {
-					for (coords.c=0, cgm.c=0; coords.c<dims.c; ++coords.c, ++cgm.c)
-						for (coords.t=0, cgm.t=0; coords.t<dims.t; ++coords.t, ++cgm.t) {
-							// One row only:
-							Ix.get(coords,aIx); Iy.get(coords,aIy);
-							edgeImage.get(cgm,gm[0]); gm[2] = gm[1] = gm[0];
-							suppress2D(gm,aIx,aIy);
-							supImage.set(coords,aIx);
-							progressor.step();
-						}
-				} else {
-					double[] atmp = null;
-					final int dimsym1 = dims.y - 1;
-					for (coords.c=0, cgm.c=0; coords.c<dims.c; ++coords.c, ++cgm.c)
-						for (coords.t=0, cgm.t=0; coords.t<dims.t; ++coords.t, ++cgm.t) {
-							// First row:
-							coords.y = 0; Ix.get(coords,aIx); Iy.get(coords,aIy);
-							cgm.y = 0; edgeImage.get(cgm,gm[1]);
-							cgm.y = 1; edgeImage.get(cgm,gm[0]); edgeImage.get(cgm,gm[2]);
-							suppress2D(gm,aIx,aIy);
-							supImage.set(coords,aIx);
-							progressor.step();
-							// Intermediate rows:
-							for (coords.y=1, cgm.y=2; coords.y<dimsym1; ++coords.y, ++cgm.y) {
+				Parallel.run(dims.c*dims.t,1,new Parallel.Range() {
+					public void run(final int start, final int stop) {
+						final double[] aIx = new double[dims.x];
+						final double[] aIy = new double[dims.x];
+						final double[][] gm = new double[3][dims.x+2];
+						final Coordinates coords = new Coordinates();
+						final Coordinates cgm = new Coordinates();
+						cgm.x = -1;
+						for (int plane=start; plane<stop; ++plane) {
+							coords.c = cgm.c = plane/dims.t;
+							coords.t = cgm.t = plane % dims.t;
+							if (dims.y == 1) {
+								// One row only:
+								coords.y = cgm.y = 0;
+								Ix.get(coords,aIx); Iy.get(coords,aIy);
+								magImage.get(cgm,gm[0]); gm[2] = gm[1] = gm[0];
+								suppress2D(gm,aIx,aIy);
+								supImage.set(coords,aIx);
+								progressor.step();
+							} else {
+								double[] atmp = null;
+								final int dimsym1 = dims.y - 1;
+								// First row:
+								coords.y = 0; Ix.get(coords,aIx); Iy.get(coords,aIy);
+								cgm.y = 0; magImage.get(cgm,gm[1]);
+								cgm.y = 1; magImage.get(cgm,gm[0]); magImage.get(cgm,gm[2]);
+								suppress2D(gm,aIx,aIy);
+								supImage.set(coords,aIx);
+								progressor.step();
+								// Intermediate rows:
+								for (coords.y=1, cgm.y=2; coords.y<dimsym1; ++coords.y, ++cgm.y) {
+									Ix.get(coords,aIx); Iy.get(coords,aIy);
+									atmp=gm[0]; gm[0]=gm[1]; gm[1]=gm[2]; gm[2]=atmp;
+									magImage.get(cgm,gm[2]);
+									suppress2D(gm,aIx,aIy);
+									supImage.set(coords,aIx);
+									progressor.step();
+								}
+								// Last row:
 								Ix.get(coords,aIx); Iy.get(coords,aIy);
 								atmp=gm[0]; gm[0]=gm[1]; gm[1]=gm[2]; gm[2]=atmp;
-								edgeImage.get(cgm,gm[2]);
+								cgm.y = dims.y-2; magImage.get(cgm,gm[2]);
 								suppress2D(gm,aIx,aIy);
 								supImage.set(coords,aIx);
 								progressor.step();
 							}
-							// Last row:
-							Ix.get(coords,aIx); Iy.get(coords,aIy);
-							atmp=gm[0]; gm[0]=gm[1]; gm[1]=gm[2]; gm[2]=atmp;
-							cgm.y = dims.y-2; edgeImage.get(cgm,gm[2]);
-							suppress2D(gm,aIx,aIy);
-							supImage.set(coords,aIx);
-							progressor.step();
 						}
-				}
+					}
+				});
 				progressor.stop();
 				edgeImage = supImage;
 			}
@@ -169,25 +180,28 @@ public Image run(final Image image, final double scale, final boolean nonmaxsup)
 			logstatus("Computing gradient magnitude");
 			progressor.steps(dims.c*dims.t*dims.z*dims.y);
 			progressor.range(pls[pl],pls[++pl]);
-			edgeImage = nonmaxsup ? new FloatImage(dims) : Ix;
-			Ix.axes(Axes.X); Iy.axes(Axes.X); Iz.axes(Axes.X); edgeImage.axes(Axes.X);
-			final double[] aIx = new double[dims.x];
-			final double[] aIy = new double[dims.x];
-			final double[] aIz = new double[dims.x];
-			final Coordinates coords = new Coordinates();
+			final Image magImage = nonmaxsup ? new FloatImage(dims) : Ix;
+			Ix.axes(Axes.X); Iy.axes(Axes.X); Iz.axes(Axes.X); magImage.axes(Axes.X);
 			
 			progressor.start();
-			for (coords.c=0; coords.c<dims.c; ++coords.c)
-				for (coords.t=0; coords.t<dims.t; ++coords.t)
-					for (coords.z=0; coords.z<dims.z; ++coords.z)
-						for (coords.y=0; coords.y<dims.y; ++coords.y) {
-							Ix.get(coords,aIx); Iy.get(coords,aIy); Iz.get(coords,aIz);
-							for (int x=0; x<dims.x; ++x)
-							aIx[x] = Math.sqrt(aIx[x]*aIx[x] + aIy[x]*aIy[x] + aIz[x]*aIz[x]);
-							edgeImage.set(coords,aIx);
-							progressor.step();
-						}
+			Parallel.run(dims,new Parallel.Rows() {
+				public void run(final int channel, final int frame, final int slice, final int ystart, final int ystop) {
+					final double[] aIx = new double[dims.x];
+					final double[] aIy = new double[dims.x];
+					final double[] aIz = new double[dims.x];
+					final Coordinates coords = new Coordinates();
+					coords.c = channel; coords.t = frame; coords.z = slice;
+					for (coords.y=ystart; coords.y<ystop; ++coords.y) {
+						Ix.get(coords,aIx); Iy.get(coords,aIy); Iz.get(coords,aIz);
+						for (int x=0; x<dims.x; ++x)
+						aIx[x] = Math.sqrt(aIx[x]*aIx[x] + aIy[x]*aIy[x] + aIz[x]*aIz[x]);
+						magImage.set(coords,aIx);
+					}
+					progressor.step(ystop - ystart);
+				}
+			});
 			progressor.stop();
+			edgeImage = magImage;
 			
 			// Apply non-maxima suppression if requested (using mirror-boundary conditions and linear interpolation):
 			if (nonmaxsup) {
@@ -198,43 +212,49 @@ public Image run(final Image image, final double scale, final boolean nonmaxsup)
 				Iy.axes(Axes.X+Axes.Y);
 				Iz.axes(Axes.X+Axes.Y);
 				final Image supImage = Ix;
-				edgeImage.axes(Axes.X+Axes.Y);
-				final double[][][] gm = new double[3][dims.y+2][dims.x+2];
-				final double[][] aaIx = new double[dims.y][dims.x];
-				final double[][] aaIy = new double[dims.y][dims.x];
-				final double[][] aaIz = new double[dims.y][dims.x];
-				final Coordinates cgm = new Coordinates();
-				cgm.y = cgm.x = -1; coords.reset();
-				final int dimszm1 = dims.z - 1;
-				double[][] atmp = null;
+				magImage.axes(Axes.X+Axes.Y);
 				
 				progressor.start();
-				for (coords.c=0, cgm.c=0; coords.c<dims.c; ++coords.c, ++cgm.c)
-					for (coords.t=0, cgm.t=0; coords.t<dims.t; ++coords.t, ++cgm.t) {
-						// First slice:
-						coords.z = 0; Ix.get(coords,aaIx); Iy.get(coords,aaIy); Iz.get(coords,aaIz);
-						cgm.z = 0; edgeImage.get(cgm,gm[1]);
-						cgm.z = 1; edgeImage.get(cgm,gm[0]); edgeImage.get(cgm,gm[2]);
-						suppress3D(gm,aaIx,aaIy,aaIz);
-						supImage.set(coords,aaIx);
-						progressor.step();
-						// Intermediate slices:
-						for (coords.z=1, cgm.z=2; coords.z<dimszm1; ++coords.z, ++cgm.z) {
+				Parallel.run(dims.c*dims.t,1,new Parallel.Range() {
+					public void run(final int start, final int stop) {
+						final double[][][] gm = new double[3][dims.y+2][dims.x+2];
+						final double[][] aaIx = new double[dims.y][dims.x];
+						final double[][] aaIy = new double[dims.y][dims.x];
+						final double[][] aaIz = new double[dims.y][dims.x];
+						final Coordinates coords = new Coordinates();
+						final Coordinates cgm = new Coordinates();
+						cgm.y = cgm.x = -1;
+						final int dimszm1 = dims.z - 1;
+						double[][] atmp = null;
+						for (int volume=start; volume<stop; ++volume) {
+							coords.c = cgm.c = volume/dims.t;
+							coords.t = cgm.t = volume % dims.t;
+							// First slice:
+							coords.z = 0; Ix.get(coords,aaIx); Iy.get(coords,aaIy); Iz.get(coords,aaIz);
+							cgm.z = 0; magImage.get(cgm,gm[1]);
+							cgm.z = 1; magImage.get(cgm,gm[0]); magImage.get(cgm,gm[2]);
+							suppress3D(gm,aaIx,aaIy,aaIz);
+							supImage.set(coords,aaIx);
+							progressor.step();
+							// Intermediate slices:
+							for (coords.z=1, cgm.z=2; coords.z<dimszm1; ++coords.z, ++cgm.z) {
+								Ix.get(coords,aaIx); Iy.get(coords,aaIy); Iz.get(coords,aaIz);
+								atmp=gm[0]; gm[0]=gm[1]; gm[1]=gm[2]; gm[2]=atmp;
+								magImage.get(cgm,gm[2]);
+								suppress3D(gm,aaIx,aaIy,aaIz);
+								supImage.set(coords,aaIx);
+								progressor.step();
+							}
+							// Last slice:
 							Ix.get(coords,aaIx); Iy.get(coords,aaIy); Iz.get(coords,aaIz);
 							atmp=gm[0]; gm[0]=gm[1]; gm[1]=gm[2]; gm[2]=atmp;
-							edgeImage.get(cgm,gm[2]);
+							cgm.z = dims.z-2; magImage.get(cgm,gm[2]);
 							suppress3D(gm,aaIx,aaIy,aaIz);
 							supImage.set(coords,aaIx);
 							progressor.step();
 						}
-						// Last slice:
-						Ix.get(coords,aaIx); Iy.get(coords,aaIy); Iz.get(coords,aaIz);
-						atmp=gm[0]; gm[0]=gm[1]; gm[1]=gm[2]; gm[2]=atmp;
-						cgm.z = dims.z-2; edgeImage.get(cgm,gm[2]);
-						suppress3D(gm,aaIx,aaIy,aaIz);
-						supImage.set(coords,aaIx);
-						progressor.step();
 					}
+				});
 				progressor.stop();
 				edgeImage = supImage;
 			}
@@ -8,11 +8,12 @@
 import imagescience.image.Image;
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
+import imagescience.utility.Parallel;
 import imagescience.utility.Progressor;
 import imagescience.utility.Timer;
 import java.util.Vector;
 
-/** Computes Hessian eigenimages. */
+/** Computes Hessian eigenimages. The derivatives and eigenvalues are computed in parallel, using the number of threads set by {@link ImageScience#threads(int)}. */
 public class Hessian {
 	
 	/** Default constructor. */
@@ -87,17 +88,18 @@ public Vector<Image> run(final Image image, final double scale, final boolean ab
 			progressor.steps(dims.c*dims.t*dims.y);
 			progressor.range(pls[pl],pls[++pl]);
 			Hxx.axes(Axes.X); Hxy.axes(Axes.X); Hyy.axes(Axes.X);
-			final double[] ahxx = new double[dims.x];
-			final double[] ahxy = new double[dims.x];
-			final double[] ahyy = new double[dims.x];
-			final Coordinates coords = new Coordinates();
 			
 			progressor.start();
 			if (absolute) {
 				messenger.log("Comparing and storing absolute eigenvalues");
-				for (coords.c=0; coords.c<dims.c; ++coords.c)
-					for (coords.t=0; coords.t<dims.t; ++coords.t)
-						for (coords.y=0; coords.y<dims.y; ++coords.y) {
+				Parallel.run(dims,new Parallel.Rows() {
+					public void run(final int channel, final int frame, final int slice, final int ystart, final int ystop) {
+						final double[] ahxx = new double[dims.x];
+						final double[] ahxy = new double[dims.x];
+						final double[] ahyy = new double[dims.x];
+						final Coordinates coords = new Coordinates();
+						coords.c = channel; coords.t = frame; coords.z = slice;
+						for (coords.y=ystart; coords.y<ystop; ++coords.y) {
 							Hxx.get(coords,ahxx);
 							Hxy.get(coords,ahxy);
 							Hyy.get(coords,ahyy);
@@ -123,13 +125,20 @@ public Vector<Image> run(final Image image, final double scale, final boolean ab
 							}
 							Hxx.set(coords,ahxx);
 							Hyy.set(coords,ahyy);
-							progressor.step();
 						}
+						progressor.step(ystop - ystart);
+					}
+				});
 			} else {
 				messenger.log("Comparing and storing actual eigenvalues");
-				for (coords.c=0; coords.c<dims.c; ++coords.c)
-					for (coords.t=0; coords.t<dims.t; ++coords.t)
-						for (coords.y=0; coords.y<dims.y; ++coords.y) {
+				Parallel.run(dims,new Parallel.Rows() {
+					public void run(final int channel, final int frame, final int slice, final int ystart, final int ystop) {
+						final double[] ahxx = new double[dims.x];
+						final double[] ahxy = new double[dims.x];
+						final double[] ahyy = new double[dims.x];
+						final Coordinates coords = new Coordinates();
+						coords.c = channel; coords.t = frame; coords.z = slice;
+						for (coords.y=ystart; coords.y<ystop; ++coords.y) {
 							Hxx.get(coords,ahxx);
 							Hxy.get(coords,ahxy);
 							Hyy.get(coords,ahyy);
@@ -155,8 +164,10 @@ public Vector<Image> run(final Image image, final double scale, final boolean ab
 							}
 							Hxx.set(coords,ahxx);
 							Hyy.set(coords,ahyy);
-							progressor.step();
 						}
+						progressor.step(ystop - ystart);
+					}
+				});
 			}
 			progressor.stop();
 			
@@ -194,115 +205,126 @@ public Vector<Image> run(final Image image, final double scale, final boolean ab
 			progressor.range(pls[pl],pls[++pl]);
 			Hxx.axes(Axes.X); Hxy.axes(Axes.X); Hxz.axes(Axes.X);
 			Hyy.axes(Axes.X); Hyz.axes(Axes.X); Hzz.axes(Axes.X);
-			final double[] ahxx = new double[dims.x];
-			final double[] ahxy = new double[dims.x];
-			final double[] ahxz = new double[dims.x];
-			final double[] ahyy = new double[dims.x];
-			final double[] ahyz = new double[dims.x];
-			final double[] ahzz = new double[dims.x];
-			final Coordinates coords = new Coordinates();
 			
 			progressor.start();
 			if (absolute) {
 				messenger.log("Comparing and storing absolute eigenvalues");
-				for (coords.c=0; coords.c<dims.c; ++coords.c)
-					for (coords.t=0; coords.t<dims.t; ++coords.t)
-						for (coords.z=0; coords.z<dims.z; ++coords.z)
-							for (coords.y=0; coords.y<dims.y; ++coords.y) {
-								Hxx.get(coords,ahxx);
-								Hxy.get(coords,ahxy);
-								Hxz.get(coords,ahxz);
-								Hyy.get(coords,ahyy);
-								Hyz.get(coords,ahyz);
-								Hzz.get(coords,ahzz);
-								for (int x=0; x<dims.x; ++x) {
-									final double fhxx = ahxx[x];
-									final double fhxy = ahxy[x];
-									final double fhxz = ahxz[x];
-									final double fhyy = ahyy[x];
-									final double fhyz = ahyz[x];
-									final double fhzz = ahzz[x];
-									final double a = -(fhxx + fhyy + fhzz);
-									final double b = fhxx*fhyy + fhxx*fhzz + fhyy*fhzz - fhxy*fhxy - fhxz*fhxz - fhyz*fhyz;
-									final double c = fhxx*(fhyz*fhyz - fhyy*fhzz) + fhyy*fhxz*fhxz + fhzz*fhxy*fhxy - 2*fhxy*fhxz*fhyz;
-									final double q = (a*a - 3*b)/9;
-									final double r = (a*a*a - 4.5*a*b + 13.5*c)/27;
-									final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
-									final double sqrtq3 = sqrtq*sqrtq*sqrtq;
-									double absh1, absh2, absh3;
-									if (sqrtq3 == 0) {
-										absh1 = 0;
-										absh2 = 0;
-										absh3 = 0;
-									} else {
-										final double rsqq3 = r/sqrtq3;
-										final double angle = (rsqq3*rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
-										absh1 = Math.abs(-2*sqrtq*Math.cos(angle/3) - a/3);
-										absh2 = Math.abs(-2*sqrtq*Math.cos((angle + TWOPI)/3) - a/3);
-										absh3 = Math.abs(-2*sqrtq*Math.cos((angle - TWOPI)/3) - a/3);
-									}
-									if (absh2 < absh3) { final double tmp = absh2; absh2 = absh3; absh3 = tmp; }
-									if (absh1 < absh2) { final double tmp1 = absh1; absh1 = absh2; absh2 = tmp1;
-									if (absh2 < absh3) { final double tmp2 = absh2; absh2 = absh3; absh3 = tmp2; }}
-									ahxx[x] = absh1;
-									ahyy[x] = absh2;
-									ahzz[x] = absh3;
+				Parallel.run(dims,new Parallel.Rows() {
+					public void run(final int channel, final int frame, final int slice, final int ystart, final int ystop) {
+						final double[] ahxx = new double[dims.x];
+						final double[] ahxy = new double[dims.x];
+						final double[] ahxz = new double[dims.x];
+						final double[] ahyy = new double[dims.x];
+						final double[] ahyz = new double[dims.x];
+						final double[] ahzz = new double[dims.x];
+						final Coordinates coords = new Coordinates();
+						coords.c = channel; coords.t = frame; coords.z = slice;
+						for (coords.y=ystart; coords.y<ystop; ++coords.y) {
+							Hxx.get(coords,ahxx);
+							Hxy.get(coords,ahxy);
+							Hxz.get(coords,ahxz);
+							Hyy.get(coords,ahyy);
+							Hyz.get(coords,ahyz);
+							Hzz.get(coords,ahzz);
+							for (int x=0; x<dims.x; ++x) {
+								final double fhxx = ahxx[x];
+								final double fhxy = ahxy[x];
+								final double fhxz = ahxz[x];
+								final double fhyy = ahyy[x];
+								final double fhyz = ahyz[x];
+								final double fhzz = ahzz[x];
+								final double a = -(fhxx + fhyy + fhzz);
+								final double b = fhxx*fhyy + fhxx*fhzz + fhyy*fhzz - fhxy*fhxy - fhxz*fhxz - fhyz*fhyz;
+								final double c = fhxx*(fhyz*fhyz - fhyy*fhzz) + fhyy*fhxz*fhxz + fhzz*fhxy*fhxy - 2*fhxy*fhxz*fhyz;
+								final double q = (a*a - 3*b)/9;
+								final double r = (a*a*a - 4.5*a*b + 13.5*c)/27;
+								final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
+								final double sqrtq3 = sqrtq*sqrtq*sqrtq;
+								double absh1, absh2, absh3;
+								if (sqrtq3 == 0) {
+									absh1 = 0;
+									absh2 = 0;
+									absh3 = 0;
+								} else {
+									final double rsqq3 = r/sqrtq3;
+									final double angle = (rsqq3*rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
+									absh1 = Math.abs(-2*sqrtq*Math.cos(angle/3) - a/3);
+									absh2 = Math.abs(-2*sqrtq*Math.cos((angle + TWOPI)/3) - a/3);
+									absh3 = Math.abs(-2*sqrtq*Math.cos((angle - TWOPI)/3) - a/3);
 								}
-								Hxx.set(coords,ahxx);
-								Hyy.set(coords,ahyy);
-								Hzz.set(coords,ahzz);
-								progressor.step();
+								if (absh2 < absh3) { final double tmp = absh2; absh2 = absh3; absh3 = tmp; }
+								if (absh1 < absh2) { final double tmp1 = absh1; absh1 = absh2; absh2 = tmp1;
+								if (absh2 < absh3) { final double tmp2 = absh2; absh2 = absh3; absh3 = tmp2; }}
+								ahxx[x] = absh1;
+								ahyy[x] = absh2;
+								ahzz[x] = absh3;
 							}
+							Hxx.set(coords,ahxx);
+							Hyy.set(coords,ahyy);
+							Hzz.set(coords,ahzz);
+						}
+						progressor.step(ystop - ystart);
+					}
+				});
 			} else {
 				messenger.log("Comparing and storing actual eigenvalues");
-				for (coords.c=0; coords.c<dims.c; ++coords.c)
-					for (coords.t=0; coords.t<dims.t; ++coords.t)
-						for (coords.z=0; coords.z<dims.z; ++coords.z)
-							for (coords.y=0; coords.y<dims.y; ++coords.y) {
-								Hxx.get(coords,ahxx);
-								Hxy.get(coords,ahxy);
-								Hxz.get(coords,ahxz);
-								Hyy.get(coords,ahyy);
-								Hyz.get(coords,ahyz);
-								Hzz.get(coords,ahzz);
-								for (int x=0; x<dims.x; ++x) {
-									final double fhxx = ahxx[x];
-									final double fhxy = ahxy[x];
-									final double fhxz = ahxz[x];
-									final double fhyy = ahyy[x];
-									final double fhyz = ahyz[x];
-									final double fhzz = ahzz[x];
-									final double a = -(fhxx + fhyy + fhzz);
-									final double b = fhxx*fhyy + fhxx*fhzz + fhyy*fhzz - fhxy*fhxy - fhxz*fhxz - fhyz*fhyz;
-									final double c = fhxx*(fhyz*fhyz - fhyy*fhzz) + fhyy*fhxz*fhxz + fhzz*fhxy*fhxy - 2*fhxy*fhxz*fhyz;
-									final double q = (a*a - 3*b)/9;
-									final double r = (a*a*a - 4.5*a*b + 13.5*c)/27;
-									final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
-									final double sqrtq3 = sqrtq*sqrtq*sqrtq;
-									double h1, h2, h3;
-									if (sqrtq3 == 0) {
-										h1 = 0;
-										h2 = 0;
-										h3 = 0;
-									} else {
-										final double rsqq3 = r/sqrtq3;
-										final double angle = (rsqq3*rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
-										h1 = -2*sqrtq*Math.cos(angle/3) - a/3;
-										h2 = -2*sqrtq*Math.cos((angle + TWOPI)/3) - a/3;
-										h3 = -2*sqrtq*Math.cos((angle - TWOPI)/3) - a/3;
-									}
-									if (h2 < h3) { final double tmp = h2; h2 = h3; h3 = tmp; }
-									if (h1 < h2) { final double tmp1 = h1; h1 = h2; h2 = tmp1;
-									if (h2 < h3) { final double tmp2 = h2; h2 = h3; h3 = tmp2; }}
-									ahxx[x] = h1;
-									ahyy[x] = h2;
-									ahzz[x] = h3;
+				Parallel.run(dims,new Parallel.Rows() {
+					public void run(final int channel, final int frame, final int slice, final int ystart, final int ystop) {
+						final double[] ahxx = new double[dims.x];
+						final double[] ahxy = new double[dims.x];
+						final double[] ahxz = new double[dims.x];
+						final double[] ahyy = new double[dims.x];
+						final double[] ahyz = new double[dims.x];
+						final double[] ahzz = new double[dims.x];
+						final Coordinates coords = new Coordinates();
+						coords.c = channel; coords.t = frame; coords.z = slice;
+						for (coords.y=ystart; coords.y<ystop; ++coords.y) {
+							Hxx.get(coords,ahxx);
+							Hxy.get(coords,ahxy);
+							Hxz.get(coords,ahxz);
+							Hyy.get(coords,ahyy);
+							Hyz.get(coords,ahyz);
+							Hzz.get(coords,ahzz);
+							for (int x=0; x<dims.x; ++x) {
+								final double fhxx = ahxx[x];
+								final double fhxy = ahxy[x];
+								final double fhxz = ahxz[x];
+								final double fhyy = ahyy[x];
+								final double fhyz = ahyz[x];
+								final double fhzz = ahzz[x];
+								final double a = -(fhxx + fhyy + fhzz);
+								final double b = fhxx*fhyy + fhxx*fhzz + fhyy*fhzz - fhxy*fhxy - fhxz*fhxz - fhyz*fhyz;
+								final double c = fhxx*(fhyz*fhyz - fhyy*fhzz) + fhyy*fhxz*fhxz + fhzz*fhxy*fhxy - 2*fhxy*fhxz*fhyz;
+								final double q = (a*a - 3*b)/9;
+								final double r = (a*a*a - 4.5*a*b + 13.5*c)/27;
+								final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
+								final double sqrtq3 = sqrtq*sqrtq*sqrtq;
+								double h1, h2, h3;
+								if (sqrtq3 == 0) {
+									h1 = 0;
+									h2 = 0;
+									h3 = 0;
+								} else {
+									final double rsqq3 = r/sqrtq3;
+									final double angle = (rsqq3*rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
+									h1 = -2*sqrtq*Math.cos(angle/3) - a/3;
+									h2 = -2*sqrtq*Math.cos((angle + TWOPI)/3) - a/3;
+									h3 = -2*sqrtq*Math.cos((angle - TWOPI)/3) - a/3;
 								}
-								Hxx.set(coords,ahxx);
-								Hyy.set(coords,ahyy);
-								Hzz.set(coords,ahzz);
-								progressor.step();
+								if (h2 < h3) { final double tmp = h2; h2 = h3; h3 = tmp; }
+								if (h1 < h2) { final double tmp1 = h1; h1 = h2; h2 = tmp1;
+								if (h2 < h3) { final double tmp2 = h2; h2 = h3; h3 = tmp2; }}
+								ahxx[x] = h1;
+								ahyy[x] = h2;
+								ahzz[x] = h3;
 							}
+							Hxx.set(coords,ahxx);
+							Hyy.set(coords,ahyy);
+							Hzz.set(coords,ahzz);
+						}
+						progressor.step(ystop - ystart);
+					}
+				});
 			}
 			progressor.stop();
 			
@@ -5,13 +5,13 @@
 import imagescience.image.Dimensions;
 import imagescience.image.FloatImage;
 import imagescience.image.Image;
-import imagescience.utility.FMath;
 import imagescience.utility.ImageScience;
 import imagescience.utility.Messenger;
+import imagescience.utility.Parallel;
 import imagescience.utility.Progressor;
 import imagescience.utility.Timer;
 
-/** Computes forward and inverse Fourier transforms of images. The methods are based on the fast Fourier transform (FFT) and therefore accept only images whose size is an integer power of 2 in each direction in which the transformation is applied. Based on the algorithm described by W. H. Press, S. A. Teukolsky, W. T. Vetterling, B. P. Flannery, <a href="http://www.nr.com/" target="_new">Numerical Recipes in C: The Art of Scientific Computing</a> (2nd edition), Cambridge University Press, Cambridge, 1992, pp. 507-508. */
+/** Computes forward and inverse Fourier transforms of images. The methods are based on the fast Fourier transform (FFT) and accept images of any size. Sizes whose prime factors are small are transformed by a mixed-radix algorithm, other sizes by Bluestein's algorithm. The lines along each axis are transformed in parallel, using the number of threads set by {@link ImageScience#threads(int)}. The twiddle factors of each size are computed once and cached. */
 public class FFT {
 	
 	/** Default constructor. */
@@ -25,7 +25,7 @@ public FFT() { }
 		
 		@param axes the axes along which the transform is to be applied. The transform is applied to each dimension for which the corresponding boolean field of this parameter is {@code true}.
 		
-		@exception IllegalStateException if the images do not have the same size in each dimension or if their size is not an integer power of 2 in any of the directions in which the transform is to be applied.
+		@exception IllegalStateException if the images do not have the same size in each dimension.
 		
 		@exception NullPointerException if any of the parameters is {@code null}.
 	*/
@@ -43,7 +43,7 @@ public void forward(final Image real, final Image imag, final Axes axes) {
 		
 		@param axes the axes along which the transform is to be applied. The transform is applied to each dimension for which the corresponding boolean field of this parameter is {@code true}.
 		
-		@exception IllegalStateException if the images do not have the same size in each dimension or if their size is not an integer power of 2 in any of the directions in which the transform is to be applied.
+		@exception IllegalStateException if the images do not have the same size in each dimension.
 		
 		@exception NullPointerException if any of the parameters is {@code null}.
 	*/
@@ -61,18 +61,17 @@ private void fft(final Image real, final Image imag, final Axes axes, final int
 		
 		// Initialize:
 		check(real,imag,axes);
-		final Coordinates c = new Coordinates();
 		final Dimensions dims = real.dimensions();
 		if (sign == -1) messenger.status("Forward FFT...");
 		else messenger.status("Inverse FFT...");
-		double[] re = null, im = null;
 		double scale = 1;
+		final int elements = dims.x*dims.y*dims.z*dims.t*dims.c;
 		progressor.steps(
-			(axes.x ? dims.c*dims.t*dims.z*dims.y : 0) +
-			(axes.y ? dims.c*dims.t*dims.z*dims.x : 0) +
-			(axes.z ? dims.c*dims.t*dims.z*dims.y : 0) +
-			(axes.t ? dims.c*dims.t*dims.z*dims.y : 0) +
-			(axes.c ? dims.c*dims.t*dims.z*dims.y : 0)
+			(axes.x ? elements/dims.x : 0) +
+			(axes.y ? elements/dims.y : 0) +
+			(axes.z ? elements/dims.z : 0) +
+			(axes.t ? elements/dims.t : 0) +
+			(axes.c ? elements/dims.c : 0)
 		);
 		progressor.start();
 		
@@ -80,113 +79,35 @@ private void fft(final Image real, final Image imag, final Axes axes, final int
 		if (axes.x) {
 			messenger.log("   FFT in x-dimension...");
 			scale *= dims.x;
-			c.reset();
-			real.axes(Axes.X);
-			imag.axes(Axes.X);
-			re = new double[dims.x];
-			im = new double[dims.x];
-			for (c.c=0; c.c<dims.c; ++c.c)
-				for (c.t=0; c.t<dims.t; ++c.t)
-					for (c.z=0; c.z<dims.z; ++c.z)
-						for (c.y=0; c.y<dims.y; ++c.y) {
-							real.get(c,re);
-							imag.get(c,im);
-							fft(re,im,sign);
-							real.set(c,re);
-							imag.set(c,im);
-							progressor.step();
-						}
+			fft(real,imag,Axes.X,dims.x,sign);
 		}
 		
 		// Transform in y-dimension if active:
 		if (axes.y) {
 			messenger.log("   FFT in y-dimension...");
 			scale *= dims.y;
-			c.reset();
-			real.axes(Axes.Y);
-			imag.axes(Axes.Y);
-			re = new double[dims.y];
-			im = new double[dims.y];
-			for (c.c=0; c.c<dims.c; ++c.c)
-				for (c.t=0; c.t<dims.t; ++c.t)
-					for (c.z=0; c.z<dims.z; ++c.z)
-						for (c.x=0; c.x<dims.x; ++c.x) {
-							real.get(c,re);
-							imag.get(c,im);
-							fft(re,im,sign);
-							real.set(c,re);
-							imag.set(c,im);
-							progressor.step();
-						}
+			fft(real,imag,Axes.Y,dims.y,sign);
 		}
 		
 		// Transform in z-dimension if active:
 		if (axes.z) {
 			messenger.log("   FFT in z-dimension...");
 			scale *= dims.z;
-			c.reset();
-			real.axes(Axes.Z);
-			imag.axes(Axes.Z);
-			re = new double[dims.z];
-			im = new double[dims.z];
-			for (c.c=0; c.c<dims.c; ++c.c)
-				for (c.t=0; c.t<dims.t; ++c.t)
-					for (c.y=0; c.y<dims.y; ++c.y) {
-						for (c.x=0; c.x<dims.x; ++c.x) {
-							real.get(c,re);
-							imag.get(c,im);
-							fft(re,im,sign);
-							real.set(c,re);
-							imag.set(c,im);
-						}
-						progressor.step(dims.z);
-					}
+			fft(real,imag,Axes.Z,dims.z,sign);
 		}
 		
 		// Transform in t-dimension if active:
 		if (axes.t) {
 			messenger.log("   FFT in t-dimension...");
 			scale *= dims.t;
-			c.reset();
-			real.axes(Axes.T);
-			imag.axes(Axes.T);
-			re = new double[dims.t];
-			im = new double[dims.t];
-			for (c.c=0; c.c<dims.c; ++c.c)
-				for (c.z=0; c.z<dims.z; ++c.z)
-					for (c.y=0; c.y<dims.y; ++c.y) {
-						for (c.x=0; c.x<dims.x; ++c.x) {
-							real.get(c,re);
-							imag.get(c,im);
-							fft(re,im,sign);
-							real.set(c,re);
-							imag.set(c,im);
-						}
-						progressor.step(dims.t);
-					}
+			fft(real,imag,Axes.T,dims.t,sign);
 		}
 		
 		// Transform in c-dimension if active:
 		if (axes.c) {
 			messenger.log("   FFT in c-dimension...");
 			scale *= dims.c;
-			c.reset();
-			real.axes(Axes.C);
-			imag.axes(Axes.C);
-			re = new double[dims.c];
-			im = new double[dims.c];
-			for (c.t=0; c.t<dims.t; ++c.t)
-				for (c.z=0; c.z<dims.z; ++c.z)
-					for (c.y=0; c.y<dims.y; ++c.y) {
-						for (c.x=0; c.x<dims.x; ++c.x) {
-							real.get(c,re);
-							imag.get(c,im);
-							fft(re,im,sign);
-							real.set(c,re);
-							imag.set(c,im);
-						}
-						progressor.step(dims.c);
-					}
+			fft(real,imag,Axes.C,dims.c,sign);
 		}
 		
 		// Scale correction in case of inverse transform:
@@ -202,6 +123,45 @@ private void fft(final Image real, final Image imag, final Axes axes, final int
 		timer.stop();
 	}
 	
+	// Transforms all lines along the given axis. Batches of lines are handed out to the threads, each batch with its own buffers:
+	private void fft(final Image real, final Image imag, final int axis, final int length, final int sign) {
+		
+		final Dimensions dims = real.dimensions();
+		final int lines = dims.x*dims.y*dims.z*dims.t*dims.c/length;
+		final FFTPlan plan = FFTPlan.get(length);
+		real.axes(axis);
+		imag.axes(axis);
+		
+		Parallel.run(lines,BATCH,new Parallel.Range() {
+			public void run(final int start, final int stop) {
+				final Coordinates c = new Coordinates();
+				final double[] re = new double[length];
+				final double[] im = new double[length];
+				final FFTPlan.Workspace ws = plan.workspace();
+				for (int line=start; line<stop; ++line) {
+					coordinates(c,axis,line,dims);
+					real.get(c,re);
+					imag.get(c,im);
+					plan.transform(re,im,sign,ws);
+					real.set(c,re);
+					imag.set(c,im);
+				}
+				progressor.step(stop - start);
+			}
+		});
+	}
+	
+	// Sets the coordinates of the start of the given line along the given axis, with x running fastest:
+	private static void coordinates(final Coordinates c, final int axis, int line, final Dimensions dims) {
+		
+		c.x = c.y = c.z = c.t = c.c = 0;
+		if (axis != Axes.X) { c.x = line % dims.x; line /= dims.x; }
+		if (axis != Axes.Y) { c.y = line % dims.y; line /= dims.y; }
+		if (axis != Axes.Z) { c.z = line % dims.z; line /= dims.z; }
+		if (axis != Axes.T) { c.t = line % dims.t; line /= dims.t; }
+		if (axis != Axes.C) { c.c = line; }
+	}
+	
 	private void check(final Image real, final Image imag, final Axes axes) {
 		
 		messenger.log("Real input image of type "+real.type());
@@ -211,54 +171,6 @@ private void check(final Image real, final Image imag, final Axes axes) {
 		final Dimensions idims = imag.dimensions();
 		
 		if (!rdims.equals(idims)) throw new IllegalStateException("Real and imaginary images have different dimensions");
-		if (axes.x && !FMath.power2(rdims.x)) throw new IllegalStateException("Real and imaginary x-size not a power of 2");
-		if (axes.y && !FMath.power2(rdims.y)) throw new IllegalStateException("Real and imaginary y-size not a power of 2");
-		if (axes.z && !FMath.power2(rdims.z)) throw new IllegalStateException("Real and imaginary z-size not a power of 2");
-		if (axes.t && !FMath.power2(rdims.t)) throw new IllegalStateException("Real and imaginary t-size not a power of 2");
-		if (axes.c && !FMath.power2(rdims.c)) throw new IllegalStateException("Real and imaginary c-size not a power of 2");
-	}
-	
-	// Modified version of the algorithm described in Numerical Recipes
-	// in C: The Art of Scientific Computing, second edition, Cambridge
-	// University Press, Cambridge, 1992, pp. 507-508.
-	private void fft(final double[] real, final double[] imag, final int sign) {
-		
-		// Bit reversal:
-		final int len = real.length;
-		final int hlen = len/2;
-		for (int i=0, j=0; i<len; ++i) {
-			if (j > i) {
-				final double rt = real[j]; real[j] = real[i]; real[i] = rt;
-				final double it = imag[j]; imag[j] = imag[i]; imag[i] = it;
-			}
-			int m = hlen;
-			while (m >= 2 && j >= m) { j -= m; m >>= 1; }
-			j += m;
-		}
-		
-		// Danielson-Lanczos algorithm:
-		int N = 2, hN = 1;
-		while (N <= len) {
-			final double theta = sign*TWOPI/N;
-			double tmp = Math.sin(0.5*theta);
-			final double alpha = -2.0*tmp*tmp;
-			final double beta = Math.sin(theta);
-			double wr = 1.0;
-			double wi = 0.0;
-			for (int k=0; k<hN; ++k) {
-				for (int i=k, j=k+hN; i<len; i+=N, j+=N) {
-					final double tmpr = wr*real[j] - wi*imag[j];
-					final double tmpi = wr*imag[j] + wi*real[j];
-					real[j] = real[i] - tmpr;
-					imag[j] = imag[i] - tmpi;
-					real[i] += tmpr;
-					imag[i] += tmpi;
-				}
-				wr += (tmp=wr)*alpha - wi*beta;
-				wi += wi*alpha + tmp*beta;
-			}
-			hN = N; N <<= 1;
-		}
 	}
 	
 	/** The object used for message displaying. */
@@ -267,6 +179,7 @@ private void fft(final double[] real, final double[] imag, final int sign) {
 	/** The object used for progress displaying. */
 	public final Progressor progressor = new Progressor();
 	
-	private static final double TWOPI = 2*Math.PI;
+	// Number of lines handed out to a thread at a time:
+	private static final int BATCH = 64;
 	
 }
@@ -0,0 +1,347 @@
+package imagescience.fourier;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Fast Fourier transform of complex-valued sequences of a given length. Lengths whose prime factors are all small are transformed by a mixed-radix algorithm (radix 2, 3, 4, 5 and generic odd radices), based on the recursive decimation-in-time scheme of M. Borgerding, <a href="http://kissfft.sourceforge.net/" target="_new">KISS FFT</a>. Other lengths are transformed by the chirp z-transform algorithm of L. I. Bluestein, "A Linear Filtering Approach to the Computation of Discrete Fourier Transform", IEEE Transactions on Audio and Electroacoustics, vol. 18, no. 4, 1970, pp. 451-455, using a power-of-2 transform for the convolution. Plans are immutable and the most recently used ones are cached per length, so they can be shared by any number of threads, each with its own {@link Workspace}. */
+final class FFTPlan {
+
+	/** Returns the plan for sequences of the given length, creating it if it is not in the cache. */
+	static FFTPlan get(final int length) {
+
+		if (length < 1) throw new IllegalArgumentException("Length less than 1");
+		synchronized (cache) {
+			FFTPlan plan = cache.get(length);
+			if (plan == null) {
+				plan = new FFTPlan(length);
+				cache.put(length, plan);
+			}
+			return plan;
+		}
+	}
+
+	/** Removes all plans from the cache. */
+	static void clear() { synchronized (cache) { cache.clear(); } }
+
+	// Maximum number of cached plans, the least recently used one is dropped first:
+	private static final int MAXPLANS = 32;
+
+	private static final LinkedHashMap<Integer,FFTPlan> cache = new LinkedHashMap<Integer,FFTPlan>(16,0.75f,true) {
+		@Override protected boolean removeEldestEntry(final Map.Entry<Integer,FFTPlan> eldest) { return size() > MAXPLANS; }
+	};
+
+	// Largest prime factor handled by the mixed-radix algorithm:
+	private static final int MAXRADIX = 31;
+
+	private static final double TWOPI = 2*Math.PI;
+
+	private final int n;
+
+	// Mixed radix: pairs of radix p and remaining length m, and the twiddle factors exp(2*pi*i*k/n):
+	private final int[] factors;
+	private final int maxradix;
+	private final double[] twr, twi;
+
+	// Bluestein: the chirp exp(i*pi*k*k/n), the transform of the convolution kernel for each sign, and the plan of the convolution:
+	private final double[] chr, chi;
+	private final double[] fwdr, fwdi, invr, invi;
+	private final FFTPlan conv;
+
+	private FFTPlan(final int n) {
+
+		this.n = n;
+		final int[] f = factorize(n);
+		int maxp = 1;
+		for (int i=0; i<f.length; i+=2) if (f[i] > maxp) maxp = f[i];
+
+		if (maxp <= MAXRADIX) {
+			factors = f;
+			maxradix = maxp;
+			twr = new double[n];
+			twi = new double[n];
+			for (int k=0; k<n; ++k) {
+				final double phi = TWOPI*k/n;
+				twr[k] = Math.cos(phi);
+				twi[k] = Math.sin(phi);
+			}
+			chr = chi = fwdr = fwdi = invr = invi = null;
+			conv = null;
+
+		} else {
+			factors = null;
+			maxradix = 0;
+			twr = twi = null;
+			int m = 1; while (m < 2*n - 1) m <<= 1;
+			conv = get(m);
+			chr = new double[n];
+			chi = new double[n];
+			final long n2 = 2L*n;
+			for (long k=0; k<n; ++k) {
+				final double phi = Math.PI*((k*k)%n2)/n;
+				chr[(int)k] = Math.cos(phi);
+				chi[(int)k] = Math.sin(phi);
+			}
+			fwdr = new double[m]; fwdi = new double[m];
+			invr = new double[m]; invi = new double[m];
+			kernel(fwdr,fwdi,-1);
+			kernel(invr,invi,+1);
+		}
+	}
+
+	// The transformed kernel conj(chirp) of the Bluestein convolution for the given sign:
+	private void kernel(final double[] re, final double[] im, final int sign) {
+
+		final int m = re.length;
+		re[0] = chr[0]; im[0] = -sign*chi[0];
+		for (int k=1; k<n; ++k) {
+			re[k] = re[m-k] = chr[k];
+			im[k] = im[m-k] = -sign*chi[k];
+		}
+		conv.transform(re,im,-1,conv.workspace());
+	}
+
+	// Splits n into factors, 4 first, then 2, then odd primes, as pairs of factor p and the length m remaining after it:
+	private static int[] factorize(int n) {
+
+		final int[] f = new int[64];
+		int i = 0;
+		if (n == 1) { f[i++] = 1; f[i++] = 1; }
+		int p = 4;
+		while (n > 1) {
+			while (n % p != 0) {
+				switch (p) {
+					case 4: p = 2; break;
+					case 2: p = 3; break;
+					default: p += 2;
+				}
+				if (p*p > n) p = n;
+			}
+			n /= p;
+			f[i++] = p;
+			f[i++] = n;
+		}
+		final int[] factors = new int[i];
+		System.arraycopy(f,0,factors,0,i);
+		return factors;
+	}
+
+	/** Returns the length of the sequences transformed by this plan. */
+	int length() { return n; }
+
+	/** Buffers needed by a plan. Each thread must use its own workspace. */
+	static final class Workspace {
+
+		final double[] re, im, sr, si;
+		final Workspace inner;
+
+		Workspace(final int length, final int scratch, final Workspace inner) {
+			re = new double[length];
+			im = new double[length];
+			sr = new double[scratch];
+			si = new double[scratch];
+			this.inner = inner;
+		}
+	}
+
+	/** Returns a new workspace for this plan. */
+	Workspace workspace() {
+
+		if (conv == null) return new Workspace(n,maxradix,null);
+		return new Workspace(conv.n,0,conv.workspace());
+	}
+
+	/** Transforms the given sequence in place.
+
+		@param re the real part of the sequence.
+
+		@param im the imaginary part of the sequence.
+
+		@param sign the sign of the exponent: {@code -1} for the forward transform and {@code +1} for the inverse transform (without scaling).
+
+		@param ws a workspace of this plan.
+	*/
+	void transform(final double[] re, final double[] im, final int sign, final Workspace ws) {
+
+		if (n == 1) return;
+		if (conv == null) {
+			work(ws.re,ws.im,0,re,im,0,1,0,sign,ws);
+			System.arraycopy(ws.re,0,re,0,n);
+			System.arraycopy(ws.im,0,im,0,n);
+		} else bluestein(re,im,sign,ws);
+	}
+
+	private void bluestein(final double[] re, final double[] im, final int sign, final Workspace ws) {
+
+		// Multiply with the chirp and pad with zeros:
+		final double[] ar = ws.re, ai = ws.im;
+		final int m = ar.length;
+		for (int k=0; k<n; ++k) {
+			final double cr = chr[k], ci = sign*chi[k];
+			ar[k] = re[k]*cr - im[k]*ci;
+			ai[k] = re[k]*ci + im[k]*cr;
+		}
+		for (int k=n; k<m; ++k) ar[k] = ai[k] = 0;
+
+		// Convolve with the conjugate chirp:
+		conv.transform(ar,ai,-1,ws.inner);
+		final double[] br = (sign < 0) ? fwdr : invr;
+		final double[] bi = (sign < 0) ? fwdi : invi;
+		for (int k=0; k<m; ++k) {
+			final double r = ar[k]*br[k] - ai[k]*bi[k];
+			ai[k] = ar[k]*bi[k] + ai[k]*br[k];
+			ar[k] = r;
+		}
+		conv.transform(ar,ai,+1,ws.inner);
+
+		// Multiply with the chirp and scale:
+		for (int k=0; k<n; ++k) {
+			final double cr = chr[k]/m, ci = sign*chi[k]/m;
+			re[k] = ar[k]*cr - ai[k]*ci;
+			im[k] = ar[k]*ci + ai[k]*cr;
+		}
+	}
+
+	// Transforms the sequence at (in, in + fstride, ...) for factors f and on, into (out, out + 1, ...):
+	private void work(
+		final double[] outr, final double[] outi, final int out,
+		final double[] inr, final double[] ini, final int in,
+		final int fstride, final int f, final int sign, final Workspace ws
+	) {
+
+		final int p = factors[f];
+		final int m = factors[f+1];
+
+		if (m == 1) {
+			for (int i=0, j=in; i<p; ++i, j+=fstride) {
+				outr[out+i] = inr[j];
+				outi[out+i] = ini[j];
+			}
+		} else {
+			for (int i=0; i<p; ++i)
+				work(outr,outi,out+i*m,inr,ini,in+i*fstride,fstride*p,f+2,sign,ws);
+		}
+
+		switch (p) {
+			case 1: break;
+			case 2: butterfly2(outr,outi,out,fstride,m,sign); break;
+			case 3: butterfly3(outr,outi,out,fstride,m,sign); break;
+			case 4: butterfly4(outr,outi,out,fstride,m,sign); break;
+			case 5: butterfly5(outr,outi,out,fstride,m,sign); break;
+			default: butterfly(outr,outi,out,fstride,m,p,sign,ws);
+		}
+	}
+
+	private void butterfly2(final double[] fr, final double[] fi, final int out, final int fstride, final int m, final int sign) {
+
+		for (int k=0, i=out, j=out+m, t=0; k<m; ++k, ++i, ++j, t+=fstride) {
+			final double wr = twr[t], wi = sign*twi[t];
+			final double tr = fr[j]*wr - fi[j]*wi;
+			final double ti = fr[j]*wi + fi[j]*wr;
+			fr[j] = fr[i] - tr;
+			fi[j] = fi[i] - ti;
+			fr[i] += tr;
+			fi[i] += ti;
+		}
+	}
+
+	private void butterfly3(final double[] fr, final double[] fi, final int out, final int fstride, final int m, final int sign) {
+
+		final double epi = sign*twi[fstride*m];
+		for (int k=0, i0=out, t1=0, t2=0; k<m; ++k, ++i0, t1+=fstride, t2+=2*fstride) {
+			final int i1 = i0 + m, i2 = i1 + m;
+			final double w1r = twr[t1], w1i = sign*twi[t1];
+			final double w2r = twr[t2], w2i = sign*twi[t2];
+			final double s1r = fr[i1]*w1r - fi[i1]*w1i, s1i = fr[i1]*w1i + fi[i1]*w1r;
+			final double s2r = fr[i2]*w2r - fi[i2]*w2i, s2i = fr[i2]*w2i + fi[i2]*w2r;
+			final double s3r = s1r + s2r, s3i = s1i + s2i;
+			final double s0r = (s1r - s2r)*epi, s0i = (s1i - s2i)*epi;
+			final double hr = fr[i0] - 0.5*s3r, hi = fi[i0] - 0.5*s3i;
+			fr[i0] += s3r;
+			fi[i0] += s3i;
+			fr[i2] = hr + s0i;
+			fi[i2] = hi - s0r;
+			fr[i1] = hr - s0i;
+			fi[i1] = hi + s0r;
+		}
+	}
+
+	private void butterfly4(final double[] fr, final double[] fi, final int out, final int fstride, final int m, final int sign) {
+
+		for (int k=0, i0=out, t1=0, t2=0, t3=0; k<m; ++k, ++i0, t1+=fstride, t2+=2*fstride, t3+=3*fstride) {
+			final int i1 = i0 + m, i2 = i1 + m, i3 = i2 + m;
+			final double w1r = twr[t1], w1i = sign*twi[t1];
+			final double w2r = twr[t2], w2i = sign*twi[t2];
+			final double w3r = twr[t3], w3i = sign*twi[t3];
+			final double s0r = fr[i1]*w1r - fi[i1]*w1i, s0i = fr[i1]*w1i + fi[i1]*w1r;
+			final double s1r = fr[i2]*w2r - fi[i2]*w2i, s1i = fr[i2]*w2i + fi[i2]*w2r;
+			final double s2r = fr[i3]*w3r - fi[i3]*w3i, s2i = fr[i3]*w3i + fi[i3]*w3r;
+			final double s5r = fr[i0] - s1r, s5i = fi[i0] - s1i;
+			final double f0r = fr[i0] + s1r, f0i = fi[i0] + s1i;
+			final double s3r = s0r + s2r, s3i = s0i + s2i;
+			final double s4r = s0r - s2r, s4i = s0i - s2i;
+			fr[i2] = f0r - s3r;
+			fi[i2] = f0i - s3i;
+			fr[i0] = f0r + s3r;
+			fi[i0] = f0i + s3i;
+			if (sign < 0) {
+				fr[i1] = s5r + s4i; fi[i1] = s5i - s4r;
+				fr[i3] = s5r - s4i; fi[i3] = s5i + s4r;
+			} else {
+				fr[i1] = s5r - s4i; fi[i1] = s5i + s4r;
+				fr[i3] = s5r + s4i; fi[i3] = s5i - s4r;
+			}
+		}
+	}
+
+	private void butterfly5(final double[] fr, final double[] fi, final int out, final int fstride, final int m, final int sign) {
+
+		final double yar = twr[fstride*m], yai = sign*twi[fstride*m];
+		final double ybr = twr[2*fstride*m], ybi = sign*twi[2*fstride*m];
+		for (int u=0, i0=out, t=0; u<m; ++u, ++i0, t+=fstride) {
+			final int i1 = i0 + m, i2 = i1 + m, i3 = i2 + m, i4 = i3 + m;
+			final double w1r = twr[t], w1i = sign*twi[t];
+			final double w2r = twr[2*t], w2i = sign*twi[2*t];
+			final double w3r = twr[3*t], w3i = sign*twi[3*t];
+			final double w4r = twr[4*t], w4i = sign*twi[4*t];
+			final double s0r = fr[i0], s0i = fi[i0];
+			final double s1r = fr[i1]*w1r - fi[i1]*w1i, s1i = fr[i1]*w1i + fi[i1]*w1r;
+			final double s2r = fr[i2]*w2r - fi[i2]*w2i, s2i = fr[i2]*w2i + fi[i2]*w2r;
+			final double s3r = fr[i3]*w3r - fi[i3]*w3i, s3i = fr[i3]*w3i + fi[i3]*w3r;
+			final double s4r = fr[i4]*w4r - fi[i4]*w4i, s4i = fr[i4]*w4i + fi[i4]*w4r;
+			final double s7r = s1r + s4r, s7i = s1i + s4i;
+			final double s10r = s1r - s4r, s10i = s1i - s4i;
+			final double s8r = s2r + s3r, s8i = s2i + s3i;
+			final double s9r = s2r - s3r, s9i = s2i - s3i;
+			fr[i0] = s0r + s7r + s8r;
+			fi[i0] = s0i + s7i + s8i;
+			final double s5r = s0r + s7r*yar + s8r*ybr, s5i = s0i + s7i*yar + s8i*ybr;
+			final double s6r = s10i*yai + s9i*ybi, s6i = -s10r*yai - s9r*ybi;
+			fr[i1] = s5r - s6r; fi[i1] = s5i - s6i;
+			fr[i4] = s5r + s6r; fi[i4] = s5i + s6i;
+			final double s11r = s0r + s7r*ybr + s8r*yar, s11i = s0i + s7i*ybr + s8i*yar;
+			final double s12r = -s10i*ybi + s9i*yai, s12i = s10r*ybi - s9r*yai;
+			fr[i2] = s11r + s12r; fi[i2] = s11i + s12i;
+			fr[i3] = s11r - s12r; fi[i3] = s11i - s12i;
+		}
+	}
+
+	private void butterfly(final double[] fr, final double[] fi, final int out, final int fstride, final int m, final int p, final int sign, final Workspace ws) {
+
+		final double[] sr = ws.sr, si = ws.si;
+		for (int u=0; u<m; ++u) {
+			for (int q=0, k=out+u; q<p; ++q, k+=m) { sr[q] = fr[k]; si[q] = fi[k]; }
+			for (int q1=0, k=u; q1<p; ++q1, k+=m) {
+				double r = sr[0], i = si[0];
+				for (int q=1, t=0; q<p; ++q) {
+					t += fstride*k; if (t >= n) t -= n;
+					final double wr = twr[t], wi = sign*twi[t];
+					r += sr[q]*wr - si[q]*wi;
+					i += sr[q]*wi + si[q]*wr;
+				}
+				fr[out+k] = r;
+				fi[out+k] = i;
+			}
+		}
+	}
+
+}
@@ -1,10 +1,13 @@
 package imagescience.utility;
 
-/** Contains the name and version number of the ImageScience library. */
+/** Contains the name and version number of the ImageScience library, as well as its global settings. */
 public class ImageScience {
 	
 	private static final String NAME = "ImageScience";
-	private static final String VERSION = "2.4.1";
+	private static final String VERSION = "2.5.0";
+	
+	private static int threads = Runtime.getRuntime().availableProcessors();
+	private static boolean threadsSet = false;
 	
 	/** Default constructor. */
 	public ImageScience() { }
@@ -18,4 +21,32 @@ public ImageScience() { }
 	/** Returns the name and version number of the library appended with a colon and space. */
 	public static String prelude() { return (NAME + " " + VERSION + ": "); }
 	
+	/** Sets the number of threads used by the methods of the library that run in parallel. The default is the number of available processors. Once set, the number is no longer changed by {@link #defaultThreads(int)}.
+		
+		@param n the number of threads.
+		
+		@exception IllegalArgumentException if {@code n} is less than {@code 1}.
+	*/
+	public static synchronized void threads(final int n) {
+		
+		if (n < 1) throw new IllegalArgumentException("Number of threads less than 1");
+		threads = n;
+		threadsSet = true;
+	}
+	
+	/** Sets the default number of threads used by the methods of the library that run in parallel. This has no effect if the number was set explicitly by {@link #threads(int)}, so that applications can pass their own default (such as the number set in ImageJ) on every call without overriding the choice of the user.
+		
+		@param n the number of threads.
+		
+		@exception IllegalArgumentException if {@code n} is less than {@code 1}.
+	*/
+	public static synchronized void defaultThreads(final int n) {
+		
+		if (n < 1) throw new IllegalArgumentException("Number of threads less than 1");
+		if (!threadsSet) threads = n;
+	}
+	
+	/** Returns the number of threads used by the methods of the library that run in parallel. */
+	public static synchronized int threads() { return threads; }
+	
 }
@@ -0,0 +1,130 @@
+package imagescience.utility;
+
+import imagescience.image.Dimensions;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Executes loops in parallel, using the number of threads set by {@link ImageScience#threads(int)}. The iterations of a loop are divided into batches, which are handed out to the threads one at a time, so that each thread can reuse its own buffers within a batch. Each iteration is executed exactly once and in the same way as in serial execution, so the results do not depend on the number of threads, provided the iterations write to disjoint parts of the output. */
+public class Parallel {
+
+	/** Default constructor. */
+	public Parallel() { }
+
+	/** Loop over a range of indices. */
+	public interface Range {
+
+		/** Executes the iterations from {@code start} up to but not including {@code stop}. */
+		public void run(int start, int stop);
+
+	}
+
+	/** Loop over the rows of an image. */
+	public interface Rows {
+
+		/** Executes the iterations for rows {@code ystart} up to but not including {@code ystop} of x-y slice {@code z} of time frame {@code t} of channel {@code c}. */
+		public void run(int c, int t, int z, int ystart, int ystop);
+
+	}
+
+	/** Executes the iterations {@code 0} up to but not including {@code count} in batches of the given size.
+
+		@param count the number of iterations.
+
+		@param batch the maximum number of iterations per batch.
+
+		@param range the loop to be executed.
+
+		@exception IllegalArgumentException if {@code batch} is less than {@code 1}.
+
+		@exception IllegalStateException if the calling thread is interrupted while waiting for the threads.
+
+		@exception NullPointerException if {@code range} is {@code null}.
+	*/
+	public static void run(final int count, final int batch, final Range range) {
+
+		if (batch < 1) throw new IllegalArgumentException("Batch size less than 1");
+
+		final AtomicInteger next = new AtomicInteger(0);
+		final Throwable[] failure = new Throwable[1];
+		final Runnable worker = new Runnable() {
+			public void run() {
+				try {
+					for (int start = next.getAndAdd(batch); start < count; start = next.getAndAdd(batch))
+						range.run(start,Math.min(start + batch, count));
+				} catch (Throwable e) {
+					synchronized (failure) { if (failure[0] == null) failure[0] = e; }
+					next.set(count);
+				}
+			}
+		};
+
+		final int nthreads = Math.min(ImageScience.threads(), (count + batch - 1)/batch);
+		if (nthreads <= 1) worker.run();
+		else {
+			final Thread[] threads = new Thread[nthreads];
+			for (int i=0; i<nthreads; ++i) {
+				threads[i] = new Thread(worker);
+				threads[i].start();
+			}
+			try { for (int i=0; i<nthreads; ++i) threads[i].join(); }
+			catch (InterruptedException e) {
+				next.set(count);
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted during parallel execution");
+			}
+		}
+
+		if (failure[0] instanceof RuntimeException) throw (RuntimeException)failure[0];
+		if (failure[0] instanceof Error) throw (Error)failure[0];
+	}
+
+	/** Executes the iterations {@code 0} up to but not including {@code count} in batches whose size is chosen such that each thread gets several batches.
+
+		@param count the number of iterations.
+
+		@param range the loop to be executed.
+
+		@exception IllegalStateException if the calling thread is interrupted while waiting for the threads.
+
+		@exception NullPointerException if {@code range} is {@code null}.
+	*/
+	public static void run(final int count, final Range range) {
+
+		run(count,batch(count),range);
+	}
+
+	/** Executes the iterations for all rows of images of the given dimensions. The rows of each x-y slice are divided into blocks of consecutive rows, so that also two-dimensional images are processed in parallel.
+
+		@param dims the dimensions of the images.
+
+		@param rows the loop to be executed.
+
+		@exception IllegalStateException if the calling thread is interrupted while waiting for the threads.
+
+		@exception NullPointerException if {@code dims} or {@code rows} is {@code null}.
+	*/
+	public static void run(final Dimensions dims, final Rows rows) {
+
+		final int slices = dims.c*dims.t*dims.z;
+		final int height = Math.min(batch(slices*dims.y), dims.y);
+		final int blocks = (dims.y + height - 1)/height;
+
+		run(slices*blocks,1,new Range() {
+			public void run(final int start, final int stop) {
+				for (int i=start; i<stop; ++i) {
+					final int ystart = (i % blocks)*height;
+					final int slice = i/blocks;
+					rows.run(slice/(dims.t*dims.z),(slice/dims.z) % dims.t,slice % dims.z,ystart,Math.min(ystart + height, dims.y));
+				}
+			}
+		});
+	}
+
+	// Batch size giving about eight batches per thread, for load balancing:
+	private static int batch(final int count) {
+
+		final int batches = 8*ImageScience.threads();
+		return Math.max(1, (count + batches - 1)/batches);
+	}
+
+}
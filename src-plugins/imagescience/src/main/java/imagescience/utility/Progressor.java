@@ -5,7 +5,7 @@
 import ij.gui.ProgressBar;
 import java.awt.Graphics;
 
-/** Wrapper around ImageJ's progress bar. This class offers several advantages over ImageJ's native progress displaying methods. First, it allows one to make sure that the progress bar is <em>always</em> updated (repainting can be enforced) if displaying is enabled, even when it is used from within the event dispatching thread (in which case the bar - within ImageJ drawn using that same thread - would otherwise not be updated until the process using the bar is finished). Furthermore, it relieves the user of explicitly computing the progress percentage (all this class requires is the total number of steps before the start of a process and the same number of step calls during the process). Also, it allows specifying the number of progress updates (by default 20 from start to end), thereby limiting the number of repaint calls (which are relatively expensive), and thus reducing execution time for progress displaying. Finally, it allows specifying the progress range (the minimum / maximum displayed progress value for the start / end of the corresponding process), which facilitates progress displaying for subprocesses. */
+/** Wrapper around ImageJ's progress bar. This class offers several advantages over ImageJ's native progress displaying methods. First, it allows one to make sure that the progress bar is <em>always</em> updated (repainting can be enforced) if displaying is enabled, even when it is used from within the event dispatching thread (in which case the bar - within ImageJ drawn using that same thread - would otherwise not be updated until the process using the bar is finished). Furthermore, it relieves the user of explicitly computing the progress percentage (all this class requires is the total number of steps before the start of a process and the same number of step calls during the process). Also, it allows specifying the number of progress updates (by default 20 from start to end), thereby limiting the number of repaint calls (which are relatively expensive), and thus reducing execution time for progress displaying. Finally, it allows specifying the progress range (the minimum / maximum displayed progress value for the start / end of the corresponding process), which facilitates progress displaying for subprocesses. The methods for counting steps and for starting and stopping the progress displaying are synchronized, so that processes running in multiple threads can share one object. */
 public class Progressor {
 	
 	private int step = 0;
@@ -46,17 +46,17 @@ public void updates(final int n) {
 		
 		@exception IllegalArgumentException if {@code n} is less than {@code 0}.
 	*/
-	public void steps(final int n) {
+	public synchronized void steps(final int n) {
 		
 		if (n < 0) throw new IllegalArgumentException("Number of steps less than 0");
 		steps = n;
 	}
 	
 	/** Returns the number of steps in the process. */
-	public double steps() { return steps; }
+	public synchronized double steps() { return steps; }
 	
 	/** Increases the internal step counter. */
-	public void step() {
+	public synchronized void step() {
 		
 		if (steps > 0) {
 			++step;
@@ -75,7 +75,7 @@ public void step() {
 		
 		@exception IllegalArgumentException if {@code n} is less than {@code 0}.
 	*/
-	public void step(final int n) {
+	public synchronized void step(final int n) {
 		
 		if (n < 0)
 			throw new IllegalArgumentException("Number of steps less than 0");
@@ -154,7 +154,7 @@ public void range(final double min, final double max) {
 	}
 	
 	/** Starts the progress displaying. Should be called at the start of the process whose progress is to be displayed. */
-	public void start() {
+	public synchronized void start() {
 		
 		step = 0;
 		update = 0;
@@ -163,7 +163,7 @@ public void start() {
 	}
 	
 	/** Stops the progress displaying. Should be called at the end of the process whose progress was displayed. */
-	public void stop() {
+	public synchronized void stop() {
 		
 		percent = 1;
 		progress();
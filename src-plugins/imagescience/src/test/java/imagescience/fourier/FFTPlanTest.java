@@ -0,0 +1,69 @@
+package imagescience.fourier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link FFTPlan} against a direct discrete Fourier transform, for the
+ * mixed-radix lengths as well as the ones transformed by Bluestein's algorithm.
+ */
+public class FFTPlanTest {
+
+	@Test
+	public void testDirectTransform() {
+		final Random random = new Random(17);
+		for (int n = 1; n <= 1024; n++) {
+			final double[] re = new double[n], im = new double[n];
+			for (int k = 0; k < n; k++) {
+				re[k] = random.nextDouble() - 0.5;
+				im[k] = random.nextDouble() - 0.5;
+			}
+			final FFTPlan plan = FFTPlan.get(n);
+			assertEquals(n, plan.length());
+			for (int sign = -1; sign <= 1; sign += 2) {
+				final double[] expectRe = new double[n], expectIm = new double[n];
+				dft(re, im, expectRe, expectIm, sign);
+				final double[] actualRe = re.clone(), actualIm = im.clone();
+				plan.transform(actualRe, actualIm, sign, plan.workspace());
+				final double tolerance = 1e-9 * n;
+				for (int k = 0; k < n; k++) {
+					assertEquals("length " + n + ", sign " + sign + ", re[" + k + "]", expectRe[k], actualRe[k], tolerance);
+					assertEquals("length " + n + ", sign " + sign + ", im[" + k + "]", expectIm[k], actualIm[k], tolerance);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCacheIsBounded() {
+		FFTPlan.clear();
+		final FFTPlan plan = FFTPlan.get(60);
+		assertSame(plan, FFTPlan.get(60));
+		for (int n = 1; n <= 100; n++)
+			FFTPlan.get(1000 + n);
+		assertNotSame(plan, FFTPlan.get(60));
+	}
+
+	private static void dft(final double[] re, final double[] im, final double[] outRe, final double[] outIm, final int sign) {
+		final int n = re.length;
+		final double[] cos = new double[n], sin = new double[n];
+		for (int m = 0; m < n; m++) {
+			cos[m] = Math.cos(2 * Math.PI * m / n);
+			sin[m] = sign * Math.sin(2 * Math.PI * m / n);
+		}
+		for (int k = 0; k < n; k++) {
+			double r = 0, i = 0;
+			for (int j = 0, m = 0; j < n; j++, m = (m + k) % n) {
+				r += re[j] * cos[m] - im[j] * sin[m];
+				i += re[j] * sin[m] + im[j] * cos[m];
+			}
+			outRe[k] = r;
+			outIm[k] = i;
+		}
+	}
+}
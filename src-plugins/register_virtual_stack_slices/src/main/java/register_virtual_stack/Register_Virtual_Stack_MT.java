@@ -14,8 +14,10 @@
 import ij.ImagePlus;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
+import ij.io.FileInfo;
 import ij.io.FileSaver;
 import ij.io.OpenDialog;
+import ij.io.TiffDecoder;
 
 
 import java.util.ArrayList;
@@ -28,9 +30,16 @@
 import java.awt.Rectangle;
 import java.awt.TextField;
 import java.awt.geom.AffineTransform;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 import mpicbg.ij.FeatureTransform;
 import mpicbg.ij.SIFT;
@@ -61,6 +70,9 @@
 import java.util.concurrent.Future;
 import java.util.concurrent.Callable;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.JFileChooser;
 
 import bunwarpj.Transformation;
@@ -121,6 +133,8 @@ public class Register_Virtual_Stack_MT implements PlugIn
 	public static boolean non_shrinkage = false;
 	/** save transformation flag */
 	public static boolean save_transforms = false;
+	/** flag to keep the features of the source images on disk for later runs (registration without shrinkage constraint only) */
+	public static boolean cache_features = false;
 	
 	/** source directory **/
 	public static String sourceDirectory="";
@@ -184,6 +198,7 @@ public void run(String arg)
 		gd.addCheckbox("Advanced setup", advanced);	
 		gd.addCheckbox("Shrinkage constrain", non_shrinkage);
 		gd.addCheckbox("Save transforms", save_transforms);
+		gd.addCheckbox("Cache features", cache_features);
 		
 		gd.showDialog();
 		
@@ -198,6 +213,7 @@ public void run(String arg)
 		advanced = gd.getNextBoolean();
 		non_shrinkage = gd.getNextBoolean();
 		save_transforms = gd.getNextBoolean();
+		cache_features = gd.getNextBoolean();
 
 		String source_dir = sourceDirectory;
 		if (null == source_dir) 
@@ -579,73 +595,56 @@ public static void exec(
 		transform[0] = new RigidModel2D();
 		
 		// FIRST LOOP (calculate correspondences and first RIGID solution)
-		ArrayList<Feature>[] fs = new ArrayList[sorted_file_names.length];
-		Future<ArrayList<Feature>> fu[] = new Future[sorted_file_names.length];
+		// Features are extracted in a sliding window of slices ahead of the matching,
+		// and each list of features is released once the slice has been matched with
+		// both neighbours, so only a few slices hold their features at any time.
+		final int window = Runtime.getRuntime().availableProcessors();
+		final Future<ArrayList<Feature>>[] fu = new Future[sorted_file_names.length];
+		final Future<ArrayList<PointMatch>>[] fpm = new Future[sorted_file_names.length-1];
 		try{
-			// Extract features for all images
-			for (int i=0; i<sorted_file_names.length; i++) 
-			{
-				IJ.showStatus("Extracting features from slices...");
-				fu[i] = exe.submit(extractFeatures(p, source_dir + sorted_file_names[i], i));			
-			}
+			for (int i=0; i<Math.min(window, sorted_file_names.length); i++) 
+				fu[i] = exe.submit(extractFeatures(p, source_dir + sorted_file_names[i], i));
 
-			System.gc();
-
-			// Join threads of feature extraction
+			ArrayList<Feature> previous = null;
 			for (int i=0; i<sorted_file_names.length; i++) 	
 			{
-				IJ.showStatus("Extracting features " + (i+1) + "/" + sorted_file_names.length);
+				IJ.showStatus("Extracting and matching features " + (i+1) + "/" + sorted_file_names.length);
 				IJ.showProgress((double) (i+1) / sorted_file_names.length);
-				fs[i] = fu[i].get();
+				final ArrayList<Feature> current = fu[i].get();
 				fu[i] = null;
-			}
-
-			fu = null;
-			// shut down the executor service to allow garbage collection
-			exe.shutdown();
-			
-			// Match features				
-			exe = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-			final Future<ArrayList<PointMatch>>[] fpm = new Future[sorted_file_names.length-1];
-			// Loop over the sequence to select correspondences by pairs			
-			for (int i=1; i<sorted_file_names.length; i++) 
-			{							
-				IJ.showStatus("Matching features...");							
-				
-				// Match features (create candidates)											
-					
-				// Filter candidates into inliers (concurrent way)
-				try {
-					fpm[i-1] = exe.submit(matchFeatures(p, fs[i], fs[i-1], featuresModel));
-					
-				} 
-				catch ( NotEnoughDataPointsException e ) 
+				if (i + window < sorted_file_names.length)
+					fu[i+window] = exe.submit(extractFeatures(p, source_dir + sorted_file_names[i+window], i+window));
+				if (i > 0)
 				{
-					IJ.log("No features model found for file " + i + ": " + sorted_file_names[i]);
-					// If the feature extraction does not find correspondences, then
-					// only the elastic registration can be performed
-					if(Param.registrationModelIndex != Register_Virtual_Stack_MT.ELASTIC)
+					// Pending matches hold on to their features: keep them within the window too
+					if (i - 1 - window >= 0)
+						joinMatch(fpm, i - 1 - window, inliers, sorted_file_names);
+					
+					// Filter candidates into inliers (concurrent way)
+					try {
+						fpm[i-1] = exe.submit(matchFeatures(p, current, previous, featuresModel));
+						
+					} 
+					catch ( NotEnoughDataPointsException e ) 
 					{
-						IJ.error("No features model found for file " + i + ": " + sorted_file_names[i]);
-						return;
+						IJ.log("No features model found for file " + i + ": " + sorted_file_names[i]);
+						// If the feature extraction does not find correspondences, then
+						// only the elastic registration can be performed
+						if(Param.registrationModelIndex != Register_Virtual_Stack_MT.ELASTIC)
+						{
+							IJ.error("No features model found for file " + i + ": " + sorted_file_names[i]);
+							return;
+						}
 					}
 				}
+				previous = current;
 			}
-			// Join threads of feature matching
-			for (int i=1; i<sorted_file_names.length; i++) 			
-			{
-				IJ.showStatus("Matching features " + (i+1) + "/" + sorted_file_names.length);
-				IJ.showProgress((double) (i+1) / sorted_file_names.length);
-				inliers[i-1] = fpm[i-1].get();
-				fs[i-1].clear();
-				if(inliers[i-1].size() < 2)
-					IJ.log("Error: not model found for images " + sorted_file_names[i-1] + " and " + sorted_file_names[i] );
-			}
-			fs[sorted_file_names.length-1].clear();
+			previous = null;
 
-			fs = null;
-			// shut down the executor service to allow garbage collection
-			exe.shutdown();
+			// Join the remaining threads of feature matching
+			for (int i=Math.max(0, sorted_file_names.length - 2 - window); i<sorted_file_names.length-1; i++) 			
+				if (null == inliers[i])
+					joinMatch(fpm, i, inliers, sorted_file_names);
 			System.gc();
 			
 			// Rigidly register
@@ -721,6 +720,28 @@ public static void exec(
 	} // end method exec (non-shrinking)
 
 	
+	//-----------------------------------------------------------------------------------------
+	/**
+	 * Wait for the matching of a pair of consecutive slices and store its inliers
+	 * 
+	 * @param fpm array of feature matching jobs, the joined job is removed from it
+	 * @param i index of the pair (slices i and i+1)
+	 * @param inliers array of list of inliers in the sequence (output)
+	 * @param sorted_file_names array of sorted source file names
+	 * @throws Exception if the matching failed
+	 */
+	private static void joinMatch(
+			final Future<ArrayList<PointMatch>>[] fpm,
+			final int i,
+			final List<PointMatch>[] inliers,
+			final String[] sorted_file_names) throws Exception
+	{
+		inliers[i] = fpm[i].get();
+		fpm[i] = null;
+		if(inliers[i].size() < 2)
+			IJ.log("Error: not model found for images " + sorted_file_names[i] + " and " + sorted_file_names[i+1] );
+	}
+
 	//-----------------------------------------------------------------------------------------
 	/**
 	 * Apply a transformation to the second point (P2) of a list of Point matches
@@ -941,71 +962,44 @@ public static boolean createResults(
 			final CoordinateTransform[] transform,
 			final boolean interpolate) 
 	{
-		ExecutorService exe = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-		final ImagePlus first = IJ.openImage(source_dir + sorted_file_names[0]);
+		final ExecutorService exe = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 		
-		// Common bounds to create common frame for all images
-		final Rectangle commonBounds = new Rectangle(0, 0, first.getWidth(), first.getHeight());
-
-		flush(first);
+		// The bounds of the transformed images only depend on the image sizes, which are
+		// read from the file headers, so each image is decoded, transformed and written once
+		final Future<Rectangle>[] fb = new Future[sorted_file_names.length];
+		for (int i=0; i<sorted_file_names.length; i++) 
+			fb[i] = exe.submit(getTransformedBounds(source_dir + sorted_file_names[i], transform[i]));
 
 		// List of bounds in the forward registration
 		final Rectangle bounds[] = new Rectangle[sorted_file_names.length];
-			
-		// Apply transform	
-		ArrayList<Future<Boolean>> save_job = new ArrayList <Future<Boolean>>();
-		for (int i=0; i<sorted_file_names.length; i++) 
-		{
-			save_job.add(
-					exe.submit(
-							applyTransformAndSave(
-									source_dir,
-									sorted_file_names[i],
-									target_dir,
-									transform[i],
-									bounds,
-									interpolate,
-									i)));
-		}
-
-
-		// Wait for the intermediate output files to be saved
-		int ind = 0;
-		for (Iterator<Future<Boolean>> it = save_job.iterator(); it.hasNext(); )
-		{
-			ind++;
-			Boolean saved_file = null;
-			try{
-				IJ.showStatus("Applying transform " + (ind+1) + "/" + sorted_file_names.length);
-				saved_file = it.next().get();
-				it.remove(); // so list doesn't build up anywhere with Callable-s that have been called already.				
-				System.gc();
-			} catch (InterruptedException e) {
-				IJ.error("Interruption exception!");
-				e.printStackTrace();
-				exe.shutdownNow();
-				return false;
-			} catch (ExecutionException e) {
-				IJ.error("Execution exception!");
-				e.printStackTrace();
-				exe.shutdownNow();
-				return false;
-			}
-			
-			if( saved_file.booleanValue() == false)
+		// Common bounds to create common frame for all images
+		Rectangle commonBounds = null;
+		try {
+			for (int i=0; i<sorted_file_names.length; i++) 
 			{
-				IJ.log("Error while saving: " +  makeTargetPath(target_dir, sorted_file_names[ind]));
-				exe.shutdownNow();
-				return false;
+				bounds[i] = fb[i].get();
+				fb[i] = null;
+				if (null == bounds[i])
+				{
+					IJ.log("Could not open source image at " + source_dir + sorted_file_names[i]);
+					exe.shutdownNow();
+					return false;
+				}
 			}
-			
+			final int[] size = getImageSize(source_dir + sorted_file_names[0]);
+			commonBounds = new Rectangle(0, 0, size[0], size[1]);
+		} catch (InterruptedException e) {
+			IJ.error("Interruption exception!");
+			e.printStackTrace();
+			exe.shutdownNow();
+			return false;
+		} catch (ExecutionException e) {
+			IJ.error("Execution exception!");
+			e.printStackTrace();
+			exe.shutdownNow();
+			return false;
 		}
 		
-		// Shut executor service down to allow garbage collection
-		exe.shutdown();
-
-		save_job = null;
-		
 		for (int k=0; k<sorted_file_names.length; k++) 
 		{
 			// Update common bounds
@@ -1033,52 +1027,53 @@ public static boolean createResults(
 		
 		//IJ.log("\nFinal common bounding box = [" + commonBounds.x + " " + commonBounds.y + " " + commonBounds.width + " " + commonBounds.height + "]");
 		
-		// Adjust Forward bounds
-		for ( int i = 0; i < bounds.length; ++i )
-		{
-			final Rectangle b = bounds[i];
-			b.x -= commonBounds.x;
-			b.y -= commonBounds.y;
-		}
-
-		// Reopen all target images and repaint them on an enlarged canvas
-		exe = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-		IJ.showStatus("Resizing images...");
-		ArrayList<Future<String>> names = new ArrayList<Future<String>>();
+		// Apply transform and paint the images on the enlarged canvas
+		IJ.showStatus("Applying transforms...");
+		final Future<String>[] jobs = new Future[sorted_file_names.length];
 		for (int i=0; i<sorted_file_names.length; i++) 
 		{
-			final Rectangle b = bounds[i];
-			names.add(exe.submit(resizeAndSaveImage(makeTargetPath(target_dir, sorted_file_names[i]), b.x, b.y, commonBounds.width, commonBounds.height)));
+			jobs[i] = exe.submit(
+							applyTransformAndSave(
+									source_dir,
+									sorted_file_names[i],
+									target_dir,
+									transform[i],
+									bounds[i].x - commonBounds.x,
+									bounds[i].y - commonBounds.y,
+									commonBounds.width,
+									commonBounds.height,
+									interpolate));
 		}
-		
 
 		// Join all and create VirtualStack
 		final VirtualStack stack = new VirtualStack(commonBounds.width, commonBounds.height, null, target_dir);
-		ind = 0;
-		for (Iterator<Future<String>> it1 = names.iterator(); it1.hasNext(); ind++) {
+		for (int i=0; i<sorted_file_names.length; i++) 
+		{
 			String filename = null;
 			try {
-				IJ.showStatus("Resizing image " + (ind+1) + "/" + sorted_file_names.length);
-				filename = it1.next().get();
-				it1.remove(); // so list doesn't build up anywhere with Callable-s that have been called already.
-				System.gc();
+				IJ.showStatus("Applying transform " + (i+1) + "/" + sorted_file_names.length);
+				IJ.showProgress((double) (i+1) / sorted_file_names.length);
+				filename = jobs[i].get();
+				jobs[i] = null;
 			} catch (InterruptedException e) {
 				IJ.error("Interruption exception!");
 				e.printStackTrace();
+				exe.shutdownNow();
 				return false;
 			} catch (ExecutionException e) {
 				IJ.error("Execution exception!");
 				e.printStackTrace();
+				exe.shutdownNow();
 				return false;
 			}
 			if (null == filename) {
-				IJ.log("Image failed: " + filename);
+				IJ.log("Error while saving: " +  makeTargetPath(target_dir, sorted_file_names[i]));
+				exe.shutdownNow();
 				return false;
 			}
 			stack.addSlice(filename);
 		}
 
-		names.clear();
 		exe.shutdown();
 
 		// Show registered stack
@@ -1504,12 +1499,19 @@ private static  Callable<ArrayList<Feature>> extractFeatures(final Param p, fina
 		return new Callable<ArrayList<Feature>>() {
 			public ArrayList<Feature> call() 
 			{
+				final String key = cache_features ? makeFeaturesKey(p, path) : null;
+				final File cache = cache_features ? makeFeaturesCachePath(path, key) : null;
+				ArrayList<Feature> fs = readFeatures(cache, key, index);
+				if (null != fs)
+					return fs;
 				
 				ImagePlus imp = IJ.openImage(path);
 				centerX[index] = imp.getWidth() / 2;
 				centerY[index] = imp.getHeight() / 2;
-				ArrayList<Feature> fs = new ArrayList<Feature>();
+				fs = new ArrayList<Feature>();
 				new SIFT( new FloatArray2DSIFT( p.sift ) ).extractFeatures(imp.getProcessor(), fs);
+				if (null != cache)
+					writeFeatures(cache, key, imp.getWidth(), imp.getHeight(), fs);
 				flush(imp);
 				imp = null;
 
@@ -1520,6 +1522,106 @@ public ArrayList<Feature> call()
 		};
 	}
 	
+	//-----------------------------------------------------------------------------------------
+	/**
+	 * Make the key that identifies the features of an image: the file, its
+	 * modification time and size, and the feature extraction parameters.
+	 * 
+	 * @param p feature extraction parameters
+	 * @param path image path
+	 * @return features key
+	 */
+	private static String makeFeaturesKey(final Param p, final String path)
+	{
+		final File file = new File(path);
+		return file.getAbsolutePath() + " " + file.lastModified() + " " + file.length()
+				+ " " + p.sift.initialSigma + " " + p.sift.steps
+				+ " " + p.sift.minOctaveSize + " " + p.sift.maxOctaveSize
+				+ " " + p.sift.fdSize + " " + p.sift.fdBins;
+	}
+	
+	//-----------------------------------------------------------------------------------------
+	/**
+	 * Make the path of the features cache file of an image, in the
+	 * temporary directory so it is shared by all output directories.
+	 * 
+	 * @param path image path
+	 * @param key features key
+	 * @return features cache file
+	 */
+	private static File makeFeaturesCachePath(final String path, final String key)
+	{
+		final File dir = new File(IJ.getDirectory("temp"), "register_virtual_stack_features");
+		return new File(dir, new File(path).getName() + "." + Integer.toHexString(key.hashCode()) + ".features");
+	}
+	
+	//-----------------------------------------------------------------------------------------
+	/**
+	 * Read the features of an image from the cache
+	 * 
+	 * @param cache features cache file (null if features are not cached)
+	 * @param key features key, which must match the stored one
+	 * @param index index of the image in the sequence
+	 * @return list of features, or null if they are not in the cache
+	 */
+	private static ArrayList<Feature> readFeatures(final File cache, final String key, final int index)
+	{
+		if (null == cache || !cache.exists())
+			return null;
+		try {
+			final ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(cache)));
+			try {
+				if (!key.equals(in.readUTF()))
+					return null;
+				final int width = in.readInt();
+				final int height = in.readInt();
+				final ArrayList<Feature> fs = (ArrayList<Feature>) in.readObject();
+				centerX[index] = width / 2;
+				centerY[index] = height / 2;
+				return fs;
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			IJ.log("Could not read cached features from " + cache + ": " + e);
+			return null;
+		}
+	}
+	
+	//-----------------------------------------------------------------------------------------
+	/**
+	 * Write the features of an image to the cache
+	 * 
+	 * @param cache features cache file
+	 * @param key features key
+	 * @param width image width
+	 * @param height image height
+	 * @param fs list of features
+	 */
+	private static void writeFeatures(final File cache, final String key, final int width, final int height, final ArrayList<Feature> fs)
+	{
+		// Write to a temporary file first, so concurrent or interrupted runs never see a partial cache
+		final File tmp = new File(cache.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			cache.getParentFile().mkdirs();
+			final ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeUTF(key);
+				out.writeInt(width);
+				out.writeInt(height);
+				out.writeObject(fs);
+			} finally {
+				out.close();
+			}
+			cache.delete();
+			if (!tmp.renameTo(cache))
+				tmp.delete();
+		} catch (IOException e) {
+			IJ.log("Could not cache features into " + cache + ": " + e);
+			tmp.delete();
+		}
+	}
+	
 	
 	//-----------------------------------------------------------------------------------------
 	/**
@@ -1545,43 +1647,152 @@ public Boolean call() {
 	
 	//-----------------------------------------------------------------------------------------
 	/**
-	 * Concurrently apply a transform and save the resulting image
+	 * Concurrently apply a transform and save the resulting image,
+	 * painted on a canvas of the final size
 	 * 
+	 * @param source_dir source directory
+	 * @param file_name source file name
+	 * @param target_dir target (output) directory
+	 * @param transform coordinate transform to apply
+	 * @param x x- position of the transformed image in the canvas
+	 * @param y y- position of the transformed image in the canvas
+	 * @param width canvas width
+	 * @param height canvas height
+	 * @param interpolate interpolation flag
+	 * @return file name of the saved image, or null if there was an error
 	 */
-	private static Callable<Boolean> applyTransformAndSave(
+	private static Callable<String> applyTransformAndSave(
 			final String source_dir, 
 			final String file_name, 
 			final String target_dir, 
 			final CoordinateTransform transform,
-			final Rectangle[] bounds,
-			final boolean interpolate,
-			final int i) 
+			final int x,
+			final int y,
+			final int width,
+			final int height,
+			final boolean interpolate) 
 	{
-		return new Callable<Boolean>() {
-			public Boolean call() {
-				// Open next image
-				final ImagePlus imp2 = IJ.openImage(source_dir + file_name);
-				// Calculate transform mesh
-				TransformMesh mesh = new TransformMesh(transform, 32, imp2.getWidth(), imp2.getHeight());
-				TransformMeshMapping mapping = new TransformMeshMapping(mesh);
-							
-				// Create interpolated deformed image with black background
-				imp2.getProcessor().setValue(0);
-				final ImageProcessor ip2 = interpolate ? mapping.createMappedImageInterpolated(imp2.getProcessor()) : mapping.createMappedImage(imp2.getProcessor()); 
-				imp2.setProcessor(imp2.getTitle(), ip2);
-				
-				//imp2.show();
-
-				// Accumulate bounding boxes, so in the end they can be reopened and re-saved with an enlarged canvas.
-				final Rectangle currentBounds = mesh.getBoundingBox();			
-				bounds[i] = currentBounds;									
-				
-				// Save target image
-				return new FileSaver(imp2).saveAsTiff(makeTargetPath(target_dir, file_name));
+		return new Callable<String>() {
+			public String call() {
+				try {
+					// Open next image
+					ImagePlus imp2 = IJ.openImage(source_dir + file_name);
+					if (null == imp2) {
+						IJ.log("Could not open source image at " + source_dir + file_name);
+						return null;
+					}
+					// Calculate transform mesh
+					TransformMesh mesh = new TransformMesh(transform, 32, imp2.getWidth(), imp2.getHeight());
+					TransformMeshMapping mapping = new TransformMeshMapping(mesh);
+								
+					// Create interpolated deformed image with black background
+					imp2.getProcessor().setValue(0);
+					final ImageProcessor ip2 = interpolate ? mapping.createMappedImageInterpolated(imp2.getProcessor()) : mapping.createMappedImage(imp2.getProcessor()); 
+					
+					ImageProcessor ip = imp2.getProcessor().createProcessor(width, height);
+					// Color images are white by default: fill with black
+					if (imp2.getType() == ImagePlus.COLOR_RGB) 
+					{
+						ip.setRoi(0, 0, width, height);
+						ip.setValue(0);
+						ip.fill();
+					}
+					ip.insert(ip2, x, y);
+					ImagePlus big = new ImagePlus(imp2.getTitle(), ip);
+					big.setCalibration(imp2.getCalibration());
+					flush(imp2);
+					imp2 = null;
+					
+					// Save target image
+					final String path = makeTargetPath(target_dir, file_name);
+					if (! new FileSaver(big).saveAsTiff(path)) {
+						return null;
+					}
+					flush(big);
+					big = null;
+					
+					return new File(path).getName();
+				} catch (Exception e) {
+					e.printStackTrace();
+					return null;
+				}
+			}
+		};
+	}
+	
+	//-----------------------------------------------------------------------------------------
+	/**
+	 * Concurrently calculate the bounding box of a transformed image
+	 * 
+	 * @param path source image path
+	 * @param transform coordinate transform
+	 * @return bounding box of the transformed image, or null if the image could not be read
+	 */
+	private static Callable<Rectangle> getTransformedBounds(
+			final String path, 
+			final CoordinateTransform transform) 
+	{
+		return new Callable<Rectangle>() {
+			public Rectangle call() {
+				final int[] size = getImageSize(path);
+				if (null == size)
+					return null;
+				return new TransformMesh(transform, 32, size[0], size[1]).getBoundingBox();
 			}
 		};
 	}
 	
+	//-----------------------------------------------------------------------------------------
+	/**
+	 * Read the size of an image, if possible from its header only
+	 * 
+	 * @param path image path
+	 * @return width and height of the image, or null if it could not be read
+	 */
+	private static int[] getImageSize(final String path)
+	{
+		final File file = new File(path);
+		final String name = file.getName().toLowerCase();
+		try {
+			if (name.endsWith(".tif") || name.endsWith(".tiff"))
+			{
+				final FileInfo[] info = new TiffDecoder(file.getParent() + File.separator, file.getName()).getTiffInfo();
+				if (null != info && info.length > 0)
+					return new int[]{ info[0].width, info[0].height };
+			}
+			else
+			{
+				final ImageInputStream in = ImageIO.createImageInputStream(file);
+				if (null != in)
+				{
+					try {
+						final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+						if (readers.hasNext())
+						{
+							final ImageReader reader = readers.next();
+							try {
+								reader.setInput(in);
+								return new int[]{ reader.getWidth(0), reader.getHeight(0) };
+							} finally {
+								reader.dispose();
+							}
+						}
+					} finally {
+						in.close();
+					}
+				}
+			}
+		} catch (IOException e) {
+			// fall back to opening the image
+		}
+		final ImagePlus imp = IJ.openImage(path);
+		if (null == imp)
+			return null;
+		final int[] size = new int[]{ imp.getWidth(), imp.getHeight() };
+		flush(imp);
+		return size;
+	}
+	
 	//-----------------------------------------------------------------------------------------	
 	/**
 	 * Match features into inliers in a concurrent way